@@ -0,0 +1,294 @@
+package org.qogir.compiler.FA;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Read an automaton written by {@link AutomatonWriter} in the JSON or the binary format.
+ * The input is read one edge at a time, so only the automaton itself is held in memory, never the text.
+ * <p>
+ * A state gets a new id, and its sid is the id it was written with, so the automaton is displayed as it was written.
+ * The alphabet holds the labels of the edges other than ε, in the order they are read.
+ */
+public final class AutomatonReader {
+
+    private final HashMap<Integer, State> states = new HashMap<>();
+    private final HashSet<Character> symbols = new HashSet<>();
+    private final FiniteAutomaton fa = new FiniteAutomaton(-1);
+
+    private AutomatonReader() {
+    }
+
+    /**
+     * @param in the JSON text, e.g. of {@link AutomatonWriter#json}
+     * @return the automaton
+     * @throws IOException if the input cannot be read or is not an automaton
+     */
+    public static FiniteAutomaton readJson(Reader in) throws IOException {
+        AutomatonReader reader = new AutomatonReader();
+        JsonInput json = new JsonInput(in);
+        int start = -1;
+        json.expect('{');
+        if (json.peek() != '}') {
+            do {
+                String key = json.readString();
+                json.expect(':');
+                switch (key) {
+                    case "start" -> start = json.readInt();
+                    case "edges" -> {
+                        json.expect('[');
+                        if (json.peek() != ']') {
+                            do {
+                                reader.readJsonEdge(json);
+                            } while (json.skipComma());
+                        }
+                        json.expect(']');
+                    }
+                    default -> json.skipValue();
+                }
+            } while (json.skipComma());
+        }
+        json.expect('}');
+        if (start < 0)
+            throw new IOException("The automaton has no start state.");
+        return reader.finish(start, State.START);
+    }
+
+    /**
+     * @param in the binary format of {@link AutomatonWriter#binary}
+     * @return the automaton
+     * @throws IOException if the input cannot be read or is not an automaton
+     */
+    public static FiniteAutomaton readBinary(InputStream in) throws IOException {
+        AutomatonReader reader = new AutomatonReader();
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != AutomatonWriter.BINARY_MAGIC)
+            throw new IOException("The input is not an automaton.");
+        int start = data.readInt();
+        int startType = data.readByte();
+        while (true) {
+            int tag = data.readByte();
+            if (tag == 0)
+                break;
+            if (tag != 1)
+                throw new IOException("Unknown record " + tag + ".");
+            State source = reader.state(data.readInt(), data.readByte());
+            State target = reader.state(data.readInt(), data.readByte());
+            reader.addEdge(source, target, data.readChar());
+        }
+        return reader.finish(start, startType);
+    }
+
+    private void readJsonEdge(JsonInput json) throws IOException {
+        State source = null;
+        State target = null;
+        int label = -1;
+        json.expect('{');
+        do {
+            String key = json.readString();
+            json.expect(':');
+            switch (key) {
+                case "source" -> source = readJsonState(json);
+                case "target" -> target = readJsonState(json);
+                case "label" -> {
+                    String l = json.readString();
+                    if (l.length() != 1)
+                        throw new IOException("The label \"" + l + "\" is not a char.");
+                    label = l.charAt(0);
+                }
+                default -> json.skipValue();
+            }
+        } while (json.skipComma());
+        json.expect('}');
+        if (source == null || target == null || label < 0)
+            throw new IOException("An edge needs a source, a target and a label.");
+        addEdge(source, target, (char) label);
+    }
+
+    private State readJsonState(JsonInput json) throws IOException {
+        int id = -1;
+        int type = State.MIDDLE;
+        json.expect('{');
+        do {
+            String key = json.readString();
+            json.expect(':');
+            switch (key) {
+                case "id" -> id = json.readInt();
+                case "type" -> type = json.readInt();
+                default -> json.skipValue();
+            }
+        } while (json.skipComma());
+        json.expect('}');
+        if (id < 0)
+            throw new IOException("A state needs an id.");
+        return state(id, type);
+    }
+
+    private State state(int id, int type) {
+        State s = states.get(id);
+        if (s == null) {
+            s = new State();
+            s.setSid(String.valueOf(id));
+            s.setType(type);
+            states.put(id, s);
+            fa.getTransitTable().addVertex(s);
+        }
+        return s;
+    }
+
+    private void addEdge(State source, State target, char label) {
+        fa.getTransitTable().addEdge(source, target, label);
+        if (label != 'ε' && symbols.add(label))
+            fa.getAlphabet().add(label);
+    }
+
+    private FiniteAutomaton finish(int start, int startType) {
+        fa.setStartState(state(start, startType));
+        return fa;
+    }
+
+    /**
+     * A pull parser of the JSON values the formats use
+     */
+    private static final class JsonInput {
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private int position = 0;
+        private int limit = 0;
+
+        JsonInput(Reader in) {
+            this.in = in;
+        }
+
+        private int read() throws IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++];
+        }
+
+        /**
+         * @return the next char which is not a white space, without reading it
+         */
+        int peek() throws IOException {
+            while (true) {
+                int c = read();
+                if (c < 0)
+                    return c;
+                if (!Character.isWhitespace(c)) {
+                    position--;
+                    return c;
+                }
+            }
+        }
+
+        void expect(char c) throws IOException {
+            int next = peek();
+            if (next != c)
+                throw new IOException("Expected '" + c + "' but found " + (next < 0 ? "the end" : "'" + (char) next + "'") + ".");
+            read();
+        }
+
+        boolean skipComma() throws IOException {
+            if (peek() != ',')
+                return false;
+            read();
+            return true;
+        }
+
+        String readString() throws IOException {
+            expect('"');
+            StringBuilder str = new StringBuilder();
+            while (true) {
+                int c = read();
+                if (c < 0)
+                    throw new IOException("Unterminated string.");
+                if (c == '"')
+                    return str.toString();
+                if (c == '\\') {
+                    int e = read();
+                    switch (e) {
+                        case 'n' -> str.append('\n');
+                        case 'r' -> str.append('\r');
+                        case 't' -> str.append('\t');
+                        case 'b' -> str.append('\b');
+                        case 'f' -> str.append('\f');
+                        case 'u' -> {
+                            int code = 0;
+                            for (int i = 0; i < 4; i++) {
+                                int digit = Character.digit(read(), 16);
+                                if (digit < 0)
+                                    throw new IOException("Bad unicode escape.");
+                                code = code * 16 + digit;
+                            }
+                            str.append((char) code);
+                        }
+                        case -1 -> throw new IOException("Unterminated string.");
+                        default -> str.append((char) e);
+                    }
+                } else {
+                    str.append((char) c);
+                }
+            }
+        }
+
+        int readInt() throws IOException {
+            int c = peek();
+            boolean negative = c == '-';
+            if (negative)
+                read();
+            long value = 0;
+            int digits = 0;
+            while ((c = read()) >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > Integer.MAX_VALUE)
+                    throw new IOException("The number is too large.");
+                digits++;
+            }
+            if (c >= 0)
+                position--;
+            if (digits == 0)
+                throw new IOException("Expected a number.");
+            return (int) (negative ? -value : value);
+        }
+
+        /**
+         * Skip a value of a key which is not known
+         */
+        void skipValue() throws IOException {
+            int c = peek();
+            if (c == '"') {
+                readString();
+            } else if (c == '{' || c == '[') {
+                char close = c == '{' ? '}' : ']';
+                read();
+                if (peek() != close) {
+                    do {
+                        if (close == '}') {
+                            readString();
+                            expect(':');
+                        }
+                        skipValue();
+                    } while (skipComma());
+                }
+                expect(close);
+            } else {
+                //a number, true, false or null
+                while ((c = read()) >= 0 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                }
+                if (c >= 0)
+                    position--;
+            }
+        }
+    }
+}
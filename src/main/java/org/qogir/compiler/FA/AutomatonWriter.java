@@ -0,0 +1,195 @@
+package org.qogir.compiler.FA;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A streaming writer of the states and edges of an automaton, which writes each edge as it is given,
+ * so an automaton of any size is written in constant memory.
+ * The automaton is written by {@link FiniteAutomaton#write}, or by any other source which gives its edges:
+ * <pre>
+ *     writer.begin(startId, startType);
+ *     writer.state(id, type);                                   //optional, for the states without edges
+ *     writer.edge(sourceId, sourceType, targetId, targetType, label);
+ *     writer.end();
+ * </pre>
+ * The formats:
+ * + {@link #json} - {"start":0,"edges":[{"source":{"id":0,"type":0},"target":{"id":1,"type":1},"label":"a"},{...}]}
+ * + {@link #dot} - a Graphviz digraph, accepting states are double circles
+ * + {@link #binary} - a magic number, the start state, then a record per edge: a tag byte 1,
+ *   the source id and type, the target id and type, and the label, ended by a tag byte 0
+ * The JSON and binary formats are read back by {@link AutomatonReader}.
+ * The writer does not close the underlying stream.
+ */
+public abstract class AutomatonWriter {
+
+    /**
+     * "QFA1", the first int of the binary format
+     */
+    public static final int BINARY_MAGIC = 0x51464131;
+
+    public abstract void begin(int startId, int startType) throws IOException;
+
+    /**
+     * Declare a state, e.g. an accepting state or a state without edges. The JSON and binary formats hold edges only.
+     */
+    public void state(int id, int type) throws IOException {
+    }
+
+    public abstract void edge(int sourceId, int sourceType, int targetId, int targetType, char label) throws IOException;
+
+    /**
+     * Finish the automaton and flush the stream.
+     */
+    public abstract void end() throws IOException;
+
+    public static AutomatonWriter json(Writer out) {
+        return new JsonWriter(out);
+    }
+
+    public static AutomatonWriter dot(Writer out) {
+        return new DotWriter(out);
+    }
+
+    public static AutomatonWriter binary(OutputStream out) {
+        return new BinaryWriter(out);
+    }
+
+    static boolean isAccepting(int type) {
+        return type == State.ACCEPT || type == State.ACCEPTANDSTART;
+    }
+
+    /**
+     * Write a char as a JSON string, e.g. the label of an edge
+     */
+    public static void writeJsonString(Writer out, char c) throws IOException {
+        out.write('"');
+        switch (c) {
+            case '"' -> out.write("\\\"");
+            case '\\' -> out.write("\\\\");
+            case '\n' -> out.write("\\n");
+            case '\r' -> out.write("\\r");
+            case '\t' -> out.write("\\t");
+            default -> {
+                if (c < 0x20)
+                    out.write(String.format("\\u%04x", (int) c));
+                else
+                    out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    private static final class JsonWriter extends AutomatonWriter {
+        private final Writer out;
+        private boolean first = true;
+
+        JsonWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void begin(int startId, int startType) throws IOException {
+            out.write("{\"start\":");
+            out.write(Integer.toString(startId));
+            out.write(",\"edges\":[");
+        }
+
+        @Override
+        public void edge(int sourceId, int sourceType, int targetId, int targetType, char label) throws IOException {
+            if (!first)
+                out.write(',');
+            first = false;
+            out.write("{\"source\":{\"id\":");
+            out.write(Integer.toString(sourceId));
+            out.write(",\"type\":");
+            out.write(Integer.toString(sourceType));
+            out.write("},\"target\":{\"id\":");
+            out.write(Integer.toString(targetId));
+            out.write(",\"type\":");
+            out.write(Integer.toString(targetType));
+            out.write("},\"label\":");
+            writeJsonString(out, label);
+            out.write('}');
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.write("]}");
+            out.flush();
+        }
+    }
+
+    private static final class DotWriter extends AutomatonWriter {
+        private final Writer out;
+
+        DotWriter(Writer out) {
+            this.out = out;
+        }
+
+        @Override
+        public void begin(int startId, int startType) throws IOException {
+            out.write("digraph FA {\n  rankdir=LR;\n  node [shape=circle];\n  __start [shape=point];\n  __start -> ");
+            out.write(Integer.toString(startId));
+            out.write(";\n");
+            state(startId, startType);
+        }
+
+        @Override
+        public void state(int id, int type) throws IOException {
+            out.write("  ");
+            out.write(Integer.toString(id));
+            out.write(isAccepting(type) ? " [shape=doublecircle];\n" : ";\n");
+        }
+
+        @Override
+        public void edge(int sourceId, int sourceType, int targetId, int targetType, char label) throws IOException {
+            out.write("  ");
+            out.write(Integer.toString(sourceId));
+            out.write(" -> ");
+            out.write(Integer.toString(targetId));
+            out.write(" [label=");
+            writeJsonString(out, label);
+            out.write("];\n");
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.write("}\n");
+            out.flush();
+        }
+    }
+
+    private static final class BinaryWriter extends AutomatonWriter {
+        private final DataOutputStream out;
+
+        BinaryWriter(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        @Override
+        public void begin(int startId, int startType) throws IOException {
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(startId);
+            out.writeByte(startType);
+        }
+
+        @Override
+        public void edge(int sourceId, int sourceType, int targetId, int targetType, char label) throws IOException {
+            out.writeByte(1);
+            out.writeInt(sourceId);
+            out.writeByte(sourceType);
+            out.writeInt(targetId);
+            out.writeByte(targetType);
+            out.writeChar(label);
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.writeByte(0);
+            out.flush();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.qogir.compiler.util.graph.LabelEdge;
 import org.qogir.compiler.util.graph.LabeledDirectedGraph;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -77,11 +78,36 @@ public class FiniteAutomaton implements Serializable {
         }
     }
 
+    /**
+     * Write the states and edges one at a time, e.g. {@link AutomatonWriter#json}, {@link AutomatonWriter#dot}
+     * or {@link AutomatonWriter#binary}, without building the text of the automaton in memory.
+     * @param writer the writer of a format
+     */
+    public void write(AutomatonWriter writer) throws IOException {
+        writer.begin(this.startState.getId(), this.startState.getType());
+        for (State s : transitTable.vertexSet()){
+            writer.state(s.getId(), s.getType());
+        }
+        for (LabelEdge edge : transitTable.edgeSet()){
+            State source = (State) edge.getSource();
+            State target = (State) edge.getTarget();
+            writer.edge(source.getId(), source.getType(), target.getId(), target.getType(), edge.getLabel());
+        }
+        writer.end();
+    }
+
     /**
      * format: {"start":0,"edges":[{"source":{"id":0,"type":0},"target":{"id":1,"type":1},"label":"a"},{...}]}
+     * The automaton is read back by {@link AutomatonReader#readJson}.
      * @param filename  the name of exported file.
      */
-    public void exportJson(String filename){}
+    public void exportJson(String filename){
+        try (Writer write = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename + ".json"), StandardCharsets.UTF_8))) {
+            write(AutomatonWriter.json(write));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
 /*    public void showFA(){
         String stateInfo = "Start State:" + this.startState.getId() ;
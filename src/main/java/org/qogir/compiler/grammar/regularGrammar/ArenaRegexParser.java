@@ -0,0 +1,281 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.util.InvalidRegexException;
+import org.qogir.compiler.util.StringUtil;
+
+import java.nio.CharBuffer;
+
+/**
+ * A single-pass recursive descent parser converting a regex into an arena-encoded tree {@link RegexArena}.
+ * The parser reads the regex through an index cursor, it neither copies nor boxes the chars,
+ * and the only allocation is the growth of the arena.
+ * <p>
+ * The grammar of the regex is:
+ * <pre>
+ *     union   := concat ( '|' concat )*
+ *     concat  := closure closure*
+ *     closure := atom ( '*' | '+' | '?' | '{' m '}' | '{' m ',' '}' | '{' m ',' n '}' )?
+ *     atom    := letter | 'ε' | '(' union ')' | '(' ')'
+ * </pre>
+ * As for {@link ParseRegex}, the first char of the regex must be a letter or '(', e.g. "εb|b" is written "(ε)b|b".
+ * The output tree has the same form as the tree of {@link ParseRegex}: unions and concatenations are n-ary nodes,
+ * parentheses produce no node and the empty group "()" is dropped.
+ * A repetition which has a node of its own is written as one: r{0,} is r*, r{1,} is r+, r{0,1} is r?,
+ * r{1} is r and r{0} is ε, the others are {@link RegexTreeNode#REPEAT} nodes with their bounds.
+ * <p>
+ * With {@link #setCaptureGroups(boolean)}, every parenthesized group is a capture group: it produces a
+ * {@link RegexTreeNode#GROUP} node numbered by its '(' from 1, e.g. "(a(b))*" has groups 1 "(a(b))" and 2 "(b)",
+ * and "()" is a group of ε.
+ */
+public class ArenaRegexParser {
+
+    private CharSequence regex;
+    private int cursor;
+    private int end;
+    private RegexArena arena;
+    private int root = RegexArena.NONE;
+    private boolean captureGroups = false;
+    private int groups = 0;
+
+    public boolean isCaptureGroups() {
+        return captureGroups;
+    }
+
+    /**
+     * @param captureGroups true to produce a group node for each pair of parentheses
+     */
+    public void setCaptureGroups(boolean captureGroups) {
+        this.captureGroups = captureGroups;
+    }
+
+    /**
+     * @return the number of capture groups of the regex parsed last
+     */
+    public int getGroupCount() {
+        return groups;
+    }
+
+    /**
+     * Parse a regex into a new arena.
+     *
+     * @param regex a regular expression
+     * @return the arena holding the regex tree, its root is the node {@link #getRoot()}
+     */
+    public RegexArena parse(CharSequence regex) throws InvalidRegexException {
+        RegexArena newArena = new RegexArena(regex.length() + 1);
+        root = parse(regex, 0, regex.length(), newArena);
+        return newArena;
+    }
+
+    /**
+     * @return the root of the regex tree produced by the last {@link #parse(CharSequence)}
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * Parse a regex into the tree and append it to an arena. The arena can hold the trees of many regexes.
+     *
+     * @param regex a regular expression
+     * @param arena the arena holding the nodes
+     * @return the root node of the regex tree, or {@link RegexArena#NONE} if the regex is empty
+     */
+    public int parse(CharSequence regex, RegexArena arena) throws InvalidRegexException {
+        return parse(regex, 0, regex.length(), arena);
+    }
+
+    /**
+     * Parse the chars [from, to) of a char array, e.g. a rule in a packed buffer of rules.
+     */
+    public int parse(char[] regex, int from, int to, RegexArena arena) throws InvalidRegexException {
+        return parse(CharBuffer.wrap(regex), from, to, arena);
+    }
+
+    /**
+     * Parse the chars [from, to) of a regex.
+     *
+     * @return the root node of the regex tree, or {@link RegexArena#NONE} if the regex is empty
+     */
+    public int parse(CharSequence regex, int from, int to, RegexArena arena) throws InvalidRegexException {
+        this.regex = regex;
+        this.cursor = from;
+        this.end = to;
+        this.arena = arena;
+        this.groups = 0;
+        try {
+            if (cursor == end)
+                return RegexArena.NONE;
+            char first = regex.charAt(cursor);
+            //as ParseRegex, ε is legal anywhere but as the first char
+            if (first != '(' && !StringUtil.isLetter(first)) {
+                throw new InvalidRegexException("Not a legal regex! It must begin with a letter,'ε' or '('.");
+            }
+            int node = union();
+            if (cursor != end) {
+                if (regex.charAt(cursor) == ')')
+                    throw new InvalidRegexException("Not a legal regex! '(' is missing.");
+                throw new InvalidRegexException("Not a legal regex! Unexpected '" + regex.charAt(cursor) + "'.");
+            }
+            return node;
+        } finally {
+            this.regex = null;
+            this.arena = null;
+        }
+    }
+
+    /**
+     * union := concat ( '|' concat )*
+     */
+    private int union() {
+        int first = concat();
+        if (cursor == end || regex.charAt(cursor) != '|')
+            return first;
+
+        if (first == RegexArena.NONE)
+            throw new InvalidRegexException("Not a legal regex! ('|)' or '||').");
+        int unode = arena.addNode(RegexTreeNode.UNION, '|');
+        arena.setFirstChild(unode, first);
+        int last = first;
+        while (cursor < end && regex.charAt(cursor) == '|') {
+            cursor++;
+            int arm = concat();
+            if (arm == RegexArena.NONE)
+                throw new InvalidRegexException("Not a legal regex! '|)'");
+            arena.setNextSibling(last, arm);
+            last = arm;
+        }
+        return unode;
+    }
+
+    /**
+     * concat := closure closure*
+     */
+    private int concat() {
+        int cnode = RegexArena.NONE;
+        int first = RegexArena.NONE;
+        int last = RegexArena.NONE;
+        while (cursor < end) {
+            char look = regex.charAt(cursor);
+            if (look == '|' || look == ')')
+                break;
+            int node = closure();
+            if (node == RegexArena.NONE)
+                continue; // the empty group "()" without capture groups
+            if (first == RegexArena.NONE) {
+                first = node;
+            } else {
+                if (cnode == RegexArena.NONE) {
+                    cnode = arena.addNode(RegexTreeNode.CONCATENATION, '-');
+                    arena.setFirstChild(cnode, first);
+                }
+                arena.setNextSibling(last, node);
+            }
+            last = node;
+        }
+        return cnode == RegexArena.NONE ? first : cnode;
+    }
+
+    /**
+     * closure := atom ( '*' | '+' | '?' | '{' m '}' | '{' m ',' '}' | '{' m ',' n '}' )?
+     */
+    private int closure() {
+        int node = atom();
+        if (cursor == end || !isPostfix(regex.charAt(cursor)))
+            return node;
+        char op = regex.charAt(cursor);
+        if (node == RegexArena.NONE)
+            throw new InvalidRegexException("Not a legal regex! The character before '" + op + "' must be a letter or ')'");
+        cursor++;
+        int min = op == '+' ? 1 : 0;
+        int max = op == '?' ? 1 : RegexTreeNode.UNBOUNDED;
+        if (op == '{') {
+            min = bound();
+            max = min;
+            if (cursor < end && regex.charAt(cursor) == ',') {
+                cursor++;
+                max = cursor < end && regex.charAt(cursor) == '}' ? RegexTreeNode.UNBOUNDED : bound();
+            }
+            if (cursor == end || regex.charAt(cursor) != '}')
+                throw new InvalidRegexException("Not a legal regex! '}' is missing.");
+            cursor++;
+            if (max != RegexTreeNode.UNBOUNDED && max < min)
+                throw new InvalidRegexException("Not a legal regex! The bounds of '{" + min + "," + max + "}' are reversed.");
+        }
+        if (cursor < end && isPostfix(regex.charAt(cursor)))
+            throw new InvalidRegexException("Not a legal regex! The character before '" + regex.charAt(cursor) + "' must be a letter or ')'");
+        return repeat(node, min, max);
+    }
+
+    /**
+     * @return the node of node{min,max}
+     */
+    private int repeat(int node, int min, int max) {
+        int rnode;
+        if (max == RegexTreeNode.UNBOUNDED && min == 0) {
+            rnode = arena.addNode(RegexTreeNode.CLOSURE, '*');
+        } else if (max == RegexTreeNode.UNBOUNDED && min == 1) {
+            rnode = arena.addNode(RegexTreeNode.PLUS, '+');
+        } else if (min == 0 && max == 1) {
+            rnode = arena.addNode(RegexTreeNode.OPTIONAL, '?');
+        } else if (min == 1 && max == 1) {
+            return node;
+        } else if (max == 0) {
+            return arena.addNode(RegexTreeNode.BASIC, 'ε');
+        } else {
+            rnode = arena.addNode(RegexTreeNode.REPEAT, '{');
+            arena.setBounds(rnode, min, max);
+        }
+        arena.setFirstChild(rnode, node);
+        return rnode;
+    }
+
+    /**
+     * @return the decimal number at the cursor
+     */
+    private int bound() {
+        int value = 0;
+        int digits = 0;
+        while (cursor < end && regex.charAt(cursor) >= '0' && regex.charAt(cursor) <= '9') {
+            value = value * 10 + (regex.charAt(cursor++) - '0');
+            if (value > RegexTreeNode.MAX_BOUND)
+                throw new InvalidRegexException("Not a legal regex! A bound of '{m,n}' is greater than " + RegexTreeNode.MAX_BOUND + ".");
+            digits++;
+        }
+        if (digits == 0)
+            throw new InvalidRegexException("Not a legal regex! '{' must be followed by a number.");
+        return value;
+    }
+
+    private static boolean isPostfix(char c) {
+        return c == '*' || c == '+' || c == '?' || c == '{';
+    }
+
+    /**
+     * atom := letter | 'ε' | '(' union ')' | '(' ')'
+     */
+    private int atom() {
+        char look = regex.charAt(cursor);
+        if (StringUtil.isLetter(look) || look == 'ε') {
+            cursor++;
+            return arena.addNode(RegexTreeNode.BASIC, look);
+        }
+        if (look == '(') {
+            cursor++;
+            int group = captureGroups ? ++groups : 0;
+            int node = union();
+            if (cursor == end)
+                throw new InvalidRegexException("Not a legal regex! ')' is missing.");
+            cursor++; // ')'
+            if (!captureGroups)
+                return node;
+            int gnode = arena.addNode(RegexTreeNode.GROUP, '(');
+            arena.setGroup(gnode, group);
+            arena.setFirstChild(gnode, node == RegexArena.NONE ? arena.addNode(RegexTreeNode.BASIC, 'ε') : node);
+            return gnode;
+        }
+        if (isPostfix(look))
+            throw new InvalidRegexException("Not a legal regex! The character before '" + look + "' must be a letter or ')'");
+        throw new InvalidRegexException("Not a legal regex! Illegal character '" + look + "'.");
+    }
+}
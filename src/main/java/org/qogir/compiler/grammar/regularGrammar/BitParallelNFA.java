@@ -0,0 +1,193 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.FiniteAutomaton;
+import org.qogir.compiler.FA.State;
+import org.qogir.compiler.util.ConstructionBudgetExceededException;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An NFA simulated over bit sets: a set of NFA states is a long[] of {@link #getWords()} words, one bit per state,
+ * and ε-closure(move(s, a)) of each state s and symbol a is precomputed as a bit set.
+ * A step ORs the sets of the states of the current set a word at a time, so it takes no allocation and
+ * no ε-closure, and its cost depends on the NFA only, never on the number of DFA states the grammar would have.
+ * <p>
+ * The sets take n * k * ⌈n / 64⌉ longs for n NFA states and k symbols, see {@link #getTableBytes()}, so they grow
+ * with the square of the NFA; a table over maxTableBytes is not built.
+ * The NFA is immutable, so it can be shared by threads, each with its own sets.
+ */
+public final class BitParallelNFA {
+
+    public static final int NONE = -1;
+
+    /**
+     * The largest table built by default, in bytes
+     */
+    public static final long DEFAULT_MAX_TABLE_BYTES = 256L << 20;
+
+    private final IndexedNFA nfa;
+
+    private final int words;
+
+    private final int k;
+
+    private final int[] symbols;
+
+    /**
+     * steps[(s * k + a) * words .. + words), the bit set of ε-closure(move(s, a))
+     */
+    private final long[] steps;
+
+    private final long[] start;
+
+    private final long[] accepting;
+
+    /**
+     * The token of a set whose only accepting state is s
+     */
+    private final int[] tokenOf;
+
+    /**
+     * The priority of the token of a set whose only accepting state is s, Integer.MIN_VALUE if s accepts no token
+     */
+    private final int[] priorityOf;
+
+    /**
+     * @param nfa a TNFA or an ε-free NFA
+     * @param acceptedTokens the tokens each accepting NFA state accepts as {@link DFATableConstruction#construct}, or null
+     * @param priorities the priority of each token, or null if all are 0
+     */
+    public BitParallelNFA(FiniteAutomaton nfa, Map<State, int[]> acceptedTokens, int[] priorities) {
+        this(nfa, acceptedTokens, priorities, DEFAULT_MAX_TABLE_BYTES);
+    }
+
+    /**
+     * @param nfa a TNFA or an ε-free NFA
+     * @param acceptedTokens the tokens each accepting NFA state accepts as {@link DFATableConstruction#construct}, or null
+     * @param priorities the priority of each token, or null if all are 0
+     * @param maxTableBytes the largest table to build
+     * @throws ConstructionBudgetExceededException if the table takes more than maxTableBytes
+     */
+    public BitParallelNFA(FiniteAutomaton nfa, Map<State, int[]> acceptedTokens, int[] priorities, long maxTableBytes) {
+        this.nfa = new IndexedNFA(nfa, acceptedTokens, priorities);
+        int n = this.nfa.size();
+        this.words = Math.max((n + 63) >>> 6, 1);
+        this.k = this.nfa.alphabet.length;
+        //in double, as n * k * words can overflow a long; an array holds at most Integer.MAX_VALUE - 8 longs
+        double bytes = (double) n * k * words * Long.BYTES;
+        long bound = Math.min(maxTableBytes, (long) (Integer.MAX_VALUE - 8) * Long.BYTES);
+        if (bytes > bound)
+            throw new ConstructionBudgetExceededException("bit-parallel NFA", ConstructionBudgetExceededException.HEAP,
+                    (long) Math.min(bytes, Long.MAX_VALUE), bound);
+        int maxChar = -1;
+        for (char c : this.nfa.alphabet)
+            maxChar = Math.max(maxChar, c);
+        this.symbols = new int[maxChar + 1];
+        Arrays.fill(symbols, NONE);
+        for (int a = 0; a < k; a++)
+            symbols[this.nfa.alphabet[a]] = a;
+
+        this.steps = new long[(int) ((long) n * k * words)];
+        for (int s = 0; s < n * k; s++)
+            for (int t : this.nfa.steps[s])
+                steps[s * words + (t >>> 6)] |= 1L << t;
+        this.start = new long[words];
+        for (int t : this.nfa.start)
+            start[t >>> 6] |= 1L << t;
+        this.accepting = new long[words];
+        this.tokenOf = new int[n];
+        this.priorityOf = new int[n];
+        for (int t = 0; t < n; t++) {
+            if (this.nfa.accepting[t]) {
+                accepting[t >>> 6] |= 1L << t;
+                tokenOf[t] = this.nfa.tokenOf(new int[]{t}, 1);
+                priorityOf[t] = Integer.MIN_VALUE;
+                if (this.nfa.tokensOf[t] != null)
+                    for (int token : this.nfa.tokensOf[t])
+                        priorityOf[t] = Math.max(priorityOf[t], priorities == null ? 0 : priorities[token]);
+            }
+        }
+    }
+
+    /**
+     * @return the length of a set
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /**
+     * @return the number of NFA states
+     */
+    public int getStateCount() {
+        return nfa.size();
+    }
+
+    /**
+     * @return the size of the precomputed sets
+     */
+    public long getTableBytes() {
+        return (long) steps.length * Long.BYTES;
+    }
+
+    /**
+     * @return the symbol of a char, {@link #NONE} if it is not in the alphabet
+     */
+    public int symbolOf(char c) {
+        return c < symbols.length ? symbols[c] : NONE;
+    }
+
+    /**
+     * @param set a set of {@link #getWords()} words, set to the ε-closure of the start state
+     */
+    public void start(long[] set) {
+        System.arraycopy(start, 0, set, 0, words);
+    }
+
+    /**
+     * @param from the current set
+     * @param symbol a symbol
+     * @param to the next set, not from
+     * @return false if the next set is empty, i.e. the NFA is stuck
+     */
+    public boolean step(long[] from, int symbol, long[] to) {
+        Arrays.fill(to, 0, words, 0L);
+        long any = 0;
+        for (int w = 0; w < words; w++) {
+            long bits = from[w];
+            while (bits != 0) {
+                int row = (((w << 6) + Long.numberOfTrailingZeros(bits)) * k + symbol) * words;
+                for (int x = 0; x < words; x++)
+                    to[x] |= steps[row + x];
+                bits &= bits - 1;
+            }
+        }
+        for (int w = 0; w < words; w++)
+            any |= to[w];
+        return any != 0;
+    }
+
+    /**
+     * The token of a set as {@link DFATable#getToken}, from the tokens of its accepting states alone:
+     * the token with the highest priority wins, two different tokens with it give {@link RDFA#AMBIGUOUS_TOKEN}.
+     *
+     * @return the token of a set as {@link DFATable#getToken}
+     */
+    public int getToken(long[] set) {
+        int token = DFATable.NOT_ACCEPTING;
+        int priority = Integer.MIN_VALUE;
+        for (int w = 0; w < words; w++) {
+            for (long bits = set[w] & accepting[w]; bits != 0; bits &= bits - 1) {
+                int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (token == DFATable.NOT_ACCEPTING || priorityOf[s] > priority) {
+                    token = tokenOf[s];
+                    priority = priorityOf[s];
+                } else if (priorityOf[s] == priority && tokenOf[s] != token) {
+                    token = RDFA.AMBIGUOUS_TOKEN;
+                }
+            }
+        }
+        return token;
+    }
+}
@@ -0,0 +1,326 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A static estimate of the DFA size of a regular grammar, computed from its regex trees in linear time,
+ * without running the subset construction.
+ * <p>
+ * The subset construction blows up when the DFA has to remember where a closure may have ended.
+ * In X*·Y1·Y2···Yk, where the first Y reads a symbol of X and each following Y reads any single symbol of X,
+ * a string read so far may have left the closure at any of the last k+1 positions, and the DFA needs a state
+ * for each combination of them, i.e. 2^(k+1) states, as the classic (a|b)*a(a|b)(a|b)...(a|b).
+ * A suffix whose positions read fewer symbols, e.g. (a|b)*abb, is matched as a string, and needs no more states
+ * than it has positions. X+ and X{m,} loop as X* does, and Y{m} of a single symbol counts as m positions,
+ * so (a|b)*a(a|b){16} blows up as (a|b)*a(a|b)...(a|b) does.
+ * <p>
+ * The estimate of a rule is the states of its Thompson NFA plus the largest blow-up of a closure in it,
+ * the estimate of a grammar is the sum over its rules. It is an estimate, not a bound: the rules of a grammar
+ * may share or multiply their states.
+ */
+public class BlowUpAnalysis {
+
+    /**
+     * The greatest exponent of a blow-up, the estimates are saturated at 2^62
+     */
+    public static final int MAX_EXPONENT = 62;
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * The estimate of one regex of a grammar
+     */
+    public static final class Rule {
+        private final String name;
+        private final int nfaStates;
+        private final int exponent;
+        private final String pattern;
+
+        Rule(String name, int nfaStates, int exponent, String pattern) {
+            this.name = name;
+            this.nfaStates = nfaStates;
+            this.exponent = exponent;
+            this.pattern = pattern;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the states of the Thompson NFA of the rule
+         */
+        public int getNFAStates() {
+            return nfaStates;
+        }
+
+        /**
+         * @return k + 1 of the largest blow-up X*·Y1···Yk, 0 if there is none
+         */
+        public int getExponent() {
+            return exponent;
+        }
+
+        /**
+         * @return the closure and the positions of the largest blow-up, e.g. "(a|b)* then 17 positions", or null
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        public boolean isExponential() {
+            return exponent > 0;
+        }
+
+        public long getEstimatedDFAStates() {
+            return saturatedAdd(nfaStates, exponent == 0 ? 0 : 1L << exponent);
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + nfaStates + " NFA states, ~" + getEstimatedDFAStates() + " DFA states"
+                    + (pattern == null ? "" : " (" + pattern + ")");
+        }
+    }
+
+    /**
+     * Analyze the regexes of a regular grammar, each is parsed by {@link ArenaRegexParser}.
+     */
+    public static BlowUpAnalysis analyze(RegularGrammar rg) {
+        BlowUpAnalysis analysis = new BlowUpAnalysis();
+        ArenaRegexParser parser = new ArenaRegexParser();
+        for (Regex r : rg.getPatterns()) {
+            RegexArena arena = parser.parse(r.getRegex());
+            analysis.add(r.getName(), arena.toRegexTree(parser.getRoot()));
+        }
+        return analysis;
+    }
+
+    /**
+     * Add the estimate of a regex tree.
+     * @param name the name of the regex
+     * @param tree the regex tree, or null for the empty regex
+     */
+    public Rule add(String name, RegexTree tree) {
+        Walk walk = new Walk();
+        Info root = tree == null || tree.getRoot() == null ? null : walk.visit(tree.getRoot());
+        Rule rule = new Rule(name, root == null ? 2 : root.states, walk.exponent, walk.pattern);
+        rules.add(rule);
+        return rule;
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    public int getNFAStates() {
+        int states = 0;
+        for (Rule r : rules)
+            states += r.nfaStates;
+        return states + 1;
+    }
+
+    public long getEstimatedDFAStates() {
+        long states = 1;
+        for (Rule r : rules)
+            states = saturatedAdd(states, r.getEstimatedDFAStates());
+        return states;
+    }
+
+    /**
+     * @return the rules with a blow-up
+     */
+    public List<Rule> getExponentialRules() {
+        ArrayList<Rule> exponential = new ArrayList<>();
+        for (Rule r : rules)
+            if (r.isExponential())
+                exponential.add(r);
+        return exponential;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder("~" + getEstimatedDFAStates() + " DFA states, " + getNFAStates() + " NFA states");
+        for (Rule r : rules)
+            str.append("\n  ").append(r);
+        return str.toString();
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * The facts of a subtree
+     */
+    private static final class Info {
+        int states;
+        boolean nullable;
+        /**
+         * The subtree reads exactly one symbol
+         */
+        boolean single;
+        /**
+         * The subtree is Y{m,n} of a single symbol: it reads at least repeats symbols, exactly if exact
+         */
+        int repeats;
+        boolean exact;
+        /**
+         * The subtree is a loop: X*, X+ or X{m,}
+         */
+        boolean loop;
+        /**
+         * The symbols the subtree reads
+         */
+        final BitSet symbols = new BitSet();
+        /**
+         * The symbols the subtree reads first
+         */
+        final BitSet first = new BitSet();
+    }
+
+    private static final class Walk {
+        int exponent = 0;
+        String pattern = null;
+
+        Info visit(RegexTreeNode node) {
+            Info info = new Info();
+            switch (node.getType()) {
+                case RegexTreeNode.BASIC -> {
+                    info.states = 2;
+                    if (node.getValue() == 'ε') {
+                        info.nullable = true;
+                    } else {
+                        info.single = true;
+                        info.symbols.set(node.getValue());
+                        info.first.set(node.getValue());
+                    }
+                }
+                case RegexTreeNode.CONCATENATION -> {
+                    ArrayList<Info> children = new ArrayList<>();
+                    ArrayList<RegexTreeNode> nodes = new ArrayList<>();
+                    info.nullable = true;
+                    for (RegexTreeNode c = (RegexTreeNode) node.getFirstChild(); c != null; c = (RegexTreeNode) c.getNextSibling()) {
+                        Info child = visit(c);
+                        children.add(child);
+                        nodes.add(c);
+                        info.states += child.states;
+                        info.symbols.or(child.symbols);
+                        if (info.nullable)
+                            info.first.or(child.first);
+                        info.nullable &= child.nullable;
+                    }
+                    info.single = children.size() == 1 && children.get(0).single;
+                    for (int i = 0; i < children.size(); i++)
+                        if (children.get(i).loop)
+                            blowUp(nodes.get(i), children.get(i), children, i + 1);
+                }
+                case RegexTreeNode.UNION -> {
+                    info.states = 2;
+                    info.single = true;
+                    for (RegexTreeNode c = (RegexTreeNode) node.getFirstChild(); c != null; c = (RegexTreeNode) c.getNextSibling()) {
+                        Info child = visit(c);
+                        info.states += child.states;
+                        info.symbols.or(child.symbols);
+                        info.first.or(child.first);
+                        info.nullable |= child.nullable;
+                        info.single &= child.single;
+                    }
+                }
+                case RegexTreeNode.GROUP -> {
+                    return visit((RegexTreeNode) node.getFirstChild());
+                }
+                case RegexTreeNode.REPEAT -> {
+                    Info child = visit((RegexTreeNode) node.getFirstChild());
+                    int min = node.getMin();
+                    int max = node.getMax();
+                    int top = max == RegexTreeNode.UNBOUNDED ? Math.max(min, 1) : max;
+                    //a single symbol is repeated by a chain of states, anything else by copies
+                    info.states = child.single ? top + 2 : child.states * top + 2;
+                    info.nullable = min == 0 || child.nullable;
+                    info.loop = max == RegexTreeNode.UNBOUNDED;
+                    if (child.single && min > 0) {
+                        info.repeats = min;
+                        info.exact = min == max;
+                    }
+                    info.symbols.or(child.symbols);
+                    info.first.or(child.first);
+                }
+                default -> {
+                    Info child = visit((RegexTreeNode) node.getFirstChild());
+                    info.states = child.states + 2;
+                    info.nullable = node.getType() != RegexTreeNode.PLUS || child.nullable;
+                    info.loop = node.getType() != RegexTreeNode.OPTIONAL;
+                    info.symbols.or(child.symbols);
+                    info.first.or(child.first);
+                }
+            }
+            return info;
+        }
+
+        /**
+         * Count the positions after a closure which the DFA has to remember
+         */
+        private void blowUp(RegexTreeNode closure, Info loop, List<Info> children, int from) {
+            if (from >= children.size() || !children.get(from).first.intersects(loop.symbols))
+                return;
+            Info anchor = children.get(from);
+            int k = anchor.repeats > 0 ? anchor.repeats : 1;
+            for (int i = from + 1; i < children.size() && (anchor.repeats == 0 || anchor.exact); i++) {
+                Info y = children.get(i);
+                BitSet covered = (BitSet) loop.symbols.clone();
+                covered.andNot(y.symbols);
+                if (!covered.isEmpty() || !y.single && y.repeats == 0)
+                    break;
+                k = (int) Math.min((long) k + (y.single ? 1 : y.repeats), MAX_EXPONENT);
+                if (!y.single && !y.exact)
+                    break;
+            }
+            if (k == 1)
+                return;
+            k = Math.min(k, MAX_EXPONENT);
+            if (k > exponent) {
+                exponent = k;
+                pattern = describe(closure) + " then " + k + " overlapping positions";
+            }
+        }
+
+        private static String describe(RegexTreeNode node) {
+            StringBuilder str = new StringBuilder();
+            describe(node, str);
+            return str.length() > 32 ? str.substring(0, 29) + "..." : str.toString();
+        }
+
+        private static void describe(RegexTreeNode node, StringBuilder str) {
+            switch (node.getType()) {
+                case RegexTreeNode.BASIC -> str.append(node.getValue());
+                case RegexTreeNode.CONCATENATION, RegexTreeNode.UNION -> {
+                    str.append('(');
+                    for (RegexTreeNode c = (RegexTreeNode) node.getFirstChild(); c != null; c = (RegexTreeNode) c.getNextSibling()) {
+                        if (c != node.getFirstChild() && node.getType() == RegexTreeNode.UNION)
+                            str.append('|');
+                        describe(c, str);
+                    }
+                    str.append(')');
+                }
+                case RegexTreeNode.GROUP -> describe((RegexTreeNode) node.getFirstChild(), str);
+                case RegexTreeNode.PLUS, RegexTreeNode.OPTIONAL -> {
+                    describe((RegexTreeNode) node.getFirstChild(), str);
+                    str.append(node.getType() == RegexTreeNode.PLUS ? '+' : '?');
+                }
+                case RegexTreeNode.REPEAT -> {
+                    describe((RegexTreeNode) node.getFirstChild(), str);
+                    str.append('{').append(node.getMin()).append(',')
+                            .append(node.getMax() == RegexTreeNode.UNBOUNDED ? "" : node.getMax()).append('}');
+                }
+                default -> {
+                    describe((RegexTreeNode) node.getFirstChild(), str);
+                    str.append('*');
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.util.PackedIntArray;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A DFA transition table compressed by row displacement (comb-vector packing) with default states, as in flex.
+ * The rows of all states are overlaid in one pair of arrays:
+ * + base[s] - where the row of state s starts in next/check
+ * + next[base[s] + a] - the target of s on symbol a, valid only if check[base[s] + a] == s
+ * + defaults[s] - a state whose row is used where the row of s has no entry, {@link #NONE} if there is none
+ * <p>
+ * A state either keeps its full row (a template) or only the entries that differ from a similar template,
+ * where an entry may also be {@link #NONE} to cancel a transition of the template.
+ * A template never has a default state itself, so a lookup probes at most two slots and costs O(1).
+ * All arrays are {@link PackedIntArray}s, so they use bytes for up to 255 states, shorts for up to 65535 states
+ * and ints for more.
+ * <p>
+ * States are numbered as in {@link DFATable}, the start state is 0.
+ */
+public class CompressedDFA implements Serializable {
+    @Serial
+    private static final long serialVersionUID = -2731570446207129064L;
+
+    public static final int NONE = -1;
+
+    /**
+     * The number of most recent templates that are compared with a new row
+     */
+    private static final int TEMPLATE_CANDIDATES = 32;
+
+    private final char[] alphabet;
+    private final int stateCount;
+    private final PackedIntArray symbolOf;
+    private final PackedIntArray base;
+    private final PackedIntArray defaults;
+    private final PackedIntArray next;
+    private final PackedIntArray check;
+    private final PackedIntArray tokens;
+
+    public CompressedDFA(DFATable table) {
+        int n = table.getStateCount();
+        int k = table.getSymbolCount();
+        this.alphabet = table.getAlphabet().clone();
+        this.stateCount = n;
+
+        int[] symbols = new int[alphabet.length == 0 ? 0 : alphabet[alphabet.length - 1] + 1];
+        Arrays.fill(symbols, NONE);
+        for (int a = 0; a < k; a++)
+            symbols[alphabet[a]] = a;
+        this.symbolOf = PackedIntArray.of(symbols);
+
+        //the sparse rows: the symbols with a transition
+        int[][] rowSymbols = new int[n][];
+        for (int s = 0; s < n; s++) {
+            int count = 0;
+            for (int a = 0; a < k; a++) {
+                if (table.next(s, a) != DFATable.NONE)
+                    count++;
+            }
+            rowSymbols[s] = new int[count];
+            count = 0;
+            for (int a = 0; a < k; a++) {
+                if (table.next(s, a) != DFATable.NONE)
+                    rowSymbols[s][count++] = a;
+            }
+        }
+
+        //choose a default template for each state and the entries that must be stored
+        int[] defaultOf = new int[n];
+        int[][] entries = new int[n][];
+        ArrayList<Integer> templates = new ArrayList<>();
+        for (int s = 0; s < n; s++) {
+            int best = NONE;
+            int bestCost = rowSymbols[s].length;
+            for (int c = templates.size() - 1; c >= 0 && c >= templates.size() - TEMPLATE_CANDIDATES; c--) {
+                int d = templates.get(c);
+                int cost = difference(table, rowSymbols, s, d, null);
+                if (cost < bestCost) {
+                    best = d;
+                    bestCost = cost;
+                }
+            }
+            defaultOf[s] = best;
+            if (best == NONE) {
+                entries[s] = rowSymbols[s];
+                templates.add(s);
+            } else {
+                entries[s] = new int[bestCost];
+                difference(table, rowSymbols, s, best, entries[s]);
+            }
+        }
+
+        //place the rows with most entries first, each at the lowest base where its entries hit free slots
+        Integer[] order = new Integer[n];
+        for (int s = 0; s < n; s++)
+            order[s] = s;
+        Arrays.sort(order, (x, y) -> entries[y].length - entries[x].length);
+        int[] bases = new int[n];
+        int[] owner = new int[Math.max(16, n + k)];
+        Arrays.fill(owner, NONE);
+        int firstFree = 0;
+        int maxBase = 0;
+        for (int s : order) {
+            int[] e = entries[s];
+            if (e.length == 0)
+                continue;
+            int b = Math.max(0, firstFree - e[0]);
+            while (true) {
+                if (b + e[e.length - 1] >= owner.length) {
+                    int old = owner.length;
+                    owner = Arrays.copyOf(owner, Math.max(old << 1, b + k + 1));
+                    Arrays.fill(owner, old, owner.length, NONE);
+                }
+                boolean fits = true;
+                for (int a : e) {
+                    if (owner[b + a] != NONE) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits)
+                    break;
+                b++;
+            }
+            for (int a : e)
+                owner[b + a] = s;
+            bases[s] = b;
+            maxBase = Math.max(maxBase, b);
+            while (firstFree < owner.length && owner[firstFree] != NONE)
+                firstFree++;
+        }
+
+        int length = maxBase + k;
+        int[] nextSlots = new int[length];
+        int[] checkSlots = new int[length];
+        Arrays.fill(nextSlots, NONE);
+        Arrays.fill(checkSlots, NONE);
+        for (int s = 0; s < n; s++) {
+            for (int a : entries[s]) {
+                nextSlots[bases[s] + a] = table.next(s, a);
+                checkSlots[bases[s] + a] = s;
+            }
+        }
+        int[] stateTokens = new int[n];
+        for (int s = 0; s < n; s++)
+            stateTokens[s] = table.getToken(s);
+
+        this.base = PackedIntArray.of(bases);
+        this.defaults = PackedIntArray.of(defaultOf);
+        this.next = PackedIntArray.of(nextSlots);
+        this.check = PackedIntArray.of(checkSlots);
+        this.tokens = PackedIntArray.of(stateTokens);
+    }
+
+    /**
+     * Compress the table of a DFA, usually a minimized one.
+     */
+    public static CompressedDFA fromRDFA(RDFA dfa) {
+        return new CompressedDFA(DFATable.fromRDFA(dfa));
+    }
+
+    /**
+     * Count the symbols on which the rows of state s and template d differ.
+     *
+     * @param out if not null, receives the differing symbols in ascending order
+     */
+    private static int difference(DFATable table, int[][] rowSymbols, int s, int d, int[] out) {
+        int[] rs = rowSymbols[s];
+        int[] rd = rowSymbols[d];
+        int count = 0;
+        int i = 0, j = 0;
+        while (i < rs.length || j < rd.length) {
+            int a;
+            if (j == rd.length || (i < rs.length && rs[i] < rd[j]))
+                a = rs[i++];
+            else if (i == rs.length || rd[j] < rs[i])
+                a = rd[j++];
+            else {
+                a = rs[i++];
+                j++;
+                if (table.next(s, a) == table.next(d, a))
+                    continue;
+            }
+            if (out != null)
+                out[count] = a;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the index of c in the alphabet, {@link #NONE} if c is not a symbol
+     */
+    public int symbolOf(char c) {
+        return c < symbolOf.length() ? symbolOf.get(c) : NONE;
+    }
+
+    /**
+     * @param state  a state
+     * @param symbol the index of a symbol in the alphabet
+     * @return the next state, {@link #NONE} if there is no transition
+     */
+    public int next(int state, int symbol) {
+        int i = base.get(state) + symbol;
+        if (check.get(i) == state)
+            return next.get(i);
+        int d = defaults.get(state);
+        if (d == NONE)
+            return NONE;
+        i = base.get(d) + symbol;
+        return check.get(i) == d ? next.get(i) : NONE;
+    }
+
+    /**
+     * @return the next state on the char c, {@link #NONE} if c is not a symbol or there is no transition
+     */
+    public int nextOnChar(int state, char c) {
+        int symbol = symbolOf(c);
+        return symbol == NONE ? NONE : next(state, symbol);
+    }
+
+    public int getStartState() {
+        return 0;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public char[] getAlphabet() {
+        return alphabet.clone();
+    }
+
+    /**
+     * @return the token of the state, {@link DFATable#NOT_ACCEPTING} if the state is not accepting
+     */
+    public int getToken(int state) {
+        return tokens.get(state);
+    }
+
+    public boolean isAccepting(int state) {
+        return tokens.get(state) != DFATable.NOT_ACCEPTING;
+    }
+
+    /**
+     * @return the number of slots in next/check
+     */
+    public int slotCount() {
+        return next.length();
+    }
+
+    /**
+     * @return the bytes used by the arrays of the table
+     */
+    public long byteSize() {
+        return symbolOf.byteSize() + base.byteSize() + defaults.byteSize() + next.byteSize() + check.byteSize()
+                + tokens.byteSize() + 2L * alphabet.length;
+    }
+
+    /**
+     * @return the bytes of a dense int table for the same DFA, for comparison with {@link #byteSize()}
+     */
+    public long denseByteSize() {
+        return 4L * stateCount * alphabet.length;
+    }
+
+    /**
+     * Expand the compressed table.
+     *
+     * @return the dense table of the DFA
+     */
+    public DFATable toDFATable() {
+        int k = alphabet.length;
+        int[] transitions = new int[stateCount * k];
+        int[] stateTokens = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            for (int a = 0; a < k; a++)
+                transitions[s * k + a] = next(s, a);
+            stateTokens[s] = tokens.get(s);
+        }
+        return new DFATable(alphabet.clone(), stateCount, transitions, stateTokens);
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedDFA{states=" + stateCount + ", symbols=" + alphabet.length + ", slots=" + next.length()
+                + ", width=" + next.width() + ", bytes=" + byteSize() + ", dense bytes=" + denseByteSize() + "}";
+    }
+}
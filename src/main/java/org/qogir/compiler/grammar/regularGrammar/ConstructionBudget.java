@@ -0,0 +1,134 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.util.ConstructionBudgetExceededException;
+
+/**
+ * The limits of a DFA construction, so a pathological regex such as (a|b)*a(a|b)(a|b)...(a|b) aborts
+ * with a {@link ConstructionBudgetExceededException} instead of running the process out of memory:
+ * + maxStates / maxEdges - the states and transitions of the DFA being built
+ * + maxHeapBytes - the heap in use by the JVM, as {@link Runtime#totalMemory()} - {@link Runtime#freeMemory()}
+ * + timeoutMillis - the wall-clock time of each construction
+ * All limits are unlimited by default.
+ * <p>
+ * A construction starts a {@link Meter} and reports its counts to it as it goes. The counts are compared on each call,
+ * while the clock and the heap are read only once in {@link #SAMPLE} calls, so the checks cost next to nothing.
+ * With {@link #setFallbackToNFA}, a scanner whose DFA is over budget scans with the NFA instead, e.g. {@code ScanWithDFA}.
+ */
+public class ConstructionBudget {
+
+    /**
+     * The number of checks between two reads of the clock and the heap
+     */
+    public static final int SAMPLE = 64;
+
+    private int maxStates = Integer.MAX_VALUE;
+    private long maxEdges = Long.MAX_VALUE;
+    private long maxHeapBytes = Long.MAX_VALUE;
+    private long timeoutMillis = Long.MAX_VALUE;
+    private boolean fallbackToNFA = false;
+
+    public int getMaxStates() {
+        return maxStates;
+    }
+
+    public void setMaxStates(int maxStates) {
+        this.maxStates = maxStates;
+    }
+
+    public long getMaxEdges() {
+        return maxEdges;
+    }
+
+    public void setMaxEdges(long maxEdges) {
+        this.maxEdges = maxEdges;
+    }
+
+    public long getMaxHeapBytes() {
+        return maxHeapBytes;
+    }
+
+    public void setMaxHeapBytes(long maxHeapBytes) {
+        this.maxHeapBytes = maxHeapBytes;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public boolean isFallbackToNFA() {
+        return fallbackToNFA;
+    }
+
+    public void setFallbackToNFA(boolean fallbackToNFA) {
+        this.fallbackToNFA = fallbackToNFA;
+    }
+
+    /**
+     * @param timeoutMillis the wall-clock time of each construction
+     * @return a budget with the limits of this one and another timeout
+     */
+    public ConstructionBudget withTimeout(long timeoutMillis) {
+        ConstructionBudget budget = new ConstructionBudget();
+        budget.maxStates = maxStates;
+        budget.maxEdges = maxEdges;
+        budget.maxHeapBytes = maxHeapBytes;
+        budget.timeoutMillis = timeoutMillis;
+        budget.fallbackToNFA = fallbackToNFA;
+        return budget;
+    }
+
+    /**
+     * @param phase the name of the construction, e.g. "subset construction"
+     * @return a meter of one construction, its clock starts now
+     */
+    public Meter start(String phase) {
+        return new Meter(phase);
+    }
+
+    /**
+     * The checks of one construction. A meter can be called by several threads, the sampling is not exact then.
+     */
+    public final class Meter {
+        private final String phase;
+        private final long started = System.nanoTime();
+        private int calls = 0;
+
+        private Meter(String phase) {
+            this.phase = phase;
+        }
+
+        /**
+         * @param states the states built so far
+         * @param edges the transitions built so far
+         */
+        public void check(int states, long edges) {
+            if (states > maxStates)
+                throw new ConstructionBudgetExceededException(phase, ConstructionBudgetExceededException.STATES, states, maxStates);
+            if (edges > maxEdges)
+                throw new ConstructionBudgetExceededException(phase, ConstructionBudgetExceededException.EDGES, edges, maxEdges);
+            if ((++calls & (SAMPLE - 1)) == 0)
+                checkNow();
+        }
+
+        /**
+         * Read the clock and the heap
+         */
+        public void checkNow() {
+            if (timeoutMillis != Long.MAX_VALUE) {
+                long elapsed = (System.nanoTime() - started) / 1_000_000;
+                if (elapsed > timeoutMillis)
+                    throw new ConstructionBudgetExceededException(phase, ConstructionBudgetExceededException.TIME, elapsed, timeoutMillis);
+            }
+            if (maxHeapBytes != Long.MAX_VALUE) {
+                Runtime runtime = Runtime.getRuntime();
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                if (used > maxHeapBytes)
+                    throw new ConstructionBudgetExceededException(phase, ConstructionBudgetExceededException.HEAP, used, maxHeapBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * The operations of regular languages on compiled DFAs, so that grammars compiled once can be combined
+ * without merging their NFAs and running the subset construction again.
+ * An RDFA is converted by {@link DFATable#fromRDFA} and back by {@link DFATable#toRDFA()}.
+ * <p>
+ * A binary operation runs the DFAs side by side over the union of their alphabets: a state of the product is a pair
+ * of states, one of each DFA or {@link DFATable#NONE} where a DFA is stuck. Only the pairs reachable from the pair
+ * of start states are built, and a side which can no longer reach an accepting state is replaced by NONE,
+ * so the pairs which cannot make a difference to the result are not built at all. The product is minimized.
+ */
+public final class DFAAlgebra {
+
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+
+    private DFAAlgebra() {
+    }
+
+    /**
+     * The union of two grammars, with the tokens of the grammar of a followed by the tokens of the grammar of b:
+     * with the number of regexes of a as the offset, it is the DFA of the grammar with the regexes of a followed by
+     * the regexes of b. A string accepted by both gets {@link RDFA#AMBIGUOUS_TOKEN},
+     * as the regexes of a grammar with the same priority.
+     * The offset is not taken from the tokens of a, the last regexes of a grammar may never win a string.
+     *
+     * @param offset the shift of the tokens of b, the number of regexes of a
+     */
+    public static DFATable union(DFATable a, DFATable b, int offset) {
+        return product(a, b, UNION, offset);
+    }
+
+    /**
+     * @return the DFA of the strings accepted by both, with the tokens of a
+     */
+    public static DFATable intersection(DFATable a, DFATable b) {
+        return product(a, b, INTERSECTION, 0);
+    }
+
+    /**
+     * @return the DFA of the strings accepted by a and not by b, with the tokens of a
+     */
+    public static DFATable difference(DFATable a, DFATable b) {
+        return product(a, b, DIFFERENCE, 0);
+    }
+
+    /**
+     * @return the DFA of the strings over the alphabet of a which a does not accept, with the token 0
+     */
+    public static DFATable complement(DFATable a) {
+        return complement(a, a.getAlphabet());
+    }
+
+    /**
+     * @param alphabet the symbols of the strings, the symbols of a which are not in it are dropped
+     * @return the DFA of the strings over the alphabet which a does not accept, with the token 0
+     */
+    public static DFATable complement(DFATable a, char[] alphabet) {
+        TreeSet<Character> sorted = new TreeSet<>();
+        for (char c : alphabet)
+            sorted.add(c);
+        char[] symbols = new char[sorted.size()];
+        int i = 0;
+        for (char c : sorted)
+            symbols[i++] = c;
+        int n = a.getStateCount();
+        int k = symbols.length;
+        //the state n is the sink, where a is stuck
+        int[] transitions = new int[(n + 1) * k];
+        int[] tokens = new int[n + 1];
+        for (int s = 0; s <= n; s++) {
+            tokens[s] = s < n && a.isAccepting(s) ? DFATable.NOT_ACCEPTING : 0;
+            for (int x = 0; x < k; x++) {
+                int symbol = a.symbolOf(symbols[x]);
+                int t = s == n || symbol == DFATable.NONE ? DFATable.NONE : a.next(s, symbol);
+                transitions[s * k + x] = t == DFATable.NONE ? n : t;
+            }
+        }
+        return new DFATable(symbols, n + 1, transitions, tokens).minimize();
+    }
+
+    /**
+     * A state of the reverse DFA is the set of states of a which reach an accepting state on the string read so far
+     * backwards, the start state holds the accepting states of a.
+     *
+     * @return the DFA of the reversed strings of a, with the token 0
+     */
+    public static DFATable reverse(DFATable a) {
+        int n = a.getStateCount();
+        int k = a.getSymbolCount();
+        //the reverse edges, sources[offsets[x * k + c] .. offsets[x * k + c + 1]) have a transition to x on c
+        int[] offsets = new int[n * k + 1];
+        for (int y = 0; y < n; y++) {
+            for (int c = 0; c < k; c++) {
+                int x = a.next(y, c);
+                if (x != DFATable.NONE)
+                    offsets[x * k + c + 1]++;
+            }
+        }
+        for (int i = 0; i < n * k; i++)
+            offsets[i + 1] += offsets[i];
+        int[] sources = new int[offsets[n * k]];
+        int[] fill = new int[n * k];
+        System.arraycopy(offsets, 0, fill, 0, n * k);
+        for (int y = 0; y < n; y++) {
+            for (int c = 0; c < k; c++) {
+                int x = a.next(y, c);
+                if (x != DFATable.NONE)
+                    sources[fill[x * k + c]++] = y;
+            }
+        }
+
+        BitSet accepting = new BitSet();
+        for (int s = 0; s < n; s++)
+            if (a.isAccepting(s))
+                accepting.set(s);
+        HashMap<BitSet, Integer> index = new HashMap<>();
+        ArrayList<BitSet> sets = new ArrayList<>();
+        ArrayList<int[]> rows = new ArrayList<>();
+        index.put(accepting, 0);
+        sets.add(accepting);
+        for (int head = 0; head < sets.size(); head++) {
+            BitSet set = sets.get(head);
+            int[] row = new int[k];
+            for (int c = 0; c < k; c++) {
+                BitSet to = new BitSet();
+                for (int x = set.nextSetBit(0); x >= 0; x = set.nextSetBit(x + 1))
+                    for (int i = offsets[x * k + c]; i < offsets[x * k + c + 1]; i++)
+                        to.set(sources[i]);
+                if (to.isEmpty()) {
+                    row[c] = DFATable.NONE;
+                    continue;
+                }
+                Integer target = index.get(to);
+                if (target == null) {
+                    target = sets.size();
+                    index.put(to, target);
+                    sets.add(to);
+                }
+                row[c] = target;
+            }
+            rows.add(row);
+        }
+        int count = sets.size();
+        int[] transitions = new int[count * k];
+        int[] tokens = new int[count];
+        for (int s = 0; s < count; s++) {
+            System.arraycopy(rows.get(s), 0, transitions, s * k, k);
+            tokens[s] = sets.get(s).get(0) ? 0 : DFATable.NOT_ACCEPTING;
+        }
+        return new DFATable(a.getAlphabet().clone(), count, transitions, tokens).minimize();
+    }
+
+    private static DFATable product(DFATable a, DFATable b, int operation, int offset) {
+        TreeSet<Character> sorted = new TreeSet<>();
+        for (char c : a.getAlphabet())
+            sorted.add(c);
+        for (char c : b.getAlphabet())
+            sorted.add(c);
+        int k = sorted.size();
+        char[] alphabet = new char[k];
+        int[] symbolA = new int[k];
+        int[] symbolB = new int[k];
+        int i = 0;
+        for (char c : sorted) {
+            alphabet[i] = c;
+            symbolA[i] = a.symbolOf(c);
+            symbolB[i++] = b.symbolOf(c);
+        }
+        boolean[] liveA = live(a);
+        boolean[] liveB = live(b);
+
+        HashMap<Long, Integer> index = new HashMap<>();
+        ArrayList<int[]> pairs = new ArrayList<>();
+        ArrayList<int[]> rows = new ArrayList<>();
+        pairs.add(new int[]{liveA[0] ? 0 : DFATable.NONE, liveB[0] ? 0 : DFATable.NONE});
+        index.put(key(pairs.get(0)[0], pairs.get(0)[1]), 0);
+        for (int head = 0; head < pairs.size(); head++) {
+            int p = pairs.get(head)[0];
+            int q = pairs.get(head)[1];
+            int[] row = new int[k];
+            for (int x = 0; x < k; x++) {
+                int tp = p == DFATable.NONE || symbolA[x] == DFATable.NONE ? DFATable.NONE : a.next(p, symbolA[x]);
+                int tq = q == DFATable.NONE || symbolB[x] == DFATable.NONE ? DFATable.NONE : b.next(q, symbolB[x]);
+                if (tp != DFATable.NONE && !liveA[tp])
+                    tp = DFATable.NONE;
+                if (tq != DFATable.NONE && !liveB[tq])
+                    tq = DFATable.NONE;
+                boolean alive = switch (operation) {
+                    case UNION -> tp != DFATable.NONE || tq != DFATable.NONE;
+                    case INTERSECTION -> tp != DFATable.NONE && tq != DFATable.NONE;
+                    default -> tp != DFATable.NONE;
+                };
+                if (!alive) {
+                    row[x] = DFATable.NONE;
+                    continue;
+                }
+                Integer target = index.get(key(tp, tq));
+                if (target == null) {
+                    target = pairs.size();
+                    index.put(key(tp, tq), target);
+                    pairs.add(new int[]{tp, tq});
+                }
+                row[x] = target;
+            }
+            rows.add(row);
+        }
+
+        int count = pairs.size();
+        int[] transitions = new int[count * k];
+        int[] tokens = new int[count];
+        for (int s = 0; s < count; s++) {
+            System.arraycopy(rows.get(s), 0, transitions, s * k, k);
+            int p = pairs.get(s)[0];
+            int q = pairs.get(s)[1];
+            int tokenA = p == DFATable.NONE ? DFATable.NOT_ACCEPTING : a.getToken(p);
+            int tokenB = q == DFATable.NONE ? DFATable.NOT_ACCEPTING : b.getToken(q);
+            tokens[s] = switch (operation) {
+                case UNION -> unionToken(tokenA, tokenB, offset);
+                case INTERSECTION -> tokenB == DFATable.NOT_ACCEPTING ? DFATable.NOT_ACCEPTING : tokenA;
+                default -> tokenB == DFATable.NOT_ACCEPTING ? tokenA : DFATable.NOT_ACCEPTING;
+            };
+        }
+        return new DFATable(alphabet, count, transitions, tokens).minimize();
+    }
+
+    private static int unionToken(int tokenA, int tokenB, int offset) {
+        if (tokenB == DFATable.NOT_ACCEPTING)
+            return tokenA;
+        if (tokenA != DFATable.NOT_ACCEPTING || tokenB == RDFA.AMBIGUOUS_TOKEN)
+            return RDFA.AMBIGUOUS_TOKEN;
+        return tokenB + offset;
+    }
+
+    private static long key(int p, int q) {
+        return ((long) (p + 1) << 32) | (q + 1);
+    }
+
+    /**
+     * @return the states which reach an accepting state
+     */
+    private static boolean[] live(DFATable dfa) {
+        int n = dfa.getStateCount();
+        int k = dfa.getSymbolCount();
+        ArrayList<ArrayList<Integer>> sources = new ArrayList<>();
+        for (int s = 0; s < n; s++)
+            sources.add(new ArrayList<>());
+        for (int s = 0; s < n; s++)
+            for (int x = 0; x < k; x++)
+                if (dfa.next(s, x) != DFATable.NONE)
+                    sources.get(dfa.next(s, x)).add(s);
+        boolean[] live = new boolean[n];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int s = 0; s < n; s++) {
+            if (dfa.isAccepting(s)) {
+                live[s] = true;
+                queue.add(s);
+            }
+        }
+        while (!queue.isEmpty()) {
+            for (int y : sources.get(queue.poll())) {
+                if (!live[y]) {
+                    live[y] = true;
+                    queue.add(y);
+                }
+            }
+        }
+        return live;
+    }
+}
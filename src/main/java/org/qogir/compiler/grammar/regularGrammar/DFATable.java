@@ -0,0 +1,522 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.AutomatonWriter;
+import org.qogir.compiler.FA.State;
+import org.qogir.compiler.util.graph.LabelEdge;
+import org.qogir.compiler.util.graph.LabeledDirectedGraph;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * A dense transition table of a DFA.
+ * The states are numbered 0..n-1 in breadth-first order from the start state 0, and the symbols are numbered
+ * by their index in the sorted alphabet, so two equal DFAs have equal tables.
+ * + transitions[state * alphabet.length + symbol] - the next state, {@link #NONE} if there is no transition
+ * + tokens[state] - the token of an accepting state, {@link #NOT_ACCEPTING} for other states
+ * <p>
+ * The table is the intermediate form between an {@link RDFA} and the compact {@link CompressedDFA}.
+ * Unreachable states of the RDFA are dropped.
+ */
+public class DFATable {
+
+    public static final int NONE = -1;
+
+    /**
+     * The token of a state which is not accepting, the tokens of accepting states are the regex indexes
+     * or {@link RDFA#AMBIGUOUS_TOKEN}
+     */
+    public static final int NOT_ACCEPTING = -3;
+
+    private final char[] alphabet;
+    private final int[] symbolOf;
+    private final int stateCount;
+    private final int[] transitions;
+    private final int[] tokens;
+
+    public DFATable(char[] alphabet, int stateCount, int[] transitions, int[] tokens) {
+        if (transitions.length != stateCount * alphabet.length || tokens.length != stateCount)
+            throw new IllegalArgumentException("The table does not have " + stateCount + " states over " + alphabet.length + " symbols.");
+        this.alphabet = alphabet;
+        this.stateCount = stateCount;
+        this.transitions = transitions;
+        this.tokens = tokens;
+        int maxChar = -1;
+        for (char c : alphabet)
+            maxChar = Math.max(maxChar, c);
+        this.symbolOf = new int[maxChar + 1];
+        Arrays.fill(symbolOf, NONE);
+        for (int i = 0; i < alphabet.length; i++)
+            symbolOf[alphabet[i]] = i;
+    }
+
+    /**
+     * Build the table of a DFA. An accepting state without a token gets the token 0,
+     * e.g. the states of a DFA for a single regex.
+     *
+     * @param dfa a DFA
+     * @return the table of the states reachable from the start state
+     */
+    public static DFATable fromRDFA(RDFA dfa) {
+        LabeledDirectedGraph<State> tb = dfa.getTransitTable();
+        TreeSet<Character> letters = new TreeSet<>(dfa.getAlphabet());
+        for (LabelEdge e : tb.edgeSet())
+            letters.add(e.getLabel());
+        char[] alphabet = new char[letters.size()];
+        int i = 0;
+        for (Character ch : letters)
+            alphabet[i++] = ch;
+        int k = alphabet.length;
+
+        //the outgoing edges of each state, indexed by symbol
+        HashMap<State, State[]> rows = new HashMap<>();
+        for (LabelEdge e : tb.edgeSet()) {
+            State[] row = rows.computeIfAbsent(tb.getEdgeSource(e), s -> new State[k]);
+            row[Arrays.binarySearch(alphabet, e.getLabel())] = tb.getEdgeTarget(e);
+        }
+
+        HashMap<State, Integer> number = new HashMap<>();
+        ArrayList<State> states = new ArrayList<>();
+        ArrayDeque<State> queue = new ArrayDeque<>();
+        number.put(dfa.getStartState(), 0);
+        states.add(dfa.getStartState());
+        queue.add(dfa.getStartState());
+        while (!queue.isEmpty()) {
+            State[] row = rows.get(queue.poll());
+            if (row == null)
+                continue;
+            for (State t : row) {
+                if (t != null && !number.containsKey(t)) {
+                    number.put(t, states.size());
+                    states.add(t);
+                    queue.add(t);
+                }
+            }
+        }
+
+        int n = states.size();
+        int[] transitions = new int[n * k];
+        int[] tokens = new int[n];
+        for (int s = 0; s < n; s++) {
+            State state = states.get(s);
+            State[] row = rows.get(state);
+            for (int a = 0; a < k; a++)
+                transitions[s * k + a] = row == null || row[a] == null ? NONE : number.get(row[a]);
+            if (state.getType() == State.ACCEPT || state.getType() == State.ACCEPTANDSTART) {
+                int token = dfa.getAcceptingToken(state);
+                tokens[s] = token == RDFA.NO_TOKEN ? 0 : token;
+            } else {
+                tokens[s] = NOT_ACCEPTING;
+            }
+        }
+        return new DFATable(alphabet, n, transitions, tokens);
+    }
+
+    /**
+     * Write the table one transition at a time, e.g. {@link AutomatonWriter#json}, as the DFA of {@link #toRDFA()}
+     * without building it: state i has the id i, and the types of {@link #toRDFA()}.
+     *
+     * @param writer the writer of a format
+     */
+    public void write(AutomatonWriter writer) throws IOException {
+        int k = alphabet.length;
+        writer.begin(0, typeOf(0));
+        for (int s = 0; s < stateCount; s++)
+            writer.state(s, typeOf(s));
+        for (int s = 0; s < stateCount; s++) {
+            for (int a = 0; a < k; a++) {
+                int t = transitions[s * k + a];
+                if (t != NONE)
+                    writer.edge(s, typeOf(s), t, typeOf(t), alphabet[a]);
+            }
+        }
+        writer.end();
+    }
+
+    private int typeOf(int s) {
+        if (isAccepting(s))
+            return s == 0 ? State.ACCEPTANDSTART : State.ACCEPT;
+        return s == 0 ? State.START : State.MIDDLE;
+    }
+
+    /**
+     * Convert the table back into a DFA, state i of the table becomes the state with sid "i".
+     *
+     * @return a DFA with the same transitions and tokens
+     */
+    public RDFA toRDFA() {
+        State[] states = new State[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            states[s] = new State();
+            states[s].setSid(String.valueOf(s));
+            int type = s == 0 ? State.START : State.MIDDLE;
+            if (tokens[s] != NOT_ACCEPTING)
+                type = s == 0 ? State.ACCEPTANDSTART : State.ACCEPT;
+            states[s].setType(type);
+        }
+        RDFA dfa = new RDFA(states[0]);
+        ArrayList<Character> letters = new ArrayList<>();
+        for (char c : alphabet)
+            letters.add(c);
+        dfa.setAlphabet(letters);
+        for (int s = 0; s < stateCount; s++) {
+            dfa.getTransitTable().addVertex(states[s]);
+            if (tokens[s] != NOT_ACCEPTING)
+                dfa.setAcceptingToken(states[s], tokens[s]);
+        }
+        for (int s = 0; s < stateCount; s++) {
+            for (int a = 0; a < alphabet.length; a++) {
+                int t = transitions[s * alphabet.length + a];
+                if (t != NONE)
+                    dfa.getTransitTable().addEdge(states[s], states[t], alphabet[a]);
+            }
+        }
+        return dfa;
+    }
+
+    /**
+     * Merge equivalent states by Moore's partition refinement.
+     * The initial partition groups the states by token, so states accepting different regexes are never merged.
+     *
+     * @return the minimal table, numbered in breadth-first order from the start state 0
+     */
+    public DFATable minimize() {
+        return minimize(null);
+    }
+
+    /**
+     * Minimize within the time and heap of a budget, checked once per state of each round.
+     *
+     * @param budget the limits of the minimization, null for no limit
+     * @return the minimal table as {@link #minimize()}
+     */
+    public DFATable minimize(ConstructionBudget budget) {
+        ConstructionBudget.Meter meter = budget == null ? null : budget.start("minimization");
+        int k = alphabet.length;
+        int[] block = new int[stateCount];
+        HashMap<Integer, Integer> tokenBlocks = new HashMap<>();
+        for (int s = 0; s < stateCount; s++)
+            block[s] = tokenBlocks.computeIfAbsent(tokens[s], t -> tokenBlocks.size());
+        int blockCount = tokenBlocks.size();
+        while (true) {
+            HashMap<Signature, Integer> blocks = new HashMap<>();
+            int[] refined = new int[stateCount];
+            for (int s = 0; s < stateCount; s++) {
+                int[] signature = new int[k + 1];
+                signature[0] = block[s];
+                for (int a = 0; a < k; a++) {
+                    int t = transitions[s * k + a];
+                    signature[a + 1] = t == NONE ? NONE : block[t];
+                }
+                refined[s] = blocks.computeIfAbsent(new Signature(signature), g -> blocks.size());
+                if (meter != null)
+                    meter.check(0, 0);
+            }
+            block = refined;
+            if (blocks.size() == blockCount)
+                break;
+            blockCount = blocks.size();
+        }
+        return quotient(block, blockCount);
+    }
+
+    /**
+     * Merge the states of each block of a partition into one state.
+     * The states of a block must be equivalent, i.e. have the same token and their targets in the same blocks.
+     *
+     * @param block the block of each state
+     * @param blockCount the number of blocks
+     * @return the table of the blocks, numbered in breadth-first order from the block of the start state 0
+     */
+    DFATable quotient(int[] block, int blockCount) {
+        int k = alphabet.length;
+        //number the blocks in breadth-first order from the block of the start state
+        int[] number = new int[blockCount];
+        Arrays.fill(number, NONE);
+        int[] representative = new int[blockCount];
+        for (int s = stateCount - 1; s >= 0; s--)
+            representative[block[s]] = s;
+        int[] order = new int[blockCount];
+        int count = 0;
+        number[block[0]] = count;
+        order[count++] = block[0];
+        for (int head = 0; head < count; head++) {
+            int r = representative[order[head]];
+            for (int a = 0; a < k; a++) {
+                int t = transitions[r * k + a];
+                if (t != NONE && number[block[t]] == NONE) {
+                    number[block[t]] = count;
+                    order[count++] = block[t];
+                }
+            }
+        }
+        int[] minTransitions = new int[count * k];
+        int[] minTokens = new int[count];
+        for (int m = 0; m < count; m++) {
+            int r = representative[order[m]];
+            for (int a = 0; a < k; a++) {
+                int t = transitions[r * k + a];
+                minTransitions[m * k + a] = t == NONE ? NONE : number[block[t]];
+            }
+            minTokens[m] = tokens[r];
+        }
+        return new DFATable(alphabet.clone(), count, minTransitions, minTokens);
+    }
+
+    /**
+     * Build the unanchored DFA, which finds the ends of the matches of this DFA starting anywhere in a text.
+     * A state of the unanchored DFA is the set of the states of the matches in progress, state 0 is the empty set.
+     * On each char a new match starts from the start state, so a char that is not a symbol leads to state 0.
+     * A state is accepting (token 0) if a non-empty match ends there.
+     *
+     * @return the unanchored DFA over the same alphabet
+     */
+    public DFATable unanchored() {
+        int k = alphabet.length;
+        HashMap<BitSet, Integer> index = new HashMap<>();
+        ArrayList<BitSet> sets = new ArrayList<>();
+        ArrayList<int[]> rows = new ArrayList<>();
+        index.put(new BitSet(), 0);
+        sets.add(new BitSet());
+        for (int head = 0; head < sets.size(); head++) {
+            BitSet from = (BitSet) sets.get(head).clone();
+            from.set(0);
+            int[] row = new int[k];
+            for (int a = 0; a < k; a++) {
+                BitSet to = new BitSet();
+                for (int x = from.nextSetBit(0); x >= 0; x = from.nextSetBit(x + 1)) {
+                    int y = transitions[x * k + a];
+                    if (y != NONE)
+                        to.set(y);
+                }
+                Integer target = index.get(to);
+                if (target == null) {
+                    target = sets.size();
+                    index.put(to, target);
+                    sets.add(to);
+                }
+                row[a] = target;
+            }
+            rows.add(row);
+        }
+        int n = sets.size();
+        int[] unanchoredTransitions = new int[n * k];
+        int[] unanchoredTokens = new int[n];
+        for (int s = 0; s < n; s++) {
+            System.arraycopy(rows.get(s), 0, unanchoredTransitions, s * k, k);
+            unanchoredTokens[s] = NOT_ACCEPTING;
+            BitSet set = sets.get(s);
+            for (int x = set.nextSetBit(0); x >= 0; x = set.nextSetBit(x + 1)) {
+                if (isAccepting(x)) {
+                    unanchoredTokens[s] = 0;
+                    break;
+                }
+            }
+        }
+        return new DFATable(alphabet.clone(), n, unanchoredTransitions, unanchoredTokens);
+    }
+
+    /**
+     * Build the reverse DFA of the prefixes of the matches of this DFA.
+     * Run from the end of a string backwards, the reverse DFA is in an accepting state (token 0) at position s iff
+     * the text between s and the end is a prefix of a match, i.e. the run of this DFA from s never gets stuck.
+     * A state of the reverse DFA is a set of states of this DFA which can reach an accepting state,
+     * state 0 holds all of them.
+     *
+     * @return the reverse DFA over the same alphabet, {@link #NONE} where no prefix remains
+     */
+    public DFATable reversePrefixes() {
+        int k = alphabet.length;
+        //the reverse edges, sources[offsets[x * k + a] .. offsets[x * k + a + 1]) have a transition to x on a
+        int[] offsets = new int[stateCount * k + 1];
+        for (int y = 0; y < stateCount; y++) {
+            for (int a = 0; a < k; a++) {
+                int x = transitions[y * k + a];
+                if (x != NONE)
+                    offsets[x * k + a + 1]++;
+            }
+        }
+        for (int i = 0; i < stateCount * k; i++)
+            offsets[i + 1] += offsets[i];
+        int[] sources = new int[offsets[stateCount * k]];
+        int[] fill = Arrays.copyOf(offsets, offsets.length - 1);
+        for (int y = 0; y < stateCount; y++) {
+            for (int a = 0; a < k; a++) {
+                int x = transitions[y * k + a];
+                if (x != NONE)
+                    sources[fill[x * k + a]++] = y;
+            }
+        }
+
+        //the live states reach an accepting state
+        BitSet live = new BitSet();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int s = 0; s < stateCount; s++) {
+            if (isAccepting(s)) {
+                live.set(s);
+                queue.add(s);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int x = queue.poll();
+            for (int i = offsets[x * k]; i < offsets[x * k + k]; i++) {
+                if (!live.get(sources[i])) {
+                    live.set(sources[i]);
+                    queue.add(sources[i]);
+                }
+            }
+        }
+
+        HashMap<BitSet, Integer> index = new HashMap<>();
+        ArrayList<BitSet> sets = new ArrayList<>();
+        ArrayList<int[]> rows = new ArrayList<>();
+        index.put(live, 0);
+        sets.add(live);
+        for (int head = 0; head < sets.size(); head++) {
+            BitSet set = sets.get(head);
+            int[] row = new int[k];
+            for (int a = 0; a < k; a++) {
+                BitSet to = new BitSet();
+                for (int x = set.nextSetBit(0); x >= 0; x = set.nextSetBit(x + 1)) {
+                    for (int i = offsets[x * k + a]; i < offsets[x * k + a + 1]; i++)
+                        to.set(sources[i]);
+                }
+                if (to.isEmpty()) {
+                    row[a] = NONE;
+                    continue;
+                }
+                Integer target = index.get(to);
+                if (target == null) {
+                    target = sets.size();
+                    index.put(to, target);
+                    sets.add(to);
+                }
+                row[a] = target;
+            }
+            rows.add(row);
+        }
+        int n = sets.size();
+        int[] reverseTransitions = new int[n * k];
+        int[] reverseTokens = new int[n];
+        for (int s = 0; s < n; s++) {
+            System.arraycopy(rows.get(s), 0, reverseTransitions, s * k, k);
+            reverseTokens[s] = sets.get(s).get(0) ? 0 : NOT_ACCEPTING;
+        }
+        return new DFATable(alphabet.clone(), n, reverseTransitions, reverseTokens);
+    }
+
+    /**
+     * The block of a state and the blocks of its targets
+     */
+    private static final class Signature {
+        private final int[] blocks;
+        private final int hash;
+
+        Signature(int[] blocks) {
+            this.blocks = blocks;
+            this.hash = Arrays.hashCode(blocks);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Signature && Arrays.equals(blocks, ((Signature) o).blocks);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Two tables are equal if they have the same alphabet, transitions and tokens. The states are numbered
+     * in breadth-first order, so the minimal tables of two DFAs accepting the same tokens are equal.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof DFATable t))
+            return false;
+        return stateCount == t.stateCount && Arrays.equals(alphabet, t.alphabet)
+                && Arrays.equals(tokens, t.tokens) && Arrays.equals(transitions, t.transitions);
+    }
+
+    @Override
+    public int hashCode() {
+        return (Arrays.hashCode(alphabet) * 31 + Arrays.hashCode(tokens)) * 31 + Arrays.hashCode(transitions);
+    }
+
+    public char[] getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * @return the index of c in the alphabet, {@link #NONE} if c is not a symbol
+     */
+    public int symbolOf(char c) {
+        return c < symbolOf.length ? symbolOf[c] : NONE;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getSymbolCount() {
+        return alphabet.length;
+    }
+
+    public int next(int state, int symbol) {
+        return transitions[state * alphabet.length + symbol];
+    }
+
+    /**
+     * @return the token of the state, {@link #NOT_ACCEPTING} if the state is not accepting
+     */
+    public int getToken(int state) {
+        return tokens[state];
+    }
+
+    public boolean isAccepting(int state) {
+        return tokens[state] != NOT_ACCEPTING;
+    }
+
+    /**
+     * The chars on which a state loops on itself, as ranges of consecutive chars.
+     * A state with few ranges is accelerable: a scanner can skip a run of its chars without taking the transitions.
+     *
+     * @return {lo0, hi0, lo1, hi1, ...}, empty if the state has no self-loop
+     */
+    public int[] selfLoopRanges(int state) {
+        int[] ranges = new int[2 * alphabet.length];
+        int count = 0;
+        for (int a = 0; a < alphabet.length; a++) {
+            if (transitions[state * alphabet.length + a] != state)
+                continue;
+            if (count > 0 && ranges[count - 1] == alphabet[a] - 1) {
+                ranges[count - 1] = alphabet[a];
+            } else {
+                ranges[count++] = alphabet[a];
+                ranges[count++] = alphabet[a];
+            }
+        }
+        return Arrays.copyOf(ranges, count);
+    }
+
+    /**
+     * @return the number of transitions, i.e. the entries of the table which are not {@link #NONE}
+     */
+    public int transitionCount() {
+        int count = 0;
+        for (int t : transitions) {
+            if (t != NONE)
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,27 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.FiniteAutomaton;
+import org.qogir.compiler.FA.State;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A subset construction which builds the {@link DFATable} of an NFA directly, without an {@link RDFA}.
+ * The table has the start state 0, the states in breadth-first order and the sorted alphabet, as {@link DFATable#fromRDFA}.
+ */
+public interface DFATableConstruction {
+
+    /**
+     * Construct the DFA of an NFA and tag its accepting states as {@link RDFA#setAcceptingToken}.
+     * The token with the highest priority wins, and two tokens with the same priority give {@link RDFA#AMBIGUOUS_TOKEN}.
+     * An accepting state without tokens gets the token 0.
+     *
+     * @param nfa a TNFA or an ε-free NFA
+     * @param acceptedTokens the tokens each accepting NFA state accepts, e.g. the indexes of regexes in a regular grammar,
+     *                       or null
+     * @param priorities the priority of each token, or null if all are 0
+     * @return the table of the DFA
+     */
+    DFATable construct(FiniteAutomaton nfa, Map<State, int[]> acceptedTokens, int[] priorities) throws IOException;
+}
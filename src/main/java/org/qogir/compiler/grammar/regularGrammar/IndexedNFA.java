@@ -0,0 +1,204 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.FiniteAutomaton;
+import org.qogir.compiler.FA.State;
+import org.qogir.compiler.util.graph.LabelEdge;
+import org.qogir.compiler.util.graph.LabeledDirectedGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An NFA with its states numbered 0..n-1, prepared for the subset constructions over int arrays,
+ * {@link OffHeapSubsetConstruction} and {@link ParallelSubsetConstruction}.
+ * A DFA state is a sorted set of NFA state indexes, and its successor on a symbol is the union of
+ * the precomputed ε-closure(move(s, a)) of its NFA states.
+ */
+final class IndexedNFA {
+
+    final State[] states;
+
+    /**
+     * The sorted alphabet without ε
+     */
+    final char[] alphabet;
+
+    /**
+     * The sorted ε-closure of the start state
+     */
+    final int[] start;
+
+    /**
+     * steps[s * alphabet.length + a] - the sorted ε-closure(move(s, a))
+     */
+    final int[][] steps;
+
+    final boolean[] accepting;
+
+    /**
+     * The tokens each accepting NFA state accepts, null for a state without tokens
+     */
+    final int[][] tokensOf;
+
+    final int[] priorities;
+
+    /**
+     * @param nfa a TNFA or an ε-free NFA
+     * @param acceptedTokens the tokens of the accepting NFA states, or null
+     * @param priorities the priority of each token, or null if all are 0
+     */
+    IndexedNFA(FiniteAutomaton nfa, Map<State, int[]> acceptedTokens, int[] priorities) {
+        LabeledDirectedGraph<State> tb = nfa.getTransitTable();
+        ArrayList<State> list = new ArrayList<>(tb.vertexSet());
+        HashMap<State, Integer> indexOf = new HashMap<>();
+        for (int i = 0; i < list.size(); i++)
+            indexOf.put(list.get(i), i);
+        int n = list.size();
+        this.states = list.toArray(new State[0]);
+
+        TreeSet<Character> symbols = new TreeSet<>(nfa.getAlphabet());
+        symbols.remove('ε');
+        this.alphabet = new char[symbols.size()];
+        int i = 0;
+        for (char c : symbols)
+            alphabet[i++] = c;
+        int k = alphabet.length;
+        HashMap<Character, Integer> symbolOf = new HashMap<>();
+        for (int a = 0; a < k; a++)
+            symbolOf.put(alphabet[a], a);
+
+        ArrayList<ArrayList<Integer>> epsilon = new ArrayList<>();
+        ArrayList<ArrayList<Integer>> moves = new ArrayList<>();
+        for (int s = 0; s < n; s++)
+            epsilon.add(new ArrayList<>());
+        for (int s = 0; s < n * k; s++)
+            moves.add(new ArrayList<>());
+        for (LabelEdge edge : tb.edgeSet()) {
+            int from = indexOf.get(tb.getEdgeSource(edge));
+            int to = indexOf.get(tb.getEdgeTarget(edge));
+            if (edge.getLabel() == 'ε')
+                epsilon.get(from).add(to);
+            else if (symbolOf.containsKey(edge.getLabel()))
+                moves.get(from * k + symbolOf.get(edge.getLabel())).add(to);
+        }
+
+        int[] mark = new int[n];
+        int stamp = 0;
+        int[] buffer = new int[n];
+        int[][] closures = new int[n][];
+        for (int s = 0; s < n; s++)
+            closures[s] = closure(new int[]{s}, epsilon, mark, ++stamp, buffer);
+        this.steps = new int[n * k][];
+        for (int s = 0; s < n * k; s++) {
+            int size = 0;
+            stamp++;
+            for (int t : moves.get(s))
+                for (int c : closures[t])
+                    if (mark[c] != stamp) {
+                        mark[c] = stamp;
+                        buffer[size++] = c;
+                    }
+            steps[s] = Arrays.copyOf(buffer, size);
+            Arrays.sort(steps[s]);
+        }
+        this.start = closures[indexOf.get(nfa.getStartState())];
+
+        this.accepting = new boolean[n];
+        this.tokensOf = new int[n][];
+        for (int s = 0; s < n; s++) {
+            accepting[s] = states[s].getType() == State.ACCEPT || states[s].getType() == State.ACCEPTANDSTART;
+            tokensOf[s] = acceptedTokens == null ? null : acceptedTokens.get(states[s]);
+        }
+        this.priorities = priorities;
+    }
+
+    int size() {
+        return states.length;
+    }
+
+    /**
+     * Compute the successor of a DFA state.
+     *
+     * @param set the NFA states set[0, size)
+     * @param a a symbol
+     * @param mark a mark per NFA state, the marked states equal stamp
+     * @param out the successor, unsorted
+     * @return the size of the successor
+     */
+    int step(int[] set, int size, int a, int[] mark, int stamp, int[] out) {
+        int k = alphabet.length;
+        int u = 0;
+        for (int j = 0; j < size; j++)
+            for (int c : steps[set[j] * k + a])
+                if (mark[c] != stamp) {
+                    mark[c] = stamp;
+                    out[u++] = c;
+                }
+        return u;
+    }
+
+    /**
+     * The token of a DFA state. The token with the highest priority wins, and two tokens with
+     * the same priority give {@link RDFA#AMBIGUOUS_TOKEN}. An accepting state without tokens gets the token 0.
+     *
+     * @return the token, {@link DFATable#NOT_ACCEPTING} if no NFA state of set[0, size) is accepting
+     */
+    int tokenOf(int[] set, int size) {
+        boolean isAccepting = false;
+        int token = RDFA.NO_TOKEN;
+        int priority = Integer.MIN_VALUE;
+        boolean ambiguous = false;
+        for (int j = 0; j < size; j++) {
+            int s = set[j];
+            if (!accepting[s])
+                continue;
+            isAccepting = true;
+            if (tokensOf[s] == null)
+                continue;
+            for (int t : tokensOf[s]) {
+                if (t == token)
+                    continue;
+                int p = priorities == null ? 0 : priorities[t];
+                if (p > priority) {
+                    priority = p;
+                    token = t;
+                    ambiguous = false;
+                } else if (p == priority) {
+                    ambiguous = true;
+                }
+            }
+        }
+        if (!isAccepting)
+            return DFATable.NOT_ACCEPTING;
+        if (ambiguous)
+            return RDFA.AMBIGUOUS_TOKEN;
+        return token == RDFA.NO_TOKEN ? 0 : token;
+    }
+
+    /**
+     * @return the sorted ε-closure of a set of NFA states
+     */
+    private static int[] closure(int[] set, ArrayList<ArrayList<Integer>> epsilon, int[] mark, int stamp, int[] buffer) {
+        int count = 0;
+        for (int s : set) {
+            if (mark[s] != stamp) {
+                mark[s] = stamp;
+                buffer[count++] = s;
+            }
+        }
+        for (int j = 0; j < count; j++) {
+            for (int t : epsilon.get(buffer[j])) {
+                if (mark[t] != stamp) {
+                    mark[t] = stamp;
+                    buffer[count++] = t;
+                }
+            }
+        }
+        int[] closure = Arrays.copyOf(buffer, count);
+        Arrays.sort(closure);
+        return closure;
+    }
+}
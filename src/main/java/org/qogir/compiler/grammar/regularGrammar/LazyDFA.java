@@ -0,0 +1,227 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.FiniteAutomaton;
+import org.qogir.compiler.FA.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DFA built while it is run: a state and its transitions are constructed by the subset construction
+ * the first time the input reaches them, and cached for the next time.
+ * An input of n chars builds at most n states, so a grammar whose full DFA is exponential, e.g. (a|b)*a(a|b)(a|b)...,
+ * is scanned with the states the input actually visits.
+ * <p>
+ * The cache holds at most maxCachedStates states. When it is full, it is flushed: all states but the start state
+ * are dropped, and the run goes on from the state being built. A state number is valid until the next flush,
+ * i.e. only the state returned by the last call to {@link #next} can be passed to the next call.
+ * <p>
+ * A lazy DFA is not thread-safe, each thread scans with its own.
+ */
+public final class LazyDFA {
+
+    public static final int NONE = -1;
+
+    /**
+     * A transition which is not built yet
+     */
+    private static final int UNKNOWN = -2;
+
+    private final IndexedNFA nfa;
+
+    private final int maxCachedStates;
+
+    private final int k;
+
+    private final int[] symbols;
+
+    private final HashMap<Key, Integer> index = new HashMap<>();
+
+    private final ArrayList<int[]> sets = new ArrayList<>();
+
+    /**
+     * transitions[state * k + a], {@link #UNKNOWN} until it is built
+     */
+    private int[] transitions;
+
+    private int[] tokens;
+
+    private final int[] mark;
+
+    private int stamp = 0;
+
+    private final int[] buffer;
+
+    private long flushes = 0;
+
+    private long built = 0;
+
+    private long misses = 0;
+
+    /**
+     * @param nfa a TNFA or an ε-free NFA
+     * @param acceptedTokens the tokens each accepting NFA state accepts as {@link DFATableConstruction#construct}, or null
+     * @param priorities the priority of each token, or null if all are 0
+     * @param maxCachedStates the most states held at once, at least 2
+     */
+    public LazyDFA(FiniteAutomaton nfa, Map<State, int[]> acceptedTokens, int[] priorities, int maxCachedStates) {
+        this.nfa = new IndexedNFA(nfa, acceptedTokens, priorities);
+        this.maxCachedStates = Math.max(maxCachedStates, 2);
+        this.k = this.nfa.alphabet.length;
+        int maxChar = -1;
+        for (char c : this.nfa.alphabet)
+            maxChar = Math.max(maxChar, c);
+        this.symbols = new int[maxChar + 1];
+        Arrays.fill(symbols, NONE);
+        for (int a = 0; a < k; a++)
+            symbols[this.nfa.alphabet[a]] = a;
+        this.mark = new int[this.nfa.size()];
+        this.buffer = new int[this.nfa.size()];
+        int capacity = Math.min(this.maxCachedStates, 64);
+        this.transitions = new int[capacity * k];
+        this.tokens = new int[capacity];
+        intern(this.nfa.start);
+    }
+
+    public int getStartState() {
+        return 0;
+    }
+
+    /**
+     * @return the symbol of a char, {@link #NONE} if it is not in the alphabet
+     */
+    public int symbolOf(char c) {
+        return c < symbols.length ? symbols[c] : NONE;
+    }
+
+    /**
+     * @param state the start state or the state returned by the last call
+     * @param symbol a symbol
+     * @return the next state, {@link #NONE} if the DFA is stuck
+     */
+    public int next(int state, int symbol) {
+        int t = transitions[state * k + symbol];
+        if (t != UNKNOWN)
+            return t;
+        misses++;
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(mark, 0);
+            stamp = 1;
+        }
+        int[] set = sets.get(state);
+        int size = nfa.step(set, set.length, symbol, mark, stamp, buffer);
+        if (size == 0) {
+            transitions[state * k + symbol] = NONE;
+            return NONE;
+        }
+        int[] target = Arrays.copyOf(buffer, size);
+        Arrays.sort(target);
+        Integer known = index.get(new Key(target));
+        if (known != null) {
+            transitions[state * k + symbol] = known;
+            return known;
+        }
+        if (sets.size() == maxCachedStates) {
+            flush();
+            return intern(target);
+        }
+        t = intern(target);
+        transitions[state * k + symbol] = t;
+        return t;
+    }
+
+    /**
+     * @return the token of a state as {@link DFATable#getToken}
+     */
+    public int getToken(int state) {
+        return tokens[state];
+    }
+
+    public boolean isAccepting(int state) {
+        return tokens[state] != DFATable.NOT_ACCEPTING;
+    }
+
+    /**
+     * @return the number of states in the cache
+     */
+    public int getCachedStateCount() {
+        return sets.size();
+    }
+
+    /**
+     * @return the number of states built since the DFA was created, a state built again after a flush is counted again
+     */
+    public long getBuiltStateCount() {
+        return built;
+    }
+
+    /**
+     * @return the number of calls to {@link #next} which found the transition not built and built it
+     */
+    public long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return the number of times the cache was full
+     */
+    public long getFlushCount() {
+        return flushes;
+    }
+
+    /**
+     * @return the number of NFA states
+     */
+    public int getNFAStateCount() {
+        return nfa.size();
+    }
+
+    private int intern(int[] set) {
+        int s = sets.size();
+        if (s == tokens.length) {
+            int capacity = Math.min(s << 1, maxCachedStates);
+            tokens = Arrays.copyOf(tokens, capacity);
+            transitions = Arrays.copyOf(transitions, capacity * k);
+        }
+        sets.add(set);
+        index.put(new Key(set), s);
+        Arrays.fill(transitions, s * k, (s + 1) * k, UNKNOWN);
+        tokens[s] = nfa.tokenOf(set, set.length);
+        built++;
+        return s;
+    }
+
+    /**
+     * Drop all states but the start state
+     */
+    private void flush() {
+        flushes++;
+        int[] start = sets.get(0);
+        sets.clear();
+        index.clear();
+        intern(start);
+        built--;
+    }
+
+    private static final class Key {
+        final int[] set;
+        final int hash;
+
+        Key(int[] set) {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && hash == other.hash && Arrays.equals(set, other.set);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
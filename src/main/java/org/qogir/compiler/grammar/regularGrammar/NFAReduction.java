@@ -0,0 +1,417 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.FiniteAutomaton;
+import org.qogir.compiler.FA.State;
+import org.qogir.compiler.util.graph.LabelEdge;
+import org.qogir.compiler.util.graph.LabeledDirectedGraph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Reduce an NFA before the subset construction or the NFA simulation:
+ * 1) remove ε-transitions: state q moves on ch to every state reachable from ε-closure(q) on ch,
+ * and q accepts the regexes accepted in ε-closure(q);
+ * 2) drop the states that are unreachable from the start state or can not reach an accepting state;
+ * 3) merge forward bisimilar states: the states accepting the same regexes and moving on every ch into the same groups;
+ * 4) merge backward bisimilar states: the states entered on every ch from the same groups.
+ * Steps 3 and 4 are repeated until no state is merged.
+ * <p>
+ * The result is a {@link ReducedNFA} whose accepting states remember the accepting states of the original NFA,
+ * so it can replace the Thompson NFA of a grammar in {@link SubsetConstruction} and in an NFA scanner.
+ * The original NFA is not modified.
+ */
+public class NFAReduction {
+
+    private static final char EPSILON = 'ε';
+
+    /**
+     * @param nfa an NFA, e.g. a TNFA or the NFA of a grammar with an accepting state for each regex
+     * @return an ε-free NFA accepting the same language with the same accepting regexes
+     */
+    public ReducedNFA reduce(FiniteAutomaton nfa) {
+        LabeledDirectedGraph<State> tb = nfa.getTransitTable();
+
+        // Index the states by their ids
+        HashSet<State> vertices = new HashSet<>(tb.vertexSet());
+        vertices.add(nfa.getStartState());
+        for (LabelEdge e : tb.edgeSet()) {
+            vertices.add(tb.getEdgeSource(e));
+            vertices.add(tb.getEdgeTarget(e));
+        }
+        ArrayList<State> states = new ArrayList<>(vertices);
+        states.sort(Comparator.comparingInt(State::getId));
+        int n = states.size();
+        HashMap<State, Integer> index = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            index.put(states.get(i), i);
+        }
+        int start = index.get(nfa.getStartState());
+
+        // The accepting states of the original NFA
+        ArrayList<HashMap<Integer, State>> originalAccepted = new ArrayList<>(n);
+        for (State s : states) {
+            HashMap<Integer, State> accepted = new HashMap<>();
+            if (nfa instanceof ReducedNFA) {
+                accepted.putAll(((ReducedNFA) nfa).getAcceptedStates(s));
+            } else if (s.getType() == State.ACCEPT || s.getType() == State.ACCEPTANDSTART) {
+                accepted.put(s.getId(), s);
+            }
+            originalAccepted.add(accepted);
+        }
+
+        // Adjacency lists: ε-targets and (label << 32 | target) of the other transitions
+        int[][] epsilon = new int[n][];
+        long[][] moves = new long[n][];
+        int[] epsilonCount = new int[n];
+        int[] moveCount = new int[n];
+        for (LabelEdge e : tb.edgeSet()) {
+            int source = index.get(tb.getEdgeSource(e));
+            if (e.getLabel() == EPSILON)
+                epsilonCount[source]++;
+            else
+                moveCount[source]++;
+        }
+        for (int i = 0; i < n; i++) {
+            epsilon[i] = new int[epsilonCount[i]];
+            moves[i] = new long[moveCount[i]];
+            epsilonCount[i] = 0;
+            moveCount[i] = 0;
+        }
+        for (LabelEdge e : tb.edgeSet()) {
+            int source = index.get(tb.getEdgeSource(e));
+            int target = index.get(tb.getEdgeTarget(e));
+            if (e.getLabel() == EPSILON)
+                epsilon[source][epsilonCount[source]++] = target;
+            else
+                moves[source][moveCount[source]++] = pack(e.getLabel(), target);
+        }
+
+        // 1) remove ε-transitions
+        long[][] freeMoves = new long[n][];
+        BitSet[] accepts = new BitSet[n];
+        int[] mark = new int[n];
+        int[] stack = new int[n];
+        long[] buffer = new long[16];
+        for (int q = 0; q < n; q++) {
+            BitSet accept = new BitSet();
+            int size = 0;
+            int top = 0;
+            stack[top++] = q;
+            mark[q] = q + 1;
+            while (top > 0) {
+                int p = stack[--top];
+                if (!originalAccepted.get(p).isEmpty())
+                    accept.set(p);
+                for (long m : moves[p]) {
+                    if (size == buffer.length)
+                        buffer = Arrays.copyOf(buffer, size << 1);
+                    buffer[size++] = m;
+                }
+                for (int t : epsilon[p]) {
+                    if (mark[t] != q + 1) {
+                        mark[t] = q + 1;
+                        stack[top++] = t;
+                    }
+                }
+            }
+            freeMoves[q] = sortedUnique(buffer, size);
+            accepts[q] = accept;
+        }
+
+        // 2) keep the states reachable from the start state that can reach an accepting state
+        boolean[] reachable = new boolean[n];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        reachable[start] = true;
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int q = queue.poll();
+            for (long m : freeMoves[q]) {
+                int t = target(m);
+                if (!reachable[t]) {
+                    reachable[t] = true;
+                    queue.add(t);
+                }
+            }
+        }
+        int[][] predecessors = predecessors(n, freeMoves, reachable);
+        boolean[] live = new boolean[n];
+        for (int q = 0; q < n; q++) {
+            if (reachable[q] && !accepts[q].isEmpty()) {
+                live[q] = true;
+                queue.add(q);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int q = queue.poll();
+            for (int p : predecessors[q]) {
+                if (!live[p]) {
+                    live[p] = true;
+                    queue.add(p);
+                }
+            }
+        }
+        live[start] = true;
+
+        int[] kept = new int[n];
+        int keptCount = 0;
+        for (int q = 0; q < n; q++) {
+            kept[q] = live[q] ? keptCount++ : -1;
+        }
+        Graph g = new Graph(keptCount);
+        g.start = kept[start];
+        for (int q = 0; q < n; q++) {
+            if (kept[q] < 0)
+                continue;
+            int size = 0;
+            if (buffer.length < freeMoves[q].length)
+                buffer = new long[freeMoves[q].length];
+            for (long m : freeMoves[q]) {
+                if (kept[target(m)] >= 0)
+                    buffer[size++] = pack(label(m), kept[target(m)]);
+            }
+            g.moves[kept[q]] = Arrays.copyOf(buffer, size);
+            g.accepts[kept[q]] = accepts[q];
+            g.representatives[kept[q]] = q;
+        }
+
+        // 3) and 4) merge bisimilar states until nothing changes
+        int before;
+        do {
+            before = g.size;
+            g = merge(g, forwardBisimulation(g));
+            g = merge(g, backwardBisimulation(g));
+        } while (g.size < before);
+
+        // Build the reduced NFA with copies of the representative states
+        State[] reducedStates = new State[g.size];
+        for (int b = 0; b < g.size; b++) {
+            State s = new State(states.get(g.representatives[b]));
+            boolean accepting = !g.accepts[b].isEmpty();
+            if (b == g.start)
+                s.setType(accepting ? State.ACCEPTANDSTART : State.START);
+            else
+                s.setType(accepting ? State.ACCEPT : State.MIDDLE);
+            reducedStates[b] = s;
+        }
+        ReducedNFA reduced = new ReducedNFA(reducedStates[g.start]);
+        reduced.setAlphabet(new ArrayList<>(nfa.getAlphabet()));
+        LabeledDirectedGraph<State> rtb = reduced.getTransitTable();
+        for (int b = 0; b < g.size; b++) {
+            rtb.addVertex(reducedStates[b]);
+            if (!g.accepts[b].isEmpty()) {
+                HashMap<Integer, State> accepted = new HashMap<>();
+                for (int p = g.accepts[b].nextSetBit(0); p >= 0; p = g.accepts[b].nextSetBit(p + 1)) {
+                    accepted.putAll(originalAccepted.get(p));
+                }
+                reduced.setAcceptedStates(reducedStates[b], accepted);
+            }
+        }
+        for (int b = 0; b < g.size; b++) {
+            for (long m : g.moves[b]) {
+                rtb.addEdge(reducedStates[b], reducedStates[target(m)], label(m));
+            }
+        }
+        return reduced;
+    }
+
+    /**
+     * An ε-free NFA over int states
+     */
+    private static final class Graph {
+        final int size;
+        int start;
+        final long[][] moves;
+        final BitSet[] accepts;
+        final int[] representatives;
+
+        Graph(int size) {
+            this.size = size;
+            this.moves = new long[size][];
+            this.accepts = new BitSet[size];
+            this.representatives = new int[size];
+        }
+    }
+
+    /**
+     * Group the states accepting the same regexes and moving on every ch into the same groups.
+     */
+    private int[] forwardBisimulation(Graph g) {
+        HashMap<BitSet, Integer> initial = new HashMap<>();
+        int[] block = new int[g.size];
+        for (int q = 0; q < g.size; q++) {
+            block[q] = initial.computeIfAbsent(g.accepts[q], x -> initial.size());
+        }
+        return refine(g.size, block, initial.size(), g.moves);
+    }
+
+    /**
+     * Group the states entered on every ch from the same groups, the start state is kept alone.
+     */
+    private int[] backwardBisimulation(Graph g) {
+        int[] block = new int[g.size];
+        for (int q = 0; q < g.size; q++) {
+            block[q] = q == g.start ? 0 : 1;
+        }
+        int[] incomingCount = new int[g.size];
+        for (int q = 0; q < g.size; q++) {
+            for (long m : g.moves[q]) {
+                incomingCount[target(m)]++;
+            }
+        }
+        long[][] incoming = new long[g.size][];
+        for (int q = 0; q < g.size; q++) {
+            incoming[q] = new long[incomingCount[q]];
+            incomingCount[q] = 0;
+        }
+        for (int q = 0; q < g.size; q++) {
+            for (long m : g.moves[q]) {
+                int t = target(m);
+                incoming[t][incomingCount[t]++] = pack(label(m), q);
+            }
+        }
+        return refine(g.size, block, g.size == 1 ? 1 : 2, incoming);
+    }
+
+    /**
+     * Partition refinement: split the groups until the states in a group have the same
+     * set of (label, group of neighbour) pairs.
+     *
+     * @return the group of each state, the groups are numbered by their first state
+     */
+    private int[] refine(int n, int[] block, int blocks, long[][] edges) {
+        long[] buffer = new long[16];
+        while (true) {
+            HashMap<Signature, Integer> groups = new HashMap<>();
+            int[] next = new int[n];
+            for (int q = 0; q < n; q++) {
+                if (buffer.length < edges[q].length)
+                    buffer = new long[edges[q].length];
+                for (int i = 0; i < edges[q].length; i++) {
+                    buffer[i] = pack(label(edges[q][i]), block[target(edges[q][i])]);
+                }
+                Signature signature = new Signature(block[q], sortedUnique(buffer, edges[q].length));
+                next[q] = groups.computeIfAbsent(signature, x -> groups.size());
+            }
+            if (groups.size() == blocks)
+                return next;
+            block = next;
+            blocks = groups.size();
+        }
+    }
+
+    /**
+     * Merge the states of each group into one state.
+     */
+    private Graph merge(Graph g, int[] block) {
+        int size = 0;
+        for (int b : block) {
+            size = Math.max(size, b + 1);
+        }
+        if (size == g.size)
+            return g;
+        Graph merged = new Graph(size);
+        merged.start = block[g.start];
+        ArrayList<ArrayList<Long>> moves = new ArrayList<>(size);
+        for (int b = 0; b < size; b++) {
+            moves.add(new ArrayList<>());
+            merged.accepts[b] = new BitSet();
+            merged.representatives[b] = -1;
+        }
+        for (int q = 0; q < g.size; q++) {
+            int b = block[q];
+            if (merged.representatives[b] < 0 || g.representatives[q] < merged.representatives[b])
+                merged.representatives[b] = g.representatives[q];
+            merged.accepts[b].or(g.accepts[q]);
+            for (long m : g.moves[q]) {
+                moves.get(b).add(pack(label(m), block[target(m)]));
+            }
+        }
+        for (int b = 0; b < size; b++) {
+            long[] m = new long[moves.get(b).size()];
+            for (int i = 0; i < m.length; i++) {
+                m[i] = moves.get(b).get(i);
+            }
+            merged.moves[b] = sortedUnique(m, m.length);
+        }
+        return merged;
+    }
+
+    private static int[][] predecessors(int n, long[][] moves, boolean[] reachable) {
+        int[] count = new int[n];
+        for (int q = 0; q < n; q++) {
+            if (!reachable[q])
+                continue;
+            for (long m : moves[q]) {
+                count[target(m)]++;
+            }
+        }
+        int[][] predecessors = new int[n][];
+        for (int q = 0; q < n; q++) {
+            predecessors[q] = new int[count[q]];
+            count[q] = 0;
+        }
+        for (int q = 0; q < n; q++) {
+            if (!reachable[q])
+                continue;
+            for (long m : moves[q]) {
+                int t = target(m);
+                predecessors[t][count[t]++] = q;
+            }
+        }
+        return predecessors;
+    }
+
+    private static long[] sortedUnique(long[] values, int size) {
+        long[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1])
+                sorted[unique++] = sorted[i];
+        }
+        return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+    }
+
+    private static long pack(char label, int target) {
+        return ((long) label << 32) | (target & 0xFFFFFFFFL);
+    }
+
+    private static char label(long move) {
+        return (char) (move >>> 32);
+    }
+
+    private static int target(long move) {
+        return (int) move;
+    }
+
+    private static final class Signature {
+        private final int block;
+        private final long[] moves;
+        private final int hash;
+
+        Signature(int block, long[] moves) {
+            this.block = block;
+            this.moves = moves;
+            this.hash = 31 * block + Arrays.hashCode(moves);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Signature))
+                return false;
+            Signature s = (Signature) obj;
+            return block == s.block && Arrays.equals(moves, s.moves);
+        }
+    }
+}
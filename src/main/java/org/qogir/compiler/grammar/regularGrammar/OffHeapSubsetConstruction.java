@@ -0,0 +1,306 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.FiniteAutomaton;
+import org.qogir.compiler.FA.State;
+import org.qogir.compiler.util.OffHeapIntLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The subset construction {@link SubsetConstruction} for DFAs with millions of states.
+ * The construction keeps no object per DFA state. It holds the DFA in {@link OffHeapIntLog}s outside the Java heap:
+ * + the NFA state set of each DFA state, as a sorted list of NFA state indexes
+ * + the growing transition table, a row per DFA state
+ * + the token of each DFA state
+ * The DFA states are numbered in the order they are found and processed in that order, so every log is written
+ * at its end and read from front to back, and all but its last chunk may be spilled when the budget is hit:
+ * + the rows of the transition table are not read until the end, and are spilled first
+ * + the NFA state sets are read back in order when their DFA states are processed
+ * + the NFA state set of a finished state is released, unless the DFA→NFA mapping is kept by {@link #setKeepMapping}
+ * A new NFA state set is looked up by its 96-bit fingerprint in an off-heap hash table, so a finished set is not
+ * needed to recognize it. Two distinct sets have the same fingerprint with a chance of about n²/2⁹⁷ for n sets.
+ * <p>
+ * The result is a {@link DFATable} with the start state 0 and the sorted alphabet, as {@link DFATable#fromRDFA}.
+ */
+public class OffHeapSubsetConstruction implements DFATableConstruction, Closeable {
+
+    public static final long DEFAULT_BUDGET = 256L << 20;
+
+    private final OffHeapIntLog.Budget budget;
+
+    private boolean keepMapping = false;
+
+    /**
+     * The logs of the last construction
+     */
+    private OffHeapIntLog sets;
+    private OffHeapIntLog offsets;
+
+    /**
+     * The NFA states of the last construction, by their indexes
+     */
+    private State[] nfaStates;
+
+    private int stateCount;
+
+    public OffHeapSubsetConstruction() {
+        this(DEFAULT_BUDGET, null);
+    }
+
+    /**
+     * @param budget the direct memory in bytes before the cold parts of the DFA are spilled
+     * @param spillDirectory the directory of the spill files, null for the temp directory
+     */
+    public OffHeapSubsetConstruction(long budget, Path spillDirectory) {
+        this.budget = new OffHeapIntLog.Budget(budget, spillDirectory);
+    }
+
+    public boolean isKeepMapping() {
+        return keepMapping;
+    }
+
+    /**
+     * @param keepMapping true to keep the NFA state set of each DFA state for {@link #getNFAStates}
+     */
+    public void setKeepMapping(boolean keepMapping) {
+        this.keepMapping = keepMapping;
+    }
+
+    public OffHeapIntLog.Budget getBudget() {
+        return budget;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Construct the DFA of an NFA. An accepting DFA state gets the token 0.
+     *
+     * @param nfa a TNFA or an ε-free NFA
+     * @return the table of the DFA
+     */
+    public DFATable construct(FiniteAutomaton nfa) throws IOException {
+        return construct(nfa, null, null);
+    }
+
+    /**
+     * Construct the DFA of an NFA and tag its accepting states as {@link RDFA#setAcceptingToken}.
+     * The token with the highest priority wins, and two tokens with the same priority give {@link RDFA#AMBIGUOUS_TOKEN}.
+     *
+     * @param nfa a TNFA or an ε-free NFA
+     * @param acceptedTokens the tokens each accepting NFA state accepts, e.g. the indexes of regexes in a regular grammar
+     * @param priorities the priority of each token
+     * @return the table of the DFA
+     */
+    @Override
+    public DFATable construct(FiniteAutomaton nfa, Map<State, int[]> acceptedTokens, int[] priorities) throws IOException {
+        closeLogs();
+        IndexedNFA indexed = new IndexedNFA(nfa, acceptedTokens, priorities);
+        int n = indexed.size();
+        int k = indexed.alphabet.length;
+        int[] mark = new int[n];
+        int stamp = 0;
+        int[] buffer = new int[n];
+
+        //the DFA, the logs are spilled in this order
+        OffHeapIntLog rows = new OffHeapIntLog(budget, "dfa-rows");
+        OffHeapIntLog tokens = new OffHeapIntLog(budget, "dfa-tokens");
+        sets = new OffHeapIntLog(budget, "dfa-sets");
+        offsets = new OffHeapIntLog(budget, "dfa-offsets");
+        FingerprintTable table = new FingerprintTable(budget);
+        try {
+            stateCount = 0;
+            add(indexed.start, indexed.start.length, table, indexed, tokens);
+
+            int[] set = new int[n];
+            for (int d = 0; d < stateCount; d++) {
+                long at = offsetOf(d);
+                int size = sets.get(at);
+                for (int j = 0; j < size; j++)
+                    set[j] = sets.get(at + 1 + j);
+                for (int a = 0; a < k; a++) {
+                    int u = indexed.step(set, size, a, mark, ++stamp, buffer);
+                    if (u == 0) {
+                        rows.append(DFATable.NONE);
+                        continue;
+                    }
+                    Arrays.sort(buffer, 0, u);
+                    rows.append(add(buffer, u, table, indexed, tokens));
+                }
+                //d is finished
+                rows.markCold(rows.size());
+                tokens.markCold(tokens.size());
+                sets.markCold(sets.size());
+                offsets.markCold(offsets.size());
+                if (!keepMapping) {
+                    sets.release(d + 1 < stateCount ? offsetOf(d + 1) : sets.size());
+                    offsets.release(2L * (d + 1));
+                }
+            }
+
+            int[] transitions = new int[Math.multiplyExact(stateCount, k)];
+            for (int i = 0; i < transitions.length; i++)
+                transitions[i] = rows.get(i);
+            int[] tokenArray = new int[stateCount];
+            for (int d = 0; d < stateCount; d++)
+                tokenArray[d] = tokens.get(d);
+            nfaStates = indexed.states;
+            return new DFATable(indexed.alphabet, stateCount, transitions, tokenArray);
+        } finally {
+            rows.close();
+            tokens.close();
+            table.close();
+            if (!keepMapping)
+                closeLogs();
+        }
+    }
+
+    /**
+     * @param dfaState a state of the last DFA
+     * @return the NFA states of the DFA state, as {@link RDFA#getStateMappingBetweenDFAAndNFA()}
+     */
+    public HashMap<Integer, State> getNFAStates(int dfaState) {
+        if (sets == null)
+            throw new IllegalStateException("The DFA→NFA mapping is not kept.");
+        long at = offsetOf(dfaState);
+        int size = sets.get(at);
+        HashMap<Integer, State> mapping = new HashMap<>();
+        for (int j = 0; j < size; j++) {
+            State s = nfaStates[sets.get(at + 1 + j)];
+            mapping.put(s.getId(), s);
+        }
+        return mapping;
+    }
+
+    /**
+     * Release the kept mapping and delete its spill files.
+     */
+    @Override
+    public void close() throws IOException {
+        closeLogs();
+    }
+
+    private void closeLogs() throws IOException {
+        if (sets != null) {
+            sets.close();
+            offsets.close();
+            sets = null;
+            offsets = null;
+        }
+    }
+
+    private long offsetOf(int dfaState) {
+        return ((long) offsets.get(2L * dfaState) << 32) | (offsets.get(2L * dfaState + 1) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the DFA state of the NFA state set set[0, size), a new state if the set is new
+     */
+    private int add(int[] set, int size, FingerprintTable table, IndexedNFA indexed, OffHeapIntLog tokens) {
+        long h1 = 0x9E3779B97F4A7C15L;
+        long h2 = 0xC2B2AE3D27D4EB4FL ^ size;
+        for (int j = 0; j < size; j++) {
+            h1 = mix(h1 ^ set[j]);
+            h2 = mix(h2 + set[j] * 0x165667B19E3779F9L);
+        }
+        int found = table.find(h1, h2);
+        if (found >= 0)
+            return found;
+
+        int d = stateCount++;
+        table.put(h1, h2, d);
+        long at = sets.size();
+        offsets.append((int) (at >>> 32));
+        offsets.append((int) at);
+        sets.append(size);
+        for (int j = 0; j < size; j++)
+            sets.append(set[j]);
+        tokens.append(indexed.tokenOf(set, size));
+        return d;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * An open-addressing hash table from the fingerprints of the NFA state sets to the DFA states, in direct memory.
+     * A slot is two longs: the first half of the fingerprint, and the high 32 bits of the second half with
+     * the DFA state + 1 in the low 32 bits, 0 if the slot is empty.
+     */
+    private static final class FingerprintTable implements Closeable {
+        private static final long HIGH = 0xFFFFFFFF00000000L;
+        private final OffHeapIntLog.Budget budget;
+        private LongBuffer slots;
+        private int capacity;
+        private int size;
+
+        FingerprintTable(OffHeapIntLog.Budget budget) {
+            this.budget = budget;
+            allocate(1 << 12);
+        }
+
+        private void allocate(int capacity) {
+            budget.reserve(capacity * 16L);
+            this.capacity = capacity;
+            this.slots = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, 16)).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+
+        int find(long h1, long h2) {
+            for (int i = (int) h1 & (capacity - 1); ; i = (i + 1) & (capacity - 1)) {
+                long v = slots.get(2 * i + 1);
+                if (v == 0)
+                    return -1;
+                if (slots.get(2 * i) == h1 && (v & HIGH) == (h2 & HIGH))
+                    return (int) v - 1;
+            }
+        }
+
+        void put(long h1, long h2, int state) {
+            if (2 * (size + 1) > capacity)
+                grow();
+            insert(h1, (h2 & HIGH) | (state + 1L));
+            size++;
+        }
+
+        private void insert(long h1, long v) {
+            int i = (int) h1 & (capacity - 1);
+            while (slots.get(2 * i + 1) != 0)
+                i = (i + 1) & (capacity - 1);
+            slots.put(2 * i, h1);
+            slots.put(2 * i + 1, v);
+        }
+
+        private void grow() {
+            LongBuffer old = slots;
+            int oldCapacity = capacity;
+            allocate(capacity << 1);
+            for (int i = 0; i < oldCapacity; i++) {
+                long v = old.get(2 * i + 1);
+                if (v != 0)
+                    insert(old.get(2 * i), v);
+            }
+            budget.free(oldCapacity * 16L);
+        }
+
+        @Override
+        public void close() {
+            budget.free(capacity * 16L);
+            slots = null;
+        }
+    }
+}
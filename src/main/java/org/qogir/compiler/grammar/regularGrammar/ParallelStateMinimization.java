@@ -0,0 +1,159 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import java.io.Serial;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moore's partition refinement {@link DFATable#minimize()} on all cores.
+ * In a round, each state gets the signature of its block and the blocks of its targets, and the states with the same
+ * signature form a block of the next partition. The states are split among the threads of a {@link ForkJoinPool},
+ * and the signatures are interned in a {@link ConcurrentHashMap}. A signature is a state with its hash, compared
+ * with another through the transition table, so no array is made per state.
+ * <p>
+ * The threads number the blocks in any order, but the partitions are the same as the sequential refinement,
+ * and the blocks are numbered in breadth-first order at the end, so the minimal table is the table of {@link DFATable#minimize()}.
+ */
+public class ParallelStateMinimization {
+
+    /**
+     * The number of states below which a task is not split
+     */
+    private static final int SPLIT_THRESHOLD = 4096;
+
+    private final int parallelism;
+
+    public ParallelStateMinimization() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism the number of threads
+     */
+    public ParallelStateMinimization(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("The parallelism must be positive.");
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param dfa a DFA table
+     * @return the minimal table, numbered in breadth-first order from the start state 0
+     */
+    public DFATable minimize(DFATable dfa) {
+        int n = dfa.getStateCount();
+        int[] block = new int[n];
+        HashMap<Integer, Integer> tokenBlocks = new HashMap<>();
+        for (int s = 0; s < n; s++)
+            block[s] = tokenBlocks.computeIfAbsent(dfa.getToken(s), t -> tokenBlocks.size());
+        int blockCount = tokenBlocks.size();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            while (true) {
+                Round round = new Round(dfa, block);
+                pool.invoke(new Refine(round, 0, n));
+                block = round.refined;
+                int refinedCount = round.next.get();
+                if (refinedCount == blockCount)
+                    break;
+                blockCount = refinedCount;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return dfa.quotient(block, blockCount);
+    }
+
+    /**
+     * A round of the refinement: the partition, and the blocks of the next partition
+     */
+    private static final class Round {
+        final DFATable dfa;
+        final int k;
+        final int[] block;
+        final int[] refined;
+        final ConcurrentHashMap<Signature, Integer> blocks = new ConcurrentHashMap<>();
+        final AtomicInteger next = new AtomicInteger();
+
+        Round(DFATable dfa, int[] block) {
+            this.dfa = dfa;
+            this.k = dfa.getSymbolCount();
+            this.block = block;
+            this.refined = new int[block.length];
+        }
+
+        int targetBlock(int s, int a) {
+            int t = dfa.next(s, a);
+            return t == DFATable.NONE ? DFATable.NONE : block[t];
+        }
+
+        /**
+         * The signature of a state in this round
+         */
+        final class Signature {
+            final int state;
+            final int hash;
+
+            Signature(int state) {
+                this.state = state;
+                int h = block[state];
+                for (int a = 0; a < k; a++)
+                    h = 31 * h + targetBlock(state, a);
+                this.hash = h;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof Signature other) || hash != other.hash || block[state] != block[other.state])
+                    return false;
+                for (int a = 0; a < k; a++) {
+                    if (targetBlock(state, a) != targetBlock(other.state, a))
+                        return false;
+                }
+                return true;
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+        }
+    }
+
+    /**
+     * Give the states [from, to) their blocks of the next partition
+     */
+    private static final class Refine extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 6320562930285140902L;
+
+        private final Round round;
+        private final int from;
+        private final int to;
+
+        Refine(Round round, int from, int to) {
+            this.round = round;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Refine(round, from, middle), new Refine(round, middle, to));
+                return;
+            }
+            for (int s = from; s < to; s++)
+                round.refined[s] = round.blocks.computeIfAbsent(round.new Signature(s), g -> round.next.getAndIncrement());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.FiniteAutomaton;
+import org.qogir.compiler.FA.State;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The subset construction {@link SubsetConstruction} on all cores.
+ * The DFA is expanded a breadth-first level at a time: the unmarked DFA states of a level are split among the threads
+ * of a {@link ForkJoinPool}, which steal the ranges of each other when they run out of work, and each thread computes
+ * the successors of its states. The NFA state sets are interned in a {@link ConcurrentHashMap}, so the threads which
+ * find the same set get the same DFA state, and the states which are new go to the next level.
+ * <p>
+ * The threads find the states in any order, so the states are numbered after the construction by a breadth-first search
+ * over the sorted alphabet, as {@link DFATable#fromRDFA}. The table is the same for any number of threads,
+ * and is the table of the DFA of {@link SubsetConstruction#subSetConstruct}.
+ */
+public class ParallelSubsetConstruction implements DFATableConstruction {
+
+    /**
+     * The number of DFA states below which a task is not split
+     */
+    private static final int SPLIT_THRESHOLD = 64;
+
+    private final int parallelism;
+
+    /**
+     * The limits of the construction, null for no limit
+     */
+    private ConstructionBudget budget = null;
+
+    public ParallelSubsetConstruction() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism the number of threads
+     */
+    public ParallelSubsetConstruction(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("The parallelism must be positive.");
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public ConstructionBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * @param budget the limits of the DFA, the states are checked by the threads as they are found,
+     *               and the transitions after each level
+     */
+    public void setBudget(ConstructionBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * A DFA state: its NFA state set, and its successors once it is marked
+     */
+    private static final class Node {
+        final int[] set;
+        final int hash;
+        Node[] next;
+        int token;
+        int number = -1;
+
+        Node(int[] set) {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Node other && hash == other.hash && Arrays.equals(set, other.set);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Mark the DFA states level[from, to), and return the new states found
+     */
+    private static final class Expand extends RecursiveTask<ArrayList<Node>> {
+        @Serial
+        private static final long serialVersionUID = 4023600266902030392L;
+
+        private final IndexedNFA nfa;
+        private final ConcurrentHashMap<Node, Node> interned;
+        private final ConstructionBudget.Meter meter;
+        private final Node[] level;
+        private final int from;
+        private final int to;
+
+        Expand(IndexedNFA nfa, ConcurrentHashMap<Node, Node> interned, ConstructionBudget.Meter meter, Node[] level, int from, int to) {
+            this.nfa = nfa;
+            this.interned = interned;
+            this.meter = meter;
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArrayList<Node> compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                Expand left = new Expand(nfa, interned, meter, level, from, middle);
+                left.fork();
+                ArrayList<Node> found = new Expand(nfa, interned, meter, level, middle, to).compute();
+                ArrayList<Node> leftFound = left.join();
+                leftFound.addAll(found);
+                return leftFound;
+            }
+            ArrayList<Node> found = new ArrayList<>();
+            int k = nfa.alphabet.length;
+            int[] mark = new int[nfa.size()];
+            int stamp = 0;
+            int[] buffer = new int[nfa.size()];
+            for (int i = from; i < to; i++) {
+                Node d = level[i];
+                Node[] next = new Node[k];
+                for (int a = 0; a < k; a++) {
+                    int u = nfa.step(d.set, d.set.length, a, mark, ++stamp, buffer);
+                    if (u == 0)
+                        continue;
+                    int[] set = Arrays.copyOf(buffer, u);
+                    Arrays.sort(set);
+                    Node fresh = new Node(set);
+                    Node existing = interned.putIfAbsent(fresh, fresh);
+                    if (existing == null) {
+                        fresh.token = nfa.tokenOf(set, set.length);
+                        found.add(fresh);
+                        next[a] = fresh;
+                    } else {
+                        next[a] = existing;
+                    }
+                }
+                d.next = next;
+                if (meter != null && !found.isEmpty())
+                    meter.check(interned.size(), 0);
+            }
+            return found;
+        }
+    }
+
+    public DFATable construct(FiniteAutomaton nfa) {
+        return construct(nfa, null, null);
+    }
+
+    @Override
+    public DFATable construct(FiniteAutomaton nfa, Map<State, int[]> acceptedTokens, int[] priorities) {
+        IndexedNFA indexed = new IndexedNFA(nfa, acceptedTokens, priorities);
+        int k = indexed.alphabet.length;
+        ConcurrentHashMap<Node, Node> interned = new ConcurrentHashMap<>();
+        Node start = new Node(indexed.start);
+        start.token = indexed.tokenOf(start.set, start.set.length);
+        interned.put(start, start);
+
+        ConstructionBudget.Meter meter = budget == null ? null : budget.start("parallel subset construction");
+        long edges = 0;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Node[] level = {start};
+            while (level.length > 0) {
+                ArrayList<Node> found = pool.invoke(new Expand(indexed, interned, meter, level, 0, level.length));
+                if (meter != null) {
+                    for (Node d : level)
+                        for (Node t : d.next)
+                            if (t != null)
+                                edges++;
+                    meter.check(interned.size(), edges);
+                }
+                level = found.toArray(new Node[0]);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        //number the states breadth-first from the start state
+        Node[] order = new Node[interned.size()];
+        int count = 0;
+        order[count++] = start;
+        start.number = 0;
+        for (int head = 0; head < count; head++) {
+            for (Node t : order[head].next) {
+                if (t != null && t.number < 0) {
+                    t.number = count;
+                    order[count++] = t;
+                }
+            }
+        }
+        int[] transitions = new int[Math.multiplyExact(count, k)];
+        int[] tokens = new int[count];
+        for (int d = 0; d < count; d++) {
+            tokens[d] = order[d].token;
+            for (int a = 0; a < k; a++) {
+                Node t = order[d].next[a];
+                transitions[d * k + a] = t == null ? DFATable.NONE : t.number;
+            }
+        }
+        return new DFATable(indexed.alphabet, count, transitions, tokens);
+    }
+}
@@ -15,6 +15,12 @@ import java.util.Stack;
 public class ParseRegex {
     private ArrayDeque<Character> queue = new ArrayDeque<>();
 
+    /**
+     * If true, each pair of parentheses is a capture group node, numbered by its '(' as {@link ArenaRegexParser}
+     */
+    private boolean captureGroups = false;
+    private int groups = 0;
+
     /**
      * Construct a ParseRegex object with a regex.
      * The input string of regex is divided into a sequence of char
@@ -33,6 +39,21 @@ public class ParseRegex {
             this.queue.add('%');
     }
 
+    public boolean isCaptureGroups() {
+        return captureGroups;
+    }
+
+    public void setCaptureGroups(boolean captureGroups) {
+        this.captureGroups = captureGroups;
+    }
+
+    /**
+     * @return the number of capture groups found by {@link #parse()}
+     */
+    public int getGroupCount() {
+        return groups;
+    }
+
     /**
      * Converting the regex into a regex tree
      * 1) Set a stack to hold the nodes of regex tree
@@ -80,6 +101,8 @@ public class ParseRegex {
             match++;
         }
         RegexTreeNode node = new RegexTreeNode(look, t, null, null);
+        if (t == 4 && captureGroups)
+            node.setGroup(++groups);
         stack.push(node);
 
         lookChar = this.queue.poll();
@@ -90,21 +113,33 @@ public class ParseRegex {
         look = lookChar;
 
         while (look != '%') {
-            if (look == '*') {
-                RegexTreeNode knode;
+            if (look == '*' || look == '+' || look == '?' || look == '{') {
+                int min = look == '+' ? 1 : 0;
+                int max = look == '?' ? 1 : RegexTreeNode.UNBOUNDED;
+                if (look == '{') {
+                    int[] bounds = bounds();
+                    min = bounds[0];
+                    max = bounds[1];
+                }
                 t = stack.peek().getType();
-                if (t == 0) {// is basic before *
-                    knode = new RegexTreeNode('*', 3, stack.pop(), null);
-                } else if (t == 5) { //is a ')' before *
-                    stack.pop(); //pop ')'
-                    knode = new RegexTreeNode('*', 3, stack.pop(), null);
-                    stack.pop(); //pop '('
-                } else { //is other char before *, not legal
-                    throw new InvalidRegexException("Not a legal regex! The character before '*' must be a letter or ')'");
+                if (t != 0 && t != 5) { //is other char before the operator, not legal
+                    throw new InvalidRegexException("Not a legal regex! The character before '" + look + "' must be a letter or ')'");
+                }
+                if (!(min == 1 && max == 1)) { // r{1} is r
+                    RegexTreeNode operand;
+                    if (t == 0) {// is basic before the operator
+                        operand = stack.pop();
+                    } else { //is a ')' before the operator
+                        stack.pop(); //pop ')'
+                        operand = stack.pop();
+                        stack.pop(); //pop '('
+                    }
+                    stack.push(repeat(operand, min, max));
                 }
-                stack.push(knode);
             } else if (look == '(') {
                 RegexTreeNode lnode = new RegexTreeNode('(', 4, null, null);
+                if (captureGroups)
+                    lnode.setGroup(++groups);
                 stack.push(lnode);
                 match++;
                 //how about the case of "...(..." (right parenthesis is missing)
@@ -120,7 +155,7 @@ public class ParseRegex {
                     Stack<RegexTreeNode> rstack = new Stack<>();
 
                     while (!stack.isEmpty() && stack.peek().getType() != 4) {
-                        if (stack.peek().getType() == 0 || stack.peek().getType() == 1 || stack.peek().getType() == 3) {//basic,kleene or concatenation(the case of conca exist?)
+                        if (stack.peek().getType() == 0 || stack.peek().getType() == 1 || stack.peek().getType() >= 3 && stack.peek().getType() != 4 && stack.peek().getType() != 5) {//basic,kleene,plus,optional,repeat or concatenation(the case of conca exist?)
                             rstack.push(stack.pop());
                         } else if (stack.peek().getType() == 2) {//union, case (stack|?)
                             if (rstack.isEmpty()) { //case (stack|)
@@ -151,14 +186,20 @@ public class ParseRegex {
                         // 1) convert the nodes in rstack into one node
                         // 2) push the converted node and the right-parenthesis node
                         if (!rstack.isEmpty()) {
+                            RegexTreeNode inner;
                             if (rstack.size() > 1) {
                                 RegexTreeNode cnode = new RegexTreeNode('-', 1, null, null);
-                                cnode = mergeStackAsOneChild(cnode, rstack);
-                                stack.push(cnode);
+                                inner = mergeStackAsOneChild(cnode, rstack);
 
                             } else { //rstack.size = 1
-                                stack.push(rstack.pop());
+                                inner = rstack.pop();
+                            }
+                            if (captureGroups) { //the group of the '(' below
+                                RegexTreeNode gnode = new RegexTreeNode('(', RegexTreeNode.GROUP, inner, null);
+                                gnode.setGroup(stack.peek().getGroup());
+                                inner = gnode;
                             }
+                            stack.push(inner);
                             RegexTreeNode rnode = new RegexTreeNode(')', 5, null, null);
                             stack.push(rnode);
                             match--;
@@ -176,7 +217,13 @@ public class ParseRegex {
                 RegexTreeNode unode;
                 Stack<RegexTreeNode> ustack = new Stack<>();
                 while (!stack.isEmpty() && stack.peek().getType() != 2 && stack.peek().getType() != 4) {
-                    ustack.push(stack.pop());
+                    if (stack.peek().getType() == 5) { //case ...(ustack)|, keep the group, drop its parentheses
+                        stack.pop(); //pop ')'
+                        ustack.push(stack.pop());
+                        stack.pop(); //pop '('
+                    } else {
+                        ustack.push(stack.pop());
+                    }
                 }
 
                 if (stack.isEmpty() || stack.peek().getType() == 4) {
@@ -228,7 +275,13 @@ public class ParseRegex {
         }
         Stack<RegexTreeNode> pstack = new Stack<>();
         while (!stack.isEmpty() && stack.peek().getType() != 2) {
-            pstack.push(stack.pop());
+            if (stack.peek().getType() == 5) { //case ...(pstack)%, keep the group, drop its parentheses
+                stack.pop(); //pop ')'
+                pstack.push(stack.pop());
+                stack.pop(); //pop '('
+            } else {
+                pstack.push(stack.pop());
+            }
         }
 
         // Manage precedence
@@ -278,6 +331,60 @@ public class ParseRegex {
         return tree;
     }
 
+    /**
+     * Read the bounds of "{m}", "{m,}" or "{m,n}" after the '{'.
+     *
+     * @return {m, n}, n is {@link RegexTreeNode#UNBOUNDED} for "{m,}"
+     */
+    private int[] bounds() throws InvalidRegexException {
+        int min = number();
+        int max = min;
+        if (this.queue.peek() != null && this.queue.peek() == ',') {
+            this.queue.poll();
+            max = this.queue.peek() != null && this.queue.peek() == '}' ? RegexTreeNode.UNBOUNDED : number();
+        }
+        Character close = this.queue.poll();
+        if (close == null || close != '}')
+            throw new InvalidRegexException("Not a legal regex! '}' is missing.");
+        if (max != RegexTreeNode.UNBOUNDED && max < min)
+            throw new InvalidRegexException("Not a legal regex! The bounds of '{" + min + "," + max + "}' are reversed.");
+        return new int[]{min, max};
+    }
+
+    private int number() throws InvalidRegexException {
+        int value = 0;
+        int digits = 0;
+        while (this.queue.peek() != null && this.queue.peek() >= '0' && this.queue.peek() <= '9') {
+            value = value * 10 + (this.queue.poll() - '0');
+            if (value > RegexTreeNode.MAX_BOUND)
+                throw new InvalidRegexException("Not a legal regex! A bound of '{m,n}' is greater than " + RegexTreeNode.MAX_BOUND + ".");
+            digits++;
+        }
+        if (digits == 0)
+            throw new InvalidRegexException("Not a legal regex! '{' must be followed by a number.");
+        return value;
+    }
+
+    /**
+     * @return the node of operand{min,max} as {@link ArenaRegexParser}: r*, r+, r? or a repeat node, ε for r{0}
+     */
+    private static RegexTreeNode repeat(RegexTreeNode operand, int min, int max) {
+        RegexTreeNode node;
+        if (max == RegexTreeNode.UNBOUNDED && min == 0) {
+            node = new RegexTreeNode('*', RegexTreeNode.CLOSURE, operand, null);
+        } else if (max == RegexTreeNode.UNBOUNDED && min == 1) {
+            node = new RegexTreeNode('+', RegexTreeNode.PLUS, operand, null);
+        } else if (min == 0 && max == 1) {
+            node = new RegexTreeNode('?', RegexTreeNode.OPTIONAL, operand, null);
+        } else if (max == 0) {
+            node = new RegexTreeNode('ε', RegexTreeNode.BASIC, null, null);
+        } else {
+            node = new RegexTreeNode('{', RegexTreeNode.REPEAT, operand, null);
+            node.setBounds(min, max);
+        }
+        return node;
+    }
+
     /**
      * Make nodes in a stack as children of one node.
      *
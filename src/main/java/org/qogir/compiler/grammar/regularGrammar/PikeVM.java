@@ -0,0 +1,307 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import java.util.Arrays;
+
+/**
+ * A Pike VM running the NFAs of a regular grammar with their capture groups, for extracting the parts of a token
+ * in the pass which scans it, e.g. the digits and the exponent of a number.
+ * <p>
+ * The regexes are parsed with capture groups {@link ArenaRegexParser#setCaptureGroups} and built into one
+ * {@link ThompsonArena}, where a group is enclosed by two SAVE states. The VM runs the NFAs of all regexes
+ * in lock-step over the input, one thread per NFA state. Each thread carries the offsets its path recorded
+ * at the SAVE states, and of two threads reaching one state, the one which came first keeps it, so each state
+ * holds the path preferred by the order of the alternatives: the left arm of a union, the longer run of a closure.
+ * <p>
+ * A match follows the maximal munch and the priorities of {@link DFATable}: the longest match wins, and among
+ * the regexes matching it the one with the highest priority. Its groups are those of the preferred path of the regex.
+ * A group which took no part in the match has the offsets -1, and a group inside a loop has the offsets of its last run.
+ * <p>
+ * The groups differ from those of java.util.regex after an empty run of a loop. The ε-closure of an offset visits
+ * each state once, so a loop r*, r+ or r{m,} does not run r on the empty string once it may leave: it ends with its
+ * last non-empty run, or with no run at all. java.util.regex runs r once more when r matches the empty string there,
+ * and reports the groups of that run. E.g. on "ab", (a|ε)*b has the group [0,1) here and [1,1) in java.util.regex,
+ * on "b" the group -1 here and [0,0) there. The runs r+ and r{m,n} must make, and the optional runs of r{m,n},
+ * are taken on the empty string like in java.util.regex.
+ * <p>
+ * The VM is immutable and shared; a {@link Matcher} holds the thread lists of a run, allocated once,
+ * so matching allocates nothing.
+ */
+public final class PikeVM {
+
+    private final ThompsonArena arena;
+
+    /**
+     * The start state of each regex
+     */
+    private final int[] starts;
+
+    /**
+     * The regex of each MATCH state, -1 for the other states
+     */
+    private final int[] regexOf;
+
+    private final int[] groupCounts;
+
+    private final int[] priorities;
+
+    /**
+     * The offsets per thread: 2 for the match and 2 per group of the regex with the most groups
+     */
+    private final int slots;
+
+    public PikeVM(RegularGrammar rg) {
+        int count = rg.getPatterns().size();
+        this.arena = new ThompsonArena();
+        this.starts = new int[count];
+        this.groupCounts = new int[count];
+        this.priorities = new int[count];
+        ArenaRegexParser parser = new ArenaRegexParser();
+        parser.setCaptureGroups(true);
+        RegexArena regexArena = new RegexArena();
+        int[] accepts = new int[count];
+        int maxGroups = 0;
+        for (int i = 0; i < count; i++) {
+            Regex r = rg.getPatterns().get(i);
+            regexArena.clear();
+            int nfa = arena.build(regexArena, parser.parse(r.getRegex(), regexArena));
+            starts[i] = arena.getStartState(nfa);
+            accepts[i] = arena.getAcceptingState(nfa);
+            groupCounts[i] = parser.getGroupCount();
+            priorities[i] = r.getPriority();
+            maxGroups = Math.max(maxGroups, groupCounts[i]);
+        }
+        this.slots = (maxGroups + 1) * 2;
+        this.regexOf = new int[arena.size()];
+        Arrays.fill(regexOf, -1);
+        for (int i = 0; i < count; i++)
+            regexOf[accepts[i]] = i;
+    }
+
+    /**
+     * @param token the index of a regex in the grammar
+     * @return the number of capture groups of the regex
+     */
+    public int getGroupCount(int token) {
+        return groupCounts[token];
+    }
+
+    /**
+     * @return the number of NFA states
+     */
+    public int getStateCount() {
+        return arena.size();
+    }
+
+    public Matcher newMatcher() {
+        return new Matcher();
+    }
+
+    /**
+     * The thread lists of one run of the VM, reused by every match. A matcher is not thread-safe.
+     */
+    public final class Matcher {
+        private final int n = arena.size();
+
+        private int[] current = new int[n];
+        private int[] currentOffsets = new int[n * slots];
+        private int currentSize;
+
+        private int[] next = new int[n];
+        private int[] nextOffsets = new int[n * slots];
+        private int nextSize;
+
+        /**
+         * The offsets of the path being followed through ε-transitions
+         */
+        private final int[] offsets = new int[slots];
+
+        /**
+         * The offsets of the last match, slots 0 and 1 are the match itself
+         */
+        private final int[] matched = new int[slots];
+
+        private final int[] mark = new int[n];
+        private int stamp = 0;
+
+        /**
+         * The ε-closure stack: a state to visit, or ~slot with the offset to restore once the paths through
+         * the SAVE state of the slot are followed
+         */
+        private final int[] stack = new int[2 * n + 2];
+        private final int[] stackOffsets = new int[2 * n + 2];
+
+        private int token = DFATable.NOT_ACCEPTING;
+
+        /**
+         * The offset of the char on which all threads of the last match died, the length of the input if some lived to its end
+         */
+        private int stop;
+
+        private Matcher() {
+        }
+
+        /**
+         * Match the longest token at an offset of the input.
+         *
+         * @param input the input
+         * @param from the offset the token starts at
+         * @return the regex index of the token as {@link DFATable#getToken}: {@link DFATable#NOT_ACCEPTING} if no
+         * token of at least one char starts at from, or {@link RDFA#AMBIGUOUS_TOKEN}
+         */
+        public int match(CharSequence input, int from) {
+            token = DFATable.NOT_ACCEPTING;
+            Arrays.fill(offsets, -1);
+            nextSize = 0;
+            newStamp();
+            for (int start : starts)
+                addThread(start, from);
+            swap();
+            int i = from;
+            for (; i < input.length() && currentSize > 0; i++) {
+                char c = input.charAt(i);
+                nextSize = 0;
+                newStamp();
+                for (int j = 0; j < currentSize; j++) {
+                    int s = current[j];
+                    if (!arena.reads(s, c))
+                        continue;
+                    System.arraycopy(currentOffsets, j * slots, offsets, 0, slots);
+                    addThread(arena.getOut1(s), i + 1);
+                }
+                swap();
+                accept(from, i + 1);
+            }
+            stop = currentSize > 0 || i == from ? i : i - 1;
+            return token;
+        }
+
+        /**
+         * @return the offset of the char on which all threads of the last match died, the length of the input
+         * if some lived to its end: the chars from the end of the match to here were read in vain
+         */
+        public int getStop() {
+            return stop;
+        }
+
+        /**
+         * @return the token of the last match
+         */
+        public int getToken() {
+            return token;
+        }
+
+        /**
+         * @param group 0 for the whole match, 1.. for the capture groups
+         * @return the offset of the first char of the group in the last match, -1 if it took no part
+         */
+        public int getStart(int group) {
+            return group * 2 < slots ? matched[group * 2] : -1;
+        }
+
+        /**
+         * @param group 0 for the whole match, 1.. for the capture groups
+         * @return the offset after the last char of the group in the last match, -1 if it took no part
+         */
+        public int getEnd(int group) {
+            return group * 2 + 1 < slots ? matched[group * 2 + 1] : -1;
+        }
+
+        /**
+         * Copy the offsets of the last match as pairs, [start, end) of the match followed by those of each group.
+         *
+         * @param out the offsets, at least 2 * (groups + 1) ints
+         * @return the number of groups of the regex matched
+         */
+        public int getOffsets(int[] out) {
+            int groups = token < 0 ? 0 : groupCounts[token];
+            System.arraycopy(matched, 0, out, 0, (groups + 1) * 2);
+            return groups;
+        }
+
+        /**
+         * Take the match of the regex with the highest priority among the MATCH states reached at an offset
+         */
+        private void accept(int from, int end) {
+            int winner = -1;
+            int priority = Integer.MIN_VALUE;
+            boolean ambiguous = false;
+            for (int j = 0; j < currentSize; j++) {
+                int r = regexOf[current[j]];
+                if (r < 0)
+                    continue;
+                if (winner < 0 || priorities[r] > priority) {
+                    winner = j;
+                    priority = priorities[r];
+                    ambiguous = false;
+                } else if (priorities[r] == priority) {
+                    ambiguous = true;
+                }
+            }
+            if (winner < 0)
+                return;
+            if (ambiguous) {
+                token = RDFA.AMBIGUOUS_TOKEN;
+                Arrays.fill(matched, -1);
+            } else {
+                token = regexOf[current[winner]];
+                System.arraycopy(currentOffsets, winner * slots, matched, 0, slots);
+            }
+            matched[0] = from;
+            matched[1] = end;
+        }
+
+        /**
+         * Add the ε-closure of a state to the next list, following the paths in the order of preference
+         */
+        private void addThread(int state, int at) {
+            int top = 0;
+            stack[top++] = state;
+            while (top > 0) {
+                int s = stack[--top];
+                if (s < 0) {
+                    offsets[~s] = stackOffsets[top];
+                    continue;
+                }
+                if (s == ThompsonArena.NONE || mark[s] == stamp)
+                    continue;
+                mark[s] = stamp;
+                switch (arena.getKind(s)) {
+                    case ThompsonArena.CHAR, ThompsonArena.SET, ThompsonArena.MATCH -> {
+                        next[nextSize] = s;
+                        System.arraycopy(offsets, 0, nextOffsets, nextSize * slots, slots);
+                        nextSize++;
+                    }
+                    case ThompsonArena.SPLIT -> {
+                        stack[top++] = arena.getOut2(s);
+                        stack[top++] = arena.getOut1(s);
+                    }
+                    case ThompsonArena.SAVE -> {
+                        int slot = arena.getLabel(s);
+                        stackOffsets[top] = offsets[slot];
+                        stack[top++] = ~slot;
+                        offsets[slot] = at;
+                        stack[top++] = arena.getOut1(s);
+                    }
+                    default -> stack[top++] = arena.getOut1(s);
+                }
+            }
+        }
+
+        private void swap() {
+            int[] list = current;
+            current = next;
+            next = list;
+            int[] listOffsets = currentOffsets;
+            currentOffsets = nextOffsets;
+            nextOffsets = listOffsets;
+            currentSize = nextSize;
+        }
+
+        private void newStamp() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(mark, 0);
+                stamp = 1;
+            }
+        }
+    }
+}
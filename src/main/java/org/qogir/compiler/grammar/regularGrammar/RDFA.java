@@ -13,6 +13,21 @@ public class RDFA extends FiniteAutomaton {
      */
     private HashMap<State, HashMap<Integer, State>> StateMappingBetweenDFAAndNFA = new HashMap<>();
 
+    /**
+     * The token of an accepting state that is accepted by no known regex
+     */
+    public static final int NO_TOKEN = -1;
+
+    /**
+     * The token of an accepting state that is accepted by two regexes with the same priority
+     */
+    public static final int AMBIGUOUS_TOKEN = -2;
+
+    /**
+     * holds the token of each accepting state, i.e. the index of the regex in the regular grammar winning the state
+     */
+    private HashMap<State, Integer> acceptingTokens = new HashMap<>();
+
     public RDFA() {
         super();
         this.StateMappingBetweenDFAAndNFA = new HashMap<>();
@@ -34,6 +49,23 @@ public class RDFA extends FiniteAutomaton {
         return StateMappingBetweenDFAAndNFA;
     }
 
+    public void setAcceptingToken(State s, int token) {
+        this.acceptingTokens.put(s, token);
+    }
+
+    /**
+     * @param s a DFA state
+     * @return the token of s, {@link #NO_TOKEN} if s is not tagged
+     */
+    public int getAcceptingToken(State s) {
+        Integer token = this.acceptingTokens.get(s);
+        return token == null ? NO_TOKEN : token;
+    }
+
+    public HashMap<State, Integer> getAcceptingTokens() {
+        return acceptingTokens;
+    }
+
     public String StateMappingBetweenDFAAndNFAToString() {
         StringBuilder str = new StringBuilder();
         int d = 0;
@@ -0,0 +1,46 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.FiniteAutomaton;
+import org.qogir.compiler.FA.State;
+
+import java.io.Serial;
+import java.util.HashMap;
+
+/**
+ * An ε-free NFA produced by {@link NFAReduction}.
+ * Unlike a TNFA, it may have several accepting states (type {@link State#ACCEPT} or {@link State#ACCEPTANDSTART}).
+ * Each accepting state stands for one or more accepting states of the original NFA, e.g. the accepting states of
+ * the regexes of a grammar, so a scanner can still tell which regex is matched.
+ */
+public class ReducedNFA extends FiniteAutomaton {
+    @Serial
+    private static final long serialVersionUID = 5032915788143692318L;
+
+    /**
+     * holds the maps between accepting states and the accepting states of the original NFA
+     */
+    private final HashMap<State, HashMap<Integer, State>> acceptedStates = new HashMap<>();
+
+    public ReducedNFA(State startState) {
+        super(-1);
+        this.startState = startState;
+        this.transitTable.addVertex(startState);
+    }
+
+    public void setAcceptedStates(State s, HashMap<Integer, State> originalStates) {
+        this.acceptedStates.put(s, originalStates);
+    }
+
+    /**
+     * @param s a state of the reduced NFA
+     * @return the accepting states of the original NFA that s stands for, empty if s is not accepting
+     */
+    public HashMap<Integer, State> getAcceptedStates(State s) {
+        HashMap<Integer, State> originalStates = this.acceptedStates.get(s);
+        return originalStates == null ? new HashMap<>() : originalStates;
+    }
+
+    public HashMap<State, HashMap<Integer, State>> getAcceptedStateMapping() {
+        return acceptedStates;
+    }
+}
@@ -0,0 +1,205 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import java.util.Arrays;
+
+/**
+ * An arena-encoded regex tree.
+ * The nodes of one or more regex trees are held in parallel int arrays, a node is an index into the arrays:
+ * + type - the node type as in {@link RegexTreeNode}, i.e. 0-basic；1-concatenation；2-union； 3-kleene closure;
+ *   6-plus; 7-optional; 8-repeat; 9-group
+ * + value - the char of the node ('-' for concatenation, '|' for union, '*' for closure, '+', '?' and '{' for repeat,
+ *   '(' for group)
+ * + min / max - the bounds of a repeat r{min,max}, max is {@link RegexTreeNode#UNBOUNDED} for r{min,};
+ *   min is the number of a group
+ * + firstChild / nextSibling - the first-child/next-sibling links, {@link #NONE} if there is no such node
+ * <p>
+ * The arena is filled by {@link ArenaRegexParser} and can be converted into a {@link RegexTree} by {@link #toRegexTree(int)}.
+ */
+public class RegexArena {
+
+    public static final int NONE = -1;
+
+    private int[] type;
+    private int[] value;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] min;
+    private int[] max;
+    private int size = 0;
+
+    public RegexArena() {
+        this(16);
+    }
+
+    public RegexArena(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.type = new int[capacity];
+        this.value = new int[capacity];
+        this.firstChild = new int[capacity];
+        this.nextSibling = new int[capacity];
+        this.min = new int[capacity];
+        this.max = new int[capacity];
+    }
+
+    /**
+     * Add a node without children and siblings.
+     *
+     * @return the index of the new node
+     */
+    public int addNode(int t, char v) {
+        if (size == type.length) {
+            int capacity = size << 1;
+            type = Arrays.copyOf(type, capacity);
+            value = Arrays.copyOf(value, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+        }
+        type[size] = t;
+        value[size] = v;
+        firstChild[size] = NONE;
+        nextSibling[size] = NONE;
+        min[size] = 0;
+        max[size] = RegexTreeNode.UNBOUNDED;
+        return size++;
+    }
+
+    public int getType(int node) {
+        return type[node];
+    }
+
+    public char getValue(int node) {
+        return (char) value[node];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int getMin(int node) {
+        return min[node];
+    }
+
+    public int getMax(int node) {
+        return max[node];
+    }
+
+    public void setBounds(int node, int min, int max) {
+        this.min[node] = min;
+        this.max[node] = max;
+    }
+
+    public int getGroup(int node) {
+        return min[node];
+    }
+
+    public void setGroup(int node, int group) {
+        this.min[node] = group;
+    }
+
+    public void setFirstChild(int node, int child) {
+        firstChild[node] = child;
+    }
+
+    public void setNextSibling(int node, int sibling) {
+        nextSibling[node] = sibling;
+    }
+
+    /**
+     * @return the number of nodes in the arena
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove all nodes, the arrays are kept for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Convert the tree rooted at the node into a regex tree of {@link RegexTreeNode}s.
+     *
+     * @param root the root node of a regex in the arena
+     * @return a regex tree, or null if root is {@link #NONE}
+     */
+    public RegexTree toRegexTree(int root) {
+        if (root == NONE)
+            return null;
+        RegexTree tree = new RegexTree();
+        tree.setRoot(toRegexTreeNode(root));
+        return tree;
+    }
+
+    private RegexTreeNode toRegexTreeNode(int node) {
+        RegexTreeNode treeNode = new RegexTreeNode((char) value[node], type[node], null, null);
+        if (type[node] == RegexTreeNode.REPEAT)
+            treeNode.setBounds(min[node], max[node]);
+        if (type[node] == RegexTreeNode.GROUP)
+            treeNode.setGroup(min[node]);
+        RegexTreeNode last = null;
+        for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+            RegexTreeNode child = toRegexTreeNode(c);
+            if (last == null)
+                treeNode.setFirstChild(child);
+            else
+                last.setNextSibling(child);
+            last = child;
+        }
+        return treeNode;
+    }
+
+    /**
+     * @return the tree rooted at the node in the form of a regex, e.g. "(c(a|b)*)"
+     */
+    public String toString(int node) {
+        StringBuilder str = new StringBuilder();
+        appendNode(str, node);
+        return str.toString();
+    }
+
+    private void appendNode(StringBuilder str, int node) {
+        switch (type[node]) {
+            case RegexTreeNode.CONCATENATION, RegexTreeNode.UNION -> {
+                str.append('(');
+                for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {
+                    if (type[node] == RegexTreeNode.UNION && c != firstChild[node])
+                        str.append('|');
+                    appendNode(str, c);
+                }
+                str.append(')');
+            }
+            case RegexTreeNode.CLOSURE, RegexTreeNode.PLUS, RegexTreeNode.OPTIONAL, RegexTreeNode.REPEAT -> {
+                int child = firstChild[node];
+                if (isPostfix(type[child])) {
+                    str.append('(');
+                    appendNode(str, child);
+                    str.append(')');
+                } else {
+                    appendNode(str, child);
+                }
+                if (type[node] == RegexTreeNode.REPEAT)
+                    str.append('{').append(min[node]).append(',').append(max[node] == RegexTreeNode.UNBOUNDED ? "" : max[node]).append('}');
+                else
+                    str.append((char) value[node]);
+            }
+            case RegexTreeNode.GROUP -> {
+                str.append('(');
+                appendNode(str, firstChild[node]);
+                str.append(')');
+            }
+            default -> str.append((char) value[node]);
+        }
+    }
+
+    private static boolean isPostfix(int t) {
+        return t == RegexTreeNode.CLOSURE || t == RegexTreeNode.PLUS || t == RegexTreeNode.OPTIONAL || t == RegexTreeNode.REPEAT;
+    }
+}
@@ -0,0 +1,104 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+/**
+ * Extract the required literals of a regex from its regex tree.
+ * The prefix literal of a regex is the longest string which every string of the regex starts with,
+ * e.g. "d" for d(f|ea*(g|h))b, "ab" for ab(c|d), "aaa" for a{3,5} and "" for (a|b)*abb.
+ * A searcher only needs to look for matches where one of the prefix literals occurs.
+ */
+public class RegexLiterals {
+
+    /**
+     * @param tree a regex tree
+     * @return the prefix literal of the regex, "" if there is none
+     */
+    public static String prefix(RegexTree tree) {
+        if (tree == null || tree.getRoot() == null)
+            return "";
+        return analyze(tree.getRoot()).prefix;
+    }
+
+    /**
+     * The literals of a subtree:
+     * + exact - the only string of the subtree, null if the subtree has more strings
+     * + prefix - the prefix literal of the subtree, equal to exact if exact is not null
+     */
+    private static final class Literal {
+        final String exact;
+        final String prefix;
+
+        Literal(String exact, String prefix) {
+            this.exact = exact;
+            this.prefix = prefix;
+        }
+    }
+
+    private static Literal analyze(RegexTreeNode node) {
+        switch (node.getType()) {
+            case RegexTreeNode.CONCATENATION -> {
+                StringBuilder exact = new StringBuilder();
+                for (RegexTreeNode c = (RegexTreeNode) node.getFirstChild(); c != null; c = (RegexTreeNode) c.getNextSibling()) {
+                    Literal child = analyze(c);
+                    if (child.exact == null)
+                        return new Literal(null, exact + child.prefix);
+                    exact.append(child.exact);
+                }
+                return new Literal(exact.toString(), exact.toString());
+            }
+            case RegexTreeNode.UNION -> {
+                String exact = null;
+                String prefix = null;
+                boolean allExact = true;
+                for (RegexTreeNode c = (RegexTreeNode) node.getFirstChild(); c != null; c = (RegexTreeNode) c.getNextSibling()) {
+                    Literal arm = analyze(c);
+                    if (prefix == null) {
+                        exact = arm.exact;
+                        prefix = arm.prefix;
+                    } else {
+                        prefix = commonPrefix(prefix, arm.prefix);
+                    }
+                    if (arm.exact == null || !arm.exact.equals(exact))
+                        allExact = false;
+                }
+                if (prefix == null)
+                    return new Literal("", "");
+                return allExact ? new Literal(exact, exact) : new Literal(null, prefix);
+            }
+            case RegexTreeNode.CLOSURE -> {
+                Literal child = analyze((RegexTreeNode) node.getFirstChild());
+                return "".equals(child.exact) ? new Literal("", "") : new Literal(null, "");
+            }
+            case RegexTreeNode.GROUP -> {
+                return analyze((RegexTreeNode) node.getFirstChild());
+            }
+            case RegexTreeNode.PLUS -> {
+                Literal child = analyze((RegexTreeNode) node.getFirstChild());
+                return "".equals(child.exact) ? new Literal("", "") : new Literal(null, child.prefix);
+            }
+            case RegexTreeNode.OPTIONAL -> {
+                Literal child = analyze((RegexTreeNode) node.getFirstChild());
+                return "".equals(child.exact) ? new Literal("", "") : new Literal(null, "");
+            }
+            case RegexTreeNode.REPEAT -> {
+                Literal child = analyze((RegexTreeNode) node.getFirstChild());
+                if ("".equals(child.exact))
+                    return new Literal("", "");
+                if (child.exact == null)
+                    return new Literal(null, node.getMin() == 0 ? "" : child.prefix);
+                String least = child.exact.repeat(node.getMin());
+                return node.getMin() == node.getMax() ? new Literal(least, least) : new Literal(null, least);
+            }
+            default -> {
+                String value = node.getValue() == 'ε' ? "" : String.valueOf(node.getValue());
+                return new Literal(value, value);
+            }
+        }
+    }
+
+    private static String commonPrefix(String a, String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i))
+            i++;
+        return a.substring(0, i);
+    }
+}
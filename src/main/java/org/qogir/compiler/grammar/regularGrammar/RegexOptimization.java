@@ -0,0 +1,423 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.State;
+import org.qogir.compiler.util.graph.LabeledDirectedGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * An optimization pass over regex trees before the Thompson construction {@link ThompsonConstruction#translate}.
+ * <p>
+ * 1. {@link #simplify} rewrites a regex tree by the algebraic laws:
+ * + (r*)* = r*, ε* = ε, (ε|r)* = r*, (r*|s)* = (r|s)*, (r+)* = (r?)* = r*
+ * + (r+)+ = r+, r? = r if r accepts ε, ε+ = ε? = ε
+ * + rε = εr = r, nested concatenations and unions are flattened
+ * + r|r = r, ε|r = r if r accepts ε
+ * + rs|rt = r(s|t)
+ * + capture groups are dropped, (r) = r
+ * <p>
+ * 2. Identical subtrees are hash-consed: every node of a simplified tree gets the id of its equivalence class
+ * (type, value, bounds and the ids of the children, the children of a union are unordered), so duplicate union arms and
+ * common prefixes are found by comparing ids instead of subtrees.
+ * <p>
+ * 3. {@link #constructNFA} builds one NFA for all regexes of a grammar. The top-level concatenations of the regexes
+ * are put into a trie, so the regexes sharing a prefix (e.g. if, int, interface) share the states of the prefix.
+ * Each regex keeps its own accepting state.
+ */
+public class RegexOptimization {
+
+    /**
+     * The hash-consing table: the key of a subtree -> the id of the subtree
+     */
+    private final HashMap<NodeKey, Integer> internTable = new HashMap<>();
+
+    /**
+     * The id of each node of the simplified trees
+     */
+    private final IdentityHashMap<RegexTreeNode, Integer> nodeIds = new IdentityHashMap<>();
+
+    /**
+     * Simplify a regex tree. The input tree is not modified.
+     *
+     * @param tree a regex tree
+     * @return the simplified regex tree
+     */
+    public RegexTree simplify(RegexTree tree) {
+        if (tree == null || tree.getRoot() == null)
+            return tree;
+        RegexTree simplified = new RegexTree();
+        simplified.setRoot(simplify(tree.getRoot()));
+        return simplified;
+    }
+
+    /**
+     * @return the hash-consing id of a node of a simplified tree, equal ids mean identical subtrees
+     */
+    public int getId(RegexTreeNode node) {
+        Integer id = nodeIds.get(node);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the number of distinct subtrees seen by the pass
+     */
+    public int getDistinctSubtrees() {
+        return internTable.size();
+    }
+
+    private RegexTreeNode simplify(RegexTreeNode node) {
+        switch (node.getType()) {
+            case RegexTreeNode.CONCATENATION:
+                return concatenation(simplifyChildren(node));
+            case RegexTreeNode.UNION:
+                return union(simplifyChildren(node));
+            case RegexTreeNode.CLOSURE:
+                return closure(simplify((RegexTreeNode) node.getFirstChild()));
+            case RegexTreeNode.PLUS:
+            case RegexTreeNode.OPTIONAL:
+            case RegexTreeNode.REPEAT:
+                return postfix(node, simplify((RegexTreeNode) node.getFirstChild()));
+            case RegexTreeNode.GROUP:
+                return simplify((RegexTreeNode) node.getFirstChild());
+            default:
+                return intern(new RegexTreeNode(node.getValue(), RegexTreeNode.BASIC, null, null));
+        }
+    }
+
+    private ArrayList<RegexTreeNode> simplifyChildren(RegexTreeNode node) {
+        ArrayList<RegexTreeNode> children = new ArrayList<>();
+        for (RegexTreeNode c = (RegexTreeNode) node.getFirstChild(); c != null; c = (RegexTreeNode) c.getNextSibling()) {
+            children.add(simplify(c));
+        }
+        return children;
+    }
+
+    /**
+     * Build a concatenation of simplified items, dropping ε and flattening nested concatenations.
+     */
+    private RegexTreeNode concatenation(ArrayList<RegexTreeNode> items) {
+        ArrayList<RegexTreeNode> factors = new ArrayList<>();
+        for (RegexTreeNode item : items) {
+            if (isEpsilon(item))
+                continue;
+            if (item.getType() == RegexTreeNode.CONCATENATION)
+                factors.addAll(children(item));
+            else
+                factors.add(item);
+        }
+        if (factors.isEmpty())
+            return epsilon();
+        if (factors.size() == 1)
+            return factors.get(0);
+        return intern(link(new RegexTreeNode('-', RegexTreeNode.CONCATENATION, null, null), factors));
+    }
+
+    /**
+     * Build a union of simplified arms, removing duplicate arms and factoring the common first factor of arms.
+     */
+    private RegexTreeNode union(ArrayList<RegexTreeNode> items) {
+        LinkedHashMap<Integer, RegexTreeNode> arms = new LinkedHashMap<>();
+        for (RegexTreeNode item : items) {
+            if (item.getType() == RegexTreeNode.UNION) {
+                for (RegexTreeNode arm : children(item))
+                    arms.putIfAbsent(getId(arm), arm);
+            } else {
+                arms.putIfAbsent(getId(item), item);
+            }
+        }
+
+        // ε|r = r if r accepts ε
+        RegexTreeNode eps = null;
+        boolean otherNullable = false;
+        for (RegexTreeNode arm : arms.values()) {
+            if (isEpsilon(arm))
+                eps = arm;
+            else if (nullable(arm))
+                otherNullable = true;
+        }
+        if (eps != null && otherNullable)
+            arms.remove(getId(eps));
+
+        // rs|rt = r(s|t): group the arms by their first factor
+        LinkedHashMap<Integer, ArrayList<RegexTreeNode>> groups = new LinkedHashMap<>();
+        for (RegexTreeNode arm : arms.values()) {
+            groups.computeIfAbsent(getId(firstFactor(arm)), x -> new ArrayList<>()).add(arm);
+        }
+        ArrayList<RegexTreeNode> factored = new ArrayList<>();
+        for (ArrayList<RegexTreeNode> group : groups.values()) {
+            if (group.size() == 1) {
+                factored.add(group.get(0));
+                continue;
+            }
+            RegexTreeNode prefix = firstFactor(group.get(0));
+            ArrayList<RegexTreeNode> rests = new ArrayList<>();
+            for (RegexTreeNode arm : group) {
+                rests.add(restFactors(arm));
+            }
+            ArrayList<RegexTreeNode> factors = new ArrayList<>();
+            factors.add(prefix);
+            factors.add(union(rests));
+            factored.add(concatenation(factors));
+        }
+
+        if (factored.size() == 1)
+            return factored.get(0);
+        return intern(link(new RegexTreeNode('|', RegexTreeNode.UNION, null, null), factored));
+    }
+
+    /**
+     * Build a closure of a simplified item: (r*)* = r*, ε* = ε, (ε|r)* = r*, (r*|s)* = (r|s)*.
+     */
+    private RegexTreeNode closure(RegexTreeNode item) {
+        while (isLoop(item))
+            item = (RegexTreeNode) item.getFirstChild();
+        if (isEpsilon(item))
+            return item;
+        if (item.getType() == RegexTreeNode.UNION) {
+            ArrayList<RegexTreeNode> arms = new ArrayList<>();
+            boolean changed = false;
+            for (RegexTreeNode arm : children(item)) {
+                if (isEpsilon(arm)) {
+                    changed = true;
+                    continue;
+                }
+                while (isLoop(arm)) {
+                    arm = (RegexTreeNode) arm.getFirstChild();
+                    changed = true;
+                }
+                arms.add(arm);
+            }
+            if (changed) {
+                if (arms.isEmpty())
+                    return epsilon();
+                item = union(arms);
+            }
+        }
+        RegexTreeNode knode = new RegexTreeNode('*', RegexTreeNode.CLOSURE, null, null);
+        item.setNextSibling(null);
+        knode.setFirstChild(item);
+        return intern(knode);
+    }
+
+    /**
+     * Build r+, r? or r{m,n} of a simplified item: (r+)+ = r+, (r*)+ = r*, r? = r if r accepts ε, ε+ = ε? = ε.
+     */
+    private RegexTreeNode postfix(RegexTreeNode node, RegexTreeNode item) {
+        if (isEpsilon(item))
+            return item;
+        switch (node.getType()) {
+            case RegexTreeNode.PLUS:
+                if (item.getType() == RegexTreeNode.PLUS || item.getType() == RegexTreeNode.CLOSURE)
+                    return item;
+                break;
+            case RegexTreeNode.OPTIONAL:
+                if (nullable(item))
+                    return item;
+                break;
+            default:
+                break;
+        }
+        RegexTreeNode pnode = new RegexTreeNode(node.getValue(), node.getType(), null, null);
+        pnode.setBounds(node.getMin(), node.getMax());
+        item.setNextSibling(null);
+        pnode.setFirstChild(item);
+        return intern(pnode);
+    }
+
+    /**
+     * @return true for r*, r+ and r?, which r* absorbs: (r*)* = (r+)* = (r?)* = r*
+     */
+    private static boolean isLoop(RegexTreeNode node) {
+        int type = node.getType();
+        return type == RegexTreeNode.CLOSURE || type == RegexTreeNode.PLUS || type == RegexTreeNode.OPTIONAL;
+    }
+
+    private RegexTreeNode firstFactor(RegexTreeNode node) {
+        return node.getType() == RegexTreeNode.CONCATENATION ? (RegexTreeNode) node.getFirstChild() : node;
+    }
+
+    private RegexTreeNode restFactors(RegexTreeNode node) {
+        if (node.getType() != RegexTreeNode.CONCATENATION)
+            return epsilon();
+        ArrayList<RegexTreeNode> factors = children(node);
+        factors.remove(0);
+        return concatenation(factors);
+    }
+
+    private boolean isEpsilon(RegexTreeNode node) {
+        return node.getType() == RegexTreeNode.BASIC && node.getValue() == 'ε';
+    }
+
+    private RegexTreeNode epsilon() {
+        return intern(new RegexTreeNode('ε', RegexTreeNode.BASIC, null, null));
+    }
+
+    private boolean nullable(RegexTreeNode node) {
+        switch (node.getType()) {
+            case RegexTreeNode.CONCATENATION:
+                for (RegexTreeNode c : children(node))
+                    if (!nullable(c))
+                        return false;
+                return true;
+            case RegexTreeNode.UNION:
+                for (RegexTreeNode c : children(node))
+                    if (nullable(c))
+                        return true;
+                return false;
+            case RegexTreeNode.CLOSURE:
+            case RegexTreeNode.OPTIONAL:
+                return true;
+            case RegexTreeNode.PLUS:
+                return nullable((RegexTreeNode) node.getFirstChild());
+            case RegexTreeNode.REPEAT:
+                return node.getMin() == 0 || nullable((RegexTreeNode) node.getFirstChild());
+            default:
+                return isEpsilon(node);
+        }
+    }
+
+    private static ArrayList<RegexTreeNode> children(RegexTreeNode node) {
+        ArrayList<RegexTreeNode> children = new ArrayList<>();
+        for (RegexTreeNode c = (RegexTreeNode) node.getFirstChild(); c != null; c = (RegexTreeNode) c.getNextSibling()) {
+            children.add(c);
+        }
+        return children;
+    }
+
+    private static RegexTreeNode link(RegexTreeNode parent, ArrayList<RegexTreeNode> children) {
+        parent.setFirstChild(children.get(0));
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).setNextSibling(i + 1 < children.size() ? children.get(i + 1) : null);
+        }
+        return parent;
+    }
+
+    /**
+     * Assign the hash-consing id to a node whose children are interned.
+     */
+    private RegexTreeNode intern(RegexTreeNode node) {
+        ArrayList<RegexTreeNode> children = children(node);
+        int[] childIds = new int[children.size()];
+        for (int i = 0; i < childIds.length; i++) {
+            childIds[i] = getId(children.get(i));
+        }
+        if (node.getType() == RegexTreeNode.UNION)
+            Arrays.sort(childIds);
+        NodeKey key = new NodeKey(node.getType(), node.getValue(), node.getMin(), node.getMax(), childIds);
+        Integer id = internTable.get(key);
+        if (id == null) {
+            id = internTable.size();
+            internTable.put(key, id);
+        }
+        nodeIds.put(node, id);
+        return node;
+    }
+
+    /**
+     * Construct an NFA for all regexes, sharing the states of the common prefixes of the regexes.
+     * Each top-level factor of a regex is an edge in a trie; the factor is a single transition if it is a letter or ε,
+     * otherwise it is translated by the Thompson construction and linked by ε-transitions.
+     * The regexes ending on the same trie node (identical regexes) share the accepting state.
+     *
+     * @param patterns  the regexes in the order of the grammar
+     * @param trees     the simplified regex trees, see {@link #simplify}
+     * @param regexToNFA receives for each regex the NFA with the shared transition table and the accepting state of the regex
+     * @return an NFA accepting all regexes
+     */
+    public TNFA constructNFA(ArrayList<Regex> patterns, HashMap<Regex, RegexTree> trees, HashMap<Regex, TNFA> regexToNFA) {
+        TNFA nfa = new TNFA();
+        LabeledDirectedGraph<State> tb = nfa.getTransitTable();
+        ThompsonConstruction thompsonConstruction = new ThompsonConstruction();
+        TrieNode root = new TrieNode(nfa.getStartState());
+
+        for (Regex r : patterns) {
+            RegexTree tree = trees.get(r);
+            if (tree == null || tree.getRoot() == null)
+                continue;
+            RegexTreeNode rootNode = tree.getRoot();
+            ArrayList<RegexTreeNode> factors;
+            if (rootNode.getType() == RegexTreeNode.CONCATENATION) {
+                factors = children(rootNode);
+            } else {
+                factors = new ArrayList<>();
+                factors.add(rootNode);
+            }
+
+            TrieNode current = root;
+            for (RegexTreeNode factor : factors) {
+                int id = getId(factor);
+                TrieNode next = current.children.get(id);
+                if (next == null) {
+                    State s = new State();
+                    tb.addVertex(s);
+                    if (factor.getType() == RegexTreeNode.BASIC) {
+                        tb.addEdge(current.state, s, factor.getValue());
+                    } else {
+                        TNFA fragment = thompsonConstruction.translate(factor);
+                        fragment.getStartState().setType(State.MIDDLE);
+                        fragment.getAcceptingState().setType(State.MIDDLE);
+                        tb.merge(fragment.getTransitTable());
+                        tb.addEdge(current.state, fragment.getStartState(), 'ε');
+                        tb.addEdge(fragment.getAcceptingState(), s, 'ε');
+                    }
+                    next = new TrieNode(s);
+                    current.children.put(id, next);
+                }
+                current = next;
+            }
+            current.state.setType(State.ACCEPT);
+            TNFA ruleNFA = new TNFA(nfa.getStartState(), current.state, tb);
+            ruleNFA.setAlphabet(nfa.getAlphabet());
+            regexToNFA.put(r, ruleNFA);
+        }
+        return nfa;
+    }
+
+    private static final class TrieNode {
+        final State state;
+        final HashMap<Integer, TrieNode> children = new HashMap<>();
+
+        TrieNode(State state) {
+            this.state = state;
+        }
+    }
+
+    private static final class NodeKey {
+        private final int type;
+        private final char value;
+        private final int min;
+        private final int max;
+        private final int[] children;
+        private final int hash;
+
+        NodeKey(int type, char value, int min, int max, int[] children) {
+            this.type = type;
+            // the values of inner nodes are fixed by their types, and only a repetition has bounds
+            this.value = type == RegexTreeNode.BASIC ? value : 0;
+            this.min = type == RegexTreeNode.REPEAT ? min : 0;
+            this.max = type == RegexTreeNode.REPEAT ? max : 0;
+            this.children = children;
+            this.hash = 31 * (31 * (31 * (31 * type + this.value) + this.min) + this.max) + Arrays.hashCode(children);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof NodeKey))
+                return false;
+            NodeKey k = (NodeKey) obj;
+            return type == k.type && value == k.value && min == k.min && max == k.max
+                    && Arrays.equals(children, k.children);
+        }
+    }
+}
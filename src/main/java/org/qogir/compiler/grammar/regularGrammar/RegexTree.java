@@ -1,8 +1,15 @@
 package org.qogir.compiler.grammar.regularGrammar;
 
+import org.qogir.compiler.FA.AutomatonWriter;
 import org.qogir.compiler.util.tree.DefaultTree;
+import org.qogir.compiler.util.tree.DefaultTreeNode;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 
 public class RegexTree extends DefaultTree<RegexTreeNode> {
 
@@ -43,8 +50,92 @@ public class RegexTree extends DefaultTree<RegexTreeNode> {
         return str.toString();
     }
 
+    /**
+     * @return the number of nodes in the regex tree
+     */
+    public int size() {
+        if (this.root == null)
+            return 0;
+        int size = 0;
+        ArrayDeque<RegexTreeNode> queue = new ArrayDeque<>();
+        queue.add(this.root);
+        while (!queue.isEmpty()) {
+            RegexTreeNode node = queue.poll();
+            size++;
+            RegexTreeNode child = (RegexTreeNode) node.getFirstChild();
+            while (child != null) {
+                queue.add(child);
+                child = (RegexTreeNode) child.getNextSibling();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * format: {"value":"|","type":2,"children":[{"value":"a","type":0,"children":[]},{...}]}
+     * @return the regex tree in JSON, "null" for an empty tree
+     */
     public String export() {
-        String treeJson = "";
-        return treeJson;
+        StringWriter out = new StringWriter();
+        try {
+            export(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write the regex tree in the JSON format of {@link #export()} one node at a time.
+     * The nodes are visited by an explicit stack, so a deep tree does not overflow the call stack.
+     * @param out the writer, it is flushed and not closed
+     */
+    public void export(Writer out) throws IOException {
+        if (this.root == null) {
+            out.write("null");
+            out.flush();
+            return;
+        }
+        //the nodes whose children are being written, and the next child of each
+        ArrayList<DefaultTreeNode> parents = new ArrayList<>();
+        ArrayList<DefaultTreeNode> nextChild = new ArrayList<>();
+        writeNode(out, this.root);
+        parents.add(this.root);
+        nextChild.add(this.root.getFirstChild());
+        while (!parents.isEmpty()) {
+            int top = parents.size() - 1;
+            DefaultTreeNode child = nextChild.get(top);
+            if (child == null) {
+                out.write("]}");
+                parents.remove(top);
+                nextChild.remove(top);
+                continue;
+            }
+            if (child != parents.get(top).getFirstChild())
+                out.write(',');
+            nextChild.set(top, child.getNextSibling());
+            writeNode(out, (RegexTreeNode) child);
+            parents.add(child);
+            nextChild.add(child.getFirstChild());
+        }
+        out.flush();
+    }
+
+    private static void writeNode(Writer out, RegexTreeNode node) throws IOException {
+        out.write("{\"value\":");
+        AutomatonWriter.writeJsonString(out, node.getValue());
+        out.write(",\"type\":");
+        out.write(Integer.toString(node.getType()));
+        if (node.getType() == RegexTreeNode.REPEAT) {
+            out.write(",\"min\":");
+            out.write(Integer.toString(node.getMin()));
+            out.write(",\"max\":");
+            out.write(Integer.toString(node.getMax()));
+        }
+        if (node.getType() == RegexTreeNode.GROUP) {
+            out.write(",\"group\":");
+            out.write(Integer.toString(node.getGroup()));
+        }
+        out.write(",\"children\":[");
     }
 }
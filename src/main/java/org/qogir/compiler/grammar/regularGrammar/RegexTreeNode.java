@@ -8,7 +8,36 @@ public class RegexTreeNode extends DefaultTreeNode {
     @Serial
     private static final long serialVersionUID = 8199272493386097880L;
     private Character value;
-    private int type; //0-basic；1-concatenation；2-union； 3-kleene closure; 4-leftParenthesis; 5-rightParenthesis
+    private int type; //0-basic；1-concatenation；2-union； 3-kleene closure; 4-leftParenthesis; 5-rightParenthesis; 6-plus; 7-optional; 8-repeat; 9-group
+
+    /**
+     * The bounds of a repetition r{min,max}, max is {@link #UNBOUNDED} for r{min,}
+     */
+    private int min = 0;
+    private int max = UNBOUNDED;
+
+    /**
+     * The number of a capture group, counted by its '(' from 1
+     */
+    private int group = 0;
+
+    public static final int BASIC = 0;
+    public static final int CONCATENATION = 1;
+    public static final int UNION = 2;
+    public static final int CLOSURE = 3;
+    public static final int LEFT_PARENTHESIS = 4;
+    public static final int RIGHT_PARENTHESIS = 5;
+    public static final int PLUS = 6;
+    public static final int OPTIONAL = 7;
+    public static final int REPEAT = 8;
+    public static final int GROUP = 9;
+
+    public static final int UNBOUNDED = -1;
+
+    /**
+     * The greatest bound of a repetition
+     */
+    public static final int MAX_BOUND = 65535;
 
     public RegexTreeNode(Character ch, int t) {
         super();
@@ -38,6 +67,31 @@ public class RegexTreeNode extends DefaultTreeNode {
         return type;
     }
 
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @param min the least number of repetitions
+     * @param max the greatest number of repetitions, or {@link #UNBOUNDED}
+     */
+    public void setBounds(int min, int max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    public int getGroup() {
+        return group;
+    }
+
+    public void setGroup(int group) {
+        this.group = group;
+    }
+
     public RegexTreeNode getLastChild() {
 
         RegexTreeNode theNode = (RegexTreeNode) this.getFirstChild();
@@ -51,6 +105,10 @@ public class RegexTreeNode extends DefaultTreeNode {
 
     @Override
     public String toString() {
+        if (this.type == REPEAT)
+            return "{" + min + "," + (max == UNBOUNDED ? "" : max) + "}:" + this.type;
+        if (this.type == GROUP)
+            return "(" + group + ":" + this.type;
         return this.value + ":" + this.type;
     }
 }
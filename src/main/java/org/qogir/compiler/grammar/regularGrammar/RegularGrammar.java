@@ -7,7 +7,14 @@ import java.util.ArrayList;
 /**
  * Regular Grammar
  * The supported symbols: [A-Za-z] and ε;
- * The supported grammars: a|b, ab, a*, (a)
+ * The supported grammars: a|b, ab, a*, (a), and the repetitions
+ * + a+, one or more
+ * + a?, zero or one
+ * + a{m}, a{m,} and a{m,n}, from m to n times, n at most {@link RegexTreeNode#MAX_BOUND}
+ * No construction counts the repetitions, the NFA grows linearly with n. A repetition of a single symbol class,
+ * e.g. (a|b|c){1,64}, is a chain of states reading the class, one state per repetition by {@link ThompsonConstruction}
+ * and at most two by {@link ThompsonArena}, whatever the size of the class. Any other operand is unrolled into
+ * n copies, so r{m,n} holds n NFAs of r, and a large bound on a large operand makes a large NFA and DFA.
  * <p>
  * When instantiate a RegularGrammar object, only the inputs with " string := regular expression " form
  * are accepted. For example:
@@ -4,15 +4,17 @@ package org.qogir.compiler.grammar.regularGrammar;
 import org.qogir.compiler.FA.State;
 import org.qogir.compiler.util.graph.LabelEdge;
 import org.qogir.compiler.util.graph.LabeledDirectedGraph;
+import org.qogir.simulation.ConstructionLogger;
 
 import java.util.*;
 
 public class StateMinimization {
 
     /*
-     * 1. Start with an initial partition `P` with two groups:
-     *   - `A`: The group of accepting states.
+     * 1. Start with an initial partition `P` with the groups:
+     *   - `A_t`: The group of accepting states with the token t, one group for each token.
      *   - `NA`: The group non-accepting states.
+     *   Accepting states of different regexes are never merged, so the minimized DFA can still tell the tokens apart.
      *
      * 2. Loop:
      *    Construct P_new by refining the groups in `P`.
@@ -35,31 +37,32 @@ public class StateMinimization {
      * @return distinguished equivalent state groups
      */
     private HashMap<Integer, HashMap<Integer, State>> distinguishEquivalentState(RDFA dfa) {
-        // Queue for recording distinguish steps
-        ArrayDeque<String> stepQueue = new ArrayDeque<>();
+        // Distinguish steps are only recorded for the construction listeners
+        boolean logging = ConstructionLogger.isEnabled();
 
         // Initial partition P
         HashMap<Integer, HashMap<Integer, State>> P = new HashMap<>();
 
-        // Accepting states and non-accepting states
-        HashMap<Integer, State> A = new HashMap<>();
+        // Accepting states by token and non-accepting states
+        TreeMap<Integer, HashMap<Integer, State>> A = new TreeMap<>();
         HashMap<Integer, State> NA = new HashMap<>();
 
         // Init A and NA
         for (State s : dfa.getTransitTable().vertexSet()) {
-            if (s.getType() == 2)
-                A.put(s.getId(), s);
+            if (isAccepting(s))
+                A.computeIfAbsent(dfa.getAcceptingToken(s), t -> new HashMap<>()).put(s.getId(), s);
             else
                 NA.put(s.getId(), s);
         }
 
         // Add the initial groups to P
-        if (!A.isEmpty())
-            P.put(0, A);
+        for (HashMap<Integer, State> group : A.values())
+            P.put(P.size(), group);
         if (!NA.isEmpty())
-            P.put(1, NA);
+            P.put(P.size(), NA);
 
-        recordDistinguishSteps(stepQueue, P, "Initial Partition");
+        if (logging)
+            recordDistinguishSteps(P, "Initial Partition");
 
         // DFA alphabet and transition table
         ArrayList<Character> alphabet = dfa.getAlphabet();
@@ -137,11 +140,10 @@ public class StateMinimization {
                 }
             }
 
-            recordDistinguishSteps(stepQueue, P, "Refined Partition");
+            if (logging)
+                recordDistinguishSteps(P, "Refined Partition");
         }
 
-        showDistinguishSteps(stepQueue);
-
         return P;
     }
 
@@ -165,18 +167,23 @@ public class StateMinimization {
         HashMap<Integer, State> groupIdToState = new HashMap<>();
         HashMap<State, State> stateMapping = new HashMap<>();
 
-        // Step 3: Create states for each group
+        // Step 3: Create states for each group, the group of the start state becomes the start state
+        State start = dfa.getStartState();
         for (Map.Entry<Integer, HashMap<Integer, State>> group : groupSet.entrySet()) {
-            State representative = group.getValue().values().iterator().next();
+            State representative = group.getValue().get(start.getId()) == start ? start : group.getValue().values().iterator().next();
             State newState;
 
-            if (representative.getType() == 0) { // Initial state
+            if (representative == start) {
                 newState = minimizedDFA.getStartState();
+                if (isAccepting(start))
+                    newState.setType(State.ACCEPT);
             } else {
                 newState = new State();
                 newState.setType(representative.getType());
                 minimizedDFA.getTransitTable().addVertex(newState);
             }
+            if (isAccepting(representative))
+                minimizedDFA.setAcceptingToken(newState, dfa.getAcceptingToken(representative));
 
             groupIdToState.put(group.getKey(), representative);
             stateMapping.put(representative, newState);
@@ -203,32 +210,22 @@ public class StateMinimization {
         return minimizedDFA;
     }
 
+    private static boolean isAccepting(State s) {
+        return s.getType() == State.ACCEPT || s.getType() == State.ACCEPTANDSTART;
+    }
+
     /**
-     * Used for showing the distinguishing process of state miminization algorithm
+     * Used for showing the distinguishing process of state miminization algorithm.
+     * The step is delivered to the construction listeners {@link ConstructionLogger#step}.
      *
-     * @param stepQueue holds all distinguishing steps
      * @param GroupSet  is the set of equivalent state groups
      * @param memo      remarks
      */
-    private void recordDistinguishSteps(ArrayDeque<String> stepQueue, HashMap<Integer, HashMap<Integer, State>> GroupSet, String memo) {
+    private void recordDistinguishSteps(HashMap<Integer, HashMap<Integer, State>> GroupSet, String memo) {
         String str = "";
         str = GroupSetToString(GroupSet);
         str += ":" + memo;
-        stepQueue.add(str);
-    }
-
-    /**
-     * Display the equivalent state groups
-     *
-     * @param stepQueue holds all distinguishing steps
-     */
-    private void showDistinguishSteps(ArrayDeque<String> stepQueue) {
-        int step = 0;
-        String str = "";
-        while (!stepQueue.isEmpty()) {
-            str = stepQueue.poll();
-            System.out.println("Step" + step++ + ":\t" + str + "\r");
-        }
+        ConstructionLogger.step(ConstructionLogger.PHASE_MINIMIZE, str);
     }
 
     private String GroupSetToString(HashMap<Integer, HashMap<Integer, State>> GroupSet) {
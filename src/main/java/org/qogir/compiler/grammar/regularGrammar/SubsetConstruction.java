@@ -1,5 +1,6 @@
 package org.qogir.compiler.grammar.regularGrammar;
 
+import org.qogir.compiler.FA.FiniteAutomaton;
 import org.qogir.compiler.FA.State;
 import org.qogir.compiler.util.graph.LabelEdge;
 import org.qogir.compiler.util.graph.LabeledDirectedGraph;
@@ -14,6 +15,23 @@ import java.util.*;
  */
 public class SubsetConstruction {
 
+    /**
+     * The limits of the construction, null for no limit
+     */
+    private ConstructionBudget budget = null;
+
+    public ConstructionBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * @param budget the limits of the DFA, the construction throws a
+     *               {@link org.qogir.compiler.util.ConstructionBudgetExceededException} when it goes over them
+     */
+    public void setBudget(ConstructionBudget budget) {
+        this.budget = budget;
+    }
+
     /**
      * Eliminate all ε-transitions reachable from a single state in NFA through the epsilon closure operation.
      *
@@ -136,13 +154,29 @@ public class SubsetConstruction {
      * }
      */
 
+    /**
+     * Check if an NFA state set holds an accepting state.
+     * The accepting states are recognized by their types, so the NFA of a grammar with an accepting state
+     * for each regex and the ε-free NFA {@link ReducedNFA} are supported.
+     *
+     * @param ss a state set of NFA
+     * @return true if a state in ss is an accepting state
+     */
+    private boolean containsAcceptingState(HashMap<Integer, State> ss) {
+        for (State s : ss.values()) {
+            if (s.getType() == State.ACCEPT || s.getType() == State.ACCEPTANDSTART)
+                return true;
+        }
+        return false;
+    }
+
     /**
      * The main function of the subset construction algorithm.
      *
-     * @param tnfa the original TNFA
+     * @param tnfa the original NFA, a TNFA or an ε-free NFA
      * @return a DFA that accepts the same language as the original NFA
      */
-    public RDFA subSetConstruct(TNFA tnfa) {
+    public RDFA subSetConstruct(FiniteAutomaton tnfa) {
         RDFA dfa = new RDFA();
         LabeledDirectedGraph<State> tb = tnfa.getTransitTable();
         HashMap<State, HashMap<Integer, State>> dfa_map = dfa.getStateMappingBetweenDFAAndNFA();
@@ -154,7 +188,7 @@ public class SubsetConstruction {
         // If the accepting state of the NFA is reachable from the initial state of the NFA through ε-transitions,
         // then the initial state of the DFA should also be an accepting state
         State startState = dfa.getStartState();
-        if (start_states_epsilon_closure != null && start_states_epsilon_closure.containsKey(tnfa.getAcceptingState().getId())) {
+        if (start_states_epsilon_closure != null && containsAcceptingState(start_states_epsilon_closure)) {
             startState.setType(2);
         }
 
@@ -165,6 +199,11 @@ public class SubsetConstruction {
         Queue<HashMap<Integer, State>> Dstates = new LinkedList<>();
         Dstates.add(start_states_epsilon_closure);
 
+        // The states and edges are checked against the budget as they are added
+        ConstructionBudget.Meter meter = budget == null ? null : budget.start("subset construction");
+        int stateCount = 1;
+        long edgeCount = 0;
+
         // While there exists an unmarked state in Dstates
         while (!Dstates.isEmpty()) {
             // Dequeue the unprocessed state
@@ -203,7 +242,7 @@ public class SubsetConstruction {
                 // If U is not in Dstates, add it to Dstates, don't mark it, and put it into DTran[T, ch]
                 if (!is_in) {
                     T = new State();
-                    T.setType(U.containsKey(tnfa.getAcceptingState().getId()) ? 2 : 1);
+                    T.setType(containsAcceptingState(U) ? 2 : 1);
                     dfa.getTransitTable().addVertex(T);
                     dfa_map.put(T, U);
                     Dstates.add(U);
@@ -211,6 +250,11 @@ public class SubsetConstruction {
 
                 // Add the transition to the DFA transition table
                 dfa.getTransitTable().addEdge(current_state, T, ch);
+                if (meter != null) {
+                    if (!is_in)
+                        stateCount++;
+                    meter.check(stateCount, ++edgeCount);
+                }
             }
         }
 
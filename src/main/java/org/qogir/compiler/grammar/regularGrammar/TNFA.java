@@ -2,6 +2,7 @@ package org.qogir.compiler.grammar.regularGrammar;
 
 import org.qogir.compiler.FA.FiniteAutomaton;
 import org.qogir.compiler.FA.State;
+import org.qogir.compiler.util.graph.LabeledDirectedGraph;
 
 /**
  * A nondeterministic finite automaton (NFA) is a 5-tuple (S,∑,F,s0,sf). Here,
@@ -20,10 +21,11 @@ import org.qogir.compiler.FA.State;
 
 public class TNFA extends FiniteAutomaton {
 
-    private State acceptingState = new State();
+    private State acceptingState;
 
     public TNFA(){
         super();
+        acceptingState = new State();
         acceptingState.setType(State.ACCEPT);
         this.transitTable.addVertex(acceptingState);
     }
@@ -35,6 +37,21 @@ public class TNFA extends FiniteAutomaton {
         this.transitTable.addVertex(this.acceptingState);
     }
 
+    /**
+     * Build an NFA over an existing transition table without creating new states,
+     * e.g. the NFA of one regex inside the NFA of a grammar.
+     *
+     * @param startState     the start state
+     * @param acceptingState the accepting state
+     * @param transitTable   the transition table holding both states
+     */
+    public TNFA(State startState, State acceptingState, LabeledDirectedGraph<State> transitTable){
+        super(-1);
+        this.startState = startState;
+        this.acceptingState = acceptingState;
+        this.transitTable = transitTable;
+    }
+
     public State getAcceptingState() {
         return acceptingState;
     }
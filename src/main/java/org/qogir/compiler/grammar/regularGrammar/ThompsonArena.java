@@ -0,0 +1,490 @@
+package org.qogir.compiler.grammar.regularGrammar;
+
+import org.qogir.compiler.FA.State;
+import org.qogir.compiler.util.graph.LabeledDirectedGraph;
+
+import java.util.Arrays;
+
+/**
+ * The Thompson construction {@link ThompsonConstruction} into an arena of primitive states.
+ * A state of a Thompson NFA has at most two outgoing transitions, so the states of one or more NFAs are held in
+ * parallel int arrays, a state is an index into the arrays:
+ * + kind - {@link #CHAR}: one transition on label; {@link #SPLIT}: two ε-transitions; {@link #EPSILON}: one ε-transition;
+ *   {@link #MATCH}: the accepting state, no transition; {@link #SAVE}: one ε-transition which records the position
+ *   into the capture slot label; {@link #SET}: one transition on each symbol of the set label {@link #getSet}
+ * + label - the char of a CHAR state, the slot of a SAVE state, the index of the set of a SET state
+ * + out1 / out2 - the targets of the transitions, {@link #NONE} if there is none
+ * <p>
+ * The regex tree is read from a {@link RegexArena}, and each subtree is built as a fragment: its start state and
+ * the list of its dangling transitions, which are patched once the state they lead to is known.
+ * The list is threaded through the dangling slots themselves, so appending two lists costs O(1),
+ * and a concatenation patches the dangling transitions of the left fragment to the start of the right one,
+ * instead of adding an ε-transition between them. No fragment is copied, so the construction takes time and memory
+ * linear in the length of the regex.
+ * <p>
+ * Unlike {@link ThompsonConstruction}, the start state of an NFA may have incoming transitions, e.g. the start of
+ * "(a)*b" is the split of the closure.
+ * <p>
+ * r+ is r with a split back to its start, r? a split to r or past it. r{m,n} of a single symbol class,
+ * e.g. (a|b|c){1,64}, is a chain of n states reading the class as one SET state, the states from the m-th on
+ * behind a split which can leave the chain, so the NFA takes at most two states per repetition whatever the class.
+ * Any other r{m,n} builds r m times, then n-m times behind a split whose other transition goes past the rest,
+ * so each copy adds the states of r and one split. r{m,} loops on its last copy, or on the last state of the chain.
+ * <p>
+ * A capture group (r) numbered g is r between two SAVE states of the slots 2g and 2g+1, which record where the group
+ * starts and ends. The SAVE states are ε-transitions to every other consumer of the arena, {@link PikeVM} runs them.
+ */
+public class ThompsonArena {
+
+    public static final int NONE = -1;
+
+    public static final int CHAR = 0;
+    public static final int SPLIT = 1;
+    public static final int EPSILON = 2;
+    public static final int MATCH = 3;
+    public static final int SAVE = 4;
+    public static final int SET = 5;
+
+    private int[] kind;
+    private char[] label;
+    private int[] out1;
+    private int[] out2;
+    private int size = 0;
+
+    /**
+     * The sorted symbols of each SET state label
+     */
+    private char[][] sets = new char[4][];
+    private int setCount = 0;
+
+    /**
+     * The start state and the accepting state of each NFA built into the arena
+     */
+    private int[] starts = new int[4];
+    private int[] accepts = new int[4];
+    private int nfaCount = 0;
+
+    /**
+     * The fragment built last: its start state and the first and last slots of its dangling transitions.
+     * A slot is state * 2 for out1 and state * 2 + 1 for out2, a dangling slot holds the next slot of the list.
+     */
+    private int fragmentStart;
+    private int listHead;
+    private int listTail;
+
+    public ThompsonArena() {
+        this(16);
+    }
+
+    public ThompsonArena(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.kind = new int[capacity];
+        this.label = new char[capacity];
+        this.out1 = new int[capacity];
+        this.out2 = new int[capacity];
+    }
+
+    /**
+     * Build the NFA of a regex tree into the arena.
+     *
+     * @param regexArena the arena of the regex tree
+     * @param root the root of the regex tree, {@link RegexArena#NONE} for the empty regex
+     * @return the index of the NFA in this arena
+     */
+    public int build(RegexArena regexArena, int root) {
+        if (root == RegexArena.NONE)
+            epsilon();
+        else
+            fragment(regexArena, root);
+        int match = addState(MATCH, (char) 0);
+        patch(listHead, match);
+        if (nfaCount == starts.length) {
+            starts = Arrays.copyOf(starts, nfaCount << 1);
+            accepts = Arrays.copyOf(accepts, nfaCount << 1);
+        }
+        starts[nfaCount] = fragmentStart;
+        accepts[nfaCount] = match;
+        return nfaCount++;
+    }
+
+    private void fragment(RegexArena regexArena, int node) {
+        switch (regexArena.getType(node)) {
+            case RegexTreeNode.BASIC -> {
+                char c = regexArena.getValue(node);
+                if (c == 'ε') {
+                    epsilon();
+                } else {
+                    int s = addState(CHAR, c);
+                    fragmentStart = s;
+                    listHead = listTail = s * 2;
+                }
+            }
+            case RegexTreeNode.CONCATENATION -> {
+                int child = regexArena.getFirstChild(node);
+                fragment(regexArena, child);
+                int start = fragmentStart;
+                for (child = regexArena.getNextSibling(child); child != RegexArena.NONE; child = regexArena.getNextSibling(child)) {
+                    int head = listHead;
+                    fragment(regexArena, child);
+                    patch(head, fragmentStart);
+                }
+                fragmentStart = start;
+            }
+            case RegexTreeNode.UNION -> {
+                //a chain of splits, each to one alternative and to the next split, the last split to the last two
+                int first = regexArena.getFirstChild(node);
+                int split = NONE;
+                int start = NONE;
+                int head = NONE;
+                int tail = NONE;
+                for (int child = first; child != RegexArena.NONE; child = regexArena.getNextSibling(child)) {
+                    boolean last = regexArena.getNextSibling(child) == RegexArena.NONE;
+                    fragment(regexArena, child);
+                    if (child == first && last) {
+                        //a union of one alternative
+                        return;
+                    }
+                    int target = fragmentStart;
+                    if (!last) {
+                        int s = addState(SPLIT, (char) 0);
+                        out1[s] = target;
+                        target = s;
+                    }
+                    if (split == NONE)
+                        start = target;
+                    else
+                        out2[split] = target;
+                    if (!last)
+                        split = target;
+                    if (head == NONE) {
+                        head = listHead;
+                    } else {
+                        setSlot(tail, listHead);
+                    }
+                    tail = listTail;
+                }
+                fragmentStart = start;
+                listHead = head;
+                listTail = tail;
+            }
+            case RegexTreeNode.PLUS -> {
+                fragment(regexArena, regexArena.getFirstChild(node));
+                int s = addState(SPLIT, (char) 0);
+                out1[s] = fragmentStart;
+                patch(listHead, s);
+                listHead = listTail = s * 2 + 1;
+            }
+            case RegexTreeNode.OPTIONAL -> {
+                int s = addState(SPLIT, (char) 0);
+                fragment(regexArena, regexArena.getFirstChild(node));
+                out1[s] = fragmentStart;
+                setSlot(listTail, s * 2 + 1);
+                fragmentStart = s;
+                listTail = s * 2 + 1;
+            }
+            case RegexTreeNode.GROUP -> {
+                int group = regexArena.getGroup(node);
+                int open = addState(SAVE, (char) (group * 2));
+                fragment(regexArena, regexArena.getFirstChild(node));
+                out1[open] = fragmentStart;
+                int close = addState(SAVE, (char) (group * 2 + 1));
+                patch(listHead, close);
+                fragmentStart = open;
+                listHead = listTail = close * 2;
+            }
+            case RegexTreeNode.REPEAT -> repeat(regexArena, regexArena.getFirstChild(node),
+                    regexArena.getMin(node), regexArena.getMax(node));
+            case RegexTreeNode.CLOSURE -> {
+                int s = addState(SPLIT, (char) 0);
+                fragment(regexArena, regexArena.getFirstChild(node));
+                out1[s] = fragmentStart;
+                patch(listHead, s);
+                fragmentStart = s;
+                listHead = listTail = s * 2 + 1;
+            }
+            default -> throw new IllegalStateException("Unknown regex node type " + regexArena.getType(node) + ".");
+        }
+    }
+
+    /**
+     * Build child{min,max}: min copies of child, then max-min copies each behind a split which can skip the rest,
+     * or a loop on the last copy if max is unbounded.
+     */
+    private void repeat(RegexArena regexArena, int child, int min, int max) {
+        char[] symbols = symbols(regexArena, child);
+        if (symbols != null && setCount <= Character.MAX_VALUE) {
+            repeatSymbols(symbols, min, max);
+            return;
+        }
+        int count = max == RegexTreeNode.UNBOUNDED ? Math.max(min, 1) : max;
+        if (count == 0) {
+            epsilon();
+            return;
+        }
+        int start = NONE;
+        //the dangling transitions of the last copy, and the splits skipping the rest
+        int pendingHead = NONE;
+        int exitHead = NONE;
+        int exitTail = NONE;
+        for (int i = 0; i < count; i++) {
+            int entry;
+            if (i >= min) {
+                int s = addState(SPLIT, (char) 0);
+                if (exitHead == NONE)
+                    exitHead = s * 2 + 1;
+                else
+                    setSlot(exitTail, s * 2 + 1);
+                exitTail = s * 2 + 1;
+                fragment(regexArena, child);
+                out1[s] = fragmentStart;
+                entry = s;
+            } else {
+                fragment(regexArena, child);
+                entry = fragmentStart;
+            }
+            if (start == NONE)
+                start = entry;
+            else
+                patch(pendingHead, entry);
+            if (max == RegexTreeNode.UNBOUNDED && i == count - 1) {
+                int s = addState(SPLIT, (char) 0);
+                out1[s] = fragmentStart;
+                patch(listHead, s);
+                listHead = listTail = s * 2 + 1;
+            }
+            pendingHead = listHead;
+        }
+        if (exitHead != NONE) {
+            setSlot(listTail, exitHead);
+            listTail = exitTail;
+        }
+        fragmentStart = start;
+    }
+
+    /**
+     * @return the sorted symbols of a node which reads exactly one symbol, i.e. a letter or a union of letters,
+     * null for any other node
+     */
+    private static char[] symbols(RegexArena regexArena, int node) {
+        StringBuilder symbols = new StringBuilder();
+        if (!collectSymbols(regexArena, node, symbols))
+            return null;
+        char[] sorted = symbols.toString().toCharArray();
+        Arrays.sort(sorted);
+        int n = 0;
+        for (char c : sorted)
+            if (n == 0 || sorted[n - 1] != c)
+                sorted[n++] = c;
+        return Arrays.copyOf(sorted, n);
+    }
+
+    private static boolean collectSymbols(RegexArena regexArena, int node, StringBuilder symbols) {
+        if (regexArena.getType(node) == RegexTreeNode.BASIC) {
+            symbols.append(regexArena.getValue(node));
+            return regexArena.getValue(node) != 'ε';
+        }
+        if (regexArena.getType(node) != RegexTreeNode.UNION)
+            return false;
+        for (int c = regexArena.getFirstChild(node); c != RegexArena.NONE; c = regexArena.getNextSibling(c))
+            if (!collectSymbols(regexArena, c, symbols))
+                return false;
+        return true;
+    }
+
+    /**
+     * Build a chain of max states reading the symbols, or of min states looping on the last one if max is unbounded.
+     * The states from the min-th on are behind a split to the state or out of the chain.
+     */
+    private void repeatSymbols(char[] symbols, int min, int max) {
+        boolean unbounded = max == RegexTreeNode.UNBOUNDED;
+        int count = unbounded ? min + 1 : max;
+        if (count == 0) {
+            epsilon();
+            return;
+        }
+        int set = NONE;
+        if (symbols.length > 1) {
+            if (setCount == sets.length)
+                sets = Arrays.copyOf(sets, setCount << 1);
+            sets[setCount] = symbols;
+            set = setCount++;
+        }
+        int start = NONE;
+        int previous = NONE;
+        int exitHead = NONE;
+        int exitTail = NONE;
+        for (int i = 0; i < count; i++) {
+            int reader = set == NONE ? addState(CHAR, symbols[0]) : addState(SET, (char) set);
+            int entry = reader;
+            if (i >= min) {
+                entry = addState(SPLIT, (char) 0);
+                out1[entry] = reader;
+                if (exitHead == NONE)
+                    exitHead = entry * 2 + 1;
+                else
+                    setSlot(exitTail, entry * 2 + 1);
+                exitTail = entry * 2 + 1;
+            }
+            if (previous == NONE)
+                start = entry;
+            else
+                out1[previous] = entry;
+            previous = reader;
+        }
+        if (unbounded) {
+            //the last state loops to its split
+            out1[previous] = exitTail >> 1;
+        } else {
+            //the last state leaves the chain
+            if (exitHead == NONE)
+                exitHead = previous * 2;
+            else
+                setSlot(exitTail, previous * 2);
+            exitTail = previous * 2;
+        }
+        fragmentStart = start;
+        listHead = exitHead;
+        listTail = exitTail;
+    }
+
+    private void epsilon() {
+        int s = addState(EPSILON, (char) 0);
+        fragmentStart = s;
+        listHead = listTail = s * 2;
+    }
+
+    /**
+     * Point the dangling slots of a list to a state
+     */
+    private void patch(int slot, int target) {
+        while (slot != NONE) {
+            int next = getSlot(slot);
+            setSlot(slot, target);
+            slot = next;
+        }
+    }
+
+    private int getSlot(int slot) {
+        return (slot & 1) == 0 ? out1[slot >> 1] : out2[slot >> 1];
+    }
+
+    private void setSlot(int slot, int value) {
+        if ((slot & 1) == 0)
+            out1[slot >> 1] = value;
+        else
+            out2[slot >> 1] = value;
+    }
+
+    private int addState(int k, char c) {
+        if (size == kind.length) {
+            int capacity = size << 1;
+            kind = Arrays.copyOf(kind, capacity);
+            label = Arrays.copyOf(label, capacity);
+            out1 = Arrays.copyOf(out1, capacity);
+            out2 = Arrays.copyOf(out2, capacity);
+        }
+        kind[size] = k;
+        label[size] = c;
+        out1[size] = NONE;
+        out2[size] = NONE;
+        return size++;
+    }
+
+    public int getKind(int state) {
+        return kind[state];
+    }
+
+    public char getLabel(int state) {
+        return label[state];
+    }
+
+    /**
+     * @return the sorted symbols a SET state reads
+     */
+    public char[] getSet(int state) {
+        return sets[label[state]];
+    }
+
+    /**
+     * @return true if the state is a CHAR or SET state with a transition on c
+     */
+    public boolean reads(int state, char c) {
+        return kind[state] == CHAR ? label[state] == c
+                : kind[state] == SET && Arrays.binarySearch(sets[label[state]], c) >= 0;
+    }
+
+    public int getOut1(int state) {
+        return out1[state];
+    }
+
+    public int getOut2(int state) {
+        return out2[state];
+    }
+
+    /**
+     * @return the number of states in the arena
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getStartState(int nfa) {
+        return starts[nfa];
+    }
+
+    public int getAcceptingState(int nfa) {
+        return accepts[nfa];
+    }
+
+    /**
+     * Remove all states, the arrays are kept for reuse.
+     */
+    public void clear() {
+        size = 0;
+        nfaCount = 0;
+        setCount = 0;
+    }
+
+    /**
+     * Convert an NFA of the arena into a {@link TNFA} over a transition table of its own.
+     * The states are the states of the arena reachable from the start state.
+     *
+     * @param nfa the index of the NFA
+     * @return an NFA with one accepting state
+     */
+    public TNFA toTNFA(int nfa) {
+        State[] states = new State[size];
+        int[] queue = new int[size];
+        int count = 0;
+        int start = starts[nfa];
+        LabeledDirectedGraph<State> table = new LabeledDirectedGraph<>();
+        states[start] = new State();
+        table.addVertex(states[start]);
+        queue[count++] = start;
+        for (int head = 0; head < count; head++) {
+            int s = queue[head];
+            for (int t : new int[]{out1[s], out2[s]}) {
+                if (t == NONE)
+                    continue;
+                if (states[t] == null) {
+                    states[t] = new State();
+                    table.addVertex(states[t]);
+                    queue[count++] = t;
+                }
+                if (kind[s] == SET) {
+                    for (char c : sets[label[s]])
+                        table.addEdge(states[s], states[t], c);
+                } else {
+                    table.addEdge(states[s], states[t], kind[s] == CHAR ? label[s] : 'ε');
+                }
+            }
+        }
+        State startState = states[start];
+        State acceptingState = states[accepts[nfa]];
+        for (int i = 0; i < count; i++)
+            states[queue[i]].setType(State.MIDDLE);
+        startState.setType(State.START);
+        acceptingState.setType(State.ACCEPT);
+        return new TNFA(startState, acceptingState, table);
+    }
+}
@@ -3,9 +3,17 @@ package org.qogir.compiler.grammar.regularGrammar;
 import org.qogir.compiler.FA.State;
 import org.qogir.compiler.util.tree.DefaultTreeNode;
 
+import java.util.ArrayList;
+
 /**
  * An implementation of the Thompson construction algorithm for converting a RegexTree into an NFA.
  * It takes a RegexTreeNode as input and returns a TNFA.
+ * <p>
+ * r+ and r? share one NFA of r, r+ is the closure without the ε-transition skipping r.
+ * A repeat r{m,n} of a single symbol class, e.g. (a|b|c){1,64}, is a chain of n+1 states with a transition on
+ * each symbol between neighbours, so no NFA of r is copied. Any other r{m,n} is unrolled into m copies of r followed
+ * by n-m optional copies, each with an ε-transition to the accepting state; r{m,} loops on its last copy.
+ * A capture group (r) is the NFA of r, the groups are recorded by {@link PikeVM} only.
  *
  * @author FluffiLyn,
  * @author hatimi-master
@@ -22,6 +30,8 @@ public class ThompsonConstruction {
 
         if (node == null)
             return null;
+        if (node.getType() == RegexTreeNode.GROUP)
+            return translate((RegexTreeNode) node.getFirstChild());
 
         TNFA tnfa = new TNFA();
         // Type 0: Any char
@@ -108,6 +118,98 @@ public class ThompsonConstruction {
             closure_NFA.getStartState().setType(State.MIDDLE);
             closure_NFA.getAcceptingState().setType(State.MIDDLE);
         }
+        // Type 6: plus, the closure without the ε-transition skipping the NFA
+        else if (node.getType() == RegexTreeNode.PLUS) {
+            TNFA plus_NFA = translate((RegexTreeNode) node.getFirstChild());
+            plus_NFA.getTransitTable().addEdge(plus_NFA.getAcceptingState(), plus_NFA.getStartState(), 'ε');
+            tnfa.getTransitTable().addEdge(tnfa.getStartState(), plus_NFA.getStartState(), 'ε');
+            tnfa.getTransitTable().addEdge(plus_NFA.getAcceptingState(), tnfa.getAcceptingState(), 'ε');
+            tnfa.getTransitTable().merge(plus_NFA.getTransitTable());
+            plus_NFA.getStartState().setType(State.MIDDLE);
+            plus_NFA.getAcceptingState().setType(State.MIDDLE);
+        }
+        // Type 7: optional, the NFA or the ε-transition skipping it
+        else if (node.getType() == RegexTreeNode.OPTIONAL) {
+            TNFA optional_NFA = translate((RegexTreeNode) node.getFirstChild());
+            tnfa.getTransitTable().addEdge(tnfa.getStartState(), optional_NFA.getStartState(), 'ε');
+            tnfa.getTransitTable().addEdge(optional_NFA.getAcceptingState(), tnfa.getAcceptingState(), 'ε');
+            tnfa.getTransitTable().addEdge(tnfa.getStartState(), tnfa.getAcceptingState(), 'ε');
+            tnfa.getTransitTable().merge(optional_NFA.getTransitTable());
+            optional_NFA.getStartState().setType(State.MIDDLE);
+            optional_NFA.getAcceptingState().setType(State.MIDDLE);
+        }
+        // Type 8: repeat
+        else if (node.getType() == RegexTreeNode.REPEAT) {
+            RegexTreeNode child = (RegexTreeNode) node.getFirstChild();
+            ArrayList<Character> symbols = new ArrayList<>();
+            if (singleSymbols(child, symbols))
+                repeatSymbols(tnfa, symbols, node.getMin(), node.getMax());
+            else
+                repeatCopies(tnfa, child, node.getMin(), node.getMax());
+        }
         return tnfa;
     }
+
+    /**
+     * @param node a regex tree node
+     * @param symbols receives the symbols of the node
+     * @return true if the node reads exactly one symbol, i.e. a letter or a union of letters
+     */
+    private static boolean singleSymbols(RegexTreeNode node, ArrayList<Character> symbols) {
+        if (node.getType() == RegexTreeNode.BASIC) {
+            if (node.getValue() == 'ε')
+                return false;
+            if (!symbols.contains(node.getValue()))
+                symbols.add(node.getValue());
+            return true;
+        }
+        if (node.getType() != RegexTreeNode.UNION)
+            return false;
+        for (DefaultTreeNode c = node.getFirstChild(); c != null; c = c.getNextSibling())
+            if (!singleSymbols((RegexTreeNode) c, symbols))
+                return false;
+        return true;
+    }
+
+    /**
+     * A chain of states counting the symbols read, the states from the min-th on lead to the accepting state
+     */
+    private static void repeatSymbols(TNFA tnfa, ArrayList<Character> symbols, int min, int max) {
+        int top = max == RegexTreeNode.UNBOUNDED ? min : max;
+        State[] chain = new State[top + 1];
+        for (int i = 0; i <= top; i++) {
+            chain[i] = new State();
+            tnfa.getTransitTable().addVertex(chain[i]);
+            if (i > 0)
+                for (Character c : symbols)
+                    tnfa.getTransitTable().addEdge(chain[i - 1], chain[i], c);
+            if (i >= min)
+                tnfa.getTransitTable().addEdge(chain[i], tnfa.getAcceptingState(), 'ε');
+        }
+        if (max == RegexTreeNode.UNBOUNDED)
+            for (Character c : symbols)
+                tnfa.getTransitTable().addEdge(chain[top], chain[top], c);
+        tnfa.getTransitTable().addEdge(tnfa.getStartState(), chain[0], 'ε');
+    }
+
+    /**
+     * min copies of the NFA of node, then max-min optional copies, or a loop on the last copy if max is unbounded
+     */
+    private void repeatCopies(TNFA tnfa, RegexTreeNode node, int min, int max) {
+        State last = tnfa.getStartState();
+        int count = max == RegexTreeNode.UNBOUNDED ? Math.max(min, 1) : max;
+        for (int i = 0; i < count; i++) {
+            if (i >= min)
+                tnfa.getTransitTable().addEdge(last, tnfa.getAcceptingState(), 'ε');
+            TNFA copy = translate(node);
+            tnfa.getTransitTable().merge(copy.getTransitTable());
+            tnfa.getTransitTable().addEdge(last, copy.getStartState(), 'ε');
+            copy.getStartState().setType(State.MIDDLE);
+            copy.getAcceptingState().setType(State.MIDDLE);
+            if (max == RegexTreeNode.UNBOUNDED && i == count - 1)
+                tnfa.getTransitTable().addEdge(copy.getAcceptingState(), copy.getStartState(), 'ε');
+            last = copy.getAcceptingState();
+        }
+        tnfa.getTransitTable().addEdge(last, tnfa.getAcceptingState(), 'ε');
+    }
 }
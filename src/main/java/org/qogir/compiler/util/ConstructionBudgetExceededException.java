@@ -0,0 +1,78 @@
+package org.qogir.compiler.util;
+
+import java.io.Serial;
+import java.util.List;
+
+/**
+ * Thrown when a construction goes over a limit of its {@code ConstructionBudget}, e.g. a subset construction
+ * whose DFA has more states than allowed. The exception tells which limit was exceeded, in which phase,
+ * and, when the construction was for a regular grammar, which rules exceed the limit on their own.
+ */
+public class ConstructionBudgetExceededException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1630909172670999135L;
+
+    public static final String STATES = "states";
+    public static final String EDGES = "edges";
+    public static final String HEAP = "heap bytes";
+    public static final String TIME = "milliseconds";
+
+    private final String phase;
+    private final String limit;
+    private final long value;
+    private final long bound;
+    private final List<String> rules;
+
+    /**
+     * @param phase the phase of the construction, e.g. "subset construction"
+     * @param limit the limit exceeded, {@link #STATES}, {@link #EDGES}, {@link #HEAP} or {@link #TIME}
+     * @param value the value reached
+     * @param bound the bound of the limit
+     */
+    public ConstructionBudgetExceededException(String phase, String limit, long value, long bound) {
+        super("The " + phase + " exceeded " + bound + " " + limit + " (" + value + ").");
+        this.phase = phase;
+        this.limit = limit;
+        this.value = value;
+        this.bound = bound;
+        this.rules = List.of();
+    }
+
+    /**
+     * The same limit exceeded by the construction of a regular grammar
+     * @param cause the exception of the construction
+     * @param rules the names of the offending rules
+     */
+    public ConstructionBudgetExceededException(ConstructionBudgetExceededException cause, List<String> rules) {
+        super("The " + cause.phase + " exceeded " + cause.bound + " " + cause.limit + " (" + cause.value + ") for the rules " + rules + ".", cause);
+        this.phase = cause.phase;
+        this.limit = cause.limit;
+        this.value = cause.value;
+        this.bound = cause.bound;
+        this.rules = List.copyOf(rules);
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public String getLimit() {
+        return limit;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public long getBound() {
+        return bound;
+    }
+
+    /**
+     * @return the names of the rules which exceed the limit, all rules if only their combination does,
+     * empty if the construction was not for a grammar
+     */
+    public List<String> getRules() {
+        return rules;
+    }
+}
@@ -0,0 +1,250 @@
+package org.qogir.compiler.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A growing log of ints held outside the Java heap, in direct buffers of {@link #CHUNK_INTS} ints.
+ * The logs of a {@link Budget} share a limit on their direct memory. When a new chunk would exceed it,
+ * the oldest cold chunk of a log is written to the spill file of the log and its buffer is dropped:
+ * + a position below {@link #markCold} may be spilled, and is read back from the file when it is needed
+ * + a position below {@link #release} is never read again, and its chunk is dropped without being written
+ * A dropped buffer is freed by the garbage collector.
+ */
+public class OffHeapIntLog implements Closeable {
+
+    public static final int CHUNK_INTS = 1 << 18;
+
+    private static final int CHUNK_BYTES = CHUNK_INTS * Integer.BYTES;
+
+    /**
+     * The ints read together from the spill file
+     */
+    private static final int BLOCK_INTS = 1024;
+
+    /**
+     * A limit on the direct memory of a group of logs, and the bytes they hold
+     */
+    public static class Budget {
+        private final long limit;
+        private final Path directory;
+        private final ArrayList<OffHeapIntLog> logs = new ArrayList<>();
+        private long resident;
+        private long peak;
+        private long spilled;
+
+        /**
+         * @param limit the direct memory in bytes before chunks are spilled
+         * @param directory the directory of the spill files, null for the temp directory
+         */
+        public Budget(long limit, Path directory) {
+            this.limit = limit;
+            this.directory = directory;
+        }
+
+        /**
+         * Reserve direct memory, spilling the cold chunks of the logs in the order they were created.
+         * The reservation succeeds even if no chunk is cold enough to be spilled.
+         */
+        public void reserve(long bytes) {
+            while (resident + bytes > limit && spillOne())
+                ;
+            resident += bytes;
+            peak = Math.max(peak, resident);
+        }
+
+        public void free(long bytes) {
+            resident -= bytes;
+        }
+
+        private boolean spillOne() {
+            for (OffHeapIntLog log : logs) {
+                if (log.spillOldest())
+                    return true;
+            }
+            return false;
+        }
+
+        public long getLimit() {
+            return limit;
+        }
+
+        public long getResidentBytes() {
+            return resident;
+        }
+
+        public long getPeakResidentBytes() {
+            return peak;
+        }
+
+        public long getSpilledBytes() {
+            return spilled;
+        }
+    }
+
+    private final Budget budget;
+
+    private final String name;
+
+    private ByteBuffer[] chunks = new ByteBuffer[16];
+
+    private boolean[] onDisk = new boolean[16];
+
+    private long size;
+
+    private long coldBefore;
+
+    private long releasedBefore;
+
+    /**
+     * The oldest chunk which may be resident
+     */
+    private int firstResident;
+
+    private Path spillPath;
+
+    private FileChannel spill;
+
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_INTS * Integer.BYTES).order(ByteOrder.nativeOrder());
+
+    private long blockStart = -1;
+
+    /**
+     * @param budget the budget the log reserves its chunks from
+     * @param name a name for the spill file
+     */
+    public OffHeapIntLog(Budget budget, String name) {
+        this.budget = budget;
+        this.name = name;
+        budget.logs.add(this);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public void append(int value) {
+        int c = (int) (size / CHUNK_INTS);
+        if (c == chunks.length) {
+            chunks = Arrays.copyOf(chunks, c << 1);
+            onDisk = Arrays.copyOf(onDisk, c << 1);
+        }
+        if (chunks[c] == null) {
+            budget.reserve(CHUNK_BYTES);
+            chunks[c] = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+        }
+        chunks[c].putInt((int) (size % CHUNK_INTS) * Integer.BYTES, value);
+        size++;
+    }
+
+    public int get(long position) {
+        if (position < releasedBefore || position >= size)
+            throw new IndexOutOfBoundsException("The position " + position + " is not in the log " + name + ".");
+        ByteBuffer chunk = chunks[(int) (position / CHUNK_INTS)];
+        if (chunk != null)
+            return chunk.getInt((int) (position % CHUNK_INTS) * Integer.BYTES);
+        return readSpilled(position);
+    }
+
+    /**
+     * Allow the positions below a position to be spilled.
+     */
+    public void markCold(long before) {
+        coldBefore = Math.max(coldBefore, Math.min(before, size));
+    }
+
+    /**
+     * Drop the positions below a position, they can not be read any more.
+     */
+    public void release(long before) {
+        releasedBefore = Math.max(releasedBefore, Math.min(before, size));
+        markCold(releasedBefore);
+        int last = (int) (releasedBefore / CHUNK_INTS);
+        for (int c = firstResident; c < last; c++) {
+            if (chunks[c] != null) {
+                chunks[c] = null;
+                budget.free(CHUNK_BYTES);
+            }
+        }
+        firstResident = Math.max(firstResident, last);
+    }
+
+    /**
+     * Write the oldest resident chunk below the cold mark to the spill file.
+     * @return false if there is no such chunk
+     */
+    private boolean spillOldest() {
+        int last = (int) (coldBefore / CHUNK_INTS);
+        for (int c = firstResident; c < last; c++) {
+            if (chunks[c] == null)
+                continue;
+            try {
+                if (spill == null) {
+                    spillPath = budget.directory == null ? Files.createTempFile(name, ".spill")
+                            : Files.createTempFile(budget.directory, name, ".spill");
+                    spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.DELETE_ON_CLOSE);
+                }
+                ByteBuffer bytes = chunks[c].duplicate().clear();
+                long position = (long) c * CHUNK_BYTES;
+                while (bytes.hasRemaining())
+                    position += spill.write(bytes, position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            chunks[c] = null;
+            onDisk[c] = true;
+            firstResident = c + 1;
+            budget.free(CHUNK_BYTES);
+            budget.spilled += CHUNK_BYTES;
+            return true;
+        }
+        return false;
+    }
+
+    private int readSpilled(long position) {
+        if (!onDisk[(int) (position / CHUNK_INTS)])
+            throw new IllegalStateException("The position " + position + " of the log " + name + " is released.");
+        if (blockStart < 0 || position < blockStart || position >= blockStart + BLOCK_INTS) {
+            blockStart = position - position % BLOCK_INTS;
+            block.clear();
+            try {
+                long at = blockStart * Integer.BYTES;
+                while (block.hasRemaining()) {
+                    int n = spill.read(block, at);
+                    if (n < 0)
+                        break;
+                    at += n;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return block.getInt((int) (position - blockStart) * Integer.BYTES);
+    }
+
+    /**
+     * Drop all chunks and delete the spill file.
+     */
+    @Override
+    public void close() throws IOException {
+        for (int c = 0; c < chunks.length; c++) {
+            if (chunks[c] != null) {
+                chunks[c] = null;
+                budget.free(CHUNK_BYTES);
+            }
+        }
+        budget.logs.remove(this);
+        if (spill != null)
+            spill.close();
+    }
+}
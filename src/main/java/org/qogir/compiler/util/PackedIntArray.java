@@ -0,0 +1,91 @@
+package org.qogir.compiler.util;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * An immutable int array stored in the narrowest of byte, short and int.
+ * The values are stored relative to the minimum value, e.g. the values -1..200 fit in bytes.
+ */
+public final class PackedIntArray implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 2391722617352017815L;
+
+    private final int width;
+    private final int offset;
+    private final int length;
+    private final byte[] bytes;
+    private final short[] shorts;
+    private final int[] ints;
+
+    private PackedIntArray(int[] values, int from, int to) {
+        int min = 0;
+        long max = 0;
+        if (to > from) {
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            for (int i = from; i < to; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+            }
+        }
+        long range = max - min;
+        this.offset = min;
+        this.length = to - from;
+        if (range <= 0xFF) {
+            width = 1;
+            bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = (byte) (values[from + i] - min);
+            shorts = null;
+            ints = null;
+        } else if (range <= 0xFFFF) {
+            width = 2;
+            shorts = new short[length];
+            for (int i = 0; i < length; i++)
+                shorts[i] = (short) (values[from + i] - min);
+            bytes = null;
+            ints = null;
+        } else {
+            width = 4;
+            ints = new int[length];
+            System.arraycopy(values, from, ints, 0, length);
+            bytes = null;
+            shorts = null;
+        }
+    }
+
+    public static PackedIntArray of(int[] values) {
+        return new PackedIntArray(values, 0, values.length);
+    }
+
+    public static PackedIntArray of(int[] values, int from, int to) {
+        return new PackedIntArray(values, from, to);
+    }
+
+    public int get(int i) {
+        return switch (width) {
+            case 1 -> (bytes[i] & 0xFF) + offset;
+            case 2 -> (shorts[i] & 0xFFFF) + offset;
+            default -> ints[i];
+        };
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the bytes of an element, i.e. 1, 2 or 4
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * @return the bytes of the elements
+     */
+    public long byteSize() {
+        return (long) width * length;
+    }
+}
@@ -25,28 +25,22 @@ public class LabeledDirectedGraph<V> implements Serializable {
         return edgeSet;
     }
 
+    /**
+     * Vertices and edges are kept in hash sets, so the lookups are O(1).
+     * The vertices are compared by equals(Object), i.e. by identity for {@code State}.
+     */
     public boolean containsVertex(V v){
-        for(V vertex : vertexSet){
-            if(v.equals(vertex))
-                return true;
-        }
-        return false;
+        return vertexSet.contains(v);
     }
 
     public boolean containsEdge(LabelEdge e){
-        for(LabelEdge edge : edgeSet){
-            if(e.equals(edge))
-                return true;
-        }
-        return false;
+        return edgeSet.contains(e);
     }
 
     public boolean containsEdge(V source, V target, Character label){
-        for(LabelEdge edge : edgeSet){
-            if(edge.getSource().equals(source)&&edge.getTarget().equals(target)&&edge.getLabel().equals(label))
-                return true;
-        }
-        return false;
+        if(source == null || target == null || label == null)
+            return false;
+        return edgeSet.contains(new LabelEdge(source, target, label));
     }
 
     public boolean addVertex(V v){
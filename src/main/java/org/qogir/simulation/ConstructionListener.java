@@ -0,0 +1,26 @@
+package org.qogir.simulation;
+
+/**
+ * Receives the construction events of a scanner: one {@link ConstructionStatistics} for each finished phase
+ * (parse, Thompson, subset, minimize) and the intermediate steps of a phase, e.g. the partitions of the
+ * state minimization algorithm.
+ * Listeners are registered by {@link ConstructionLogger#addListener} and are called on the constructing thread.
+ */
+public interface ConstructionListener {
+
+    /**
+     * Called when a construction phase is finished.
+     *
+     * @param statistics timing, sizes and memory of the phase
+     */
+    void phaseFinished(ConstructionStatistics statistics);
+
+    /**
+     * Called for every intermediate step of a phase.
+     *
+     * @param phase the phase, one of the {@code ConstructionLogger.PHASE_*} names
+     * @param step  the description of the step
+     */
+    default void stepRecorded(String phase, String step) {
+    }
+}
@@ -1,17 +1,326 @@
 package org.qogir.simulation;
 
+import jdk.jfr.EventType;
+import org.qogir.compiler.FA.FiniteAutomaton;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
 import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The construction event surface of the scanner.
+ * Every phase of the construction (parse, Thompson, subset, minimize) is timed by
+ * <pre>
+ *     long start = ConstructionLogger.begin();
+ *     try {
+ *         ... construct ...
+ *         if (start != 0)
+ *             ConstructionLogger.end(ConstructionLogger.PHASE_SUBSET, subject, start, nfa, dfa);
+ *     } finally {
+ *         ConstructionLogger.cancel(start);
+ *     }
+ * </pre>
+ * and reported as a {@link ConstructionPhaseEvent} to JFR and as {@link ConstructionStatistics} to the registered
+ * {@link ConstructionListener}s.
+ * When no listener is registered and the JFR event is disabled, {@link #begin()} returns 0 and nothing else is done,
+ * so the construction pays one volatile read per phase, and the heap is only sampled while a phase runs.
+ * <p>
+ * A ConstructionLogger object is a listener which holds all statistics and steps in a queue, e.g.
+ * <pre>
+ *     ConstructionLogger logger = new ConstructionLogger();
+ *     ConstructionLogger.addListener(logger);
+ *     scanner.minimizeDFA(dfa);
+ *     System.out.println(logger);
+ * </pre>
+ */
+public class ConstructionLogger implements ConstructionListener {
+
+    public static final String PHASE_PARSE = "parse";
+    public static final String PHASE_THOMPSON = "thompson";
+    public static final String PHASE_SUBSET = "subset";
+    public static final String PHASE_MINIMIZE = "minimize";
+    public static final String PHASE_NFA_REDUCTION = "reduce";
 
-public class ConstructionLogger{
+    private static final ConstructionListener[] NO_LISTENERS = new ConstructionListener[0];
 
-    private ArrayDeque<String> stepQueue;
+    private static volatile ConstructionListener[] listeners = NO_LISTENERS;
 
-    public ConstructionLogger(){
+    private static final EventType EVENT_TYPE = EventType.getEventType(ConstructionPhaseEvent.class);
+
+    private final ArrayDeque<String> stepQueue;
+
+    public ConstructionLogger() {
         stepQueue = new ArrayDeque<>();
     }
 
-    public boolean addStep(){
+    public boolean addStep(String step) {
+        synchronized (stepQueue) {
+            return stepQueue.add(step);
+        }
+    }
+
+    public ArrayDeque<String> getSteps() {
+        synchronized (stepQueue) {
+            return new ArrayDeque<>(stepQueue);
+        }
+    }
+
+    @Override
+    public void phaseFinished(ConstructionStatistics statistics) {
+        addStep(statistics.toString());
+    }
+
+    @Override
+    public void stepRecorded(String phase, String step) {
+        addStep(phase + ":\t" + step);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        int step = 0;
+        for (String s : getSteps()) {
+            str.append("Step").append(step++).append(":\t").append(s).append("\n");
+        }
+        return str.toString();
+    }
+
+    public static synchronized void addListener(ConstructionListener listener) {
+        ConstructionListener[] current = listeners;
+        ConstructionListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    public static synchronized boolean removeListener(ConstructionListener listener) {
+        ConstructionListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                ConstructionListener[] updated = new ConstructionListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated.length == 0 ? NO_LISTENERS : updated;
+                return true;
+            }
+        }
         return false;
     }
 
+    /**
+     * @return true if a listener is registered or the JFR event is enabled
+     */
+    public static boolean isEnabled() {
+        return listeners.length != 0 || EVENT_TYPE.isEnabled();
+    }
+
+    /**
+     * Start timing a phase. The used heap is sampled from now on, every {@link HeapSampler#PERIOD_MILLIS} ms,
+     * until {@link #end} reports the highest sample as the peak of the phase, or {@link #cancel} drops the phase.
+     * The JVM-wide peak usage of the memory pools is not touched, so phases of other threads and other tools
+     * do not disturb each other.
+     *
+     * @return the start time in nanoseconds, or 0 if the logger is disabled
+     */
+    public static long begin() {
+        if (!isEnabled())
+            return 0;
+        long start = System.nanoTime();
+        if (start == 0)
+            start = 1;
+        HeapPeak peak = new HeapPeak(start);
+        PHASES.get().push(peak);
+        HeapSampler.watch(peak);
+        return start;
+    }
+
+    /**
+     * Finish timing a phase whose input and output are automata.
+     *
+     * @param phase   one of the {@code PHASE_*} names
+     * @param subject the regex or grammar under construction
+     * @param start   the value returned by {@link #begin()}
+     * @param input   the input automaton
+     * @param output  the output automaton
+     */
+    public static void end(String phase, String subject, long start, FiniteAutomaton input, FiniteAutomaton output) {
+        if (start == 0)
+            return;
+        end(phase, subject, start,
+                input == null ? 0 : input.getTransitTable().vertexSet().size(),
+                input == null ? 0 : input.getTransitTable().edgeSet().size(),
+                output == null ? 0 : output.getTransitTable().vertexSet().size(),
+                output == null ? 0 : output.getTransitTable().edgeSet().size());
+    }
+
+    /**
+     * Finish timing a phase.
+     *
+     * @param phase        one of the {@code PHASE_*} names
+     * @param subject      the regex or grammar under construction
+     * @param start        the value returned by {@link #begin()}
+     * @param inputStates  the size of the input in states (characters for the parse phase)
+     * @param inputEdges   the edges of the input
+     * @param outputStates the size of the output in states (tree nodes for the parse phase)
+     * @param outputEdges  the edges of the output
+     */
+    public static void end(String phase, String subject, long start, int inputStates, int inputEdges, int outputStates, int outputEdges) {
+        if (start == 0)
+            return;
+        long elapsed = System.nanoTime() - start;
+        long peak = HeapSampler.stop(start);
+        ConstructionStatistics statistics = new ConstructionStatistics(phase, subject, elapsed,
+                inputStates, inputEdges, outputStates, outputEdges, peak);
+
+        ConstructionPhaseEvent event = new ConstructionPhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase;
+            event.subject = subject;
+            event.elapsed = elapsed;
+            event.inputStates = inputStates;
+            event.inputEdges = inputEdges;
+            event.outputStates = outputStates;
+            event.outputEdges = outputEdges;
+            event.blowUp = statistics.getBlowUp();
+            event.peakHeap = peak;
+            event.commit();
+        }
+        for (ConstructionListener listener : listeners) {
+            listener.phaseFinished(statistics);
+        }
+    }
+
+    /**
+     * Stop timing a phase which did not end, e.g. as its construction threw, without reporting it.
+     * Does nothing if the phase was ended by {@link #end}.
+     *
+     * @param start the value returned by {@link #begin()}
+     */
+    public static void cancel(long start) {
+        if (start != 0)
+            HeapSampler.stop(start);
+    }
+
+    /**
+     * @return the number of phases begun and not yet ended or cancelled, on all threads
+     */
+    public static int getRunningPhases() {
+        return HeapSampler.RUNNING.size();
+    }
+
+    /**
+     * Record an intermediate step of a phase. Callers should check {@link #isEnabled()} before building the step.
+     *
+     * @param phase one of the {@code PHASE_*} names
+     * @param step  the description of the step
+     */
+    public static void step(String phase, String step) {
+        for (ConstructionListener listener : listeners) {
+            listener.stepRecorded(phase, step);
+        }
+    }
+
+    /**
+     * The phases begun and not yet ended on this thread, the innermost first
+     */
+    private static final ThreadLocal<ArrayDeque<HeapPeak>> PHASES = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * The highest used heap sampled during a phase
+     */
+    private static final class HeapPeak {
+        final long start;
+        final AtomicLong peak = new AtomicLong();
+
+        HeapPeak(long start) {
+            this.start = start;
+        }
+
+        void sample(long used) {
+            peak.accumulateAndGet(used, Math::max);
+        }
+    }
+
+    /**
+     * Samples the used heap for the running phases on a daemon thread. The sampling is scheduled when the first phase
+     * begins and cancelled when the last one ends, and the thread exits once it has been idle for a second.
+     * A sample is the used heap as a whole at one instant, so the peak is a heap size the phase did see;
+     * the heap is shared, so it includes what other threads hold at that time.
+     */
+    private static final class HeapSampler {
+        static final long PERIOD_MILLIS = 1;
+
+        static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+        static final Set<HeapPeak> RUNNING = ConcurrentHashMap.newKeySet();
+
+        static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "construction-heap-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        /**
+         * The sampling while phases run, null otherwise; guarded by the class
+         */
+        static ScheduledFuture<?> sampling;
+
+        static {
+            EXECUTOR.setKeepAliveTime(1, TimeUnit.SECONDS);
+            EXECUTOR.allowCoreThreadTimeOut(true);
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+
+        static long used() {
+            return MEMORY.getHeapMemoryUsage().getUsed();
+        }
+
+        static void sample() {
+            if (RUNNING.isEmpty())
+                return;
+            long used = used();
+            for (HeapPeak peak : RUNNING)
+                peak.sample(used);
+        }
+
+        static void watch(HeapPeak peak) {
+            peak.sample(used());
+            synchronized (HeapSampler.class) {
+                RUNNING.add(peak);
+                if (sampling == null)
+                    sampling = EXECUTOR.scheduleAtFixedRate(HeapSampler::sample, PERIOD_MILLIS, PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Stop sampling the phase of this thread begun at start, and the phases begun inside it which never ended.
+         *
+         * @return the peak of the phase, the used heap now if the phase is unknown
+         */
+        static long stop(long start) {
+            ArrayDeque<HeapPeak> phases = PHASES.get();
+            if (phases.stream().noneMatch(p -> p.start == start))
+                return used();
+            long used = used();
+            HeapPeak peak;
+            synchronized (HeapSampler.class) {
+                do {
+                    peak = phases.pop();
+                    RUNNING.remove(peak);
+                } while (peak.start != start);
+                if (RUNNING.isEmpty() && sampling != null) {
+                    sampling.cancel(false);
+                    sampling = null;
+                }
+            }
+            peak.sample(used);
+            return peak.peak.get();
+        }
+    }
 }
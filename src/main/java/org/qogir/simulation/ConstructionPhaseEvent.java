@@ -0,0 +1,54 @@
+package org.qogir.simulation;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The JFR event of a finished construction phase, committed by {@link ConstructionLogger}.
+ * Enable it in a recording with {@code -XX:StartFlightRecording} and the setting
+ * {@code org.qogir.ConstructionPhase#enabled=true}.
+ */
+@Name("org.qogir.ConstructionPhase")
+@Label("Construction Phase")
+@Category({"Qogir", "Compiler"})
+@Description("A finished phase of the scanner construction: parse, Thompson, subset or minimize")
+@StackTrace(false)
+class ConstructionPhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Subject")
+    @Description("The regex or the grammar under construction")
+    String subject;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Input States")
+    int inputStates;
+
+    @Label("Input Edges")
+    int inputEdges;
+
+    @Label("Output States")
+    int outputStates;
+
+    @Label("Output Edges")
+    int outputEdges;
+
+    @Label("Blow-up")
+    @Description("Output states / input states")
+    double blowUp;
+
+    @Label("Peak Heap")
+    @DataAmount(DataAmount.BYTES)
+    long peakHeap;
+}
@@ -0,0 +1,84 @@
+package org.qogir.simulation;
+
+/**
+ * The statistics of one construction phase.
+ * The input and output are measured in states and edges:
+ * + parse: characters of the regex -> nodes of the regex tree
+ * + Thompson: nodes of the regex tree -> states and edges of the NFA
+ * + subset: states and edges of the NFA -> states and edges of the DFA
+ * + minimize: states and edges of the DFA -> states and edges of the minimized DFA
+ */
+public class ConstructionStatistics {
+    private final String phase;
+    private final String subject;
+    private final long elapsedNanos;
+    private final int inputStates;
+    private final int inputEdges;
+    private final int outputStates;
+    private final int outputEdges;
+    private final long peakHeapBytes;
+
+    public ConstructionStatistics(String phase, String subject, long elapsedNanos, int inputStates, int inputEdges,
+                                  int outputStates, int outputEdges, long peakHeapBytes) {
+        this.phase = phase;
+        this.subject = subject;
+        this.elapsedNanos = elapsedNanos;
+        this.inputStates = inputStates;
+        this.inputEdges = inputEdges;
+        this.outputStates = outputStates;
+        this.outputEdges = outputEdges;
+        this.peakHeapBytes = peakHeapBytes;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return the name of the regex or the names of the regexes of the grammar under construction
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public int getInputStates() {
+        return inputStates;
+    }
+
+    public int getInputEdges() {
+        return inputEdges;
+    }
+
+    public int getOutputStates() {
+        return outputStates;
+    }
+
+    public int getOutputEdges() {
+        return outputEdges;
+    }
+
+    /**
+     * @return output states / input states, or 0 if the input is empty
+     */
+    public double getBlowUp() {
+        return inputStates == 0 ? 0 : (double) outputStates / inputStates;
+    }
+
+    /**
+     * @return the highest used heap sampled during the phase in bytes, see {@link ConstructionLogger#begin()}
+     */
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    @Override
+    public String toString() {
+        return this.phase + "[" + this.subject + "]: " + (this.elapsedNanos / 1000) + "us, states " + this.inputStates
+                + "->" + this.outputStates + ", edges " + this.inputEdges + "->" + this.outputEdges
+                + ", blow-up " + String.format("%.2f", getBlowUp()) + ", peak heap " + this.peakHeapBytes + "B";
+    }
+}
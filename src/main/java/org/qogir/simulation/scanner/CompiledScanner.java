@@ -0,0 +1,422 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A regular grammar compiled once into the dense transition table of its minimal DFA,
+ * and used to scan any number of inputs, e.g. the short fields of an ingestion path.
+ * A compiled scanner is immutable, so it can be shared by threads.
+ * <p>
+ * Besides single inputs, it scans batches of records, given as a list or as a packed char buffer with offsets:
+ * + {@link #scanBatch} tokenizes each record by the maximal munch of {@link ScanWithDFA}
+ * + {@link #matchBatch} only reports whether each record as a whole is a token, and which one
+ * The accept-only mode runs {@link #LANES} records through the DFA side by side, one char of each record in turn.
+ * The transitions of different records do not depend on each other, so the loads of the table overlap
+ * instead of waiting for one another. Tokenizing restarts the DFA after every token,
+ * so it scans the records one at a time, but stores the tokens of all records in packed arrays instead of objects.
+ */
+public class CompiledScanner {
+
+    /**
+     * The number of records scanned side by side in a batch
+     */
+    public static final int LANES = 4;
+
+    private final RegularGrammar rg;
+
+    private final String[] names;
+
+    /**
+     * The column of each char in the table
+     */
+    private final int[] classOf;
+
+    /**
+     * The columns of the table: the symbols, then a column for the chars which are not symbols
+     */
+    private final int width;
+
+    /**
+     * next[state * width + column], a state without a transition goes to the dead state
+     */
+    private final int[] next;
+
+    /**
+     * The token of each state as {@link DFATable#getToken}
+     */
+    private final int[] tokens;
+
+    /**
+     * The state after the last state of the table, it is not accepting and all its transitions go to itself
+     */
+    private final int dead;
+
+    public CompiledScanner(RegularGrammar rg) {
+        this(new Scanner(rg));
+    }
+
+    /**
+     * Compile the DFA of a configured scanner, e.g. a scanner with {@link Scanner#setNFAReduction}.
+     * @param scanner the scanner of a regular grammar
+     */
+    public CompiledScanner(Scanner scanner) {
+        this(scanner.getRegularGrammar(), DFATable.fromRDFA(scanner.constructDFA()).minimize());
+    }
+
+    /**
+     * @param rg the regular grammar of the table
+     * @param table a DFA table whose tokens are the regexes of rg, its start state is 0
+     */
+    public CompiledScanner(RegularGrammar rg, DFATable table) {
+        this.rg = rg;
+        this.names = new String[rg.getPatterns().size()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = rg.getPatterns().get(i).getName();
+
+        char[] alphabet = table.getAlphabet();
+        int maxChar = -1;
+        for (char c : alphabet)
+            maxChar = Math.max(maxChar, c);
+        this.width = alphabet.length + 1;
+        this.classOf = new int[maxChar + 1];
+        Arrays.fill(classOf, width - 1);
+        for (int a = 0; a < alphabet.length; a++)
+            classOf[alphabet[a]] = a;
+
+        this.dead = table.getStateCount();
+        this.next = new int[(dead + 1) * width];
+        this.tokens = new int[dead + 1];
+        Arrays.fill(next, dead);
+        tokens[dead] = DFATable.NOT_ACCEPTING;
+        for (int s = 0; s < dead; s++) {
+            tokens[s] = table.getToken(s);
+            for (int a = 0; a < alphabet.length; a++) {
+                int t = table.next(s, a);
+                if (t != DFATable.NONE)
+                    next[s * width + a] = t;
+            }
+        }
+    }
+
+    /**
+     * A copy of a compiled scanner with its states renumbered, e.g. by {@link ScannerProfile#relayout()}.
+     * @param source the compiled scanner
+     * @param order the states of source in their new order, starting with the start state 0
+     */
+    CompiledScanner(CompiledScanner source, int[] order) {
+        if (order.length != source.dead || order[0] != 0)
+            throw new IllegalArgumentException("The order must hold all " + source.dead + " states, starting with the start state.");
+        this.rg = source.rg;
+        this.names = source.names;
+        this.classOf = source.classOf;
+        this.width = source.width;
+        this.dead = source.dead;
+        int[] number = new int[dead + 1];
+        for (int s = 0; s < dead; s++)
+            number[order[s]] = s;
+        number[dead] = dead;
+        this.next = new int[source.next.length];
+        this.tokens = new int[dead + 1];
+        for (int s = 0; s <= dead; s++) {
+            int from = s < dead ? order[s] : dead;
+            tokens[s] = source.tokens[from];
+            for (int column = 0; column < width; column++)
+                next[s * width + column] = number[source.next[from * width + column]];
+        }
+    }
+
+    public RegularGrammar getRegularGrammar() {
+        return rg;
+    }
+
+    /**
+     * @return the number of states of the minimal DFA, without the dead state
+     */
+    public int getStateCount() {
+        return dead;
+    }
+
+    /**
+     * Scan an input by maximal munch as {@link ScanWithDFA}.
+     * @param input the input string
+     * @param tokenQueue the queue the tokens are added to
+     * @return {@link ScanMessage#SUCCESS_MATCH}, {@link ScanMessage#NOT_MATCH} or {@link ScanMessage#AMBIGUITY_GRAMMAR}
+     */
+    public int scan(CharSequence input, ArrayDeque tokenQueue) {
+        return scan(input, tokenQueue, new LineIndex(input));
+    }
+
+    /**
+     * Scan an input by maximal munch as {@link ScanWithDFA}.
+     * @param input the input string
+     * @param tokenQueue the queue the tokens are added to
+     * @param lines the line index of the input, shared by the tokens
+     * @return {@link ScanMessage#SUCCESS_MATCH}, {@link ScanMessage#NOT_MATCH} or {@link ScanMessage#AMBIGUITY_GRAMMAR}
+     */
+    public int scan(CharSequence input, ArrayDeque tokenQueue, LineIndex lines) {
+        return scan(input, tokenQueue, lines, ScanMetrics.recorder(rg));
+    }
+
+    /**
+     * @param metrics the recorder the scan counts into and finishes, null if the metrics are off
+     */
+    int scan(CharSequence input, ArrayDeque tokenQueue, LineIndex lines, ScanMetrics.Recorder metrics) {
+        if (metrics != null)
+            metrics.begin();
+        int length = input.length();
+        int lastStartCharAt = 0;
+        while (lastStartCharAt < length) {
+            int state = 0;
+            int lastAcceptedCharAt = -1;
+            int lastToken = RDFA.NO_TOKEN;
+            int i = lastStartCharAt;
+            for (; i < length; i++) {
+                state = next[state * width + classOf(input.charAt(i))];
+                if (state == dead) //stuck
+                    break;
+                if (tokens[state] != DFATable.NOT_ACCEPTING) {
+                    lastAcceptedCharAt = i;
+                    lastToken = tokens[state];
+                }
+            }
+            if (lastAcceptedCharAt < 0 || lastToken == RDFA.AMBIGUOUS_TOKEN) {
+                int message = lastAcceptedCharAt < 0 ? ScanMessage.NOT_MATCH : ScanMessage.AMBIGUITY_GRAMMAR;
+                if (metrics != null)
+                    metrics.finish(message, lastStartCharAt);
+                return message;
+            }
+            if (metrics != null)
+                metrics.token(lastToken, i - lastAcceptedCharAt - 1);
+            String lexeme = input.subSequence(lastStartCharAt, lastAcceptedCharAt + 1).toString();
+            tokenQueue.add(new Token(names[lastToken], lexeme, lastStartCharAt, lastAcceptedCharAt + 1, lines));
+            lastStartCharAt = lastAcceptedCharAt + 1; //restart DFA
+        }
+        if (metrics != null)
+            metrics.finish(ScanMessage.SUCCESS_MATCH, length);
+        return ScanMessage.SUCCESS_MATCH;
+    }
+
+    /**
+     * @param input the input string
+     * @return the regex index of the token which the whole input is, {@link DFATable#NOT_ACCEPTING} if none,
+     * or {@link RDFA#AMBIGUOUS_TOKEN}
+     */
+    public int match(CharSequence input) {
+        int state = 0;
+        for (int i = 0; i < input.length(); i++) {
+            state = next[state * width + classOf(input.charAt(i))];
+            if (state == dead)
+                break;
+        }
+        return tokens[state];
+    }
+
+    public ScanBatch scanBatch(List<? extends CharSequence> records) {
+        int[] offsets = new int[records.size() + 1];
+        return scanBatch(pack(records, offsets), offsets);
+    }
+
+    /**
+     * Tokenize a batch of records. With the {@link ScanMetrics} on, each record counts as a scan.
+     * @param buffer the chars of the records
+     * @param offsets record r is buffer[offsets[r], offsets[r + 1]), so there are offsets.length - 1 records
+     * @return the status and tokens of each record
+     */
+    public ScanBatch scanBatch(char[] buffer, int[] offsets) {
+        int records = offsets.length - 1;
+        int[] status = new int[records];
+        int[] first = new int[records];
+        int[] count = new int[records];
+        TokenBuffer all = new TokenBuffer(Math.max(16, records + buffer.length / 8));
+
+        for (int r = 0; r < records; r++) {
+            int base = offsets[r];
+            int end = offsets[r + 1];
+            int result = ScanMessage.SUCCESS_MATCH;
+            ScanMetrics.Recorder metrics = ScanMetrics.recorder(rg);
+            if (metrics != null)
+                metrics.begin();
+            first[r] = all.size;
+            int lastStartCharAt = base;
+            while (lastStartCharAt < end) {
+                int state = 0;
+                int lastAcceptedCharAt = -1;
+                int lastToken = RDFA.NO_TOKEN;
+                int i = lastStartCharAt;
+                for (; i < end; i++) {
+                    state = next[state * width + classOf(buffer[i])];
+                    if (state == dead) //stuck
+                        break;
+                    if (tokens[state] != DFATable.NOT_ACCEPTING) {
+                        lastAcceptedCharAt = i + 1;
+                        lastToken = tokens[state];
+                    }
+                }
+                if (lastAcceptedCharAt < 0) {
+                    result = ScanMessage.NOT_MATCH;
+                    break;
+                }
+                if (lastToken == RDFA.AMBIGUOUS_TOKEN) {
+                    result = ScanMessage.AMBIGUITY_GRAMMAR;
+                    break;
+                }
+                if (metrics != null)
+                    metrics.token(lastToken, i - lastAcceptedCharAt);
+                all.add(lastToken, lastStartCharAt - base, lastAcceptedCharAt - base);
+                lastStartCharAt = lastAcceptedCharAt; //restart DFA
+            }
+            if (metrics != null)
+                metrics.finish(result, lastStartCharAt - base);
+            status[r] = result;
+            count[r] = all.size - first[r];
+        }
+
+        return new ScanBatch(buffer, offsets, names, status, first, count, all.size, all.regex, all.start, all.end);
+    }
+
+    public int[] matchBatch(List<? extends CharSequence> records) {
+        int[] offsets = new int[records.size() + 1];
+        return matchBatch(pack(records, offsets), offsets);
+    }
+
+    /**
+     * The accept-only mode: report for each record whether it is a token as a whole, without tokenizing it.
+     * The records are taken {@link #LANES} at a time, and the DFA takes a step in each of them in turn
+     * until the shortest one ends. A record whose DFA gets stuck stays in the dead state.
+     * @param buffer the chars of the records
+     * @param offsets record r is buffer[offsets[r], offsets[r + 1])
+     * @return the result of {@link #match} for each record
+     */
+    public int[] matchBatch(char[] buffer, int[] offsets) {
+        int records = offsets.length - 1;
+        int[] result = new int[records];
+        int r = 0;
+        for (; r + LANES <= records; r += LANES) {
+            int p0 = offsets[r], p1 = offsets[r + 1], p2 = offsets[r + 2], p3 = offsets[r + 3], e3 = offsets[r + 4];
+            int n = Math.min(Math.min(p1 - p0, p2 - p1), Math.min(p3 - p2, e3 - p3));
+            int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            for (int k = 0; k < n; k++) {
+                s0 = next[s0 * width + classOf(buffer[p0 + k])];
+                s1 = next[s1 * width + classOf(buffer[p1 + k])];
+                s2 = next[s2 * width + classOf(buffer[p2 + k])];
+                s3 = next[s3 * width + classOf(buffer[p3 + k])];
+            }
+            result[r] = run(buffer, p0 + n, p1, s0);
+            result[r + 1] = run(buffer, p1 + n, p2, s1);
+            result[r + 2] = run(buffer, p2 + n, p3, s2);
+            result[r + 3] = run(buffer, p3 + n, e3, s3);
+        }
+        for (; r < records; r++)
+            result[r] = run(buffer, offsets[r], offsets[r + 1], 0);
+        return result;
+    }
+
+    /**
+     * Run the DFA over buffer[from, to) from a state.
+     * @return the token of the state it ends in
+     */
+    private int run(char[] buffer, int from, int to, int state) {
+        for (int i = from; i < to && state != dead; i++)
+            state = next[state * width + classOf(buffer[i])];
+        return tokens[state];
+    }
+
+    /**
+     * @return the state after c, {@link #deadState()} if the DFA gets stuck
+     */
+    int step(int state, char c) {
+        return next[state * width + classOf(c)];
+    }
+
+    int deadState() {
+        return dead;
+    }
+
+    int columnCount() {
+        return width;
+    }
+
+    int columnOf(char c) {
+        return classOf(c);
+    }
+
+    int next(int state, int column) {
+        return next[state * width + column];
+    }
+
+    int tokenOf(int state) {
+        return tokens[state];
+    }
+
+    String nameOf(int token) {
+        return names[token];
+    }
+
+    /**
+     * @return the column of c in the table, the last column if c is not a symbol
+     */
+    private int classOf(char c) {
+        return c < classOf.length ? classOf[c] : width - 1;
+    }
+
+    /**
+     * Copy records into one buffer.
+     * @param offsets filled with the offsets of the records, its length is the number of records + 1
+     */
+    private static char[] pack(List<? extends CharSequence> records, int[] offsets) {
+        int length = 0;
+        for (int r = 0; r < records.size(); r++) {
+            offsets[r] = length;
+            length += records.get(r).length();
+        }
+        offsets[records.size()] = length;
+        char[] buffer = new char[length];
+        for (int r = 0; r < records.size(); r++) {
+            CharSequence record = records.get(r);
+            if (record instanceof String s)
+                s.getChars(0, s.length(), buffer, offsets[r]);
+            else
+                for (int i = 0; i < record.length(); i++)
+                    buffer[offsets[r] + i] = record.charAt(i);
+        }
+        return buffer;
+    }
+
+    /**
+     * A growable list of tokens as three parallel int arrays
+     */
+    private static final class TokenBuffer {
+        int[] regex;
+        int[] start;
+        int[] end;
+        int size;
+
+        TokenBuffer(int capacity) {
+            regex = new int[capacity];
+            start = new int[capacity];
+            end = new int[capacity];
+        }
+
+        void add(int r, int s, int e) {
+            if (size == regex.length)
+                grow(size + 1);
+            regex[size] = r;
+            start[size] = s;
+            end[size] = e;
+            size++;
+        }
+
+        private void grow(int min) {
+            int capacity = Math.max(min, regex.length << 1);
+            regex = Arrays.copyOf(regex, capacity);
+            start = Arrays.copyOf(start, capacity);
+            end = Arrays.copyOf(end, capacity);
+        }
+    }
+}
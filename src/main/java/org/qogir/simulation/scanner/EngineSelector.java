@@ -0,0 +1,236 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.BitParallelNFA;
+import org.qogir.compiler.grammar.regularGrammar.BlowUpAnalysis;
+import org.qogir.compiler.grammar.regularGrammar.ConstructionBudget;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.LazyDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.util.ConstructionBudgetExceededException;
+
+/**
+ * Choose the engine which scans a regular grammar, from the estimate of its DFA size by {@link BlowUpAnalysis}:
+ * + {@link Engine#FULL_DFA} - the minimal DFA compiled into a {@link CompiledScanner}, if it has at most maxDFAStates states
+ * + {@link Engine#LAZY_DFA} - a {@link LazyDFA}, if the DFA is larger but has no blow-up, so the input visits few of its states
+ * + {@link Engine#BIT_PARALLEL_NFA} - a {@link BitParallelNFA}, if a rule blows up, so a lazy DFA would keep flushing its cache,
+ *   and its table fits in maxNFATableBytes; a larger NFA gets the lazy DFA
+ * <p>
+ * The choice of the full DFA is confirmed by constructing it within a {@link ConstructionBudget} of maxDFAStates states,
+ * and a grammar over the budget goes on as a larger DFA. Given a sample of the input, the choice between the lazy DFA
+ * and the NFA is confirmed by running the lazy DFA over the sample: it is kept if the sample fits in its cache.
+ * The choice and the reasons for it are reported by {@link Selection#getRationale()}.
+ * <pre>
+ *     EngineSelector.Selection selection = new EngineSelector().select(scanner, sample);
+ *     log(selection);                    //e.g. "LAZY_DFA: ~40210 DFA states estimated, over the limit of 10000, ..."
+ *     selection.newScan(input).scan(tokenQueue);
+ * </pre>
+ */
+public class EngineSelector {
+
+    public static final int DEFAULT_CACHED_STATES = 4096;
+
+    public enum Engine {
+        FULL_DFA, LAZY_DFA, BIT_PARALLEL_NFA
+    }
+
+    private int maxDFAStates = 10_000;
+
+    private int maxCachedStates = DEFAULT_CACHED_STATES;
+
+    private long maxNFATableBytes = BitParallelNFA.DEFAULT_MAX_TABLE_BYTES;
+
+    public int getMaxDFAStates() {
+        return maxDFAStates;
+    }
+
+    /**
+     * @param maxDFAStates the most states of a full DFA
+     */
+    public void setMaxDFAStates(int maxDFAStates) {
+        this.maxDFAStates = maxDFAStates;
+    }
+
+    public int getMaxCachedStates() {
+        return maxCachedStates;
+    }
+
+    /**
+     * @param maxCachedStates the cache of a lazy DFA
+     */
+    public void setMaxCachedStates(int maxCachedStates) {
+        this.maxCachedStates = maxCachedStates;
+    }
+
+    public long getMaxNFATableBytes() {
+        return maxNFATableBytes;
+    }
+
+    /**
+     * @param maxNFATableBytes the largest table of a bit-parallel NFA
+     */
+    public void setMaxNFATableBytes(long maxNFATableBytes) {
+        this.maxNFATableBytes = maxNFATableBytes;
+    }
+
+    /**
+     * The engine chosen for a grammar, built and ready to scan
+     */
+    public static final class Selection {
+        private final RegularGrammar rg;
+        private final Engine engine;
+        private final String rationale;
+        private final BlowUpAnalysis analysis;
+        private final CompiledScanner compiled;
+        private final LazyDFA lazy;
+        private final BitParallelNFA nfa;
+
+        private Selection(RegularGrammar rg, Engine engine, String rationale, BlowUpAnalysis analysis,
+                          CompiledScanner compiled, LazyDFA lazy, BitParallelNFA nfa) {
+            this.rg = rg;
+            this.engine = engine;
+            this.rationale = rationale;
+            this.analysis = analysis;
+            this.compiled = compiled;
+            this.lazy = lazy;
+            this.nfa = nfa;
+        }
+
+        public Engine getEngine() {
+            return engine;
+        }
+
+        /**
+         * @return why the engine was chosen, e.g. the estimate and the result of the calibration
+         */
+        public String getRationale() {
+            return rationale;
+        }
+
+        public BlowUpAnalysis getAnalysis() {
+            return analysis;
+        }
+
+        /**
+         * A scan of an input with the engine. The scans of a {@link Engine#LAZY_DFA} share its cache,
+         * so they run on one thread.
+         */
+        public Scan newScan(String input) {
+            return switch (engine) {
+                case FULL_DFA -> new ScanWithDFA(compiled, input);
+                case LAZY_DFA -> new ScanWithLazyDFA(rg, lazy, input);
+                case BIT_PARALLEL_NFA -> new ScanWithBitParallelNFA(rg, nfa, input);
+            };
+        }
+
+        @Override
+        public String toString() {
+            return engine + ": " + rationale;
+        }
+    }
+
+    public Selection select(Scanner scanner) {
+        return select(scanner, null);
+    }
+
+    /**
+     * @param scanner the scanner of a regular grammar
+     * @param sample a sample of the input, or null
+     * @return the engine chosen and built
+     */
+    public Selection select(Scanner scanner, CharSequence sample) {
+        RegularGrammar rg = scanner.getRegularGrammar();
+        BlowUpAnalysis analysis = BlowUpAnalysis.analyze(rg);
+        long estimate = analysis.getEstimatedDFAStates();
+        StringBuilder rationale = new StringBuilder("~" + estimate + " DFA states estimated");
+
+        if (estimate <= maxDFAStates) {
+            ConstructionBudget budget = new ConstructionBudget();
+            budget.setMaxStates(maxDFAStates);
+            ConstructionBudget previous = scanner.getBudget();
+            scanner.setBudget(budget);
+            try {
+                DFATable table = DFATable.fromRDFA(scanner.constructDFA()).minimize();
+                rationale.append(", within the limit of ").append(maxDFAStates)
+                        .append("; the minimal DFA has ").append(table.getStateCount()).append(" states");
+                return new Selection(rg, Engine.FULL_DFA, rationale.toString(), analysis,
+                        new CompiledScanner(rg, table), null, null);
+            } catch (ConstructionBudgetExceededException e) {
+                rationale.append(", but the DFA exceeded ").append(maxDFAStates).append(" states for ").append(e.getRules());
+            } finally {
+                scanner.setBudget(previous);
+            }
+        } else {
+            rationale.append(", over the limit of ").append(maxDFAStates);
+        }
+
+        boolean exponential = !analysis.getExponentialRules().isEmpty();
+        if (exponential) {
+            BlowUpAnalysis.Rule worst = analysis.getExponentialRules().get(0);
+            for (BlowUpAnalysis.Rule r : analysis.getExponentialRules())
+                if (r.getExponent() > worst.getExponent())
+                    worst = r;
+            rationale.append("; ").append(worst.getName()).append(" blows up: ").append(worst.getPattern());
+        }
+        if (sample == null) {
+            if (exponential)
+                return bitParallel(scanner, analysis, rationale, null);
+            rationale.append("; no blow-up, the input visits few states");
+            return new Selection(rg, Engine.LAZY_DFA, rationale.toString(), analysis,
+                    null, scanner.constructLazyDFA(maxCachedStates), null);
+        }
+
+        LazyDFA lazy = scanner.constructLazyDFA(maxCachedStates);
+        calibrate(lazy, sample);
+        rationale.append("; a sample of ").append(sample.length()).append(" chars built ")
+                .append(lazy.getBuiltStateCount()).append(" states");
+        if (lazy.getFlushCount() > 0) {
+            rationale.append(" and flushed the cache of ").append(maxCachedStates).append(" states ")
+                    .append(lazy.getFlushCount()).append(" times");
+            return bitParallel(scanner, analysis, rationale, lazy);
+        }
+        rationale.append(", within the cache of ").append(maxCachedStates);
+        return new Selection(rg, Engine.LAZY_DFA, rationale.toString(), analysis, null, lazy, null);
+    }
+
+    /**
+     * Choose the bit-parallel NFA, or the lazy DFA if the table of the NFA is over maxNFATableBytes
+     * @param lazy the lazy DFA already built, or null
+     */
+    private Selection bitParallel(Scanner scanner, BlowUpAnalysis analysis, StringBuilder rationale, LazyDFA lazy) {
+        RegularGrammar rg = scanner.getRegularGrammar();
+        BitParallelNFA nfa;
+        try {
+            nfa = scanner.constructBitParallelNFA(maxNFATableBytes);
+        } catch (ConstructionBudgetExceededException e) {
+            rationale.append("; the table of the NFA would take ").append(e.getValue()).append(" bytes, over the limit of ")
+                    .append(maxNFATableBytes);
+            return new Selection(rg, Engine.LAZY_DFA, rationale.toString(), analysis,
+                    null, lazy != null ? lazy : scanner.constructLazyDFA(maxCachedStates), null);
+        }
+        rationale.append("; the NFA has ").append(nfa.getStateCount()).append(" states, ")
+                .append(nfa.getWords()).append(" words per set");
+        return new Selection(rg, Engine.BIT_PARALLEL_NFA, rationale.toString(), analysis, null, null, nfa);
+    }
+
+    /**
+     * Run a lazy DFA over a sample by maximal munch, a char which starts no token is skipped
+     */
+    private static void calibrate(LazyDFA dfa, CharSequence sample) {
+        int lastStartCharAt = 0;
+        while (lastStartCharAt < sample.length()) {
+            int state = dfa.getStartState();
+            int lastAcceptedCharAt = -1;
+            for (int i = lastStartCharAt; i < sample.length(); i++) {
+                int symbol = dfa.symbolOf(sample.charAt(i));
+                if (symbol == LazyDFA.NONE)
+                    break;
+                state = dfa.next(state, symbol);
+                if (state == LazyDFA.NONE)
+                    break;
+                if (dfa.isAccepting(state))
+                    lastAcceptedCharAt = i;
+            }
+            lastStartCharAt = lastAcceptedCharAt < 0 ? lastStartCharAt + 1 : lastAcceptedCharAt + 1;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * The factory of the scanners of a class generated by {@link ScannerCodeGenerator}.
+ */
+public class GeneratedScanFactory {
+
+    private final String key;
+
+    private final MethodHandle constructor;
+
+    GeneratedScanFactory(String key, MethodHandle constructor) {
+        this.key = key;
+        this.constructor = constructor;
+    }
+
+    /**
+     * @return the hash of the DFA, the name of the cached class file
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @param rg    the regular grammar of the DFA, which provides the token names
+     * @param input the input string
+     * @return a scanner of the input
+     */
+    public Scan newScan(RegularGrammar rg, String input) {
+        try {
+            return (Scan) constructor.invoke(rg, input);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
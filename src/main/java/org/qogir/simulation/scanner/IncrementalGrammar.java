@@ -0,0 +1,475 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.Regex;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * A compiled regular grammar whose rules can be added, removed and replaced one at a time,
+ * without constructing the NFA and the DFA of the whole grammar again.
+ * <p>
+ * Each rule is compiled once into its own minimal DFA, and the DFA of the grammar is the product of the rule DFAs:
+ * a state of the grammar DFA is the list of the rule DFA states which are still alive, e.g. {(r0, 3), (r2, 1)}.
+ * It is the state which the subset construction finds for the union of the rule NFAs, so the grammar DFA accepts
+ * the same tokens as {@link Scanner#constructDFA()}.
+ * <p>
+ * The grammar DFA is updated in place:
+ * + adding a rule R only explores the states which R is alive in, from the new start state. A state without R has
+ *   the successors it had before, so the states of the old DFA are kept as they are
+ * + removing a rule R only visits the states which R is alive in: each drops R, and is merged into the state with
+ *   the same list if there is one. Only these states have transitions to them, so only their rows are updated
+ * So an edit costs time in proportion to the states the edited rule is alive in, not to the grammar.
+ * A state which is not reachable after an edit stays in the DFA until {@link #compact()}.
+ * <p>
+ * {@link #toDFATable()} gives the reachable part of the grammar DFA, and its tokens are the indexes of the rules
+ * in the current order.
+ */
+public class IncrementalGrammar {
+
+    /**
+     * A rule and its minimal DFA
+     */
+    private static final class Rule {
+        final int id;
+        final Regex regex;
+        final DFATable dfa;
+        /**
+         * The global symbol index of each symbol of the rule DFA
+         */
+        final int[] globalSymbols;
+
+        Rule(int id, Regex regex, DFATable dfa, int[] globalSymbols) {
+            this.id = id;
+            this.regex = regex;
+            this.dfa = dfa;
+            this.globalSymbols = globalSymbols;
+        }
+    }
+
+    /**
+     * The rule states of a grammar DFA state: {ruleId0, state0, ruleId1, state1, ...}, sorted by rule id
+     */
+    private static final class Key {
+        final int[] pairs;
+        final int hash;
+
+        Key(int[] pairs) {
+            this.pairs = pairs;
+            this.hash = Arrays.hashCode(pairs);
+        }
+
+        boolean contains(int ruleId) {
+            for (int i = 0; i < pairs.length; i += 2)
+                if (pairs[i] == ruleId)
+                    return true;
+            return false;
+        }
+
+        Key without(int ruleId) {
+            int[] rest = new int[pairs.length];
+            int n = 0;
+            for (int i = 0; i < pairs.length; i += 2) {
+                if (pairs[i] != ruleId) {
+                    rest[n++] = pairs[i];
+                    rest[n++] = pairs[i + 1];
+                }
+            }
+            return new Key(Arrays.copyOf(rest, n));
+        }
+
+        Key with(int ruleId, int state) {
+            int[] more = new int[pairs.length + 2];
+            int n = 0;
+            boolean added = false;
+            for (int i = 0; i < pairs.length; i += 2) {
+                if (!added && pairs[i] > ruleId) {
+                    more[n++] = ruleId;
+                    more[n++] = state;
+                    added = true;
+                }
+                more[n++] = pairs[i];
+                more[n++] = pairs[i + 1];
+            }
+            if (!added) {
+                more[n++] = ruleId;
+                more[n] = state;
+            }
+            return new Key(more);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && hash == other.hash && Arrays.equals(pairs, other.pairs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final ArrayList<Rule> rules = new ArrayList<>();
+
+    private final HashMap<Integer, Rule> ruleById = new HashMap<>();
+
+    private int nextRuleId = 0;
+
+    /**
+     * The symbols of all rules so far, in the order they were added
+     */
+    private final ArrayList<Character> symbols = new ArrayList<>();
+
+    private final HashMap<Character, Integer> symbolIndex = new HashMap<>();
+
+    /**
+     * The states of the grammar DFA. A row may be shorter than the symbols, the missing transitions are NONE
+     */
+    private final ArrayList<Key> keys = new ArrayList<>();
+
+    private final ArrayList<int[]> rows = new ArrayList<>();
+
+    /**
+     * The state a merged state was merged into, {@link #NOT_MERGED} for a state which is not merged,
+     * and {@link #EMPTY} for a state which has no rule state left
+     */
+    private final ArrayList<Integer> mergedInto = new ArrayList<>();
+
+    private static final int NOT_MERGED = -1;
+
+    private static final int EMPTY = -2;
+
+    private final HashMap<Key, Integer> index = new HashMap<>();
+
+    /**
+     * The states each rule is alive in
+     */
+    private final HashMap<Integer, ArrayList<Integer>> statesOfRule = new HashMap<>();
+
+    private int start;
+
+    public IncrementalGrammar() {
+        start = intern(new Key(new int[0]));
+        rows.set(start, new int[0]);
+    }
+
+    public IncrementalGrammar(RegularGrammar rg) {
+        this();
+        for (Regex r : rg.getPatterns())
+            addRule(r);
+    }
+
+    /**
+     * @param definition a rule of the form "name := regex"
+     * @return the index of the rule
+     */
+    public int addRule(String definition) {
+        return addRule(new RegularGrammar(new String[]{definition}).getPatterns().get(0));
+    }
+
+    /**
+     * Add a rule after the other rules.
+     * @return the index of the rule
+     */
+    public int addRule(Regex regex) {
+        addRule(regex, rules.size());
+        return rules.size() - 1;
+    }
+
+    /**
+     * @return false if there is no rule with the name
+     */
+    public boolean removeRule(String name) {
+        int i = indexOf(name);
+        if (i < 0)
+            return false;
+        Rule rule = rules.remove(i);
+        ruleById.remove(rule.id);
+        removeStates(rule.id);
+        return true;
+    }
+
+    /**
+     * Replace a rule, the new rule keeps its index.
+     * @param name the name of the rule to replace
+     * @param definition the new rule of the form "name := regex"
+     * @return false if there is no rule with the name
+     */
+    public boolean replaceRule(String name, String definition) {
+        int i = indexOf(name);
+        if (i < 0)
+            return false;
+        Rule rule = rules.remove(i);
+        ruleById.remove(rule.id);
+        removeStates(rule.id);
+        addRule(new RegularGrammar(new String[]{definition}).getPatterns().get(0), i);
+        return true;
+    }
+
+    public int getRuleCount() {
+        return rules.size();
+    }
+
+    /**
+     * @return the regular grammar of the current rules
+     */
+    public RegularGrammar getRegularGrammar() {
+        String[] definitions = new String[rules.size()];
+        for (int i = 0; i < definitions.length; i++)
+            definitions[i] = rules.get(i).regex.toString();
+        return new RegularGrammar(definitions);
+    }
+
+    /**
+     * @return the number of states of the grammar DFA, with the states which are not reachable any more
+     */
+    public int getStateCount() {
+        return index.size();
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < rules.size(); i++)
+            if (rules.get(i).regex.getName().equals(name))
+                return i;
+        return -1;
+    }
+
+    private void addRule(Regex regex, int position) {
+        DFATable dfa = DFATable.fromRDFA(new Scanner(new RegularGrammar(new String[]{regex.toString()})).constructDFA()).minimize();
+        char[] alphabet = dfa.getAlphabet();
+        int[] globalSymbols = new int[alphabet.length];
+        for (int a = 0; a < alphabet.length; a++) {
+            Integer g = symbolIndex.get(alphabet[a]);
+            if (g == null) {
+                g = symbols.size();
+                symbols.add(alphabet[a]);
+                symbolIndex.put(alphabet[a], g);
+            }
+            globalSymbols[a] = g;
+        }
+        Rule rule = new Rule(nextRuleId++, regex, dfa, globalSymbols);
+        rules.add(position, rule);
+        ruleById.put(rule.id, rule);
+        statesOfRule.put(rule.id, new ArrayList<>());
+
+        //explore the states with the new rule from the new start state
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int newStart = internNew(keys.get(start).with(rule.id, 0), queue);
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            int[] pairs = keys.get(s).pairs;
+            int[] row = new int[symbols.size()];
+            for (int c = 0; c < row.length; c++) {
+                int[] next = new int[pairs.length];
+                int n = 0;
+                for (int i = 0; i < pairs.length; i += 2) {
+                    Rule r = ruleById.get(pairs[i]);
+                    int symbol = r.dfa.symbolOf(symbols.get(c));
+                    int t = symbol == DFATable.NONE ? DFATable.NONE : r.dfa.next(pairs[i + 1], symbol);
+                    if (t != DFATable.NONE) {
+                        next[n++] = pairs[i];
+                        next[n++] = t;
+                    }
+                }
+                row[c] = n == 0 ? DFATable.NONE : internNew(new Key(Arrays.copyOf(next, n)), queue);
+            }
+            rows.set(s, row);
+        }
+        start = newStart;
+    }
+
+    /**
+     * @return the state of a key, a new state in the queue if there is none
+     */
+    private int internNew(Key key, ArrayDeque<Integer> queue) {
+        Integer s = index.get(key);
+        if (s != null)
+            return s;
+        int created = intern(key);
+        queue.add(created);
+        return created;
+    }
+
+    private int intern(Key key) {
+        int s = keys.size();
+        keys.add(key);
+        rows.add(null);
+        mergedInto.add(NOT_MERGED);
+        index.put(key, s);
+        for (int i = 0; i < key.pairs.length; i += 2)
+            statesOfRule.get(key.pairs[i]).add(s);
+        return s;
+    }
+
+    private void removeStates(int ruleId) {
+        ArrayList<Integer> states = statesOfRule.remove(ruleId);
+        ArrayList<Integer> kept = new ArrayList<>();
+        for (int s : states) {
+            if (mergedInto.get(s) != NOT_MERGED)
+                continue;
+            Key key = keys.get(s);
+            index.remove(key);
+            Key rest = key.without(ruleId);
+            Integer same = index.get(rest);
+            if (rest.pairs.length == 0) {
+                mergedInto.set(s, EMPTY);
+            } else if (same != null) {
+                mergedInto.set(s, same);
+            } else {
+                keys.set(s, rest);
+                index.put(rest, s);
+                kept.add(s);
+            }
+        }
+        for (int s : kept) {
+            int[] row = rows.get(s);
+            for (int c = 0; c < row.length; c++)
+                row[c] = resolve(row[c]);
+        }
+        //the start state is the only state which is kept without rule states
+        start = resolve(start);
+        if (start == DFATable.NONE) {
+            Integer empty = index.get(new Key(new int[0]));
+            start = empty != null ? empty : intern(new Key(new int[0]));
+            rows.set(start, new int[0]);
+        }
+    }
+
+    private int resolve(int s) {
+        while (s != DFATable.NONE && mergedInto.get(s) != NOT_MERGED)
+            s = mergedInto.get(s) == EMPTY ? DFATable.NONE : mergedInto.get(s);
+        return s;
+    }
+
+    /**
+     * Drop the states which are not reachable from the start state, and renumber the others.
+     */
+    public void compact() {
+        int[] number = new int[keys.size()];
+        Arrays.fill(number, -1);
+        ArrayList<Integer> order = reachable(number);
+        ArrayList<Key> oldKeys = new ArrayList<>(keys);
+        ArrayList<int[]> oldRows = new ArrayList<>(rows);
+        keys.clear();
+        rows.clear();
+        mergedInto.clear();
+        index.clear();
+        for (ArrayList<Integer> list : statesOfRule.values())
+            list.clear();
+        for (int s : order) {
+            int t = intern(oldKeys.get(s));
+            int[] row = oldRows.get(s).clone();
+            for (int c = 0; c < row.length; c++)
+                row[c] = row[c] == DFATable.NONE ? DFATable.NONE : number[row[c]];
+            rows.set(t, row);
+        }
+        start = 0;
+    }
+
+    /**
+     * @param number filled with the breadth-first number of each reachable state
+     * @return the reachable states in breadth-first order
+     */
+    private ArrayList<Integer> reachable(int[] number) {
+        ArrayList<Integer> order = new ArrayList<>();
+        number[start] = 0;
+        order.add(start);
+        for (int head = 0; head < order.size(); head++) {
+            for (int t : rows.get(order.get(head))) {
+                if (t != DFATable.NONE && number[t] < 0) {
+                    number[t] = order.size();
+                    order.add(t);
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * @return the table of the reachable grammar DFA over the symbols of the current rules,
+     * its tokens are the indexes of the rules
+     */
+    public DFATable toDFATable() {
+        TreeSet<Character> used = new TreeSet<>();
+        for (Rule r : rules)
+            for (char c : r.dfa.getAlphabet())
+                used.add(c);
+        char[] alphabet = new char[used.size()];
+        int[] column = new int[alphabet.length];
+        int i = 0;
+        for (char c : used) {
+            alphabet[i] = c;
+            column[i++] = symbolIndex.get(c);
+        }
+        HashMap<Integer, Integer> ruleIndex = new HashMap<>();
+        for (int r = 0; r < rules.size(); r++)
+            ruleIndex.put(rules.get(r).id, r);
+
+        //the states reachable on the used symbols, in breadth-first order over the sorted alphabet
+        int[] number = new int[keys.size()];
+        Arrays.fill(number, -1);
+        ArrayList<Integer> order = new ArrayList<>();
+        number[start] = 0;
+        order.add(start);
+        for (int head = 0; head < order.size(); head++) {
+            int[] row = rows.get(order.get(head));
+            for (int col : column) {
+                int t = col < row.length ? row[col] : DFATable.NONE;
+                if (t != DFATable.NONE && number[t] < 0) {
+                    number[t] = order.size();
+                    order.add(t);
+                }
+            }
+        }
+        int k = alphabet.length;
+        int[] transitions = new int[order.size() * k];
+        int[] tokens = new int[order.size()];
+        for (int d = 0; d < order.size(); d++) {
+            int s = order.get(d);
+            int[] row = rows.get(s);
+            for (int a = 0; a < k; a++) {
+                int t = column[a] < row.length ? row[column[a]] : DFATable.NONE;
+                transitions[d * k + a] = t == DFATable.NONE ? DFATable.NONE : number[t];
+            }
+            tokens[d] = tokenOf(keys.get(s), ruleIndex);
+        }
+        return new DFATable(alphabet, order.size(), transitions, tokens);
+    }
+
+    /**
+     * The rule with the highest priority wins, and two rules with the same priority give {@link RDFA#AMBIGUOUS_TOKEN}.
+     */
+    private int tokenOf(Key key, HashMap<Integer, Integer> ruleIndex) {
+        int token = DFATable.NOT_ACCEPTING;
+        int priority = Integer.MIN_VALUE;
+        boolean ambiguous = false;
+        for (int i = 0; i < key.pairs.length; i += 2) {
+            Rule r = ruleById.get(key.pairs[i]);
+            if (!r.dfa.isAccepting(key.pairs[i + 1]))
+                continue;
+            int p = r.regex.getPriority();
+            int index = ruleIndex.get(r.id);
+            if (p > priority) {
+                priority = p;
+                token = index;
+                ambiguous = false;
+            } else if (p == priority) {
+                ambiguous = true;
+            }
+        }
+        return ambiguous ? RDFA.AMBIGUOUS_TOKEN : token;
+    }
+
+    /**
+     * @return a compiled scanner of the current rules
+     */
+    public CompiledScanner compile() {
+        return new CompiledScanner(getRegularGrammar(), toDFATable().minimize());
+    }
+}
@@ -0,0 +1,117 @@
+package org.qogir.simulation.scanner;
+
+import java.util.Arrays;
+
+/**
+ * The lines of an input, for mapping the offsets of tokens and errors to lines and columns.
+ * A scan records only the offsets, and the index is built the first time a position is asked for:
+ * the newlines are found in one pass by {@link String#indexOf(int, int)}, which the JVM runs on wide vector loads,
+ * and an offset is mapped to its line by a binary search over the line starts, in O(log lines).
+ * So a scan pays nothing for positions, and the positions of the tokens nobody asks about are never computed.
+ * <p>
+ * A line ends after '\n', so "\r\n" ends a line too, and the '\r' is the last char of the line.
+ * Lines and columns are counted from 1, a column is counted in chars.
+ * The index is immutable once built and can be shared by threads.
+ */
+public final class LineIndex {
+
+    private final CharSequence text;
+
+    /**
+     * The offset of the first char of each line, null until the index is built
+     */
+    private volatile int[] lineStarts;
+
+    private int lineCount;
+
+    public LineIndex(CharSequence text) {
+        this.text = text;
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    /**
+     * @param offset an offset in the text, the length of the text for the end of the text
+     * @return the line of the offset, from 1
+     */
+    public int getLine(int offset) {
+        int[] starts = lineStarts();
+        checkOffset(offset);
+        int i = Arrays.binarySearch(starts, 0, lineCount, offset);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * @param offset an offset in the text, the length of the text for the end of the text
+     * @return the column of the offset in its line, from 1
+     */
+    public int getColumn(int offset) {
+        return offset - lineStarts()[getLine(offset) - 1] + 1;
+    }
+
+    public int getLineCount() {
+        lineStarts();
+        return lineCount;
+    }
+
+    /**
+     * @param line a line, from 1
+     * @return the offset of the first char of the line
+     */
+    public int getLineStart(int line) {
+        int[] starts = lineStarts();
+        if (line < 1 || line > lineCount)
+            throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount);
+        return starts[line - 1];
+    }
+
+    /**
+     * @return the position of an offset as "line:column", e.g. for an error report
+     */
+    public String format(int offset) {
+        return getLine(offset) + ":" + getColumn(offset);
+    }
+
+    private void checkOffset(int offset) {
+        if (offset < 0 || offset > text.length())
+            throw new IndexOutOfBoundsException("Offset " + offset + " of " + text.length());
+    }
+
+    private int[] lineStarts() {
+        int[] starts = lineStarts;
+        if (starts == null) {
+            synchronized (this) {
+                starts = lineStarts;
+                if (starts == null) {
+                    starts = build();
+                    lineStarts = starts;
+                }
+            }
+        }
+        return starts;
+    }
+
+    private int[] build() {
+        int[] starts = new int[16];
+        int count = 1;
+        if (text instanceof String s) {
+            for (int i = s.indexOf('\n'); i >= 0; i = s.indexOf('\n', i + 1)) {
+                if (count == starts.length)
+                    starts = Arrays.copyOf(starts, count << 1);
+                starts[count++] = i + 1;
+            }
+        } else {
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) != '\n')
+                    continue;
+                if (count == starts.length)
+                    starts = Arrays.copyOf(starts, count << 1);
+                starts[count++] = i + 1;
+            }
+        }
+        lineCount = count;
+        return starts;
+    }
+}
@@ -0,0 +1,92 @@
+package org.qogir.simulation.scanner;
+
+/**
+ * An occurrence of a regex of a regular grammar in a text, found by {@link Search}.
+ * The line and the column are looked up in the {@link LineIndex} of the text, shared by the matches of a search.
+ */
+public class Match {
+
+    private final int start;
+
+    private final int end;
+
+    private final int token;
+
+    private final String name;
+
+    private final String lexeme;
+
+    private final LineIndex lines;
+
+    public Match(int start, int end, int token, String name, String lexeme) {
+        this(start, end, token, name, lexeme, null);
+    }
+
+    /**
+     * @param lines the line index of the text, or null
+     */
+    public Match(int start, int end, int token, String name, String lexeme, LineIndex lines) {
+        this.start = start;
+        this.end = end;
+        this.token = token;
+        this.name = name;
+        this.lexeme = lexeme;
+        this.lines = lines;
+    }
+
+    /**
+     * @return the index of the first char of the match
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the index after the last char of the match
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the index of the regex in the regular grammar, or
+     * {@link org.qogir.compiler.grammar.regularGrammar.RDFA#AMBIGUOUS_TOKEN} if two regexes with the same priority match
+     */
+    public int getToken() {
+        return token;
+    }
+
+    /**
+     * @return the name of the regex, null if the match is ambiguous
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getLexeme() {
+        return lexeme;
+    }
+
+    /**
+     * @return the line of the match from 1, -1 if the match has no line index
+     */
+    public int getLine() {
+        return lines == null ? -1 : lines.getLine(start);
+    }
+
+    /**
+     * @return the column of the match from 1, -1 if the match has no line index
+     */
+    public int getColumn() {
+        return lines == null ? -1 : lines.getColumn(start);
+    }
+
+    public Token toToken() {
+        return new Token(name, lexeme, start, end, lines);
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + start + "," + end + "):" + lexeme;
+    }
+}
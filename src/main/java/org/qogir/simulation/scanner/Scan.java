@@ -6,14 +6,74 @@ import java.util.ArrayDeque;
 
 /**
  * lexical analysis
+ * <p>
+ * A scan records the offsets of the tokens and of the error, and maps them to lines and columns only when asked,
+ * by the {@link LineIndex} of the input, which the tokens share.
  */
 public abstract class Scan {
     protected final RegularGrammar rg;
     protected final String input;
+    protected final LineIndex lines;
+
+    /**
+     * The offset where the scan stopped at an illegal or ambiguous token, -1 if it did not
+     */
+    protected int errorOffset = -1;
+
+    /**
+     * The counts of this scan for the active {@link ScanMetrics}, null if the metrics are off
+     */
+    protected final ScanMetrics.Recorder metrics;
 
     public Scan(RegularGrammar rg, String input){
         this.rg = rg;
         this.input = input;
+        this.lines = new LineIndex(input);
+        this.metrics = ScanMetrics.recorder(rg);
+    }
+
+    public LineIndex getLineIndex() {
+        return lines;
+    }
+
+    /**
+     * @return the offset of the illegal or ambiguous token which stopped the scan, -1 if it did not stop
+     */
+    public int getErrorOffset() {
+        return errorOffset;
+    }
+
+    /**
+     * @return the position of the error as "line:column", null if there is none
+     */
+    public String getErrorPosition() {
+        return errorOffset < 0 ? null : lines.format(errorOffset);
+    }
+
+    /**
+     * @return the token input[start, end) of a regex
+     */
+    protected Token token(int regex, int start, int end) {
+        return new Token(rg.getPatterns().get(regex).getName(), this.input.substring(start, end), start, end, lines);
+    }
+
+    /**
+     * Start the clock of the metrics, if they are on, when the scan starts reading the input.
+     */
+    protected void begin() {
+        if (metrics != null)
+            metrics.begin();
+    }
+
+    /**
+     * Add the counts of the scan to the metrics, if they are on.
+     * @param message the {@link ScanMessage} the scan ends with
+     * @return message
+     */
+    protected int finish(int message) {
+        if (metrics != null)
+            metrics.finish(message, message == ScanMessage.SUCCESS_MATCH ? this.input.length() : Math.max(errorOffset, 0));
+        return message;
     }
 
     /**
@@ -0,0 +1,102 @@
+package org.qogir.simulation.scanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of scanning a batch of records by {@link CompiledScanner#scanBatch}.
+ * The tokens of all records are held in packed int arrays, and the tokens of a record are contiguous:
+ * + status[r] - the {@link ScanMessage} of record r
+ * + first[r], count[r] - the tokens of record r
+ * + regex/start/end[t] - the regex index of token t and its position in the record, for t below the token count
+ * Lexemes and {@link Token}s are only made on request.
+ */
+public class ScanBatch {
+
+    private final char[] buffer;
+    private final int[] offsets;
+    private final String[] names;
+    private final int[] status;
+    private final int[] first;
+    private final int[] count;
+    private final int tokenCount;
+    private final int[] regex;
+    private final int[] start;
+    private final int[] end;
+
+    ScanBatch(char[] buffer, int[] offsets, String[] names, int[] status, int[] first, int[] count,
+              int tokenCount, int[] regex, int[] start, int[] end) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.names = names;
+        this.status = status;
+        this.first = first;
+        this.count = count;
+        this.tokenCount = tokenCount;
+        this.regex = regex;
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getRecordCount() {
+        return status.length;
+    }
+
+    /**
+     * @return {@link ScanMessage#SUCCESS_MATCH}, {@link ScanMessage#NOT_MATCH} or {@link ScanMessage#AMBIGUITY_GRAMMAR}
+     */
+    public int getStatus(int record) {
+        return status[record];
+    }
+
+    /**
+     * @return the number of tokens of a record, including the tokens before a failure
+     */
+    public int getTokenCount(int record) {
+        return count[record];
+    }
+
+    /**
+     * @return the index of the regex of the i-th token of a record in the regular grammar
+     */
+    public int getTokenRegex(int record, int i) {
+        return regex[first[record] + i];
+    }
+
+    /**
+     * @return the start of the i-th token of a record, relative to the record
+     */
+    public int getTokenStart(int record, int i) {
+        return start[first[record] + i];
+    }
+
+    /**
+     * @return the end (exclusive) of the i-th token of a record, relative to the record
+     */
+    public int getTokenEnd(int record, int i) {
+        return end[first[record] + i];
+    }
+
+    public String getLexeme(int record, int i) {
+        int t = first[record] + i;
+        return new String(buffer, offsets[record] + start[t], end[t] - start[t]);
+    }
+
+    /**
+     * @return the tokens of a record as a scanner outputs them
+     */
+    public List<Token> getTokens(int record) {
+        ArrayList<Token> tokens = new ArrayList<>(count[record]);
+        for (int i = 0; i < count[record]; i++)
+            tokens.add(new Token(names[getTokenRegex(record, i)], getLexeme(record, i),
+                    start[first[record] + i], end[first[record] + i], null));
+        return tokens;
+    }
+
+    /**
+     * @return the total number of tokens of all records
+     */
+    public int getTotalTokenCount() {
+        return tokenCount;
+    }
+}
@@ -0,0 +1,298 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The run-time metrics of the scans: throughput in chars and tokens per second, the tokens of each regex,
+ * the time to the first token, the backtracking of the maximal munch and the cache hit rate of the lazy DFA.
+ * <p>
+ * The metrics are off until a ScanMetrics is made active. A {@link Scan} created while metrics are active
+ * counts into a {@link Recorder} of its own, and adds the counts to the shared {@link LongAdder}s once,
+ * when it is finished, so the scans of many threads do not contend on the counters.
+ * The time of a scan runs from when it starts reading the input, after its automaton is built, to its end.
+ * {@link CompiledScanner#scan} and {@link CompiledScanner#scanBatch} count each input or record as a scan,
+ * and a {@link StreamScanner}, so each connection of a {@link TokenizerServer}, counts each input from its first chunk.
+ * When no metrics are active, a scan pays one volatile read when it is created and a null check per token.
+ * <pre>
+ *     ScanMetrics metrics = new ScanMetrics();
+ *     ScanMetrics.setActive(metrics);
+ *     metrics.register();
+ *     ... scans ...
+ *     System.out.println(metrics);
+ * </pre>
+ * The metrics are pulled by the getters, or by JMX through {@link ScanMetricsMXBean}.
+ * <p>
+ * A backtrack is a token whose scan read chars past the end of the token, before the automaton got stuck,
+ * and which the next token reads again. All engines report their backtracks.
+ */
+public class ScanMetrics implements ScanMetricsMXBean {
+
+    public static final String OBJECT_NAME = "org.qogir.simulation.scanner:type=ScanMetrics";
+
+    private static volatile ScanMetrics active;
+
+    private final LongAdder scans = new LongAdder();
+    private final LongAdder failedScans = new LongAdder();
+    private final LongAdder ambiguousScans = new LongAdder();
+    private final LongAdder chars = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+    private final LongAdder firstTokens = new LongAdder();
+    private final LongAdder firstTokenNanos = new LongAdder();
+    private final LongAdder backtracks = new LongAdder();
+    private final LongAdder backtrackedChars = new LongAdder();
+    private final LongAdder cacheLookups = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> tokenCounts = new ConcurrentHashMap<>();
+
+    /**
+     * @return the metrics the scans count into, null if the metrics are off
+     */
+    public static ScanMetrics getActive() {
+        return active;
+    }
+
+    /**
+     * @param metrics the metrics the scans created from now on count into, null to turn the metrics off
+     */
+    public static void setActive(ScanMetrics metrics) {
+        active = metrics;
+    }
+
+    /**
+     * @return a recorder for a scan of a grammar, null if the metrics are off
+     */
+    static Recorder recorder(RegularGrammar rg) {
+        ScanMetrics metrics = active;
+        return metrics == null ? null : new Recorder(metrics, rg);
+    }
+
+    /**
+     * Register the metrics with the platform MBean server as {@link #OBJECT_NAME}.
+     */
+    public ObjectName register() throws JMException {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+        server.registerMBean(this, name);
+        return name;
+    }
+
+    public void unregister() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name))
+            server.unregisterMBean(name);
+    }
+
+    @Override
+    public long getScanCount() {
+        return scans.sum();
+    }
+
+    @Override
+    public long getFailedScanCount() {
+        return failedScans.sum();
+    }
+
+    @Override
+    public long getAmbiguousScanCount() {
+        return ambiguousScans.sum();
+    }
+
+    @Override
+    public long getCharCount() {
+        return chars.sum();
+    }
+
+    @Override
+    public long getTokenCount() {
+        return tokens.sum();
+    }
+
+    @Override
+    public double getCharsPerSecond() {
+        long nanos = scanNanos.sum();
+        return nanos == 0 ? 0 : chars.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public double getTokensPerSecond() {
+        long nanos = scanNanos.sum();
+        return nanos == 0 ? 0 : tokens.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public double getMeanTimeToFirstTokenMillis() {
+        long count = firstTokens.sum();
+        return count == 0 ? 0 : firstTokenNanos.sum() / 1e6 / count;
+    }
+
+    @Override
+    public long getBacktrackCount() {
+        return backtracks.sum();
+    }
+
+    @Override
+    public long getBacktrackedCharCount() {
+        return backtrackedChars.sum();
+    }
+
+    @Override
+    public long getCacheLookupCount() {
+        return cacheLookups.sum();
+    }
+
+    @Override
+    public long getCacheMissCount() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long lookups = cacheLookups.sum();
+        return lookups == 0 ? Double.NaN : 1 - (double) cacheMisses.sum() / lookups;
+    }
+
+    @Override
+    public Map<String, Long> getTokenCounts() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        tokenCounts.forEach((name, count) -> counts.put(name, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Set all counters to 0. The counts of the scans running meanwhile may be lost in part.
+     */
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{scans, failedScans, ambiguousScans, chars, tokens, scanNanos,
+                firstTokens, firstTokenNanos, backtracks, backtrackedChars, cacheLookups, cacheMisses})
+            adder.reset();
+        tokenCounts.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d scans (%d failed, %d ambiguous), %d chars, %d tokens, %.0f chars/s, %.0f tokens/s, "
+                        + "first token %.3f ms, %d backtracks (%d chars), cache hit rate %.4f, %s",
+                getScanCount(), getFailedScanCount(), getAmbiguousScanCount(), getCharCount(), getTokenCount(),
+                getCharsPerSecond(), getTokensPerSecond(), getMeanTimeToFirstTokenMillis(),
+                getBacktrackCount(), getBacktrackedCharCount(), getCacheHitRate(), getTokenCounts());
+    }
+
+    /**
+     * The counts of one scan, added to the metrics when the scan is finished. A recorder is not thread-safe.
+     */
+    public static final class Recorder {
+        private final ScanMetrics metrics;
+        private final RegularGrammar rg;
+        private long start;
+        private boolean started = false;
+        private final long[] tokenCounts;
+        private long tokens = 0;
+        private long firstToken = -1;
+        private long backtracks = 0;
+        private long backtrackedChars = 0;
+        private long cacheLookups = 0;
+        private long cacheMisses = 0;
+        private boolean finished = false;
+
+        private Recorder(ScanMetrics metrics, RegularGrammar rg) {
+            this.metrics = metrics;
+            this.rg = rg;
+            this.tokenCounts = new long[rg.getPatterns().size()];
+        }
+
+        /**
+         * Start the clock of the scan, at the first call, when the scan starts reading its input.
+         */
+        public void begin() {
+            if (!started) {
+                started = true;
+                start = System.nanoTime();
+            }
+        }
+
+        /**
+         * Count a token.
+         *
+         * @param regex the index of the regex of the token
+         * @param backtracked the chars read past the end of the token
+         */
+        public void token(int regex, int backtracked) {
+            if (tokens++ == 0) {
+                begin();
+                firstToken = System.nanoTime() - start;
+            }
+            if (regex >= 0 && regex < tokenCounts.length)
+                tokenCounts[regex]++;
+            if (backtracked > 0) {
+                backtracks++;
+                backtrackedChars += backtracked;
+            }
+        }
+
+        /**
+         * Count a token of a regex given by name.
+         */
+        public void token(String name, int backtracked) {
+            int regex = -1;
+            for (int i = 0; i < tokenCounts.length && regex < 0; i++)
+                if (rg.getPatterns().get(i).getName().equals(name))
+                    regex = i;
+            token(regex, backtracked);
+        }
+
+        /**
+         * Count the lookups of a lazy DFA and those which had to build the transition.
+         */
+        public void cache(long lookups, long misses) {
+            cacheLookups += lookups;
+            cacheMisses += misses;
+        }
+
+        /**
+         * Add the counts to the metrics, once.
+         *
+         * @param message the {@link ScanMessage} of the scan
+         * @param chars the chars scanned
+         */
+        public void finish(int message, int chars) {
+            if (finished)
+                return;
+            finished = true;
+            begin();
+            metrics.scans.increment();
+            if (message == ScanMessage.NOT_MATCH)
+                metrics.failedScans.increment();
+            else if (message == ScanMessage.AMBIGUITY_GRAMMAR)
+                metrics.ambiguousScans.increment();
+            metrics.chars.add(chars);
+            metrics.scanNanos.add(System.nanoTime() - start);
+            metrics.tokens.add(tokens);
+            if (firstToken >= 0) {
+                metrics.firstTokens.increment();
+                metrics.firstTokenNanos.add(firstToken);
+            }
+            metrics.backtracks.add(backtracks);
+            metrics.backtrackedChars.add(backtrackedChars);
+            metrics.cacheLookups.add(cacheLookups);
+            metrics.cacheMisses.add(cacheMisses);
+            for (int i = 0; i < tokenCounts.length; i++)
+                if (tokenCounts[i] != 0)
+                    metrics.tokenCounts.computeIfAbsent(rg.getPatterns().get(i).getName(), name -> new LongAdder())
+                            .add(tokenCounts[i]);
+        }
+    }
+}
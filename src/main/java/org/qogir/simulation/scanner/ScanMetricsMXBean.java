@@ -0,0 +1,70 @@
+package org.qogir.simulation.scanner;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link ScanMetrics}, registered by {@link ScanMetrics#register()}
+ * as {@value ScanMetrics#OBJECT_NAME}.
+ */
+public interface ScanMetricsMXBean {
+
+    long getScanCount();
+
+    /**
+     * @return the number of scans which stopped at an illegal token
+     */
+    long getFailedScanCount();
+
+    /**
+     * @return the number of scans which stopped at an ambiguous token
+     */
+    long getAmbiguousScanCount();
+
+    /**
+     * @return the number of chars scanned, up to the error for a failed scan
+     */
+    long getCharCount();
+
+    long getTokenCount();
+
+    /**
+     * @return the chars scanned per second of scanning
+     */
+    double getCharsPerSecond();
+
+    /**
+     * @return the tokens scanned per second of scanning
+     */
+    double getTokensPerSecond();
+
+    /**
+     * @return the mean time from the creation of a scan to its first token, in milliseconds
+     */
+    double getMeanTimeToFirstTokenMillis();
+
+    /**
+     * @return the number of tokens whose scan read past the token and went back to its end
+     */
+    long getBacktrackCount();
+
+    /**
+     * @return the number of chars read past the tokens and read again
+     */
+    long getBacktrackedCharCount();
+
+    long getCacheLookupCount();
+
+    long getCacheMissCount();
+
+    /**
+     * @return the share of the lazy DFA lookups found in the cache, NaN if there was none
+     */
+    double getCacheHitRate();
+
+    /**
+     * @return the number of tokens of each regex by name
+     */
+    Map<String, Long> getTokenCounts();
+
+    void reset();
+}
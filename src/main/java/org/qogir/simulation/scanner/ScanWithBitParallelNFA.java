@@ -0,0 +1,78 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.BitParallelNFA;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+
+import java.util.ArrayDeque;
+
+/**
+ *  scan uses Maximal Munch principle and priority system as {@link ScanWithNFA}, but runs the NFA over bit sets
+ *  {@link BitParallelNFA}, so each char costs a few word operations per active NFA state and no DFA is built.
+ */
+public class ScanWithBitParallelNFA extends Scan{
+
+    private final BitParallelNFA nfa;
+
+    public ScanWithBitParallelNFA(RegularGrammar rg, String input) {
+        this(new Scanner(rg), input);
+    }
+
+    /**
+     * @param scanner the scanner of a regular grammar
+     * @param input the input string
+     */
+    public ScanWithBitParallelNFA(Scanner scanner, String input) {
+        this(scanner.getRegularGrammar(), scanner.constructBitParallelNFA(), input);
+    }
+
+    /**
+     * @param rg the regular grammar of the NFA
+     * @param nfa a bit-parallel NFA whose tokens are the regexes of rg, e.g. by {@link Scanner#constructBitParallelNFA}
+     * @param input the input string
+     */
+    public ScanWithBitParallelNFA(RegularGrammar rg, BitParallelNFA nfa, String input) {
+        super(rg, input);
+        this.nfa = nfa;
+    }
+
+    @Override
+    public int scan(ArrayDeque tokenQueue) {
+        begin();
+        long[] current = new long[nfa.getWords()];
+        long[] next = new long[nfa.getWords()];
+        int lastStartCharAt = 0;
+        while (lastStartCharAt < this.input.length()) {
+            nfa.start(current);
+            int lastAcceptedCharAt = -1;
+            int lastToken = RDFA.NO_TOKEN;
+            int i = lastStartCharAt;
+            for (; i < this.input.length(); i++) {
+                int symbol = nfa.symbolOf(this.input.charAt(i));
+                if (symbol == BitParallelNFA.NONE)
+                    break;
+                if (!nfa.step(current, symbol, next)) //stuck
+                    break;
+                long[] swap = current;
+                current = next;
+                next = swap;
+                int token = nfa.getToken(current);
+                if (token != DFATable.NOT_ACCEPTING) {
+                    lastAcceptedCharAt = i;
+                    lastToken = token;
+                }
+            }
+            if (lastAcceptedCharAt < 0 || lastToken == RDFA.AMBIGUOUS_TOKEN) {
+                errorOffset = lastStartCharAt;
+                return finish(lastAcceptedCharAt < 0 ? ScanMessage.NOT_MATCH : ScanMessage.AMBIGUITY_GRAMMAR);
+            }
+            if (metrics != null)
+                metrics.token(lastToken, i - lastAcceptedCharAt - 1);
+            tokenQueue.add(token(lastToken, lastStartCharAt, lastAcceptedCharAt + 1));
+            lastStartCharAt = lastAcceptedCharAt + 1; //restart the NFA
+        }
+
+        return finish(ScanMessage.SUCCESS_MATCH);
+    }
+}
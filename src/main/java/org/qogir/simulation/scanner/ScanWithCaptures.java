@@ -0,0 +1,138 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.PikeVM;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+
+import java.util.ArrayDeque;
+
+/**
+ *  scan uses Maximal Munch principle and priority system as {@link ScanWithDFA}, but runs a {@link PikeVM},
+ *  so each token comes with the offsets of the capture groups of its regex, e.g. "number := (d)+(e(d)+)?"
+ *  gives the digits as group 1 and the exponent as group 2, found in the pass which scans the token.
+ *  <p>
+ *  Besides {@link #scan}, the tokens can be read one at a time without allocation:
+ *  <pre>
+ *      ScanWithCaptures scan = new ScanWithCaptures(rg, vm, input);
+ *      while (scan.next())
+ *          use(scan.getName(), scan.getStart(0), scan.getEnd(0), scan.getStart(2), scan.getEnd(2));
+ *      if (scan.getMessage() != ScanMessage.SUCCESS_MATCH) ...
+ *  </pre>
+ */
+public class ScanWithCaptures extends Scan {
+
+    private final PikeVM.Matcher matcher;
+
+    /**
+     * The offset the next token starts at
+     */
+    private int cursor = 0;
+
+    private int message = ScanMessage.SUCCESS_MATCH;
+
+    /**
+     * True when the scan reached the end of the input or an error, and was counted in the metrics
+     */
+    private boolean done = false;
+
+    public ScanWithCaptures(RegularGrammar rg, String input) {
+        this(rg, new PikeVM(rg), input);
+    }
+
+    /**
+     * @param rg the regular grammar of the VM
+     * @param vm a Pike VM of rg, it can be shared by the scans of all threads
+     * @param input the input string
+     */
+    public ScanWithCaptures(RegularGrammar rg, PikeVM vm, String input) {
+        super(rg, input);
+        this.matcher = vm.newMatcher();
+    }
+
+    /**
+     * Scan the next token.
+     * @return false at the end of the input, or if no token or an ambiguous token starts at the cursor,
+     * see {@link #getMessage()}
+     */
+    public boolean next() {
+        if (done)
+            return false;
+        begin();
+        if (cursor < this.input.length()) {
+            int token = matcher.match(this.input, cursor);
+            if (token != DFATable.NOT_ACCEPTING && token != RDFA.AMBIGUOUS_TOKEN) {
+                if (metrics != null)
+                    metrics.token(token, matcher.getStop() - matcher.getEnd(0));
+                cursor = matcher.getEnd(0);
+                return true;
+            }
+            message = token == RDFA.AMBIGUOUS_TOKEN ? ScanMessage.AMBIGUITY_GRAMMAR : ScanMessage.NOT_MATCH;
+            errorOffset = cursor;
+        }
+        done = true;
+        finish(message);
+        return false;
+    }
+
+    /**
+     * @return {@link ScanMessage#SUCCESS_MATCH} unless {@link #next()} stopped at an illegal or ambiguous token
+     */
+    public int getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the index of the regex of the current token
+     */
+    public int getToken() {
+        return matcher.getToken();
+    }
+
+    public String getName() {
+        return rg.getPatterns().get(matcher.getToken()).getName();
+    }
+
+    /**
+     * @param group 0 for the token, 1.. for the capture groups of its regex
+     * @return the offset of the first char of the group, -1 if the group took no part in the token
+     */
+    public int getStart(int group) {
+        return matcher.getStart(group);
+    }
+
+    /**
+     * @param group 0 for the token, 1.. for the capture groups of its regex
+     * @return the offset after the last char of the group, -1 if the group took no part in the token
+     */
+    public int getEnd(int group) {
+        return matcher.getEnd(group);
+    }
+
+    /**
+     * @param offsets receives the offsets of the token and its groups as pairs, see {@link PikeVM.Matcher#getOffsets}
+     * @return the number of groups
+     */
+    public int getOffsets(int[] offsets) {
+        return matcher.getOffsets(offsets);
+    }
+
+    /**
+     * @return the text of a group of the current token, null if the group took no part
+     */
+    public String group(int group) {
+        int start = getStart(group);
+        return start < 0 ? null : this.input.substring(start, getEnd(group));
+    }
+
+    public Token toToken() {
+        return token(matcher.getToken(), getStart(0), getEnd(0));
+    }
+
+    @Override
+    public int scan(ArrayDeque tokenQueue) {
+        while (next())
+            tokenQueue.add(toToken());
+        return message;
+    }
+}
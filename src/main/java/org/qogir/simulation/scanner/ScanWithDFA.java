@@ -1,99 +1,132 @@
 package org.qogir.simulation.scanner;
 
-import org.qogir.compiler.FA.State;
+import org.qogir.compiler.grammar.regularGrammar.CompressedDFA;
+import org.qogir.compiler.grammar.regularGrammar.ConstructionBudget;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
 import org.qogir.compiler.grammar.regularGrammar.RDFA;
-import org.qogir.compiler.grammar.regularGrammar.Regex;
 import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
-import org.qogir.compiler.grammar.regularGrammar.TNFA;
-import org.qogir.compiler.util.graph.LabelEdge;
-import org.qogir.compiler.util.graph.LabeledDirectedGraph;
+import org.qogir.compiler.util.ConstructionBudgetExceededException;
 
 import java.util.ArrayDeque;
-import java.util.HashMap;
 
+/**
+ *  scan uses Maximal Munch principle and priority system as {@link ScanWithNFA}, but runs the DFA of the grammar.
+ *  The DFA is held in a compressed transition table {@link CompressedDFA}, and each accepting state is tagged
+ *  with the regex it accepts by {@link Scanner#constructDFA()}. The DFA is minimized first, the minimization keeps
+ *  the accepting states of different regexes apart, so the minimal DFA scans the same tokens with fewer states.
+ *  When the DFA gets stuck, report the last match and restart the search at that point.
+ *  If the last match is accepted by two regular expressions with same priority, error.
+ *  If the scanner has a {@link ConstructionBudget} with the fallback to the NFA, and the DFA is over the budget,
+ *  the input is scanned by {@link ScanWithNFA} instead.
+ */
 public class ScanWithDFA extends Scan{
 
-    public ScanWithDFA(RegularGrammar rg, String input) {
-        super(rg, input);
-    }
+    private final Scanner scanner;
 
-    @Override
-    public int scan(ArrayDeque tokenQueue) {
-        Scanner scanner = new Scanner(rg);
-        RDFA dfa = scanner.constructDFA();
-        LabeledDirectedGraph<State> tb = dfa.getTransitTable();
-        State startState = dfa.getStartState();
+    private final CompressedDFA dfa;
 
-        String inputList = this.input + "$";
-        char[] input = inputList.toCharArray();
+    private final CompiledScanner compiled;
 
-        //State lastAcceptingStates;
-        int lastStartCharAt = 0;
-        int lastAcceptedCharAt = 0;
+    public ScanWithDFA(RegularGrammar rg, String input) {
+        super(rg, input);
+        this.scanner = null;
+        this.dfa = null;
+        this.compiled = null;
+    }
 
-        State currentState = new State(startState);
+    /**
+     * Scan with the DFA of a configured scanner, e.g. a scanner with {@link Scanner#setNFAReduction}.
+     * @param scanner the scanner of a regular grammar
+     * @param input the input string
+     */
+    public ScanWithDFA(Scanner scanner, String input) {
+        super(scanner.getRegularGrammar(), input);
+        this.scanner = scanner;
+        this.dfa = null;
+        this.compiled = null;
+    }
 
-        for(int i = 0; i< input.length; i++){
+    /**
+     * Scan with a compressed DFA built before, so the DFA is not constructed again for each input.
+     * @param rg the regular grammar of the DFA
+     * @param dfa a compressed DFA whose tokens are the regexes of rg
+     * @param input the input string
+     */
+    public ScanWithDFA(RegularGrammar rg, CompressedDFA dfa, String input) {
+        super(rg, input);
+        this.scanner = null;
+        this.dfa = dfa;
+        this.compiled = null;
+    }
 
-            if(input[i]!='$' && !rg.symbols.contains(input[i]))
-                return ScanMessage.NOT_MATCH;
+    /**
+     * Scan with a compiled scanner, which is built once and shared by all inputs.
+     * @param compiled the compiled scanner of a regular grammar
+     * @param input the input string
+     */
+    public ScanWithDFA(CompiledScanner compiled, String input) {
+        super(compiled.getRegularGrammar(), input);
+        this.scanner = null;
+        this.dfa = null;
+        this.compiled = compiled;
+    }
 
-            State nextState = null;
-            if(currentState != null){
-                for(LabelEdge e : tb.edgeSet()){
-                    if(tb.getEdgeSource(e) == currentState && e.getLabel().equals(input[i])){
-                        nextState = tb.getEdgeTarget(e);
-                    }
-                }
+    @Override
+    public int scan(ArrayDeque tokenQueue) {
+        if (compiled != null) {
+            int first = tokenQueue.size();
+            int message = compiled.scan(this.input, tokenQueue, lines, metrics); //the compiled scan counts itself in the metrics
+            //the scan stops where the tokens it added end, the queue may hold other objects before them
+            if (message != ScanMessage.SUCCESS_MATCH)
+                errorOffset = tokenQueue.size() == first ? 0 : ((Token) tokenQueue.peekLast()).getEnd();
+            return message;
+        }
+        CompressedDFA dfa = this.dfa;
+        if (dfa == null) {
+            Scanner scanner = this.scanner != null ? this.scanner : new Scanner(rg);
+            ConstructionBudget budget = scanner.getBudget();
+            try {
+                dfa = new CompressedDFA(DFATable.fromRDFA(scanner.constructDFA()).minimize(budget));
+            } catch (ConstructionBudgetExceededException e) {
+                //the DFA is too large, simulate the NFA instead
+                if (budget == null || !budget.isFallbackToNFA())
+                    throw e;
+                ScanWithNFA scan = new ScanWithNFA(scanner, this.input);
+                int message = scan.scan(tokenQueue);
+                errorOffset = scan.getErrorOffset();
+                return message; //the NFA scan counts itself in the metrics
             }
-            State lastAcceptingState = null;
-            if(nextState != null) {
-                if (nextState.getType() == 2 || nextState.getType() == 20) {
+        }
+
+        begin();
+        int lastStartCharAt = 0;
+        while (lastStartCharAt < this.input.length()) {
+            int state = dfa.getStartState();
+            int lastAcceptedCharAt = -1;
+            int lastToken = RDFA.NO_TOKEN;
+            int i = lastStartCharAt;
+            for (; i < this.input.length(); i++) {
+                int symbol = dfa.symbolOf(this.input.charAt(i));
+                if (symbol == CompressedDFA.NONE)
+                    break;
+                state = dfa.next(state, symbol);
+                if (state == CompressedDFA.NONE) //stuck
+                    break;
+                if (dfa.isAccepting(state)) {
                     lastAcceptedCharAt = i;
-                    lastAcceptingState = nextState;
+                    lastToken = dfa.getToken(state);
                 }
-                currentState = nextState;
             }
-            else { //stuck, can output
-                if(lastAcceptingState == null){
-                    return ScanMessage.NOT_MATCH;
-                }
-                else {
-                    String lexeme = this.input.substring(lastStartCharAt, lastAcceptedCharAt + 1);
-                    HashMap<State, HashMap<Integer,State>> dfatonfas = scanner.getDFAToNFAs();
-                    HashMap<Integer,State> nfas = new HashMap<>();
-                    for(State s : dfatonfas.keySet()){
-                        if(s.equals(lastAcceptingState)){
-
-                        }
-
-                    }
-                    HashMap<Regex, TNFA> rtonfa = scanner.getRegexToNFA();
-
-                    int priority = -1;
-                    for(Regex r : rtonfa.keySet()){
-                        /*if(lastAcceptingState.containsValue(rtonfa.get(r).getAcceptingState())) {
-                            if(r.getPriority() > priority){
-                                priority = r.getPriority();
-                                String regexName = r.getName();
-                                tokenQueue.add(new Token(regexName,lexeme));
-                            }
-                            else if(r.getPriority() == priority){
-                                return ScanMessage.AMBIGUITY_GRAMMAR;
-                                //throw new AssertionError("The regular grammar" + rg.toString() + " is ambiguity!");
-                            }
-                        }*/
-                    }
-                    if(input[i] != '$') {
-                        i = lastAcceptedCharAt;
-                        lastStartCharAt = lastAcceptedCharAt + 1;
-                        currentState = startState;//restart NFA
-                    }
-                }
+            if (lastAcceptedCharAt < 0 || lastToken == RDFA.AMBIGUOUS_TOKEN) {
+                errorOffset = lastStartCharAt;
+                return finish(lastAcceptedCharAt < 0 ? ScanMessage.NOT_MATCH : ScanMessage.AMBIGUITY_GRAMMAR);
             }
-
+            if (metrics != null)
+                metrics.token(lastToken, i - lastAcceptedCharAt - 1);
+            tokenQueue.add(token(lastToken, lastStartCharAt, lastAcceptedCharAt + 1));
+            lastStartCharAt = lastAcceptedCharAt + 1; //restart DFA
         }
 
-        return ScanMessage.SUCCESS_MATCH;
+        return finish(ScanMessage.SUCCESS_MATCH);
     }
 }
@@ -0,0 +1,80 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.LazyDFA;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+
+import java.util.ArrayDeque;
+
+/**
+ *  scan uses Maximal Munch principle and priority system as {@link ScanWithDFA}, but runs a {@link LazyDFA},
+ *  which builds only the DFA states the input visits, for grammars whose full DFA is too large to construct.
+ *  The lazy DFA keeps its states between inputs, so it can be shared by the scans of one thread.
+ */
+public class ScanWithLazyDFA extends Scan{
+
+    private final LazyDFA dfa;
+
+    public ScanWithLazyDFA(RegularGrammar rg, String input) {
+        this(new Scanner(rg), input);
+    }
+
+    /**
+     * @param scanner the scanner of a regular grammar
+     * @param input the input string
+     */
+    public ScanWithLazyDFA(Scanner scanner, String input) {
+        this(scanner.getRegularGrammar(), scanner.constructLazyDFA(EngineSelector.DEFAULT_CACHED_STATES), input);
+    }
+
+    /**
+     * @param rg the regular grammar of the DFA
+     * @param dfa a lazy DFA whose tokens are the regexes of rg, e.g. by {@link Scanner#constructLazyDFA}
+     * @param input the input string
+     */
+    public ScanWithLazyDFA(RegularGrammar rg, LazyDFA dfa, String input) {
+        super(rg, input);
+        this.dfa = dfa;
+    }
+
+    @Override
+    public int scan(ArrayDeque tokenQueue) {
+        begin();
+        long misses = dfa.getMissCount();
+        long lookups = 0;
+        int message = ScanMessage.SUCCESS_MATCH;
+        int lastStartCharAt = 0;
+        while (lastStartCharAt < this.input.length()) {
+            int state = dfa.getStartState();
+            int lastAcceptedCharAt = -1;
+            int lastToken = RDFA.NO_TOKEN;
+            int i = lastStartCharAt;
+            for (; i < this.input.length(); i++) {
+                int symbol = dfa.symbolOf(this.input.charAt(i));
+                if (symbol == LazyDFA.NONE)
+                    break;
+                state = dfa.next(state, symbol);
+                if (state == LazyDFA.NONE) //stuck
+                    break;
+                if (dfa.isAccepting(state)) {
+                    lastAcceptedCharAt = i;
+                    lastToken = dfa.getToken(state);
+                }
+            }
+            lookups += i - lastStartCharAt + (state == LazyDFA.NONE ? 1 : 0);
+            if (lastAcceptedCharAt < 0 || lastToken == RDFA.AMBIGUOUS_TOKEN) {
+                errorOffset = lastStartCharAt;
+                message = lastAcceptedCharAt < 0 ? ScanMessage.NOT_MATCH : ScanMessage.AMBIGUITY_GRAMMAR;
+                break;
+            }
+            if (metrics != null)
+                metrics.token(lastToken, i - lastAcceptedCharAt - 1);
+            tokenQueue.add(token(lastToken, lastStartCharAt, lastAcceptedCharAt + 1));
+            lastStartCharAt = lastAcceptedCharAt + 1; //restart DFA
+        }
+
+        if (metrics != null)
+            metrics.cache(lookups, dfa.getMissCount() - misses);
+        return finish(message);
+    }
+}
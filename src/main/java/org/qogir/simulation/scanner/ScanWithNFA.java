@@ -1,6 +1,8 @@
 package org.qogir.simulation.scanner;
 
+import org.qogir.compiler.FA.FiniteAutomaton;
 import org.qogir.compiler.FA.State;
+import org.qogir.compiler.grammar.regularGrammar.ReducedNFA;
 import org.qogir.compiler.grammar.regularGrammar.Regex;
 import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
 import org.qogir.compiler.grammar.regularGrammar.SubsetConstruction;
@@ -20,18 +22,34 @@ import java.util.HashMap;
  */
 public class ScanWithNFA extends Scan{
 
+    private final Scanner scanner;
+
     public ScanWithNFA(RegularGrammar rg, String input){
         super(rg,input);
+        this.scanner = null;
+    }
+
+    /**
+     * Scan with the NFA of a configured scanner, e.g. a scanner with {@link Scanner#setRegexOptimization}.
+     * @param scanner the scanner of a regular grammar
+     * @param input the input string
+     */
+    public ScanWithNFA(Scanner scanner, String input){
+        super(scanner.getRegularGrammar(),input);
+        this.scanner = scanner;
     }
 
 
     @Override
     public int scan(ArrayDeque tokenQueue){ //ArrayDeque scan() {
          // Get the NFA.
-        Scanner scanner = new Scanner(rg);
+        Scanner scanner = this.scanner != null ? this.scanner : new Scanner(rg);
         TNFA nfa =  scanner.constructNFA();
-        LabeledDirectedGraph<State> tb = nfa.getTransitTable();
-        State startState = nfa.getStartState();
+        // With NFA reduction, scan with the ε-free NFA and map its accepting states back to the regexes' accepting states
+        ReducedNFA reduced = scanner.isNFAReduction() ? scanner.reduceNFA(nfa) : null;
+        FiniteAutomaton scanNFA = reduced != null ? reduced : nfa;
+        LabeledDirectedGraph<State> tb = scanNFA.getTransitTable();
+        State startState = scanNFA.getStartState();
 
         // add "$" for representing the input string.
         String inputList = this.input + "$";
@@ -56,22 +74,26 @@ public class ScanWithNFA extends Scan{
         currentStates.putAll(startStates);
         HashMap<Integer, State> nextStates = new HashMap<>();
 
+        begin(); //the time of the scan starts after the NFA is built
         for(int i = 0; i< input.length; i++){
 
-            if(input[i]!='$' && !rg.symbols.contains(input[i]))
-                return ScanMessage.NOT_MATCH;
-                //throw new AssertionError("The input " +  this.input + " can not be matched with the regular grammar!");
-
             if(!nextStates.isEmpty())
                 nextStates.clear();
 
-            nextStates.putAll(sc.epsilonClosureWithMove(currentStates, input[i], tb));
+            //a char out of the alphabet has no move, the NFA gets stuck on it as the DFA does: the last token
+            //is output and the error is at the start of the next one
+            if(input[i] == '$' || rg.symbols.contains(input[i]))
+                nextStates.putAll(sc.epsilonClosureWithMove(currentStates, input[i], tb));
 
             //put the accepting states in next states into current accepting states
             currentAcceptingStates.clear();
             for(State s : nextStates.values()) {
-                if(s.getType() == State.ACCEPT || s.getType() == State.ACCEPTANDSTART)
-                    currentAcceptingStates.put(s.getId(),s);
+                if(s.getType() == State.ACCEPT || s.getType() == State.ACCEPTANDSTART) {
+                    if(reduced != null)
+                        currentAcceptingStates.putAll(reduced.getAcceptedStates(s));
+                    else
+                        currentAcceptingStates.put(s.getId(),s);
+                }
             }
 
             if(!currentAcceptingStates.isEmpty()){
@@ -82,7 +104,8 @@ public class ScanWithNFA extends Scan{
 
             if(nextStates.isEmpty()){ //stuck, can output
                 if(lastAcceptingStates.isEmpty()){
-                    return ScanMessage.NOT_MATCH;
+                    errorOffset = lastStartCharAt;
+                    return finish(ScanMessage.NOT_MATCH);
                     //throw new AssertionError("The input " +  this.input + " can not be matched with the regular grammar!");
                 }
                 else {//if(!lastAcceptingStates.isEmpty(), output token
@@ -94,20 +117,25 @@ public class ScanWithNFA extends Scan{
                            if(r.getPriority() > priority){
                                priority = r.getPriority();
                                String regexName = r.getName();
-                               tokenQueue.add(new Token(regexName,lexeme));
+                               tokenQueue.add(new Token(regexName,lexeme,lastStartCharAt,lastAcceptedCharAt + 1,lines));
+                               if (metrics != null)
+                                   metrics.token(regexName, i - lastAcceptedCharAt - 1);
                            }
                            else if(r.getPriority() == priority){
-                               return ScanMessage.AMBIGUITY_GRAMMAR;
+                               errorOffset = lastStartCharAt;
+                               return finish(ScanMessage.AMBIGUITY_GRAMMAR);
                                //throw new AssertionError("The regular grammar" + rg.toString() + " is ambiguity!");
                            }
                        }
                     }
-                    if(input[i] != '$') {
-                        i = lastAcceptedCharAt;
-                        lastStartCharAt = lastAcceptedCharAt + 1;
-                        currentStates.clear();
-                        currentStates.putAll(startStates);//restart NFA
-                    }
+                    if(lastAcceptedCharAt == input.length - 2) //the token ends the input
+                        break;
+                    //at the end of the input too, the chars after the token are scanned again
+                    i = lastAcceptedCharAt;
+                    lastStartCharAt = lastAcceptedCharAt + 1;
+                    lastAcceptingStates.clear();
+                    currentStates.clear();
+                    currentStates.putAll(startStates);//restart NFA
                 }
             }
             else{ // hold current situation and going on
@@ -116,9 +144,11 @@ public class ScanWithNFA extends Scan{
             }
         }
 
-        if(lastAcceptedCharAt != input.length - 2)
-            return ScanMessage.NOT_MATCH;
+        if(lastAcceptedCharAt != input.length - 2) {
+            errorOffset = lastStartCharAt;
+            return finish(ScanMessage.NOT_MATCH);
+        }
             //throw new AssertionError("The input " + this.input + " can not be matched with the regular grammar!");
-        return ScanMessage.SUCCESS_MATCH;
+        return finish(ScanMessage.SUCCESS_MATCH);
     }
 }
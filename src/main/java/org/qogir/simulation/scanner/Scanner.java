@@ -1,10 +1,17 @@
 package org.qogir.simulation.scanner;
 
+import org.qogir.compiler.FA.FiniteAutomaton;
 import org.qogir.compiler.FA.State;
 import org.qogir.compiler.grammar.regularGrammar.*;
+import org.qogir.compiler.util.ConstructionBudgetExceededException;
 import org.qogir.compiler.util.graph.LabelEdge;
+import org.qogir.simulation.ConstructionLogger;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * An implementation of a regular grammar for:
@@ -37,6 +44,30 @@ public class Scanner {
      */
     private HashMap<State,HashMap<Integer,State>> MinDFAToDFAs = new HashMap<>();
 
+    private final ArenaRegexParser parser = new ArenaRegexParser();
+
+    /**
+     * Simplify the regex trees and share the common prefixes of regexes before the Thompson construction {@link RegexOptimization}
+     */
+    private boolean regexOptimization = false;
+
+    /**
+     * Remove ε-transitions and merge equivalent states of the grammar NFA before scanning and subset construction {@link NFAReduction}
+     */
+    private boolean nfaReduction = false;
+
+    /**
+     * Build the NFA of each regex into a primitive arena of states {@link ThompsonArena}, with fused concatenations
+     */
+    private boolean arenaConstruction = false;
+
+    private final ThompsonArena thompsonArena = new ThompsonArena();
+
+    /**
+     * The limits of the subset construction and the minimization {@link ConstructionBudget}, null for no limit
+     */
+    private ConstructionBudget budget = null;
+
     public Scanner(RegularGrammar rg){
         this.rg = rg;
     }
@@ -45,6 +76,42 @@ public class Scanner {
         rg = new RegularGrammar(regexes);
     }
 
+    public RegularGrammar getRegularGrammar() {
+        return rg;
+    }
+
+    public boolean isRegexOptimization() {
+        return regexOptimization;
+    }
+
+    public void setRegexOptimization(boolean regexOptimization) {
+        this.regexOptimization = regexOptimization;
+    }
+
+    public boolean isNFAReduction() {
+        return nfaReduction;
+    }
+
+    public void setNFAReduction(boolean nfaReduction) {
+        this.nfaReduction = nfaReduction;
+    }
+
+    public boolean isArenaConstruction() {
+        return arenaConstruction;
+    }
+
+    public void setArenaConstruction(boolean arenaConstruction) {
+        this.arenaConstruction = arenaConstruction;
+    }
+
+    public ConstructionBudget getBudget() {
+        return budget;
+    }
+
+    public void setBudget(ConstructionBudget budget) {
+        this.budget = budget;
+    }
+
     public HashMap<Regex, RegexTree> getRegexToRegexTree() {
         return regexToRegexTree;
     }
@@ -62,15 +129,23 @@ public class Scanner {
     }
 
     /**
-     * Build a regex tree by ParseRegex{@link ParseRegex#parse}
+     * Build a regex tree by the single-pass parser {@link ArenaRegexParser#parse} and convert the arena-encoded
+     * tree into a regex tree. The tree has the same form as the one built by {@link ParseRegex#parse}.
      * @param r a regex
      * @return a regex tree {@link RegexTree}
      */
     public RegexTree constructRegexTree(Regex r){
-        ParseRegex parser = new ParseRegex(r);
-        RegexTree tree = parser.parse();
-        regexToRegexTree.put(r,tree);
-        return tree;
+        long start = ConstructionLogger.begin();
+        try {
+            RegexArena arena = parser.parse(r.getRegex());
+            RegexTree tree = arena.toRegexTree(parser.getRoot());
+            regexToRegexTree.put(r,tree);
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_PARSE, r.getName(), start, r.getRegex().length(), 0, tree == null ? 0 : tree.size(), 0);
+            return tree;
+        } finally {
+            ConstructionLogger.cancel(start);
+        }
     }
 
     /**
@@ -95,15 +170,51 @@ public class Scanner {
      * @return An NFA
      */
     public TNFA constructRegexNFA(Regex r){
+        if(arenaConstruction)
+            return constructArenaNFA(r);
         RegexTree tree = constructRegexTree(r);
-        ThompsonConstruction thompsonConstruction = new ThompsonConstruction();
-        TNFA nfa = thompsonConstruction.translate(tree.getRoot());
-        for(Character ch : r.getRegex().toCharArray()){
-            if(Character.isLetter(ch) && ch != 'ε' && !nfa.getAlphabet().contains(ch)){
-                nfa.getAlphabet().add(ch);
+        long start = ConstructionLogger.begin();
+        try {
+            ThompsonConstruction thompsonConstruction = new ThompsonConstruction();
+            TNFA nfa = thompsonConstruction.translate(tree.getRoot());
+            for(Character ch : r.getRegex().toCharArray()){
+                if(Character.isLetter(ch) && ch != 'ε' && !nfa.getAlphabet().contains(ch)){
+                    nfa.getAlphabet().add(ch);
+                }
             }
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_THOMPSON, r.getName(), start, tree.size(), 0,
+                        nfa.getTransitTable().vertexSet().size(), nfa.getTransitTable().edgeSet().size());
+            return nfa;
+        } finally {
+            ConstructionLogger.cancel(start);
+        }
+    }
+
+    /**
+     * Construct an NFA for a regex by {@link ThompsonArena#build}, from the arena of the regex tree
+     * without building a {@link RegexTree}, so {@link #getRegexToRegexTree()} is not filled.
+     * @param r a regex
+     * @return An NFA
+     */
+    private TNFA constructArenaNFA(Regex r){
+        long start = ConstructionLogger.begin();
+        try {
+            RegexArena arena = parser.parse(r.getRegex());
+            thompsonArena.clear();
+            TNFA nfa = thompsonArena.toTNFA(thompsonArena.build(arena, parser.getRoot()));
+            for(Character ch : r.getRegex().toCharArray()){
+                if(Character.isLetter(ch) && ch != 'ε' && !nfa.getAlphabet().contains(ch)){
+                    nfa.getAlphabet().add(ch);
+                }
+            }
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_THOMPSON, r.getName(), start, arena.size(), 0,
+                        nfa.getTransitTable().vertexSet().size(), nfa.getTransitTable().edgeSet().size());
+            return nfa;
+        } finally {
+            ConstructionLogger.cancel(start);
         }
-        return nfa;
     }
 
     /**
@@ -114,10 +225,17 @@ public class Scanner {
      */
     public RDFA constructRegexDFA(Regex r){
         TNFA nfa = constructRegexNFA(r);
-        SubsetConstruction subsetConstruction = new SubsetConstruction();
-        RDFA dfa = subsetConstruction.subSetConstruct(nfa);
-        dfa.setAlphabet(nfa.getAlphabet());
-        return dfa;
+        long start = ConstructionLogger.begin();
+        try {
+            SubsetConstruction subsetConstruction = new SubsetConstruction();
+            RDFA dfa = subsetConstruction.subSetConstruct(nfa);
+            dfa.setAlphabet(nfa.getAlphabet());
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_SUBSET, r.getName(), start, nfa, dfa);
+            return dfa;
+        } finally {
+            ConstructionLogger.cancel(start);
+        }
     }
 
     /**
@@ -144,30 +262,64 @@ public class Scanner {
         return rtodfa;
     }
 
+    /**
+     * Reduce an NFA into an ε-free NFA by {@link NFAReduction#reduce}
+     * @param nfa an NFA
+     * @return an ε-free NFA whose accepting states remember the accepting states of nfa
+     */
+    public ReducedNFA reduceNFA(FiniteAutomaton nfa){
+        long start = ConstructionLogger.begin();
+        try {
+            ReducedNFA reduced = new NFAReduction().reduce(nfa);
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_NFA_REDUCTION, grammarName(), start, nfa, reduced);
+            return reduced;
+        } finally {
+            ConstructionLogger.cancel(start);
+        }
+    }
+
     /**
      * construct an DFA with an NFA
      * @param nfa an NFA
      * @return an DFA
      */
     public RDFA constructDFA(TNFA nfa){
+        FiniteAutomaton source = nfaReduction ? reduceNFA(nfa) : nfa;
         State.STATE_ID = 0;// reset the state id
-        SubsetConstruction subsetConstruction = new SubsetConstruction();
-        RDFA dfa = subsetConstruction.subSetConstruct(nfa);
-        dfa.setAlphabet(nfa.getAlphabet());
-        return dfa;
+        long start = ConstructionLogger.begin();
+        try {
+            SubsetConstruction subsetConstruction = new SubsetConstruction();
+            RDFA dfa = subsetConstruction.subSetConstruct(source);
+            dfa.setAlphabet(nfa.getAlphabet());
+            tagAcceptingStates(dfa, source);
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_SUBSET, grammarName(), start, source, dfa);
+            return dfa;
+        } finally {
+            ConstructionLogger.cancel(start);
+        }
     }
 
     /**
-     * Minimize an DFA by State Minimization algorithm {@link StateMinimization#minimize}
+     * Minimize an DFA by State Minimization algorithm {@link StateMinimization#minimize}.
+     * The accepting states keep their tokens, so the minimized DFA can be scanned with as the DFA.
      * @param dfa an DFA
      * @return an DFA
      */
     public RDFA minimizeDFA(RDFA dfa){
         State.STATE_ID = 0;// reset the state id
-        StateMinimization stateMinimization = new StateMinimization();
-        RDFA miniDFA = stateMinimization.minimize(dfa);
-        miniDFA.setAlphabet(dfa.getAlphabet());
-        return miniDFA;
+        long start = ConstructionLogger.begin();
+        try {
+            StateMinimization stateMinimization = new StateMinimization();
+            RDFA miniDFA = stateMinimization.minimize(dfa);
+            miniDFA.setAlphabet(dfa.getAlphabet());
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_MINIMIZE, grammarName(), start, dfa, miniDFA);
+            return miniDFA;
+        } finally {
+            ConstructionLogger.cancel(start);
+        }
     }
 
     /**
@@ -175,6 +327,9 @@ public class Scanner {
      * @return An NFA
      */
     public TNFA constructNFA(){
+        if(regexOptimization && !rg.getPatterns().isEmpty()){
+            return constructOptimizedNFA();
+        }
         if(rg.getPatterns().size() == 1){
             Regex r = rg.getPatterns().get(0);
             TNFA nfa = constructRegexNFA(r);
@@ -207,15 +362,255 @@ public class Scanner {
         return null;
     }
 
+    /**
+     * Construct an NFA for a regular grammar by {@link RegexOptimization}: the regex trees are simplified,
+     * and the regexes with common prefixes share the states of the prefixes.
+     * The NFA of each regex in {@link #getRegexToNFA()} shares the transition table of the grammar NFA
+     * and has its own accepting state.
+     * @return An NFA
+     */
+    private TNFA constructOptimizedNFA(){
+        RegexOptimization optimization = new RegexOptimization();
+        HashMap<Regex,RegexTree> simplifiedTrees = new HashMap<>();
+        for(Regex r : rg.getPatterns()){
+            simplifiedTrees.put(r, optimization.simplify(constructRegexTree(r)));
+        }
+        long start = ConstructionLogger.begin();
+        try {
+            TNFA nfa = optimization.constructNFA(rg.getPatterns(), simplifiedTrees, this.RegexToNFA);
+            nfa.setAlphabet(rg.getSymbols());
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_THOMPSON, grammarName(), start, optimization.getDistinctSubtrees(), 0,
+                        nfa.getTransitTable().vertexSet().size(), nfa.getTransitTable().edgeSet().size());
+            return nfa;
+        } finally {
+            ConstructionLogger.cancel(start);
+        }
+    }
+
     /**
      * construct DFA for a regular grammar
      * @return a DFA
      */
     public RDFA constructDFA(){
         TNFA nfa = constructNFA();
-        SubsetConstruction subsetConstruction = new SubsetConstruction();
-        RDFA dfa = subsetConstruction.subSetConstruct(nfa);
-        dfa.setAlphabet(rg.symbols);
-        return dfa;
+        FiniteAutomaton source = nfaReduction ? reduceNFA(nfa) : nfa;
+        long start = ConstructionLogger.begin();
+        try {
+            SubsetConstruction subsetConstruction = new SubsetConstruction();
+            subsetConstruction.setBudget(budget);
+            RDFA dfa;
+            long started = System.nanoTime();
+            try {
+                dfa = subsetConstruction.subSetConstruct(source);
+            } catch (ConstructionBudgetExceededException e) {
+                ConstructionLogger.cancel(start);
+                throw new ConstructionBudgetExceededException(e, offendingRules(System.nanoTime() - started));
+            }
+            dfa.setAlphabet(rg.symbols);
+            tagAcceptingStates(dfa, source);
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_SUBSET, grammarName(), start, source, dfa);
+            return dfa;
+        } finally {
+            ConstructionLogger.cancel(start);
+        }
+    }
+
+    /**
+     * Find the rules whose DFA is over the budget on its own, by constructing the DFA of each rule alone.
+     * The constructions share one deadline: the timeout of the budget, or without one the time the aborted
+     * construction took, so the search takes at most that long in all. A rule not cleared by the deadline
+     * is counted as over the budget.
+     * @param spent the nanoseconds the aborted construction took
+     * @return the names of the rules over the budget, or of all rules if only their combination is
+     */
+    private ArrayList<String> offendingRules(long spent){
+        ArrayList<String> all = new ArrayList<>();
+        ArrayList<String> offending = new ArrayList<>();
+        long limit = budget.getTimeoutMillis() != Long.MAX_VALUE ? budget.getTimeoutMillis() : Math.max(1, spent / 1_000_000);
+        long begun = System.nanoTime();
+        for(Regex r : rg.getPatterns()){
+            all.add(r.getName());
+            if(rg.getPatterns().size() == 1)
+                break;
+            long remaining = limit - (System.nanoTime() - begun) / 1_000_000;
+            if(remaining <= 0){
+                offending.add(r.getName());
+                continue;
+            }
+            Scanner single = new Scanner(new RegularGrammar(new String[]{r.toString()}));
+            single.setNFAReduction(nfaReduction);
+            single.setArenaConstruction(arenaConstruction);
+            SubsetConstruction subsetConstruction = new SubsetConstruction();
+            subsetConstruction.setBudget(budget.withTimeout(remaining));
+            TNFA nfa = single.constructNFA();
+            try {
+                subsetConstruction.subSetConstruct(nfaReduction ? single.reduceNFA(nfa) : nfa);
+            } catch (ConstructionBudgetExceededException e) {
+                offending.add(r.getName());
+            }
+        }
+        return offending.isEmpty() ? all : offending;
+    }
+
+    /**
+     * Construct the DFA for a regular grammar by a {@link DFATableConstruction}, for grammars whose DFA
+     * has too many states for {@link #constructDFA()}, e.g. {@link OffHeapSubsetConstruction} with a memory budget
+     * or {@link ParallelSubsetConstruction} on all cores.
+     * The accepting states are tagged with the regexes they accept as by {@link #constructDFA()},
+     * and {@link #getDFAToNFAs()} is not filled.
+     * @param construction the construction
+     * @return the table of the DFA
+     */
+    public DFATable constructDFATable(DFATableConstruction construction) throws IOException {
+        TNFA nfa = constructNFA();
+        FiniteAutomaton source = nfaReduction ? reduceNFA(nfa) : nfa;
+        source.setAlphabet(rg.symbols);
+        HashMap<State,int[]> acceptedTokens = acceptedTokens(source);
+        long start = ConstructionLogger.begin();
+        try {
+            DFATable table = construction.construct(source, acceptedTokens.isEmpty() ? null : acceptedTokens, priorities());
+            if(start != 0)
+                ConstructionLogger.end(ConstructionLogger.PHASE_SUBSET, grammarName(), start,
+                        source.getTransitTable().vertexSet().size(), source.getTransitTable().edgeSet().size(),
+                        table.getStateCount(), table.transitionCount());
+            return table;
+        } finally {
+            ConstructionLogger.cancel(start);
+        }
+    }
+
+    /**
+     * Construct a DFA for a regular grammar which builds its states while it scans {@link LazyDFA},
+     * for grammars whose full DFA is too large. The tokens are the regexes as by {@link #constructDFA()}.
+     * @param maxCachedStates the most DFA states held at once
+     * @return a lazy DFA
+     */
+    public LazyDFA constructLazyDFA(int maxCachedStates){
+        TNFA nfa = constructNFA();
+        FiniteAutomaton source = nfaReduction ? reduceNFA(nfa) : nfa;
+        source.setAlphabet(rg.symbols);
+        HashMap<State,int[]> acceptedTokens = acceptedTokens(source);
+        return new LazyDFA(source, acceptedTokens.isEmpty() ? null : acceptedTokens, priorities(), maxCachedStates);
+    }
+
+    /**
+     * Construct the bit-parallel simulation of the NFA of a regular grammar {@link BitParallelNFA}.
+     * The tokens are the regexes as by {@link #constructDFA()}.
+     * @return a bit-parallel NFA
+     */
+    public BitParallelNFA constructBitParallelNFA(){
+        return constructBitParallelNFA(BitParallelNFA.DEFAULT_MAX_TABLE_BYTES);
+    }
+
+    /**
+     * Construct the bit-parallel simulation of the NFA of a regular grammar {@link BitParallelNFA}
+     * whose table takes at most maxTableBytes.
+     * @param maxTableBytes the largest table to build
+     * @return a bit-parallel NFA
+     * @throws ConstructionBudgetExceededException if the table takes more than maxTableBytes
+     */
+    public BitParallelNFA constructBitParallelNFA(long maxTableBytes){
+        TNFA nfa = constructNFA();
+        FiniteAutomaton source = nfaReduction ? reduceNFA(nfa) : nfa;
+        source.setAlphabet(rg.symbols);
+        HashMap<State,int[]> acceptedTokens = acceptedTokens(source);
+        return new BitParallelNFA(source, acceptedTokens.isEmpty() ? null : acceptedTokens, priorities(), maxTableBytes);
+    }
+
+    /**
+     * @param source the grammar NFA or its reduced NFA
+     * @return the indexes of the regexes each accepting state of source accepts
+     */
+    private HashMap<State,int[]> acceptedTokens(FiniteAutomaton source){
+        HashMap<State,int[]> acceptedTokens = new HashMap<>();
+        for(int i = 0; i < rg.getPatterns().size(); i++){
+            TNFA rn = this.RegexToNFA.get(rg.getPatterns().get(i));
+            if(rn != null)
+                acceptedTokens.merge(rn.getAcceptingState(), new int[]{i}, Scanner::concat);
+        }
+        if(source instanceof ReducedNFA reduced){
+            HashMap<State,int[]> reducedTokens = new HashMap<>();
+            for(State s : reduced.getAcceptedStateMapping().keySet()){
+                for(State original : reduced.getAcceptedStates(s).values()){
+                    int[] tokens = acceptedTokens.get(original);
+                    if(tokens != null)
+                        reducedTokens.merge(s, tokens, Scanner::concat);
+                }
+            }
+            acceptedTokens = reducedTokens;
+        }
+        return acceptedTokens;
+    }
+
+    private int[] priorities(){
+        int[] priorities = new int[rg.getPatterns().size()];
+        for(int i = 0; i < priorities.length; i++)
+            priorities[i] = rg.getPatterns().get(i).getPriority();
+        return priorities;
+    }
+
+    private static int[] concat(int[] a, int[] b){
+        int[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    /**
+     * Tag each accepting state of a DFA with the regex it accepts, i.e. the index of the regex in the regular grammar.
+     * The regex with the highest priority wins, and a state accepted by two regexes with the same priority is tagged
+     * with {@link RDFA#AMBIGUOUS_TOKEN}, as in {@link ScanWithNFA}.
+     * The NFA state sets of the DFA states are kept in {@link #getDFAToNFAs()}.
+     * @param dfa a DFA constructed by the subset construction
+     * @param source the NFA of the subset construction, a grammar NFA or its reduced NFA
+     */
+    private void tagAcceptingStates(RDFA dfa, FiniteAutomaton source){
+        this.DFAToNFAs = dfa.getStateMappingBetweenDFAAndNFA();
+        if(this.RegexToNFA.isEmpty())
+            return;
+        ReducedNFA reduced = source instanceof ReducedNFA ? (ReducedNFA) source : null;
+        for(State d : DFAToNFAs.keySet()){
+            if(d.getType() != State.ACCEPT && d.getType() != State.ACCEPTANDSTART)
+                continue;
+            HashSet<State> accepted = new HashSet<>();
+            for(State s : DFAToNFAs.get(d).values()){
+                if(reduced != null)
+                    accepted.addAll(reduced.getAcceptedStates(s).values());
+                else if(s.getType() == State.ACCEPT || s.getType() == State.ACCEPTANDSTART)
+                    accepted.add(s);
+            }
+            int token = RDFA.NO_TOKEN;
+            int priority = Integer.MIN_VALUE;
+            boolean ambiguous = false;
+            for(int i = 0; i < rg.getPatterns().size(); i++){
+                Regex r = rg.getPatterns().get(i);
+                TNFA rn = this.RegexToNFA.get(r);
+                if(rn == null || !accepted.contains(rn.getAcceptingState()))
+                    continue;
+                if(r.getPriority() > priority){
+                    priority = r.getPriority();
+                    token = i;
+                    ambiguous = false;
+                }
+                else if(r.getPriority() == priority){
+                    ambiguous = true;
+                }
+            }
+            dfa.setAcceptingToken(d, ambiguous ? RDFA.AMBIGUOUS_TOKEN : token);
+        }
+    }
+
+    /**
+     * @return the names of all regexes in the regular grammar, used as the subject of construction events
+     */
+    private String grammarName(){
+        StringBuilder name = new StringBuilder();
+        for(Regex r : rg.getPatterns()){
+            if(!name.isEmpty())
+                name.append(",");
+            name.append(r.getName());
+        }
+        return name.toString();
     }
 }
@@ -0,0 +1,563 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compile a DFA into a dedicated scanner class at runtime.
+ * Each state of the minimal DFA becomes a switch over its chars, so the JIT can specialize the transitions instead of
+ * loading them from a table as {@link ScanWithDFA}. A state with a self-loop runs in its own loop, and a large DFA
+ * gets a method for each state.
+ * The generated class extends {@link Scan} and scans by the same Maximal Munch principle and priority system:
+ * <pre>
+ *     ScannerCodeGenerator generator = new ScannerCodeGenerator(Path.of("scanner-cache"));
+ *     GeneratedScanFactory factory = generator.compile(scanner.constructDFA());
+ *     int result = factory.newScan(rg, input).scan(tokens);
+ * </pre>
+ * The Java source is compiled in-process by {@link javax.tools.JavaCompiler}, and the bytecode is defined as a
+ * hidden class in this package. With a cache directory, the bytecode is saved as "&lt;hash of the DFA&gt;.class"
+ * and the compiler is skipped for a DFA seen before.
+ */
+public class ScannerCodeGenerator {
+
+    /**
+     * The version of the generated code, part of the cache key so that a new generator never loads old classes
+     */
+    private static final int GENERATOR_VERSION = 4;
+
+    private static final String CLASS_NAME = "GeneratedScan";
+
+    /**
+     * The most transitions coded in the scan loop itself. Larger DFAs get a method for each state,
+     * since the JIT does not compile methods of more than 8000 bytes of bytecode
+     */
+    private static final int INLINE_TRANSITIONS = 400;
+
+    /**
+     * The number of states dispatched by one method, keeping the methods far below the 64KB limit of bytecode
+     */
+    private static final int STATES_PER_METHOD = 512;
+
+    /**
+     * The number of chars in one string literal of the token table
+     */
+    private static final int CHARS_PER_LITERAL = 8192;
+
+    /**
+     * The most ranges of self-loop chars of an accelerable state, each range costs two compares per vector
+     */
+    private static final int MAX_ACCELERATED_RANGES = 4;
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /**
+     * true if the JVM is started with --add-modules jdk.incubator.vector
+     */
+    private static final boolean VECTOR_API_AVAILABLE = ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+
+    private final Path cacheDirectory;
+
+    /**
+     * Skip the runs of self-loop chars by the Vector API, or by a scalar loop if false
+     */
+    private boolean vectorization = VECTOR_API_AVAILABLE;
+
+    private final HashMap<String, GeneratedScanFactory> loaded = new HashMap<>();
+
+    /**
+     * A generator without a disk cache.
+     */
+    public ScannerCodeGenerator() {
+        this(null);
+    }
+
+    /**
+     * @param cacheDirectory the directory of the cached classes, created if missing
+     */
+    public ScannerCodeGenerator(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public boolean isVectorization() {
+        return vectorization;
+    }
+
+    /**
+     * Use the Vector API in accelerable states. It is on by default if the module jdk.incubator.vector is in the
+     * boot layer, i.e. the JVM is started with {@code --add-modules jdk.incubator.vector}.
+     * @param vectorization true for the Vector API, false for scalar loops
+     * @throws IllegalStateException if the Vector API is not available
+     */
+    public void setVectorization(boolean vectorization) {
+        if (vectorization && !VECTOR_API_AVAILABLE)
+            throw new IllegalStateException("The module " + VECTOR_MODULE + " is not available, start the JVM with --add-modules " + VECTOR_MODULE + ".");
+        this.vectorization = vectorization;
+    }
+
+    /**
+     * Compile a DFA, or load it from the cache.
+     *
+     * @param dfa a DFA whose accepting states are tagged with tokens, e.g. by {@link Scanner#constructDFA()}
+     * @return the factory of the scanners of the DFA
+     */
+    public GeneratedScanFactory compile(RDFA dfa) {
+        return compile(DFATable.fromRDFA(dfa));
+    }
+
+    /**
+     * Compile the minimal DFA of a table {@link DFATable#minimize()}, or load it from the cache.
+     *
+     * @param table a DFA table
+     * @return the factory of the scanners of the DFA
+     */
+    public synchronized GeneratedScanFactory compile(DFATable table) {
+        table = table.minimize();
+        String key = cacheKey(table);
+        GeneratedScanFactory factory = loaded.get(key);
+        if (factory != null)
+            return factory;
+
+        byte[] bytecode = readCache(key);
+        if (bytecode != null) {
+            try {
+                factory = define(key, bytecode);
+            } catch (ClassFormatError | IllegalArgumentException e) {
+                factory = null; // a damaged cache file, compile again
+            }
+        }
+        if (factory == null) {
+            bytecode = compileSource(generateSource(table), vectorization);
+            factory = define(key, bytecode);
+            writeCache(key, bytecode);
+        }
+        loaded.put(key, factory);
+        return factory;
+    }
+
+    /**
+     * Generate the Java source of a scanner class for a DFA table.
+     *
+     * @param table a DFA table
+     * @return the source of the class {@code org.qogir.simulation.scanner.GeneratedScan}
+     */
+    public String generateSource(DFATable table) {
+        int n = table.getStateCount();
+        char[] alphabet = table.getAlphabet();
+        StringBuilder src = new StringBuilder();
+        src.append("package org.qogir.simulation.scanner;\n\n");
+        src.append("import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;\n\n");
+        if (vectorization) {
+            src.append("import jdk.incubator.vector.ShortVector;\n");
+            src.append("import jdk.incubator.vector.VectorMask;\n");
+            src.append("import jdk.incubator.vector.VectorOperators;\n");
+            src.append("import jdk.incubator.vector.VectorSpecies;\n\n");
+        }
+        src.append("import java.util.ArrayDeque;\n\n");
+        src.append("/**\n * Generated by ScannerCodeGenerator for a DFA with ").append(n).append(" states.\n */\n");
+        src.append("final class ").append(CLASS_NAME).append(" extends Scan {\n\n");
+        if (vectorization)
+            src.append("    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;\n\n");
+
+        //the ranges of self-loop chars of accelerable states, null for other states
+        int[][] accelerated = new int[n][];
+        boolean accelerable = false;
+        for (int s = 0; s < n; s++) {
+            int[] ranges = table.selfLoopRanges(s);
+            if (ranges.length > 0 && ranges.length <= 2 * MAX_ACCELERATED_RANGES) {
+                accelerated[s] = ranges;
+                accelerable = true;
+            }
+        }
+
+        //tokens[state] + 3, so that DFATable.NOT_ACCEPTING becomes 0
+        src.append("    private static final char[] TOKENS = new StringBuilder()");
+        for (int from = 0; from < n; from += CHARS_PER_LITERAL) {
+            src.append("\n            .append(\"");
+            for (int s = from; s < Math.min(n, from + CHARS_PER_LITERAL); s++)
+                appendEscaped(src, (char) (table.getToken(s) - DFATable.NOT_ACCEPTING));
+            src.append("\")");
+        }
+        src.append(".toString().toCharArray();\n\n");
+
+        src.append("    ").append(CLASS_NAME).append("(RegularGrammar rg, String input) {\n");
+        src.append("        super(rg, input);\n");
+        src.append("    }\n\n");
+
+        src.append("    @Override\n");
+        src.append("    public int scan(ArrayDeque tokenQueue) {\n");
+        src.append("        final char[] in = this.input.toCharArray();\n");
+        src.append("        final int length = in.length;\n");
+        src.append("        begin();\n");
+        src.append("        int lastStartCharAt = 0;\n");
+        src.append("        while (lastStartCharAt < length) {\n");
+        src.append("            int state = 0;\n");
+        src.append("            int lastAcceptedCharAt = -1;\n");
+        src.append("            int lastToken = 0;\n");
+        //i ends at the char the DFA got stuck on, for the backtracked chars of the metrics
+        src.append("            int i = lastStartCharAt;\n");
+        boolean inline = table.transitionCount() <= INLINE_TRANSITIONS;
+        if (inline) {
+            //direct-coded: each state is a case of the dispatch loop, and a state with a self-loop stays in
+            //its own loop until a char leaves it, so runs of e.g. identifier chars never go through the dispatch
+            src.append("            scan:\n");
+            src.append("            while (true) {\n");
+            src.append("                switch (state) {\n");
+            for (int s = 0; s < n; s++) {
+                LinkedHashMap<Integer, List<Character>> targets = transitionsByTarget(table, s);
+                if (accelerated[s] != null) {
+                    //skip the run of self-loop chars, then take the transition on the char leaving the run
+                    targets.remove(s);
+                    src.append("                    case ").append(s).append(": {\n");
+                    src.append("                        int run = i;\n");
+                    src.append("                        i = skip").append(s).append("(in, i, length);\n");
+                    if (table.isAccepting(s)) {
+                        src.append("                        if (i > run) {\n");
+                        src.append("                            lastAcceptedCharAt = i - 1;\n");
+                        src.append("                            lastToken = ").append(table.getToken(s) - DFATable.NOT_ACCEPTING).append(";\n");
+                        src.append("                        }\n");
+                    }
+                }
+                if (targets.isEmpty()) {
+                    //no transition, the token ends here
+                    if (accelerated[s] == null)
+                        src.append("                    case ").append(s).append(":\n");
+                    src.append("                        break scan;\n");
+                    if (accelerated[s] != null)
+                        src.append("                    }\n");
+                    continue;
+                }
+                boolean selfLoop = targets.containsKey(s);
+                String indent = selfLoop ? "                            " : "                        ";
+                if (accelerated[s] == null)
+                    src.append("                    case ").append(s).append(": {\n");
+                if (selfLoop)
+                    src.append("                        while (true) {\n");
+                src.append(indent).append("if (i >= length)\n");
+                src.append(indent).append("    break scan;\n");
+                src.append(indent).append("switch (in[i++]) {\n");
+                for (Map.Entry<Integer, List<Character>> e : targets.entrySet()) {
+                    int t = e.getKey();
+                    src.append(indent).append("    ");
+                    for (char c : e.getValue())
+                        src.append("case ").append((int) c).append(": ");
+                    if (t != s)
+                        src.append("state = ").append(t).append("; ");
+                    if (table.isAccepting(t))
+                        src.append("lastAcceptedCharAt = i - 1; lastToken = ").append(table.getToken(t) - DFATable.NOT_ACCEPTING).append("; ");
+                    src.append(t == s ? "continue;\n" : "continue scan;\n");
+                }
+                src.append(indent).append("    default: i--; break scan;\n");
+                src.append(indent).append("}\n");
+                if (selfLoop)
+                    src.append("                        }\n");
+                src.append("                    }\n");
+            }
+            src.append("                    default: break scan;\n");
+            src.append("                }\n");
+            src.append("            }\n");
+        } else {
+            src.append("            while (i < length) {\n");
+            src.append("                int next = next(state, in[i]);\n");
+            src.append("                if (next < 0)\n");
+            src.append("                    break;\n");
+            src.append("                i++;\n");
+            src.append("                int token = TOKENS[next];\n");
+            src.append("                if (token != 0) {\n");
+            src.append("                    lastAcceptedCharAt = i - 1;\n");
+            src.append("                    lastToken = token;\n");
+            src.append("                }\n");
+            if (accelerable) {
+                //entering an accelerable state, skip the run of its self-loop chars
+                src.append("                if (next != state) {\n");
+                src.append("                    int run = i;\n");
+                src.append("                    i = skip(next, in, i, length);\n");
+                src.append("                    if (i > run && token != 0)\n");
+                src.append("                        lastAcceptedCharAt = i - 1;\n");
+                src.append("                }\n");
+            }
+            src.append("                state = next;\n");
+            src.append("            }\n");
+        }
+        src.append("            if (lastAcceptedCharAt < 0 || lastToken == ").append(RDFA.AMBIGUOUS_TOKEN - DFATable.NOT_ACCEPTING).append(") {\n");
+        src.append("                errorOffset = lastStartCharAt;\n");
+        src.append("                return finish(lastAcceptedCharAt < 0 ? ScanMessage.NOT_MATCH : ScanMessage.AMBIGUITY_GRAMMAR);\n");
+        src.append("            }\n");
+        src.append("            if (metrics != null)\n");
+        src.append("                metrics.token(lastToken - ").append(-DFATable.NOT_ACCEPTING).append(", i - lastAcceptedCharAt - 1);\n");
+        src.append("            tokenQueue.add(token(lastToken - ").append(-DFATable.NOT_ACCEPTING).append(", lastStartCharAt, lastAcceptedCharAt + 1));\n");
+        src.append("            lastStartCharAt = lastAcceptedCharAt + 1;\n");
+        src.append("        }\n");
+        src.append("        return finish(ScanMessage.SUCCESS_MATCH);\n");
+        src.append("    }\n\n");
+
+        for (int s = 0; s < n; s++) {
+            if (accelerated[s] != null)
+                appendSkip(src, s, accelerated[s]);
+        }
+        if (inline) {
+            src.append("}\n");
+            return src.toString();
+        }
+
+        if (accelerable) {
+            src.append("    private static int skip(int state, char[] in, int i, int length) {\n");
+            src.append("        switch (state) {\n");
+            for (int s = 0; s < n; s++) {
+                if (accelerated[s] != null)
+                    src.append("            case ").append(s).append(": return skip").append(s).append("(in, i, length);\n");
+            }
+            src.append("            default: return i;\n");
+            src.append("        }\n");
+            src.append("    }\n\n");
+        }
+
+        //dispatch on the state, in chunks of states
+        int chunks = (n + STATES_PER_METHOD - 1) / STATES_PER_METHOD;
+        src.append("    private static int next(int state, char c) {\n");
+        if (chunks == 1) {
+            src.append("        return next0(state, c);\n");
+        } else {
+            src.append("        switch (state / ").append(STATES_PER_METHOD).append(") {\n");
+            for (int k = 0; k < chunks; k++)
+                src.append("            case ").append(k).append(": return next").append(k).append("(state, c);\n");
+            src.append("            default: return -1;\n");
+            src.append("        }\n");
+        }
+        src.append("    }\n\n");
+        for (int k = 0; k < chunks; k++) {
+            src.append("    private static int next").append(k).append("(int state, char c) {\n");
+            src.append("        switch (state) {\n");
+            for (int s = k * STATES_PER_METHOD; s < Math.min(n, (k + 1) * STATES_PER_METHOD); s++)
+                src.append("            case ").append(s).append(": return s").append(s).append("(c);\n");
+            src.append("            default: return -1;\n");
+            src.append("        }\n");
+            src.append("    }\n\n");
+        }
+
+        //one method for each state
+        for (int s = 0; s < n; s++) {
+            src.append("    private static int s").append(s).append("(char c) {\n");
+            src.append("        switch (c) {\n");
+            for (int a = 0; a < alphabet.length; a++) {
+                int t = table.next(s, a);
+                if (t == DFATable.NONE)
+                    continue;
+                src.append("            case ").append((int) alphabet[a]).append(": return ").append(t).append(";\n");
+            }
+            src.append("            default: return -1;\n");
+            src.append("        }\n");
+            src.append("    }\n\n");
+        }
+        src.append("}\n");
+        return src.toString();
+    }
+
+    /**
+     * Append the method skipping a run of the self-loop chars of an accelerable state.
+     * With vectorization, the chars are compared a vector at a time and the first char out of the ranges is found
+     * by the mask of the compares, the tail of the input is scanned by the scalar loop.
+     */
+    private void appendSkip(StringBuilder src, int s, int[] ranges) {
+        StringBuilder scalar = new StringBuilder();
+        for (int r = 0; r < ranges.length; r += 2) {
+            if (r > 0)
+                scalar.append(" || ");
+            if (ranges[r] == ranges[r + 1])
+                scalar.append("c == ").append(ranges[r]);
+            else if (ranges.length == 2)
+                scalar.append("c >= ").append(ranges[r]).append(" && c <= ").append(ranges[r + 1]);
+            else
+                scalar.append("(c >= ").append(ranges[r]).append(" && c <= ").append(ranges[r + 1]).append(")");
+        }
+        src.append("    private static int skip").append(s).append("(char[] in, int i, int length) {\n");
+        if (vectorization) {
+            src.append("        for (int bound = length - SPECIES.length(); i <= bound; i += SPECIES.length()) {\n");
+            src.append("            ShortVector v = ShortVector.fromCharArray(SPECIES, in, i);\n");
+            src.append("            VectorMask<Short> loop = ");
+            for (int r = 0; r < ranges.length; r += 2) {
+                String range = ranges[r] == ranges[r + 1]
+                        ? "v.compare(VectorOperators.EQ, (short) " + ranges[r] + ")"
+                        : "v.compare(VectorOperators.UNSIGNED_GE, (short) " + ranges[r] + ").and(v.compare(VectorOperators.UNSIGNED_LE, (short) " + ranges[r + 1] + "))";
+                src.append(r == 0 ? range : ".or(" + range + ")");
+            }
+            src.append(";\n");
+            src.append("            if (!loop.allTrue())\n");
+            src.append("                return i + loop.not().firstTrue();\n");
+            src.append("        }\n");
+        }
+        src.append("        for (; i < length; i++) {\n");
+        src.append("            char c = in[i];\n");
+        src.append("            if (!(").append(scalar).append("))\n");
+        src.append("                break;\n");
+        src.append("        }\n");
+        src.append("        return i;\n");
+        src.append("    }\n\n");
+    }
+
+    /**
+     * @return the chars of the transitions of a state, grouped by their target state
+     */
+    private static LinkedHashMap<Integer, List<Character>> transitionsByTarget(DFATable table, int s) {
+        LinkedHashMap<Integer, List<Character>> targets = new LinkedHashMap<>();
+        char[] alphabet = table.getAlphabet();
+        for (int a = 0; a < alphabet.length; a++) {
+            int t = table.next(s, a);
+            if (t != DFATable.NONE)
+                targets.computeIfAbsent(t, k -> new ArrayList<>()).add(alphabet[a]);
+        }
+        return targets;
+    }
+
+    /**
+     * Append a char of a string literal. Chars below 256 are octal escapes, since a unicode escape of
+     * a line terminator, a quote or a backslash is translated before the literal is parsed.
+     */
+    private static void appendEscaped(StringBuilder src, char c) {
+        if (c < 256) {
+            src.append('\\').append(Integer.toOctalString(c));
+            return;
+        }
+        src.append(String.format("\\u%04x", (int) c));
+    }
+
+    /**
+     * @return the SHA-256 of the generator version, the vectorization and the table in hex
+     */
+    private String cacheKey(DFATable table) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder data = new StringBuilder();
+            data.append(GENERATOR_VERSION).append(';').append(vectorization).append(';').append(table.getAlphabet()).append(';');
+            for (int s = 0; s < table.getStateCount(); s++) {
+                data.append(table.getToken(s)).append(':');
+                for (int a = 0; a < table.getSymbolCount(); a++)
+                    data.append(table.next(s, a)).append(',');
+                data.append(';');
+            }
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest(data.toString().getBytes(StandardCharsets.UTF_8)))
+                key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] readCache(String key) {
+        if (cacheDirectory == null)
+            return null;
+        Path file = cacheDirectory.resolve(key + ".class");
+        try {
+            return Files.isRegularFile(file) ? Files.readAllBytes(file) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save the bytecode by an atomic rename, so a concurrent reader never sees a partial file.
+     * The cache is an optimization, a failed write is ignored.
+     */
+    private void writeCache(String key, byte[] bytecode) {
+        if (cacheDirectory == null)
+            return;
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path temp = Files.createTempFile(cacheDirectory, key, ".tmp");
+            Files.write(temp, bytecode);
+            Files.move(temp, cacheDirectory.resolve(key + ".class"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | UnsupportedOperationException ignored) {
+        }
+    }
+
+    private static GeneratedScanFactory define(String key, byte[] bytecode) {
+        try {
+            MethodHandles.Lookup hidden = MethodHandles.lookup().defineHiddenClass(bytecode, true);
+            MethodHandle constructor = hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class, RegularGrammar.class, String.class));
+            return new GeneratedScanFactory(key, constructor);
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new IllegalStateException("The generated scanner " + key + " cannot be loaded.", e);
+        }
+    }
+
+    /**
+     * Compile the source in memory against the class path of this class.
+     *
+     * @return the bytecode of the class
+     */
+    private static byte[] compileSource(String source, boolean vectorization) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("No Java compiler is available, run the scanner on a JDK.");
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        ByteArrayOutputStream bytecode = new ByteArrayOutputStream();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+        JavaFileManager fileManager = new ForwardingJavaFileManager<>(standard) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return bytecode;
+                    }
+                };
+            }
+        };
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///org/qogir/simulation/scanner/" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        List<String> options = new ArrayList<>();
+        options.add("-classpath");
+        options.add(classPath());
+        options.add("-g:none");
+        if (vectorization) {
+            options.add("--add-modules");
+            options.add(VECTOR_MODULE);
+        }
+        Boolean success = compiler.getTask(null, fileManager, diagnostics, options, null, List.of(file)).call();
+        if (!success)
+            throw new IllegalStateException("The generated scanner cannot be compiled: " + diagnostics.getDiagnostics());
+        return bytecode.toByteArray();
+    }
+
+    /**
+     * @return the class path of the application and the location of the scanner classes
+     */
+    private static String classPath() {
+        String classPath = System.getProperty("java.class.path", "");
+        try {
+            String location = Path.of(Scan.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+            return classPath.isEmpty() ? location : location + File.pathSeparator + classPath;
+        } catch (URISyntaxException | NullPointerException | SecurityException e) {
+            return classPath;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The state visits and transitions of a {@link CompiledScanner} on a sample of the inputs it scans,
+ * used to lay out the states of the scanner so that the hot states are next to each other in its table.
+ * <p>
+ * The states of a compiled scanner are numbered in breadth-first order, so the few states most inputs go through
+ * are scattered across the table, and each transition between them loads another cache line.
+ * {@link #relayout()} renumbers the states by chaining them along the hottest transitions, as code layout by
+ * profile places hot basic blocks: the transitions are taken from the hottest down, and a transition s->t joins
+ * the chain ending with s to the chain starting with t, until the transitions are cold. The start state begins
+ * the first chain, and the other chains follow by their hottest state, so the hot states take the first rows
+ * of the table, each next to the state it goes to most.
+ * <p>
+ * <pre>
+ *     ScannerProfile profile = new ScannerProfile(compiled);
+ *     for (String sample : corpus)
+ *         profile.record(sample);
+ *     CompiledScanner laidOut = profile.relayout();
+ * </pre>
+ */
+public class ScannerProfile {
+
+    /**
+     * A transition taken less than once in this many tokens is cold, and does not join chains
+     */
+    private static final int COLD_RATIO = 64;
+
+    private final CompiledScanner scanner;
+
+    private final int width;
+
+    /**
+     * The visits of each state, the dead state is last
+     */
+    private final long[] visits;
+
+    /**
+     * transitions[state * width + column], the number of times a state is left by a column
+     */
+    private final long[] transitions;
+
+    public ScannerProfile(CompiledScanner scanner) {
+        this.scanner = scanner;
+        this.width = scanner.columnCount();
+        this.visits = new long[scanner.deadState() + 1];
+        this.transitions = new long[(scanner.deadState() + 1) * width];
+    }
+
+    /**
+     * Scan a sample input by maximal munch as {@link CompiledScanner#scan}, and count the states and transitions.
+     * A char which starts no token is skipped, so the rest of the input is still recorded.
+     */
+    public void record(CharSequence input) {
+        int dead = scanner.deadState();
+        int length = input.length();
+        int lastStartCharAt = 0;
+        while (lastStartCharAt < length) {
+            int state = 0;
+            visits[0]++;
+            int lastAcceptedCharAt = -1;
+            for (int i = lastStartCharAt; i < length; i++) {
+                int column = scanner.columnOf(input.charAt(i));
+                transitions[state * width + column]++;
+                state = scanner.next(state, column);
+                visits[state]++;
+                if (state == dead)
+                    break;
+                if (scanner.tokenOf(state) != DFATable.NOT_ACCEPTING)
+                    lastAcceptedCharAt = i;
+            }
+            lastStartCharAt = lastAcceptedCharAt < 0 ? lastStartCharAt + 1 : lastAcceptedCharAt + 1;
+        }
+    }
+
+    /**
+     * @return the number of times the state was visited, the dead state is {@link CompiledScanner#getStateCount()}
+     */
+    public long getVisits(int state) {
+        return visits[state];
+    }
+
+    /**
+     * @return the states in the order of the layout, starting with the start state 0
+     */
+    public int[] layout() {
+        int n = scanner.deadState();
+        //the weight of each pair of states, in both directions
+        HashMap<Long, Long> weights = new HashMap<>();
+        for (int s = 0; s < n; s++) {
+            for (int column = 0; column < width; column++) {
+                int t = scanner.next(s, column);
+                long count = transitions[s * width + column];
+                if (count != 0 && t != s && t != n)
+                    weights.merge((long) Math.min(s, t) << 32 | Math.max(s, t), count, Long::sum);
+            }
+        }
+        ArrayList<Map.Entry<Long, Long>> edges = new ArrayList<>(weights.entrySet());
+        edges.sort(Map.Entry.<Long, Long>comparingByValue().reversed());
+
+        //each state is a chain at first, the chains are joined end to start
+        int[] chain = new int[n];
+        int[] after = new int[n];
+        int[] head = new int[n];
+        int[] tail = new int[n];
+        for (int s = 0; s < n; s++) {
+            chain[s] = s;
+            after[s] = -1;
+            head[s] = s;
+            tail[s] = s;
+        }
+        for (Map.Entry<Long, Long> edge : edges) {
+            //a cold transition would join a cold state to a hot chain
+            if (edge.getValue() * COLD_RATIO < visits[0])
+                break;
+            int s = (int) (edge.getKey() >>> 32);
+            int t = (int) (long) edge.getKey();
+            int cs = find(chain, s);
+            int ct = find(chain, t);
+            if (cs == ct)
+                continue;
+            if (tail[cs] == s && head[ct] == t && t != 0)
+                join(chain, after, head, tail, cs, ct);
+            else if (tail[ct] == t && head[cs] == s && s != 0)
+                join(chain, after, head, tail, ct, cs);
+        }
+
+        ArrayList<Integer> chains = new ArrayList<>();
+        long[] chainVisits = new long[n];
+        for (int s = 0; s < n; s++) {
+            int c = find(chain, s);
+            chainVisits[c] = Math.max(chainVisits[c], visits[s]);
+            if (c == s)
+                chains.add(c);
+        }
+        int first = find(chain, 0);
+        chains.sort(Comparator.comparing((Integer c) -> c != first).thenComparing(c -> -chainVisits[c]));
+        int[] order = new int[n];
+        int i = 0;
+        for (int c : chains)
+            for (int s = head[c]; s >= 0; s = after[s])
+                order[i++] = s;
+        return order;
+    }
+
+    /**
+     * @return a copy of the scanner with the states in the order of {@link #layout()}
+     */
+    public CompiledScanner relayout() {
+        return new CompiledScanner(scanner, layout());
+    }
+
+    private static int find(int[] chain, int s) {
+        while (chain[s] != s) {
+            chain[s] = chain[chain[s]];
+            s = chain[s];
+        }
+        return s;
+    }
+
+    /**
+     * Append the chain b to the chain a
+     */
+    private static void join(int[] chain, int[] after, int[] head, int[] tail, int a, int b) {
+        after[tail[a]] = head[b];
+        tail[a] = tail[b];
+        chain[b] = a;
+    }
+}
@@ -0,0 +1,230 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.Regex;
+import org.qogir.compiler.grammar.regularGrammar.RegexLiterals;
+import org.qogir.compiler.grammar.regularGrammar.RegexTree;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Search the occurrences of the regexes of a regular grammar in a text, e.g. grep a log with a token grammar.
+ * Unlike a {@link Scan}, the text may hold any chars, and the text between the matches is skipped.
+ * A match is leftmost-longest: it starts as early as possible and is the longest match from there,
+ * and the matches of {@link #findAll} do not overlap.
+ * <p>
+ * A search runs three DFAs built from the minimal DFA of the grammar:
+ * + the unanchored DFA {@link DFATable#unanchored()} finds the earliest end of a match
+ * + the reverse DFA {@link DFATable#reversePrefixes()} runs back from that end and finds the candidate starts,
+ *   the leftmost match starts at one of them
+ * + the minimal DFA finds the longest match from the candidate starts
+ * If every regex has a prefix literal {@link RegexLiterals#prefix}, a match can only start where one of them occurs,
+ * and the unanchored DFA jumps to the next occurrence by {@link String#indexOf} whenever no match is in progress.
+ */
+public class Search {
+
+    private final RegularGrammar rg;
+
+    private final DFATable dfa;
+
+    private final DFATable forward;
+
+    private final DFATable reverse;
+
+    /**
+     * The prefix literals of the regexes, null if a regex has none
+     */
+    private final String[] literals;
+
+    public Search(RegularGrammar rg) {
+        this(new Scanner(rg));
+    }
+
+    /**
+     * @param scanner the scanner of a regular grammar, its DFA is constructed for the search
+     */
+    public Search(Scanner scanner) {
+        this.rg = scanner.getRegularGrammar();
+        this.dfa = DFATable.fromRDFA(scanner.constructDFA()).minimize();
+        this.forward = dfa.unanchored();
+        this.reverse = dfa.reversePrefixes();
+        this.literals = prefixLiterals(scanner);
+    }
+
+    /**
+     * @return the distinct prefix literals which none of the others is a prefix of, or null if a regex has none
+     */
+    private static String[] prefixLiterals(Scanner scanner) {
+        ArrayList<String> prefixes = new ArrayList<>();
+        for (Regex r : scanner.getRegularGrammar().getPatterns()) {
+            RegexTree tree = scanner.getRegexToRegexTree().get(r);
+            String prefix = RegexLiterals.prefix(tree != null ? tree : scanner.constructRegexTree(r));
+            if (prefix.isEmpty())
+                return null;
+            prefixes.add(prefix);
+        }
+        ArrayList<String> literals = new ArrayList<>();
+        for (String p : prefixes) {
+            boolean covered = false;
+            for (String q : prefixes) {
+                if (p.startsWith(q) && (p.length() > q.length() || literals.contains(q))) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered)
+                literals.add(p);
+        }
+        return literals.isEmpty() ? null : literals.toArray(new String[0]);
+    }
+
+    /**
+     * @return true if the search skips to the occurrences of the prefix literals
+     */
+    public boolean isPrefiltered() {
+        return literals != null;
+    }
+
+    public List<String> getPrefixLiterals() {
+        return literals == null ? List.of() : List.of(literals);
+    }
+
+    /**
+     * Find the leftmost-longest match at or after a position.
+     *
+     * @param text a text
+     * @param from the position to start from
+     * @return the match, or null if there is none
+     */
+    public Match find(CharSequence text, int from) {
+        String s = text.toString();
+        return find(s, from, newLiteralCache(), new LineIndex(s));
+    }
+
+    /**
+     * Find all non-overlapping leftmost-longest matches.
+     *
+     * @param text a text
+     * @return the matches from left to right
+     */
+    public List<Match> findAll(CharSequence text) {
+        String s = text.toString();
+        int[] literalCache = newLiteralCache();
+        LineIndex lines = new LineIndex(s);
+        ArrayList<Match> matches = new ArrayList<>();
+        int from = 0;
+        Match m;
+        while ((m = find(s, from, literalCache, lines)) != null) {
+            matches.add(m);
+            from = m.getEnd();
+        }
+        return matches;
+    }
+
+    private int[] newLiteralCache() {
+        if (literals == null)
+            return null;
+        int[] cache = new int[literals.length];
+        Arrays.fill(cache, -1);
+        return cache;
+    }
+
+    /**
+     * @param literalCache the next occurrence of each literal found so far, a value below the position is out of date
+     * @param lines the line index of the text, shared by the matches
+     */
+    private Match find(String text, int from, int[] literalCache, LineIndex lines) {
+        int length = text.length();
+        if (from < 0 || from >= length)
+            return null;
+
+        //the earliest end of a match
+        int state = 0;
+        int end = -1;
+        for (int i = from; i < length; ) {
+            if (state == 0 && literalCache != null) {
+                i = nextOccurrence(text, i, literalCache);
+                if (i < 0)
+                    return null;
+            }
+            int symbol = forward.symbolOf(text.charAt(i++));
+            state = symbol == DFATable.NONE ? 0 : forward.next(state, symbol);
+            if (forward.isAccepting(state)) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0)
+            return null;
+
+        //the candidate starts, from right to left
+        int[] candidates = new int[16];
+        int count = 0;
+        state = 0;
+        for (int j = end - 1; j >= from; j--) {
+            int symbol = reverse.symbolOf(text.charAt(j));
+            if (symbol == DFATable.NONE)
+                break;
+            state = reverse.next(state, symbol);
+            if (state == DFATable.NONE)
+                break;
+            if (reverse.isAccepting(state)) {
+                if (count == candidates.length)
+                    candidates = Arrays.copyOf(candidates, count << 1);
+                candidates[count++] = j;
+            }
+        }
+
+        //the leftmost candidate with a match
+        for (int c = count - 1; c >= 0; c--) {
+            Match m = longestMatch(text, candidates[c], lines);
+            if (m != null)
+                return m;
+        }
+        return null;
+    }
+
+    /**
+     * @return the first position at or after i where a prefix literal occurs, -1 if there is none
+     */
+    private int nextOccurrence(String text, int i, int[] literalCache) {
+        int next = Integer.MAX_VALUE;
+        for (int l = 0; l < literals.length; l++) {
+            if (literalCache[l] < i) {
+                int at = text.indexOf(literals[l], i);
+                literalCache[l] = at < 0 ? Integer.MAX_VALUE : at;
+            }
+            next = Math.min(next, literalCache[l]);
+        }
+        return next == Integer.MAX_VALUE ? -1 : next;
+    }
+
+    /**
+     * @return the longest non-empty match of the minimal DFA from start, null if there is none
+     */
+    private Match longestMatch(String text, int start, LineIndex lines) {
+        int state = 0;
+        int end = -1;
+        int token = DFATable.NOT_ACCEPTING;
+        for (int i = start; i < text.length(); i++) {
+            int symbol = dfa.symbolOf(text.charAt(i));
+            if (symbol == DFATable.NONE)
+                break;
+            state = dfa.next(state, symbol);
+            if (state == DFATable.NONE)
+                break;
+            if (dfa.isAccepting(state)) {
+                end = i + 1;
+                token = dfa.getToken(state);
+            }
+        }
+        if (end < 0)
+            return null;
+        String name = token == RDFA.AMBIGUOUS_TOKEN ? null : rg.getPatterns().get(token).getName();
+        return new Match(start, end, token, name, text.substring(start, end), lines);
+    }
+}
@@ -0,0 +1,276 @@
+package org.qogir.simulation.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A push-based scanner: the input is fed in chunks as it arrives, e.g. from a socket, instead of given up front as to a {@link Scan}.
+ * It uses maximal munch as {@link ScanWithDFA}, and keeps between the chunks what a scan keeps on its stack:
+ * + the DFA state after the chars scanned so far
+ * + the pending chars from the start of the current lexeme
+ * + the end and the token of the last match in the pending chars
+ * A token is only emitted when the DFA gets stuck, so the chars after the last match stay pending until the next chunk
+ * or {@link #finish}. When the munch backs up to the last match, the chars after it are scanned again from the start state.
+ * <p>
+ * The emitted chars are dropped, so the tokens have no {@link LineIndex}: the scanner counts the offsets and the lines
+ * from the start of the input across the chunks, and gives each token its offsets, line and column.
+ * <p>
+ * With the {@link ScanMetrics} on, each input counts as a scan from its first chunk to its end or error.
+ * <p>
+ * The bytes are decoded as UTF-8, and a char split across two chunks is decoded when its last byte arrives.
+ * A stream scanner is not thread-safe, but many of them can share one {@link CompiledScanner}.
+ */
+public class StreamScanner {
+
+    private final CompiledScanner compiled;
+
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * The bytes of a char which is not complete yet
+     */
+    private final ByteBuffer carry = ByteBuffer.allocate(8);
+
+    /**
+     * The pending chars are chars[start, length), and chars[start, scanned) have been scanned
+     */
+    private char[] chars = new char[256];
+    private int start;
+    private int scanned;
+    private int length;
+
+    /**
+     * The offset of chars[0] in the input
+     */
+    private int base;
+
+    /**
+     * The line of chars[start], and the offset in the input of the first char of that line
+     */
+    private int line = 1;
+    private int lineStart;
+
+    private int state;
+
+    /**
+     * The end of the last match in chars, -1 if there is none since start
+     */
+    private int lastAccept = -1;
+    private int lastToken = RDFA.NO_TOKEN;
+
+    private int status = ScanMessage.SUCCESS_MATCH;
+
+    /**
+     * The counts of the current input for the active {@link ScanMetrics}, null if the metrics are off or the input ended
+     */
+    private ScanMetrics.Recorder metrics;
+
+    public StreamScanner(CompiledScanner compiled) {
+        this.compiled = compiled;
+        this.metrics = ScanMetrics.recorder(compiled.getRegularGrammar());
+    }
+
+    /**
+     * Scan the next chunk of bytes.
+     * @param bytes the bytes from their position to their limit, all of them are consumed
+     * @param tokenQueue the queue the complete tokens are added to
+     * @return {@link #getStatus()}
+     */
+    public int feed(ByteBuffer bytes, ArrayDeque tokenQueue) {
+        if (status != ScanMessage.SUCCESS_MATCH) {
+            bytes.position(bytes.limit());
+            return status;
+        }
+        if (metrics != null)
+            metrics.begin();
+        if (carry.position() > 0) {
+            //complete the split char first
+            while (bytes.hasRemaining() && carry.hasRemaining()) {
+                carry.put(bytes.get());
+                carry.flip();
+                decode(carry, false);
+                carry.compact();
+                if (carry.position() == 0)
+                    break;
+            }
+        }
+        decode(bytes, false);
+        carry.put(bytes); //at most three bytes of an incomplete char are left
+        return advance(tokenQueue);
+    }
+
+    /**
+     * Scan the next chunk of chars.
+     * @return {@link #getStatus()}
+     */
+    public int feed(CharSequence input, ArrayDeque tokenQueue) {
+        if (status != ScanMessage.SUCCESS_MATCH)
+            return status;
+        if (metrics != null)
+            metrics.begin();
+        reserve(input.length());
+        for (int i = 0; i < input.length(); i++)
+            chars[length++] = input.charAt(i);
+        return advance(tokenQueue);
+    }
+
+    /**
+     * End the input: emit the pending tokens.
+     * @param tokenQueue the queue the tokens are added to
+     * @return {@link ScanMessage#SUCCESS_MATCH} if the whole input is scanned,
+     * {@link ScanMessage#NOT_MATCH} or {@link ScanMessage#AMBIGUITY_GRAMMAR}
+     */
+    public int finish(ArrayDeque tokenQueue) {
+        if (status != ScanMessage.SUCCESS_MATCH)
+            return status;
+        if (carry.position() > 0) {
+            carry.flip();
+            decode(carry, true);
+            carry.clear();
+        }
+        advance(tokenQueue);
+        while (status == ScanMessage.SUCCESS_MATCH && start < length) {
+            if (emit(tokenQueue))
+                advance(tokenQueue);
+        }
+        record();
+        return status;
+    }
+
+    /**
+     * Start a new input.
+     */
+    public void reset() {
+        decoder.reset();
+        carry.clear();
+        start = scanned = length = 0;
+        base = 0;
+        line = 1;
+        lineStart = 0;
+        state = 0;
+        lastAccept = -1;
+        lastToken = RDFA.NO_TOKEN;
+        status = ScanMessage.SUCCESS_MATCH;
+        metrics = ScanMetrics.recorder(compiled.getRegularGrammar());
+    }
+
+    /**
+     * @return {@link ScanMessage#SUCCESS_MATCH} unless the input so far can not be scanned
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the number of chars which are not in an emitted token yet
+     */
+    public int pendingLength() {
+        return length - start;
+    }
+
+    /**
+     * @return the offset in the input of the first char which is not in an emitted token,
+     * where the input stopped being scanned after an error
+     */
+    public int getOffset() {
+        return base + start;
+    }
+
+    private void decode(ByteBuffer bytes, boolean endOfInput) {
+        reserve(bytes.remaining() + 1);
+        CharBuffer out = CharBuffer.wrap(chars, length, chars.length - length);
+        decoder.decode(bytes, out, endOfInput);
+        if (endOfInput)
+            decoder.flush(out);
+        length = out.position();
+    }
+
+    /**
+     * Run the DFA over the pending chars which are not scanned yet, and emit a token each time it gets stuck.
+     */
+    private int advance(ArrayDeque tokenQueue) {
+        int dead = compiled.deadState();
+        while (scanned < length) {
+            int next = compiled.step(state, chars[scanned]);
+            if (next != dead) {
+                state = next;
+                scanned++;
+                int token = compiled.tokenOf(next);
+                if (token != DFATable.NOT_ACCEPTING) {
+                    lastAccept = scanned;
+                    lastToken = token;
+                }
+                continue;
+            }
+            if (!emit(tokenQueue)) //stuck
+                break;
+        }
+        return status;
+    }
+
+    /**
+     * Emit the last match and restart the DFA after it.
+     * @return false if there is no match to emit
+     */
+    private boolean emit(ArrayDeque tokenQueue) {
+        if (lastAccept < 0 || lastToken == RDFA.AMBIGUOUS_TOKEN) {
+            status = lastAccept < 0 ? ScanMessage.NOT_MATCH : ScanMessage.AMBIGUITY_GRAMMAR;
+            record();
+            return false;
+        }
+        if (metrics != null)
+            metrics.token(lastToken, scanned - lastAccept);
+        int offset = base + start;
+        tokenQueue.add(new Token(compiled.nameOf(lastToken), new String(chars, start, lastAccept - start),
+                offset, base + lastAccept, line, offset - lineStart + 1));
+        for (int i = start; i < lastAccept; i++) {
+            if (chars[i] == '\n') {
+                line++;
+                lineStart = base + i + 1;
+            }
+        }
+        start = scanned = lastAccept; //restart DFA
+        state = 0;
+        lastAccept = -1;
+        return true;
+    }
+
+    /**
+     * Add the counts of the input to the metrics at its end or error, once.
+     */
+    private void record() {
+        if (metrics != null) {
+            metrics.finish(status, getOffset());
+            metrics = null;
+        }
+    }
+
+    /**
+     * Make room for n more chars, moving the pending chars to the front or growing the buffer.
+     */
+    private void reserve(int n) {
+        if (length + n <= chars.length)
+            return;
+        if (start > 0) {
+            System.arraycopy(chars, start, chars, 0, length - start);
+            length -= start;
+            scanned -= start;
+            if (lastAccept >= 0)
+                lastAccept -= start;
+            base += start;
+            start = 0;
+        }
+        if (length + n > chars.length)
+            chars = Arrays.copyOf(chars, Math.max(length + n, chars.length << 1));
+    }
+}
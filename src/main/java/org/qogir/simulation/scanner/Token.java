@@ -1,12 +1,94 @@
 package org.qogir.simulation.scanner;
 
+/**
+ * A token and where it is in the input: the offsets of its first char and after its last char.
+ * The line and the column are looked up in the {@link LineIndex} of the input when they are asked for,
+ * the index is shared by all tokens of an input and built on the first lookup.
+ */
 public class Token {
     private final String tag;
     private final String lexeme;
+    private final int start;
+    private final int end;
+    private final LineIndex lines;
+
+    /**
+     * The line and the column of the token when the scanner counted them instead of giving a line index, else -1
+     */
+    private final int line;
+    private final int column;
 
     public Token(String tag,String lexeme){
+        this(tag, lexeme, -1, -1, null);
+    }
+
+    /**
+     * @param start the offset of the first char of the token, -1 if unknown
+     * @param end the offset after the last char of the token, -1 if unknown
+     * @param lines the line index of the input, or null
+     */
+    public Token(String tag, String lexeme, int start, int end, LineIndex lines){
+        this.tag = tag;
+        this.lexeme = lexeme;
+        this.start = start;
+        this.end = end;
+        this.lines = lines;
+        this.line = -1;
+        this.column = -1;
+    }
+
+    /**
+     * A token of a scanner which does not keep its input for a line index, e.g. a {@link StreamScanner},
+     * and counts the lines as it goes.
+     * @param start the offset of the first char of the token
+     * @param end the offset after the last char of the token
+     * @param line the line of the token from 1
+     * @param column the column of the token from 1
+     */
+    public Token(String tag, String lexeme, int start, int end, int line, int column){
         this.tag = tag;
         this.lexeme = lexeme;
+        this.start = start;
+        this.end = end;
+        this.lines = null;
+        this.line = line;
+        this.column = column;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public String getLexeme() {
+        return lexeme;
+    }
+
+    /**
+     * @return the offset of the first char of the token, -1 if unknown
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the offset after the last char of the token, -1 if unknown
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the line of the token from 1, -1 if the token has no position
+     */
+    public int getLine() {
+        return lines == null || start < 0 ? line : lines.getLine(start);
+    }
+
+    /**
+     * @return the column of the token from 1, -1 if the token has no position
+     */
+    public int getColumn() {
+        return lines == null || start < 0 ? column : lines.getColumn(start);
     }
 
     @Override
@@ -0,0 +1,271 @@
+package org.qogir.simulation.scanner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A tokenizer server: each connection sends a text and gets back its tokens, scanned by a {@link StreamScanner}
+ * as the bytes arrive.
+ * The protocol is line-based, in UTF-8:
+ * + the client sends the text, and shuts down its output at the end of the text
+ * + the server sends a line "tag:lexeme" for each token as soon as the token is complete
+ * + the server ends with a line "#code", the {@link ScanMessage} code, and closes the connection;
+ *   after an error it sends the line at once, and discards the rest of the text
+ * <p>
+ * An acceptor thread accepts the connections and hands them to the workers in turn. Each worker runs a
+ * {@link Selector} over its connections, so a few workers serve thousands of connections.
+ * A connection whose client does not read its tokens is not read from until they are sent.
+ */
+public class TokenizerServer implements Closeable {
+
+    /**
+     * The size of the read buffer of a worker
+     */
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The pending output of a connection above which its input is not read
+     */
+    private static final int OUTPUT_LIMIT = 1 << 16;
+
+    private final CompiledScanner compiled;
+
+    private final ServerSocketChannel server;
+
+    private final Worker[] workers;
+
+    private final Thread acceptor;
+
+    private volatile boolean running = true;
+
+    /**
+     * Start a server.
+     * @param compiled the compiled scanner of the grammar
+     * @param address the address to bind, e.g. new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)
+     * @param threads the number of workers
+     */
+    public TokenizerServer(CompiledScanner compiled, InetSocketAddress address, int threads) throws IOException {
+        if (threads < 1)
+            throw new IllegalArgumentException("A server needs at least one worker.");
+        this.compiled = compiled;
+        this.server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(Selector.open());
+            workers[i].thread = new Thread(workers[i], "tokenizer-worker-" + i);
+            workers[i].thread.setDaemon(true);
+            workers[i].thread.start();
+        }
+        this.acceptor = new Thread(this::accept, "tokenizer-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Stop the server and close all connections.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        server.close();
+        for (Worker w : workers)
+            w.selector.wakeup();
+        try {
+            acceptor.join();
+            for (Worker w : workers)
+                w.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Worker w = workers[next];
+                next = (next + 1) % workers.length;
+                w.accepted.add(channel);
+                w.selector.wakeup();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!running)
+                    return;
+            }
+        }
+    }
+
+    /**
+     * The state of a connection
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        final StreamScanner scanner = new StreamScanner(compiled);
+        final ArrayDeque<Token> tokens = new ArrayDeque<>();
+        final StringBuilder lines = new StringBuilder();
+
+        /**
+         * The pending output, in write mode
+         */
+        ByteBuffer out = ByteBuffer.allocate(1024);
+
+        /**
+         * True when the status line is in the output, the connection is closed when the output is sent and the input ended
+         */
+        boolean done;
+
+        /**
+         * True when the status line has been put in the output, it is sent once
+         */
+        boolean statusWritten;
+
+        /**
+         * True when the output is shut down after an error, the rest of the text is read and discarded
+         */
+        boolean draining;
+
+        /**
+         * True when the client has shut down its output
+         */
+        boolean eof;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void output() {
+            for (Token t : tokens)
+                lines.append(t).append('\n');
+            tokens.clear();
+            if (done && !statusWritten) {
+                lines.append('#').append(scanner.getStatus()).append('\n');
+                statusWritten = true;
+            }
+            if (lines.length() == 0)
+                return;
+            byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+            lines.setLength(0);
+            if (out.remaining() < bytes.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() << 1, out.position() + bytes.length));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            out.put(bytes);
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final Selector selector;
+        final ConcurrentLinkedQueue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        final ByteBuffer in = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        Thread thread;
+
+        Worker(Selector selector) {
+            this.selector = selector;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = accepted.poll()) != null)
+                        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        try {
+                            handle(key);
+                        } catch (IOException e) {
+                            key.cancel();
+                            key.channel().close();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    try {
+                        key.channel().close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void handle(SelectionKey key) throws IOException {
+            Connection c = (Connection) key.attachment();
+            if (!key.isValid())
+                return;
+            if (c.draining) {
+                in.clear();
+                if (c.channel.read(in) < 0) {
+                    key.cancel();
+                    c.channel.close();
+                }
+                return;
+            }
+            if (key.isReadable()) {
+                in.clear();
+                int n = c.channel.read(in);
+                if (n < 0) {
+                    c.eof = true;
+                    if (!c.done)
+                        c.scanner.finish(c.tokens);
+                    c.done = true;
+                } else if (!c.done) {
+                    in.flip();
+                    if (c.scanner.feed(in, c.tokens) != ScanMessage.SUCCESS_MATCH)
+                        c.done = true;
+                }
+                c.output();
+            }
+            if (c.out.position() > 0) {
+                c.out.flip();
+                c.channel.write(c.out);
+                c.out.compact();
+            }
+            if (c.out.position() == 0 && c.done) {
+                if (c.eof) {
+                    key.cancel();
+                    c.channel.close();
+                } else {
+                    //after an error, read the rest of the text so that closing does not reset the connection
+                    c.channel.shutdownOutput();
+                    c.draining = true;
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+                return;
+            }
+            int ops = c.out.position() > 0 ? SelectionKey.OP_WRITE : 0;
+            if (!c.done && c.out.position() <= OUTPUT_LIMIT)
+                ops |= SelectionKey.OP_READ;
+            key.interestOps(ops);
+        }
+    }
+}
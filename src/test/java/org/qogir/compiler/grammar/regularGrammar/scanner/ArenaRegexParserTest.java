@@ -0,0 +1,81 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.ArenaRegexParser;
+import org.qogir.compiler.grammar.regularGrammar.ParseRegex;
+import org.qogir.compiler.grammar.regularGrammar.Regex;
+import org.qogir.compiler.grammar.regularGrammar.RegexArena;
+import org.qogir.compiler.grammar.regularGrammar.RegexTree;
+import org.qogir.compiler.util.InvalidRegexException;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Check that {@link ArenaRegexParser} accepts the regexes of {@link ParseRegex} with the same trees and rejects
+ * the others, e.g. a regex beginning with ε, on fixed and random strings of letters, ε and operators.
+ * The empty group "()", which only the arena parser accepts, is left out.
+ */
+public class ArenaRegexParserTest {
+
+    public static void main(String[] args) {
+        for (String regex : new String[]{"ε", "εb|b", "ε*", "|a", "*a", ")a", "%"}) {
+            if (parse(regex) != null || legacy(regex) != null)
+                throw new AssertionError(regex + " is legal.");
+        }
+        for (String regex : new String[]{"(ε)b|b", "aε", "a|ε", "(ε|a)*b"}) {
+            String tree = parse(regex);
+            if (tree == null || !tree.equals(legacy(regex)))
+                throw new AssertionError(regex + ": " + tree + " / " + legacy(regex));
+        }
+        System.out.println("first char: ok");
+
+        Random random = new Random(27);
+        String chars = "abε|*+?()";
+        int legal = 0;
+        for (int n = 0; n < 20_000; n++) {
+            StringBuilder regex = new StringBuilder();
+            for (int j = 1 + random.nextInt(8); j > 0; j--)
+                regex.append(chars.charAt(random.nextInt(chars.length())));
+            if (regex.indexOf("()") >= 0)
+                continue;
+            String tree = parse(regex.toString());
+            String expected = legacy(regex.toString());
+            if (tree == null ? expected != null : !tree.equals(expected))
+                throw new AssertionError(regex + ": " + tree + " / " + expected);
+            if (tree != null)
+                legal++;
+        }
+        System.out.println(legal + " legal random regexes, same trees and rejections: ok");
+    }
+
+    /**
+     * @return the exported tree of the arena parser, null if the regex is rejected
+     */
+    private static String parse(String regex) {
+        try {
+            ArenaRegexParser parser = new ArenaRegexParser();
+            RegexArena arena = parser.parse(regex);
+            return arena.toRegexTree(parser.getRoot()).export();
+        } catch (InvalidRegexException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the exported tree of ParseRegex, null if the regex is rejected. ParseRegex fails on some illegal
+     * regexes by other exceptions, e.g. an empty stack for "a|", and prints to the standard output
+     */
+    private static String legacy(String regex) {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            RegexTree tree = new ParseRegex(new Regex("t", regex, 0)).parse();
+            return tree == null ? null : tree.export();
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
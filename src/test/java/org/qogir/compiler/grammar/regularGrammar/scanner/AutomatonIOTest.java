@@ -0,0 +1,103 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.FA.AutomatonReader;
+import org.qogir.compiler.FA.AutomatonWriter;
+import org.qogir.compiler.FA.FiniteAutomaton;
+import org.qogir.compiler.FA.State;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.ParallelSubsetConstruction;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.grammar.regularGrammar.TNFA;
+import org.qogir.compiler.util.graph.LabelEdge;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashSet;
+
+/**
+ * Write automata in the JSON and binary formats of {@link AutomatonWriter} and read them back,
+ * and stream the DOT of a DFA with 2^18 states.
+ */
+public class AutomatonIOTest {
+
+    public static void main(String[] args) throws Exception {
+        Scanner scanner = new Scanner(new RegularGrammar(new String[]{"a := (a|b)*abb", "b := d(f|ea*(g|h))b"}));
+        TNFA nfa = scanner.constructNFA();
+        DFATable dfa = DFATable.fromRDFA(scanner.constructDFA()).minimize();
+
+        StringWriter json = new StringWriter();
+        nfa.write(AutomatonWriter.json(json));
+        check(edges(nfa, false), edges(AutomatonReader.readJson(new StringReader(json.toString())), true), "JSON of the NFA");
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        nfa.write(AutomatonWriter.binary(binary));
+        check(edges(nfa, false), edges(AutomatonReader.readBinary(new ByteArrayInputStream(binary.toByteArray())), true), "binary of the NFA");
+
+        json = new StringWriter();
+        dfa.write(AutomatonWriter.json(json));
+        check(edges(dfa.toRDFA(), true), edges(AutomatonReader.readJson(new StringReader(json.toString())), true), "JSON of the DFA");
+        System.out.println("round trips: ok");
+
+        System.out.println(scanner.constructRegexTree(scanner.getRegularGrammar().getPatterns().get(0)).export());
+
+        StringBuilder regex = new StringBuilder("(a|b|c)*a");
+        for (int i = 0; i < 17; i++)
+            regex.append("(a|b|c)");
+        DFATable large = new ParallelSubsetConstruction().construct(new Scanner(new RegularGrammar(new String[]{"t := " + regex})).constructNFA());
+        CountingStream count = new CountingStream();
+        Writer dot = new OutputStreamWriter(count);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        large.write(AutomatonWriter.dot(dot));
+        double time = (System.nanoTime() - start) / 1e6;
+        System.gc();
+        System.out.printf("DOT of %d transitions: %d MB in %.0f ms, %d KB retained%n", large.transitionCount(), count.count >> 20,
+                time, Math.max(0, runtime.totalMemory() - runtime.freeMemory() - usedBefore) >> 10);
+    }
+
+    /**
+     * @param bySid whether the states are named by their sids, i.e. by the ids they were written with
+     */
+    private static HashSet<String> edges(FiniteAutomaton fa, boolean bySid) {
+        HashSet<String> edges = new HashSet<>();
+        String start = bySid ? fa.getStartState().getSid() : String.valueOf(fa.getStartState().getId());
+        edges.add("start " + start);
+        for (LabelEdge e : fa.getTransitTable().edgeSet()) {
+            State source = (State) e.getSource();
+            State target = (State) e.getTarget();
+            edges.add(name(source, bySid) + ":" + source.getType() + " " + e.getLabel() + " " + name(target, bySid) + ":" + target.getType());
+        }
+        return edges;
+    }
+
+    private static String name(State s, boolean bySid) {
+        return bySid ? s.getSid() : String.valueOf(s.getId());
+    }
+
+    private static void check(HashSet<String> expected, HashSet<String> actual, String what) {
+        if (!expected.equals(actual))
+            throw new AssertionError("The " + what + " is not read back: " + expected.size() + " edges written, " + actual.size() + " read.");
+    }
+
+    private static final class CountingStream extends OutputStream {
+        long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
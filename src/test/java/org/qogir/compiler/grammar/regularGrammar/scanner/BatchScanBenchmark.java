@@ -0,0 +1,66 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.CompiledScanner;
+import org.qogir.simulation.scanner.ScanBatch;
+import org.qogir.simulation.scanner.Token;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Scan millions of short records with one {@link CompiledScanner}: one by one, as a batch, and in the accept-only mode.
+ */
+public class BatchScanBenchmark {
+
+    private static final int RECORDS = 2_000_000;
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        String[] regexes = new String[]{"word := (a|b|c|d|e|f|g|h)(a|b|c|d|e|f|g|h|i|j)*", "blank := x(x)*", "op := y|z|yz"};
+        CompiledScanner scanner = new CompiledScanner(new RegularGrammar(regexes));
+
+        Random random = new Random(42);
+        String symbols = "abcdefghijxyz";
+        ArrayList<String> records = new ArrayList<>(RECORDS);
+        for (int r = 0; r < RECORDS; r++) {
+            StringBuilder record = new StringBuilder();
+            int length = random.nextInt(24);
+            for (int i = 0; i < length; i++)
+                record.append(random.nextInt(200) == 0 ? '#' : symbols.charAt(random.nextInt(symbols.length())));
+            records.add(record.toString());
+        }
+
+        //the batch agrees with scanning the records one by one
+        ScanBatch batch = scanner.scanBatch(records);
+        int[] matches = scanner.matchBatch(records);
+        for (int r = 0; r < RECORDS; r++) {
+            ArrayDeque<Token> tokens = new ArrayDeque<>();
+            int result = scanner.scan(records.get(r), tokens);
+            if (result != batch.getStatus(r) || !tokens.toString().equals(batch.getTokens(r).toString()))
+                throw new AssertionError("The batch disagrees on record " + r + ": " + records.get(r));
+            if (matches[r] != scanner.match(records.get(r)))
+                throw new AssertionError("The accept-only batch disagrees on record " + r + ": " + records.get(r));
+        }
+        System.out.println(RECORDS + " records, " + batch.getTotalTokenCount() + " tokens");
+
+        run("one by one", () -> {
+            for (String record : records)
+                scanner.scan(record, new ArrayDeque<Token>());
+        });
+        run("batch", () -> scanner.scanBatch(records));
+        run("accept-only", () -> scanner.matchBatch(records));
+    }
+
+    private static void run(String name, Runnable round) {
+        for (int i = 0; i < ROUNDS; i++)
+            round.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++)
+            round.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-12s %6.2f M records/s%n", name, (double) RECORDS * ROUNDS / seconds / 1e6);
+    }
+}
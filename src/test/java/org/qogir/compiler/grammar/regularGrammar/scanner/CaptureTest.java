@@ -0,0 +1,122 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.ArenaRegexParser;
+import org.qogir.compiler.grammar.regularGrammar.ParseRegex;
+import org.qogir.compiler.grammar.regularGrammar.PikeVM;
+import org.qogir.compiler.grammar.regularGrammar.Regex;
+import org.qogir.compiler.grammar.regularGrammar.RegexArena;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.CompiledScanner;
+import org.qogir.simulation.scanner.ScanWithCaptures;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Check the capture groups of {@link ScanWithCaptures}: the tokens are those of the compiled scanner,
+ * and the groups of each token are those java.util.regex finds in its lexeme,
+ * except after an empty run of a loop, which {@link PikeVM} does not take.
+ */
+public class CaptureTest {
+
+    public static void main(String[] args) {
+        ArenaRegexParser parser = new ArenaRegexParser();
+        parser.setCaptureGroups(true);
+        RegexArena arena = parser.parse("(a(b)|())*c");
+        System.out.println(arena.toString(parser.getRoot()) + ": " + parser.getGroupCount() + " groups");
+        if (parser.getGroupCount() != 3)
+            throw new AssertionError("(a(b)|())*c has 3 groups.");
+        for (String regex : new String[]{"(a(b))*c", "(ab)+(c|d)", "a((b)|c){2,3}"}) {
+            ParseRegex legacy = new ParseRegex(new Regex("t", regex, 0));
+            legacy.setCaptureGroups(true);
+            String tree = parser.parse(regex).toRegexTree(parser.getRoot()).export();
+            if (!tree.equals(legacy.parse().export()))
+                throw new AssertionError("The group trees of " + regex + " differ.");
+        }
+
+        String[][] grammars = {
+                {"word := (a|b)+(c(a|b)+)?", "sep := d+"},
+                {"x := ((a)|b)+c", "y := (a(b)?)?d(b|a)*"},
+                {"r := (a|ab)(b*)(c){0,2}", "s := d(a|b|c|d){2}"}};
+        Random random = new Random(48);
+        int[] offsets = new int[8];
+        for (String[] g : grammars) {
+            RegularGrammar rg = new RegularGrammar(g);
+            CompiledScanner compiled = new CompiledScanner(rg);
+            PikeVM vm = new PikeVM(rg);
+            Pattern[] patterns = new Pattern[g.length];
+            for (int i = 0; i < g.length; i++)
+                patterns[i] = Pattern.compile(rg.getPatterns().get(i).getRegex());
+            for (int n = 0; n < 500; n++) {
+                StringBuilder input = new StringBuilder();
+                for (int j = random.nextInt(20); j > 0; j--)
+                    input.append("abcd".charAt(random.nextInt(4)));
+                ArrayDeque expected = new ArrayDeque();
+                int expectedMessage = compiled.scan(input, expected);
+
+                ScanWithCaptures scan = new ScanWithCaptures(rg, vm, input.toString());
+                ArrayDeque actual = new ArrayDeque();
+                while (scan.next()) {
+                    actual.add(scan.toToken());
+                    int groups = scan.getOffsets(offsets);
+                    Matcher m = patterns[scan.getToken()].matcher(scan.group(0));
+                    if (!m.matches() || m.groupCount() != groups)
+                        throw new AssertionError(scan.group(0) + " does not match " + patterns[scan.getToken()]);
+                    for (int k = 1; k <= groups; k++) {
+                        int start = m.start(k) < 0 ? -1 : m.start(k) + offsets[0];
+                        int end = m.end(k) < 0 ? -1 : m.end(k) + offsets[0];
+                        if (offsets[2 * k] != start || offsets[2 * k + 1] != end)
+                            throw new AssertionError("Group " + k + " of " + scan.group(0) + " in \"" + input + "\": ["
+                                    + offsets[2 * k] + "," + offsets[2 * k + 1] + ") instead of [" + start + "," + end + ")");
+                    }
+                }
+                if (scan.getMessage() != expectedMessage || !expected.toString().equals(actual.toString()))
+                    throw new AssertionError("\"" + input + "\": " + expectedMessage + " " + expected + " / "
+                            + scan.getMessage() + " " + actual);
+            }
+        }
+        System.out.println("captures: ok");
+
+        //the regex, the input, the group 1 of the VM and of java.util.regex
+        Object[][] empty = {
+                {"(a|ε)*b", "ab", 0, 1, 1, 1},
+                {"(a|ε)*b", "b", -1, -1, 0, 0},
+                {"(ε|a)*b", "aab", 1, 2, 2, 2},
+                {"((a)|b|ε)*c", "abc", 1, 2, 2, 2},
+                {"(a?){2,}b", "aab", 1, 2, 2, 2},
+                //the runs which must be made, and the optional runs of a bounded repetition, may be empty
+                {"(a|ε)+b", "b", 0, 0, 0, 0},
+                {"(a?){0,3}b", "ab", 1, 1, 1, 1}};
+        for (Object[] e : empty) {
+            String regex = (String) e[0];
+            String input = (String) e[1];
+            RegularGrammar rg = new RegularGrammar(new String[]{"t := " + regex});
+            ScanWithCaptures scan = new ScanWithCaptures(rg, input);
+            Matcher m = Pattern.compile(regex.replace("ε", "")).matcher(input);
+            if (!scan.next() || scan.getEnd(0) != input.length() || !m.matches())
+                throw new AssertionError(regex + " does not match " + input);
+            if (scan.getStart(1) != (Integer) e[2] || scan.getEnd(1) != (Integer) e[3]
+                    || m.start(1) != (Integer) e[4] || m.end(1) != (Integer) e[5])
+                throw new AssertionError(regex + " on \"" + input + "\": [" + scan.getStart(1) + "," + scan.getEnd(1)
+                        + "), java.util.regex [" + m.start(1) + "," + m.end(1) + ")");
+        }
+        System.out.println("empty runs of loops: ok");
+
+        RegularGrammar rg = new RegularGrammar(grammars[0]);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100_000; i++)
+            text.append(random.nextInt(3) == 0 ? "abcab" : "ba").append('d');
+        ScanWithCaptures scan = new ScanWithCaptures(rg, new PikeVM(rg), text.toString());
+        long start = System.nanoTime();
+        int tokens = 0;
+        int suffixes = 0;
+        while (scan.next()) {
+            tokens++;
+            if (scan.getStart(2) >= 0)
+                suffixes++;
+        }
+        System.out.printf("%d tokens, %d with group 2, %.1f ms%n", tokens, suffixes, (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -0,0 +1,111 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.CompressedDFA;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.util.PackedIntArray;
+import org.qogir.simulation.scanner.ScanWithDFA;
+import org.qogir.simulation.scanner.ScanWithNFA;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Check {@link CompressedDFA}: every transition and token of the compressed table is that of the dense table,
+ * for grammar DFAs and random sparse tables, the compressed table is smaller, survives serialization,
+ * and {@link ScanWithDFA} over it scans the tokens of {@link ScanWithNFA}.
+ */
+public class CompressedDFATest {
+
+    public static void main(String[] args) throws Exception {
+        int[][] ranges = {{0, 255}, {-1, 255}, {-1, 65535}, {-1, 70000}};
+        int[] widths = {1, 2, 4, 4};
+        for (int i = 0; i < ranges.length; i++) {
+            int[] values = new int[100];
+            for (int j = 0; j < values.length; j++)
+                values[j] = ranges[i][0] + j * (ranges[i][1] - ranges[i][0]) / (values.length - 1);
+            PackedIntArray packed = PackedIntArray.of(values);
+            if (packed.width() != widths[i])
+                throw new AssertionError(Arrays.toString(ranges[i]) + " packed in " + packed.width() + " bytes");
+            for (int j = 0; j < values.length; j++)
+                if (packed.get(j) != values[j])
+                    throw new AssertionError("Packed " + values[j] + " reads " + packed.get(j));
+        }
+        System.out.println("packed arrays: ok");
+
+        Random random = new Random(30);
+        for (int n = 0; n < 200; n++) {
+            int states = 1 + random.nextInt(300);
+            char[] alphabet = "abcdefghijklmnop".substring(0, 1 + random.nextInt(16)).toCharArray();
+            int[] transitions = new int[states * alphabet.length];
+            int[] tokens = new int[states];
+            for (int s = 0; s < states; s++) {
+                tokens[s] = random.nextInt(4) == 0 ? random.nextInt(5) : DFATable.NOT_ACCEPTING;
+                for (int a = 0; a < alphabet.length; a++)
+                    transitions[s * alphabet.length + a] = random.nextInt(3) == 0 ? random.nextInt(states) : DFATable.NONE;
+            }
+            check(new DFATable(alphabet, states, transitions, tokens));
+        }
+        System.out.println("random tables: ok");
+
+        String[][] grammars = {
+                {"regex0 := c(a|b)*", "regex1 := d(a|b|c)*e", "regex2 := a|b"},
+                {"kif := if", "kint := int", "kinterface := interface", "id := (a|b|c|d|e|f|i|n|t|r)(a|b|c|d|e|f|i|n|t|r)*"},
+                {"x := (a|b)*a(a|b)(a|b)(a|b)(a|b)", "y := c"}};
+        for (String[] g : grammars) {
+            RegularGrammar rg = new RegularGrammar(g);
+            DFATable table = DFATable.fromRDFA(new Scanner(rg).constructDFA());
+            CompressedDFA dfa = check(table);
+            System.out.printf("%s: %d states, %d slots, %d bytes, dense %d bytes%n", String.join(", ", g),
+                    dfa.getStateCount(), dfa.slotCount(), dfa.byteSize(), dfa.denseByteSize());
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(dfa);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                if (!((CompressedDFA) in.readObject()).toDFATable().equals(table))
+                    throw new AssertionError("The deserialized table differs.");
+            }
+
+            char[] symbols = table.getAlphabet();
+            for (int n = 0; n < 200; n++) {
+                StringBuilder input = new StringBuilder();
+                for (int j = 1 + random.nextInt(12); j > 0; j--)
+                    input.append(symbols[random.nextInt(symbols.length)]);
+                ArrayDeque expected = new ArrayDeque();
+                ArrayDeque actual = new ArrayDeque();
+                int expectedMessage = new ScanWithNFA(rg, input.toString()).scan(expected);
+                int actualMessage = new ScanWithDFA(rg, dfa, input.toString()).scan(actual);
+                if (expectedMessage != actualMessage || !expected.toString().equals(actual.toString()))
+                    throw new AssertionError("\"" + input + "\": " + expectedMessage + " " + expected + " / "
+                            + actualMessage + " " + actual);
+            }
+        }
+        CompressedDFA large = new CompressedDFA(DFATable.fromRDFA(new Scanner(new RegularGrammar(grammars[2])).constructDFA()));
+        if (large.byteSize() >= large.denseByteSize())
+            throw new AssertionError("The compressed table is not smaller: " + large.byteSize() + " bytes");
+        System.out.println("grammar tables: ok");
+    }
+
+    private static CompressedDFA check(DFATable table) {
+        CompressedDFA dfa = new CompressedDFA(table);
+        for (int s = 0; s < table.getStateCount(); s++) {
+            if (dfa.getToken(s) != table.getToken(s))
+                throw new AssertionError("The token of state " + s + " differs.");
+            for (int a = 0; a < table.getSymbolCount(); a++)
+                if (dfa.next(s, a) != table.next(s, a))
+                    throw new AssertionError("State " + s + " on " + table.getAlphabet()[a] + ": "
+                            + dfa.next(s, a) + " instead of " + table.next(s, a));
+        }
+        if (!dfa.toDFATable().equals(table))
+            throw new AssertionError("The decompressed table differs.");
+        return dfa;
+    }
+}
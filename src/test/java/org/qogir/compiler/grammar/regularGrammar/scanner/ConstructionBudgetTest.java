@@ -0,0 +1,91 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.ConstructionBudget;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.util.ConstructionBudgetExceededException;
+import org.qogir.simulation.scanner.ScanWithDFA;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Check {@link ConstructionBudget}: a rule whose DFA blows up aborts the construction early and is named
+ * by the exception within one more timeout, a grammar under the budget is not affected, and the fallback scans
+ * with the NFA.
+ */
+public class ConstructionBudgetTest {
+
+    public static void main(String[] args) {
+        //the DFA of (a|b)*a(a|b)^n has 2^(n+1) states
+        StringBuilder blowUp = new StringBuilder("(a|b)*a");
+        for (int i = 0; i < 16; i++)
+            blowUp.append("(a|b)");
+        String[] grammar = {"word := c(c)*", "tail := " + blowUp, "blank := d(d)*"};
+
+        ConstructionBudget budget = new ConstructionBudget();
+        budget.setMaxStates(1000);
+        Scanner scanner = new Scanner(new RegularGrammar(grammar));
+        scanner.setBudget(budget);
+        long start = System.nanoTime();
+        try {
+            scanner.constructDFA();
+            throw new AssertionError("The construction is over the budget.");
+        } catch (ConstructionBudgetExceededException e) {
+            if (!e.getRules().equals(List.of("tail")) || !e.getLimit().equals(ConstructionBudgetExceededException.STATES))
+                throw new AssertionError("The exception names " + e.getRules() + ": " + e.getMessage());
+            System.out.printf("aborted in %.1f ms: %s%n", (System.nanoTime() - start) / 1e6, e.getMessage());
+        }
+
+        budget = new ConstructionBudget();
+        budget.setTimeoutMillis(50);
+        scanner.setBudget(budget);
+        start = System.nanoTime();
+        try {
+            scanner.constructDFA();
+            throw new AssertionError("The construction is over the time budget.");
+        } catch (ConstructionBudgetExceededException e) {
+            if (!e.getLimit().equals(ConstructionBudgetExceededException.TIME))
+                throw new AssertionError(e.getMessage());
+            System.out.printf("timed out in %.1f ms: %s%n", (System.nanoTime() - start) / 1e6, e.getMessage());
+        }
+
+        //the rules are tried alone under one deadline, not one timeout per rule
+        String[] many = new String[10];
+        for (int i = 0; i < many.length; i++)
+            many[i] = "tail" + i + " := " + blowUp;
+        Scanner manyScanner = new Scanner(new RegularGrammar(many));
+        budget = new ConstructionBudget();
+        budget.setTimeoutMillis(100);
+        manyScanner.setBudget(budget);
+        start = System.nanoTime();
+        try {
+            manyScanner.constructDFA();
+            throw new AssertionError("The construction is over the time budget.");
+        } catch (ConstructionBudgetExceededException e) {
+            //the time after the aborted construction, which reports its own time
+            long millis = (System.nanoTime() - start) / 1_000_000 - e.getValue();
+            System.out.printf("%d rules tried alone in %d ms: %s%n", many.length, millis, e.getRules());
+            if (millis > 400 || e.getRules().size() != many.length)
+                throw new AssertionError("The rules were tried alone for " + millis + " ms and " + e.getRules() + " named.");
+        }
+        budget.setTimeoutMillis(50);
+
+        String[] small = {"word := (a|b)(a|b|c)*", "blank := d(d)*"};
+        Scanner limited = new Scanner(new RegularGrammar(small));
+        limited.setBudget(budget);
+        if (limited.constructDFA().getTransitTable().vertexSet().size() != new Scanner(new RegularGrammar(small)).constructDFA().getTransitTable().vertexSet().size())
+            throw new AssertionError("The budget changed a DFA under the budget.");
+
+        budget = new ConstructionBudget();
+        budget.setMaxStates(1000);
+        budget.setFallbackToNFA(true);
+        scanner.setBudget(budget);
+        ArrayDeque tokens = new ArrayDeque();
+        int message = new ScanWithDFA(scanner, "ccdab").scan(tokens);
+        System.out.println("fallback: " + message + " " + tokens);
+        if (tokens.size() < 2 || !tokens.toArray()[0].toString().equals("word:cc") || !tokens.toArray()[1].toString().equals("blank:d"))
+            throw new AssertionError("The fallback scanned " + tokens + ".");
+        System.out.println("ok");
+    }
+}
@@ -0,0 +1,108 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.ConstructionBudget;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.grammar.regularGrammar.TNFA;
+import org.qogir.compiler.util.ConstructionBudgetExceededException;
+import org.qogir.simulation.ConstructionListener;
+import org.qogir.simulation.ConstructionLogger;
+import org.qogir.simulation.ConstructionStatistics;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Check the construction events: each phase is reported to the listeners with its sizes and heap peak,
+ * the minimization steps are recorded, constructions on several threads do not disturb each other,
+ * a construction which throws ends its phases, the heap is not sampled once no phase runs,
+ * and the JVM-wide peak usage of the memory pools is left alone.
+ */
+public class ConstructionLoggerTest {
+
+    public static void main(String[] args) throws Exception {
+        if (ConstructionLogger.isEnabled() || ConstructionLogger.begin() != 0)
+            throw new AssertionError("The logger is on without listeners.");
+
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                pools.add(pool);
+        long[] poolPeaks = new long[pools.size()];
+        for (int i = 0; i < pools.size(); i++)
+            poolPeaks[i] = pools.get(i).getPeakUsage().getUsed();
+
+        ConstructionLogger logger = new ConstructionLogger();
+        ConcurrentLinkedQueue<ConstructionStatistics> statistics = new ConcurrentLinkedQueue<>();
+        ConstructionListener collector = statistics::add;
+        ConstructionLogger.addListener(logger);
+        ConstructionLogger.addListener(collector);
+
+        Scanner scanner = new Scanner(new RegularGrammar(new String[]{"regex0 := c(a|b)*", "regex1 := d(a|b)*c"}));
+        TNFA nfa = scanner.constructNFA();
+        RDFA dfa = scanner.constructDFA(nfa);
+        scanner.minimizeDFA(dfa);
+        for (String phase : new String[]{ConstructionLogger.PHASE_PARSE, ConstructionLogger.PHASE_THOMPSON,
+                ConstructionLogger.PHASE_SUBSET, ConstructionLogger.PHASE_MINIMIZE}) {
+            if (statistics.stream().noneMatch(s -> s.getPhase().equals(phase) && s.getPeakHeapBytes() > 0))
+                throw new AssertionError("No " + phase + " statistics with a heap peak: " + statistics);
+        }
+        if (logger.getSteps().stream().noneMatch(s -> s.startsWith(ConstructionLogger.PHASE_MINIMIZE + ":")))
+            throw new AssertionError("No minimization steps: " + logger);
+        System.out.print(logger);
+
+        // phases on several threads, each with its own heap peak
+        statistics.clear();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int n = 0; n < 20; n++) {
+                    Scanner s = new Scanner(new RegularGrammar(new String[]{"x := (a|b)*a(a|b)(a|b)(a|b)", "y := c"}));
+                    s.minimizeDFA(s.constructDFA(s.constructNFA()));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        long minimized = statistics.stream().filter(s -> s.getPhase().equals(ConstructionLogger.PHASE_MINIMIZE)).count();
+        if (minimized != 80 || statistics.stream().anyMatch(s -> s.getPeakHeapBytes() <= 0))
+            throw new AssertionError(minimized + " minimizations: " + statistics);
+
+        // a construction over its budget throws out of the subset phase and the phases of the rules tried alone
+        StringBuilder blowUp = new StringBuilder("(a|b)*a");
+        for (int i = 0; i < 12; i++)
+            blowUp.append("(a|b)");
+        Scanner over = new Scanner(new RegularGrammar(new String[]{"tail := " + blowUp, "word := c(c)*"}));
+        ConstructionBudget budget = new ConstructionBudget();
+        budget.setMaxStates(100);
+        over.setBudget(budget);
+        try {
+            over.constructDFA();
+            throw new AssertionError("The construction is over the budget.");
+        } catch (ConstructionBudgetExceededException e) {
+            if (ConstructionLogger.getRunningPhases() != 0)
+                throw new AssertionError(ConstructionLogger.getRunningPhases() + " phases still run after " + e.getMessage());
+        }
+
+        ConstructionLogger.removeListener(logger);
+        ConstructionLogger.removeListener(collector);
+        if (ConstructionLogger.isEnabled())
+            throw new AssertionError("The logger is on after the listeners are removed.");
+        Thread.sleep(2000);
+        if (Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals("construction-heap-sampler")))
+            throw new AssertionError("The heap is still sampled without a phase.");
+
+        for (int i = 0; i < pools.size(); i++)
+            if (pools.get(i).getPeakUsage().getUsed() < poolPeaks[i])
+                throw new AssertionError("The peak usage of " + pools.get(i).getName() + " was reset.");
+        System.out.println(statistics.peek());
+        System.out.println("construction events: ok");
+    }
+}
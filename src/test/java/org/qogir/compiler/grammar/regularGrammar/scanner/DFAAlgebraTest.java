@@ -0,0 +1,86 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFAAlgebra;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Check the operations of {@link DFAAlgebra}: the union of two grammars is the DFA of the merged grammar,
+ * and the other operations agree with their operands on all strings up to 7 chars.
+ */
+public class DFAAlgebraTest {
+
+    public static void main(String[] args) {
+        String[][] grammars = {
+                {"a := (a|b)*abb", "b := ab(c|d)"},
+                {"x := ab", "y := a(b)*"},
+                {"word := (a|b|c)(a|b|c|d)*", "blank := d(d)*"}};
+        for (String[] g1 : grammars) {
+            for (String[] g2 : grammars) {
+                DFATable a = dfa(g1);
+                DFATable b = dfa(g2);
+                String[] merged = Arrays.copyOf(g1, g1.length + g2.length);
+                System.arraycopy(g2, 0, merged, g1.length, g2.length);
+                if (!dfa(merged).equals(DFAAlgebra.union(a, b, g1.length)))
+                    throw new AssertionError("The union of " + Arrays.toString(g1) + " and " + Arrays.toString(g2) + " is wrong.");
+
+                DFATable intersection = DFAAlgebra.intersection(a, b);
+                DFATable difference = DFAAlgebra.difference(a, b);
+                DFATable complement = DFAAlgebra.complement(a, "abcde".toCharArray());
+                DFATable reverse = DFAAlgebra.reverse(a);
+                for (String s : strings("abcde", 7)) {
+                    int ta = run(a, s);
+                    int tb = run(b, s);
+                    String reversed = new StringBuilder(s).reverse().toString();
+                    if (run(intersection, s) != (tb != DFATable.NOT_ACCEPTING ? ta : DFATable.NOT_ACCEPTING)
+                            || run(difference, s) != (tb == DFATable.NOT_ACCEPTING ? ta : DFATable.NOT_ACCEPTING)
+                            || (run(complement, s) != DFATable.NOT_ACCEPTING) == (ta != DFATable.NOT_ACCEPTING)
+                            || (run(reverse, reversed) != DFATable.NOT_ACCEPTING) != (ta != DFATable.NOT_ACCEPTING))
+                        throw new AssertionError("The operations on " + Arrays.toString(g1) + " and " + Arrays.toString(g2) + " are wrong on " + s);
+                }
+            }
+        }
+
+        //the regexes of a never win a string, the tokens of b are still shifted by their number
+        String[] ambiguous = {"p := ab", "q := ab"};
+        String[] single = {"r := c"};
+        DFATable union = DFAAlgebra.union(dfa(ambiguous), dfa(single), ambiguous.length);
+        if (run(union, "c") != 2 || !union.equals(dfa(new String[]{"p := ab", "q := ab", "r := c"})))
+            throw new AssertionError("The union gives c the token " + run(union, "c") + " instead of 2.");
+        System.out.println("DFA algebra: ok");
+    }
+
+    private static DFATable dfa(String[] grammar) {
+        return DFATable.fromRDFA(new Scanner(new RegularGrammar(grammar)).constructDFA()).minimize();
+    }
+
+    /**
+     * @return the token of the state the DFA is in after the string, {@link DFATable#NOT_ACCEPTING} if it gets stuck
+     */
+    private static int run(DFATable dfa, String s) {
+        int state = 0;
+        for (int i = 0; i < s.length(); i++) {
+            int symbol = dfa.symbolOf(s.charAt(i));
+            state = symbol == DFATable.NONE ? DFATable.NONE : dfa.next(state, symbol);
+            if (state == DFATable.NONE)
+                return DFATable.NOT_ACCEPTING;
+        }
+        return dfa.getToken(state);
+    }
+
+    private static ArrayList<String> strings(String alphabet, int maxLength) {
+        ArrayList<String> strings = new ArrayList<>();
+        strings.add("");
+        for (int i = 0; i < strings.size(); i++) {
+            if (strings.get(i).length() == maxLength)
+                continue;
+            for (char c : alphabet.toCharArray())
+                strings.add(strings.get(i) + c);
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,150 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.BitParallelNFA;
+import org.qogir.compiler.grammar.regularGrammar.BlowUpAnalysis;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.util.ConstructionBudgetExceededException;
+import org.qogir.simulation.scanner.CompiledScanner;
+import org.qogir.simulation.scanner.EngineSelector;
+import org.qogir.simulation.scanner.Scan;
+import org.qogir.simulation.scanner.ScanWithBitParallelNFA;
+import org.qogir.simulation.scanner.ScanWithLazyDFA;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Check {@link BlowUpAnalysis} against the subset construction, the lazy DFA and the bit-parallel NFA
+ * against the compiled scanner, the size limit of the bit-parallel NFA and its allocation-free tokens,
+ * and the engine chosen by {@link EngineSelector}.
+ */
+public class EngineSelectorTest {
+
+    public static void main(String[] args) {
+        //the estimate of the classic blow-up follows the DFA
+        for (int k = 1; k <= 8; k++) {
+            String regex = "t := (a|b)*a" + "(a|b)".repeat(k);
+            BlowUpAnalysis analysis = BlowUpAnalysis.analyze(new RegularGrammar(new String[]{regex}));
+            int states = new Scanner(new RegularGrammar(new String[]{regex})).constructDFA().getTransitTable().vertexSet().size();
+            System.out.println(regex + ": ~" + analysis.getEstimatedDFAStates() + " estimated, " + states + " states");
+            if (analysis.getRules().get(0).getExponent() != k + 1 || states > analysis.getEstimatedDFAStates())
+                throw new AssertionError("The estimate of " + regex + " is wrong.");
+        }
+        if (BlowUpAnalysis.analyze(new RegularGrammar(new String[]{"t := (a|b)*abb"})).getRules().get(0).isExponential())
+            throw new AssertionError("(a|b)*abb does not blow up.");
+
+        //the engines scan the same tokens as the compiled scanner
+        String[][] grammars = {
+                {"word := (a|b)(a|b|c)*", "blank := d(d)*", "ab := ab"},
+                {"x := (a|b)*abb", "y := (a|b)(a|b)*", "z := c"},
+                {"t := (a|b)*a(a|b)(a|b)(a|b)", "s := c(c)*"}};
+        Random random = new Random(45);
+        for (String[] g : grammars) {
+            RegularGrammar rg = new RegularGrammar(g);
+            CompiledScanner compiled = new CompiledScanner(rg);
+            Scanner scanner = new Scanner(rg);
+            for (int i = 0; i < 300; i++) {
+                StringBuilder input = new StringBuilder();
+                for (int j = random.nextInt(30); j > 0; j--)
+                    input.append("abcd".charAt(random.nextInt(4)));
+                String expected = scan(compiled, input.toString());
+                String lazy = scan(new ScanWithLazyDFA(rg, scanner.constructLazyDFA(4), input.toString()));
+                String bit = scan(new ScanWithBitParallelNFA(rg, scanner.constructBitParallelNFA(), input.toString()));
+                if (!expected.equals(lazy) || !expected.equals(bit))
+                    throw new AssertionError("\"" + input + "\": " + expected + " / " + lazy + " / " + bit);
+            }
+        }
+
+        //the token of a set with several accepting states takes no allocation
+        BitParallelNFA ambiguous = new Scanner(new RegularGrammar(grammars[0])).constructBitParallelNFA();
+        long[] set = new long[ambiguous.getWords()];
+        long[] next = new long[ambiguous.getWords()];
+        ambiguous.start(set);
+        ambiguous.step(set, ambiguous.symbolOf('a'), next);
+        ambiguous.step(next, ambiguous.symbolOf('b'), set);
+        if (ambiguous.getToken(set) != RDFA.AMBIGUOUS_TOKEN)
+            throw new AssertionError("\"ab\" is a word and ab: " + ambiguous.getToken(set));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sum = 0;
+        for (int i = 0; i < 100_000; i++)
+            sum += ambiguous.getToken(set);
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 1_000_000; i++)
+            sum += ambiguous.getToken(set);
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        System.out.println("1000000 ambiguous tokens: " + allocated + " bytes allocated (" + sum + ")");
+        if (allocated > 100_000)
+            throw new AssertionError("The tokens allocated " + allocated + " bytes.");
+
+        //a table over the limit is not built, e.g. 30001 states of 4 symbols would take 450 MB
+        try {
+            new Scanner(new RegularGrammar(new String[]{"t := (a|b|c|d){30000}"})).constructBitParallelNFA();
+            throw new AssertionError("The table of 30001 states is built.");
+        } catch (ConstructionBudgetExceededException e) {
+            System.out.println(e.getMessage());
+            if (!e.getLimit().equals(ConstructionBudgetExceededException.HEAP) || e.getValue() <= BitParallelNFA.DEFAULT_MAX_TABLE_BYTES)
+                throw new AssertionError(e.getMessage());
+        }
+
+        EngineSelector selector = new EngineSelector();
+        EngineSelector.Selection small = selector.select(new Scanner(new RegularGrammar(grammars[0])));
+        System.out.println(small);
+        if (small.getEngine() != EngineSelector.Engine.FULL_DFA)
+            throw new AssertionError("A small grammar gets a full DFA.");
+
+        String[] blowUp = {"t := (a|b)*a" + "(a|b)".repeat(16), "s := c(c)*"};
+        EngineSelector.Selection pathological = selector.select(new Scanner(new RegularGrammar(blowUp)));
+        System.out.println(pathological);
+        if (pathological.getEngine() != EngineSelector.Engine.BIT_PARALLEL_NFA)
+            throw new AssertionError("A blow-up gets the NFA.");
+        EngineSelector limited = new EngineSelector();
+        limited.setMaxNFATableBytes(1000);
+        EngineSelector.Selection fallback = limited.select(new Scanner(new RegularGrammar(blowUp)));
+        System.out.println(fallback);
+        if (fallback.getEngine() != EngineSelector.Engine.LAZY_DFA)
+            throw new AssertionError("A blow-up whose NFA is over the limit gets the lazy DFA.");
+        for (String input : new String[]{"ab" + "a".repeat(20) + "cc", "abba" + "b".repeat(16) + "c"}) {
+            if (!scan(fallback.newScan(input)).equals(scan(pathological.newScan(input))))
+                throw new AssertionError("\"" + input + "\": " + scan(fallback.newScan(input)) + " / " + scan(pathological.newScan(input)));
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            text.append(random.nextInt(8) == 0 ? "a" + "b".repeat(16) : "c");
+        EngineSelector.Selection calm = selector.select(new Scanner(new RegularGrammar(blowUp)), text);
+        System.out.println(calm);
+        StringBuilder noise = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            noise.append("ab".charAt(random.nextInt(2)));
+        EngineSelector.Selection noisy = selector.select(new Scanner(new RegularGrammar(blowUp)), noise);
+        System.out.println(noisy);
+        if (calm.getEngine() != EngineSelector.Engine.LAZY_DFA || noisy.getEngine() != EngineSelector.Engine.BIT_PARALLEL_NFA)
+            throw new AssertionError("The calibration chose " + calm.getEngine() + " and " + noisy.getEngine() + ".");
+
+        for (EngineSelector.Selection selection : new EngineSelector.Selection[]{calm, noisy}) {
+            for (StringBuilder input : new StringBuilder[]{text, noise}) {
+                long start = System.nanoTime();
+                ArrayDeque tokens = new ArrayDeque();
+                int message = selection.newScan(input.toString()).scan(tokens);
+                System.out.printf("%s on %s: %d tokens, message %d, %.1f ms%n", selection.getEngine(),
+                        input == text ? "text" : "noise", tokens.size(), message, (System.nanoTime() - start) / 1e6);
+            }
+        }
+        System.out.println("ok");
+    }
+
+    private static String scan(CompiledScanner compiled, String input) {
+        ArrayDeque tokens = new ArrayDeque();
+        int message = compiled.scan(input, tokens);
+        return message + " " + tokens;
+    }
+
+    private static String scan(Scan scan) {
+        ArrayDeque tokens = new ArrayDeque();
+        int message = scan.scan(tokens);
+        return message + " " + tokens;
+    }
+}
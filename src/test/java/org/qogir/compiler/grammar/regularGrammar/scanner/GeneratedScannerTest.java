@@ -0,0 +1,133 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.CompressedDFA;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.GeneratedScanFactory;
+import org.qogir.simulation.scanner.Scan;
+import org.qogir.simulation.scanner.ScanWithDFA;
+import org.qogir.simulation.scanner.Scanner;
+import org.qogir.simulation.scanner.ScannerCodeGenerator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Check that every variant of the scanners of {@link ScannerCodeGenerator} scans as {@link ScanWithDFA}:
+ * the inline dispatch of small DFAs, the methods for each state of large DFAs, the scalar skipping of runs
+ * of self-loop chars and, with {@code --add-modules jdk.incubator.vector}, the vectorized skipping.
+ * The message, the token stream and the error position must be the same on random grammars and inputs.
+ */
+public class GeneratedScannerTest {
+
+    public static void main(String[] args) {
+        Random random = new Random(31);
+        boolean vector = new ScannerCodeGenerator().isVectorization();
+        int inline = 0, perState = 0;
+        for (int g = 0; g < 60; g++) {
+            String[] grammar = g % 6 == 5 ? keywords(random) : small(random);
+            RegularGrammar rg = new RegularGrammar(grammar);
+            DFATable table = DFATable.fromRDFA(new Scanner(rg).constructDFA()).minimize();
+            if (table.transitionCount() <= 400)
+                inline++;
+            else
+                perState++;
+
+            Map<String, GeneratedScanFactory> variants = new LinkedHashMap<>();
+            ScannerCodeGenerator scalar = new ScannerCodeGenerator();
+            scalar.setVectorization(false);
+            variants.put("scalar", scalar.compile(table));
+            if (vector)
+                variants.put("vector", new ScannerCodeGenerator().compile(table));
+
+            CompressedDFA compressed = new CompressedDFA(table);
+            char[] symbols = table.getAlphabet();
+            for (int n = 0; n < 100; n++) {
+                String input = input(random, symbols);
+                ArrayDeque expectedTokens = new ArrayDeque();
+                Scan expected = new ScanWithDFA(rg, compressed, input);
+                int expectedMessage = expected.scan(expectedTokens);
+                for (Map.Entry<String, GeneratedScanFactory> variant : variants.entrySet()) {
+                    ArrayDeque actualTokens = new ArrayDeque();
+                    Scan actual = variant.getValue().newScan(rg, input);
+                    int actualMessage = actual.scan(actualTokens);
+                    if (actualMessage != expectedMessage || !actualTokens.toString().equals(expectedTokens.toString())
+                            || actual.getErrorOffset() != expected.getErrorOffset()
+                            || !String.valueOf(actual.getErrorPosition()).equals(String.valueOf(expected.getErrorPosition())))
+                        throw new AssertionError(Arrays.toString(grammar) + ", " + variant.getKey() + " on \"" + input + "\": "
+                                + actualMessage + " " + actualTokens + " at " + actual.getErrorPosition() + " / "
+                                + expectedMessage + " " + expectedTokens + " at " + expected.getErrorPosition());
+                }
+            }
+        }
+        if (inline == 0 || perState == 0)
+            throw new AssertionError(inline + " inline and " + perState + " per-state DFAs, both variants must be checked.");
+        System.out.println(inline + " inline and " + perState + " per-state DFAs, "
+                + (vector ? "scalar and vector" : "scalar") + " skipping: ok");
+        if (!vector)
+            System.out.println("vector skipping skipped, jdk.incubator.vector is not available");
+    }
+
+    /**
+     * @return a grammar of a few random regexes, small enough to be coded inline
+     */
+    private static String[] small(Random random) {
+        String[] grammar = new String[2 + random.nextInt(3)];
+        for (int i = 0; i < grammar.length; i++) {
+            String regex;
+            do {
+                regex = regex(random, 3);
+            } while (regex.startsWith("ε"));
+            grammar[i] = "r" + i + " := " + regex;
+        }
+        return grammar;
+    }
+
+    /**
+     * @return random keywords over a..h, identifiers over i..p and blanks, a DFA of more than 400 transitions
+     */
+    private static String[] keywords(Random random) {
+        List<String> grammar = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            StringBuilder keyword = new StringBuilder();
+            for (int j = 6 + random.nextInt(6); j > 0; j--)
+                keyword.append((char) ('a' + random.nextInt(8)));
+            grammar.add("k" + i + " := " + keyword);
+        }
+        grammar.add("id := (i|j|k|l|m|n|o|p)(i|j|k|l|m|n|o|p|a)*");
+        grammar.add("blank := x(x)*");
+        return grammar.toArray(new String[0]);
+    }
+
+    private static String regex(Random random, int depth) {
+        int choice = depth == 0 ? 0 : random.nextInt(5);
+        return switch (choice) {
+            case 0 -> random.nextInt(8) == 0 ? "ε" : String.valueOf("abcd".charAt(random.nextInt(4)));
+            case 1, 2 -> regex(random, depth - 1) + regex(random, depth - 1);
+            case 3 -> "(" + regex(random, depth - 1) + "|" + regex(random, depth - 1) + ")";
+            default -> "(" + regex(random, depth - 1) + ")*";
+        };
+    }
+
+    /**
+     * @return chars of the alphabet with long runs of one char for the skip loops, and rarely a newline
+     * or a char out of the alphabet
+     */
+    private static String input(Random random, char[] symbols) {
+        StringBuilder input = new StringBuilder();
+        for (int j = 1 + random.nextInt(12); j > 0; j--) {
+            char c = symbols[random.nextInt(symbols.length)];
+            switch (random.nextInt(10)) {
+                case 0 -> input.append(String.valueOf(c).repeat(16 + random.nextInt(200)));
+                case 1 -> input.append(random.nextBoolean() ? '\n' : 'z');
+                default -> input.append(c);
+            }
+        }
+        return input.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.IncrementalGrammar;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Check that the DFA of {@link IncrementalGrammar} after random additions, removals and replacements
+ * minimizes to the DFA of the grammar built from scratch, and time an edit of a grammar with 40 rules.
+ */
+public class IncrementalGrammarTest {
+
+    private static final String[] REGEXES = {"(a|b)*abb", "d(f|ea*(g|h))b", "ab(c|d)", "ab", "a(b)*", "(c|d)(c|d|e)*", "e(e)*"};
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        int checks = 0;
+        for (int round = 0; round < 200; round++) {
+            IncrementalGrammar grammar = new IncrementalGrammar();
+            ArrayList<String> rules = new ArrayList<>();
+            for (int edit = 0; edit < 8; edit++) {
+                String regex = REGEXES[random.nextInt(REGEXES.length)];
+                int op = random.nextInt(4);
+                if (op < 2 || rules.isEmpty()) {
+                    String definition = "r" + edit + " := " + regex;
+                    grammar.addRule(definition);
+                    rules.add(definition);
+                } else if (op == 2) {
+                    String removed = rules.remove(random.nextInt(rules.size()));
+                    grammar.removeRule(removed.split(" ")[0]);
+                } else {
+                    int i = random.nextInt(rules.size());
+                    String name = rules.get(i).split(" ")[0];
+                    grammar.replaceRule(name, name + " := " + regex);
+                    rules.set(i, name + " := " + regex);
+                }
+                if (random.nextInt(5) == 0)
+                    grammar.compact();
+                if (rules.isEmpty())
+                    continue;
+                DFATable expected = DFATable.fromRDFA(new Scanner(new RegularGrammar(rules.toArray(new String[0]))).constructDFA()).minimize();
+                if (!expected.equals(grammar.toDFATable().minimize()))
+                    throw new AssertionError("The DFAs of " + rules + " differ.");
+                checks++;
+            }
+        }
+        System.out.println(checks + " edits: ok");
+
+        String[] definitions = new String[40];
+        for (int i = 0; i < definitions.length; i++)
+            definitions[i] = "k" + i + " := " + keyword(i) + "|" + REGEXES[i % REGEXES.length];
+        IncrementalGrammar grammar = new IncrementalGrammar(new RegularGrammar(definitions));
+        long start = System.nanoTime();
+        grammar.replaceRule("k7", "k7 := " + keyword(7) + "x");
+        System.out.printf("replace a rule:  %.2f ms, %d states%n", (System.nanoTime() - start) / 1e6, grammar.getStateCount());
+        definitions[7] = "k7 := " + keyword(7) + "x";
+        start = System.nanoTime();
+        DFATable.fromRDFA(new Scanner(new RegularGrammar(definitions)).constructDFA());
+        System.out.printf("full rebuild:    %.2f ms%n", (System.nanoTime() - start) / 1e6);
+    }
+
+    private static String keyword(int i) {
+        StringBuilder word = new StringBuilder();
+        for (int n = i + 26; n > 0; n /= 26)
+            word.append((char) ('a' + n % 26));
+        return word.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.CompiledScanner;
+import org.qogir.simulation.scanner.LineIndex;
+import org.qogir.simulation.scanner.Match;
+import org.qogir.simulation.scanner.Scan;
+import org.qogir.simulation.scanner.ScanWithBitParallelNFA;
+import org.qogir.simulation.scanner.ScanMessage;
+import org.qogir.simulation.scanner.ScanWithCaptures;
+import org.qogir.simulation.scanner.ScanWithDFA;
+import org.qogir.simulation.scanner.ScanWithLazyDFA;
+import org.qogir.simulation.scanner.ScanWithNFA;
+import org.qogir.simulation.scanner.Search;
+import org.qogir.simulation.scanner.Token;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Check the positions of tokens, matches and errors: the offsets recorded by the scans,
+ * and the lines and columns {@link LineIndex} maps them to, against counting the newlines one by one.
+ */
+public class LineIndexTest {
+
+    public static void main(String[] args) {
+        Random random = new Random(49);
+        for (int n = 0; n < 200; n++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(60); j > 0; j--) {
+                int k = random.nextInt(8);
+                text.append(k == 0 ? "\n" : k == 1 ? "\r\n" : "ab");
+            }
+            checkIndex(new LineIndex(text.toString()), text);
+            checkIndex(new LineIndex(text), text);
+        }
+        System.out.println("line index: ok");
+
+        RegularGrammar rg = new RegularGrammar(new String[]{"word := (a|b)+", "sep := c"});
+        String input = "abcbbacab";
+        Scan[] scans = {new ScanWithDFA(rg, input), new ScanWithDFA(new CompiledScanner(rg), input),
+                new ScanWithLazyDFA(rg, input), new ScanWithNFA(rg, input), new ScanWithCaptures(rg, input)};
+        for (Scan scan : scans) {
+            ArrayDeque tokens = new ArrayDeque();
+            if (scan.scan(tokens) != ScanMessage.SUCCESS_MATCH || scan.getErrorOffset() != -1)
+                throw new AssertionError(scan.getClass().getSimpleName() + " failed on " + input);
+            int offset = 0;
+            for (Object o : tokens) {
+                Token t = (Token) o;
+                if (t.getStart() != offset || !input.substring(t.getStart(), t.getEnd()).equals(t.getLexeme())
+                        || t.getLine() != 1 || t.getColumn() != offset + 1)
+                    throw new AssertionError(scan.getClass().getSimpleName() + ": " + t + " at " + t.getStart());
+                offset = t.getEnd();
+            }
+            if (offset != input.length())
+                throw new AssertionError(scan.getClass().getSimpleName() + " stopped at " + offset);
+        }
+
+        String bad = "abc\r\nba\nab";
+        scans = new Scan[]{new ScanWithDFA(rg, bad), new ScanWithDFA(new CompiledScanner(rg), bad),
+                new ScanWithLazyDFA(rg, bad), new ScanWithNFA(rg, bad), new ScanWithCaptures(rg, bad)};
+        for (Scan scan : scans) {
+            if (scan.scan(new ArrayDeque()) != ScanMessage.NOT_MATCH || scan.getErrorOffset() != 3
+                    || !"1:4".equals(scan.getErrorPosition()))
+                throw new AssertionError(scan.getClass().getSimpleName() + " reports the error of \"" + bad
+                        + "\" at " + scan.getErrorOffset() + " (" + scan.getErrorPosition() + ")");
+        }
+        //the queue holds an object before the tokens of the scan, the error is at the start of the input
+        ArrayDeque queue = new ArrayDeque();
+        queue.add("not a token");
+        Scan compiled = new ScanWithDFA(new CompiledScanner(rg), "\nab");
+        if (compiled.scan(queue) != ScanMessage.NOT_MATCH || compiled.getErrorOffset() != 0)
+            throw new AssertionError("The compiled scan reports the error at " + compiled.getErrorOffset());
+        //an illegal char after the prefix of a longer token: every engine outputs the tokens before it and
+        //reports the error at the start of the token it stopped in
+        RegularGrammar backup = new RegularGrammar(new String[]{"x := a", "y := abbc", "z := b"});
+        for (int n = 0; n < 300; n++) {
+            StringBuilder in = new StringBuilder();
+            for (int j = 1 + random.nextInt(10); j > 0; j--)
+                in.append("aabbcd\n".charAt(random.nextInt(7)));
+            String s = in.toString();
+            Scan expected = new ScanWithDFA(backup, s);
+            ArrayDeque expectedTokens = new ArrayDeque();
+            int expectedResult = expected.scan(expectedTokens);
+            scans = new Scan[]{new ScanWithDFA(new CompiledScanner(backup), s), new ScanWithLazyDFA(backup, s),
+                    new ScanWithNFA(backup, s), new ScanWithBitParallelNFA(backup, s), new ScanWithCaptures(backup, s)};
+            for (Scan scan : scans) {
+                ArrayDeque tokens = new ArrayDeque();
+                if (scan.scan(tokens) != expectedResult || !tokens.toString().equals(expectedTokens.toString())
+                        || scan.getErrorOffset() != expected.getErrorOffset()
+                        || !String.valueOf(scan.getErrorPosition()).equals(String.valueOf(expected.getErrorPosition())))
+                    throw new AssertionError(scan.getClass().getSimpleName() + " on \"" + s.replace("\n", "\\n") + "\": "
+                            + tokens + " error at " + scan.getErrorPosition() + " / " + expectedTokens + " error at "
+                            + expected.getErrorPosition());
+            }
+        }
+        System.out.println("scan positions: ok");
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            text.append(random.nextInt(4) == 0 ? "\n" : random.nextBoolean() ? "ab" : "dc");
+        List<Match> matches = new Search(rg).findAll(text);
+        if (matches.isEmpty())
+            throw new AssertionError("No matches");
+        for (Match m : matches) {
+            int line = 1;
+            int lineStart = 0;
+            for (int i = 0; i < m.getStart(); i++)
+                if (text.charAt(i) == '\n') {
+                    line++;
+                    lineStart = i + 1;
+                }
+            Token t = m.toToken();
+            if (m.getLine() != line || m.getColumn() != m.getStart() - lineStart + 1
+                    || t.getLine() != line || t.getColumn() != m.getColumn())
+                throw new AssertionError(m + " at " + m.getLine() + ":" + m.getColumn() + " instead of "
+                        + line + ":" + (m.getStart() - lineStart + 1));
+        }
+        System.out.println(matches.size() + " matches, search positions: ok");
+
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 200_000; i++)
+            big.append("abab\n");
+        LineIndex lines = new LineIndex(big.toString());
+        long start = System.nanoTime();
+        int count = lines.getLineCount();
+        long built = System.nanoTime();
+        long sum = 0;
+        for (int i = 0; i < big.length(); i += 7)
+            sum += lines.getLine(i);
+        System.out.printf("%d lines indexed in %.1f ms, %d lookups in %.1f ms (%d)%n", count, (built - start) / 1e6,
+                big.length() / 7 + 1, (System.nanoTime() - built) / 1e6, sum);
+    }
+
+    private static void checkIndex(LineIndex index, CharSequence text) {
+        int line = 1;
+        int column = 1;
+        for (int i = 0; i <= text.length(); i++) {
+            if (index.getLine(i) != line || index.getColumn(i) != column)
+                throw new AssertionError("Offset " + i + " of " + text.toString().replace("\n", "\\n")
+                        + ": " + index.format(i) + " instead of " + line + ":" + column);
+            if (index.getLineStart(line) != i - column + 1)
+                throw new AssertionError("Line " + line + " starts at " + index.getLineStart(line));
+            if (i < text.length() && text.charAt(i) == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        if (index.getLineCount() != line)
+            throw new AssertionError(index.getLineCount() + " lines instead of " + line);
+    }
+}
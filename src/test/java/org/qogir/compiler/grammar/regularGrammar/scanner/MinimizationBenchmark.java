@@ -0,0 +1,84 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.FA.State;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.ParallelStateMinimization;
+import org.qogir.compiler.grammar.regularGrammar.ParallelSubsetConstruction;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.grammar.regularGrammar.StateMinimization;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compare the sequential minimization {@link DFATable#minimize()} with {@link ParallelStateMinimization}
+ * on DFAs of 10^5 to 10^6 states, and with {@link StateMinimization} on a small DFA.
+ * A DFA to minimize is the minimal DFA of (a|b|c)*a(a|b|c){m}, which has 2^(m+1) states, with each state doubled:
+ * both copies of a state go to either copy of its targets, so the minimal DFA is the DFA before doubling.
+ */
+public class MinimizationBenchmark {
+
+    public static void main(String[] args) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int m : new int[]{8, 15, 17}) {
+            DFATable minimal = blowUp(m).minimize();
+            DFATable doubled = doubled(minimal, new Random(m));
+            System.out.println(doubled.getStateCount() + " states:");
+
+            long start = System.nanoTime();
+            DFATable sequential = doubled.minimize();
+            System.out.printf("  sequential   %6.0f ms%n", (System.nanoTime() - start) / 1e6);
+            check(minimal, sequential);
+            for (int threads = 1; threads <= cores; threads <<= 1) {
+                start = System.nanoTime();
+                DFATable parallel = new ParallelStateMinimization(threads).minimize(doubled);
+                System.out.printf("  %2d threads   %6.0f ms%n", threads, (System.nanoTime() - start) / 1e6);
+                check(minimal, parallel);
+            }
+            if (doubled.getStateCount() <= 2_000) {
+                RDFA rdfa = doubled.toRDFA();
+                State.STATE_ID = 0;
+                start = System.nanoTime();
+                RDFA reduced = new StateMinimization().minimize(rdfa);
+                System.out.printf("  RDFA         %6.0f ms, %d states%n", (System.nanoTime() - start) / 1e6,
+                        reduced.getTransitTable().vertexSet().size());
+            }
+        }
+    }
+
+    private static DFATable blowUp(int m) {
+        StringBuilder regex = new StringBuilder("(a|b|c)*a");
+        for (int i = 0; i < m; i++)
+            regex.append("(a|b|c)");
+        Scanner scanner = new Scanner(new RegularGrammar(new String[]{"t := " + regex}));
+        return new ParallelSubsetConstruction().construct(scanner.constructNFA());
+    }
+
+    private static DFATable doubled(DFATable dfa, Random random) {
+        int n = dfa.getStateCount();
+        int k = dfa.getSymbolCount();
+        int[] transitions = new int[2 * n * k];
+        int[] tokens = new int[2 * n];
+        for (int s = 0; s < 2 * n; s++) {
+            tokens[s] = dfa.getToken(s % n);
+            for (int a = 0; a < k; a++) {
+                int t = dfa.next(s % n, a);
+                transitions[s * k + a] = t == DFATable.NONE ? t : t + (random.nextBoolean() ? n : 0);
+            }
+        }
+        return new DFATable(dfa.getAlphabet(), 2 * n, transitions, tokens);
+    }
+
+    private static void check(DFATable expected, DFATable actual) {
+        boolean same = expected.getStateCount() == actual.getStateCount();
+        for (int s = 0; same && s < expected.getStateCount(); s++) {
+            same = expected.getToken(s) == actual.getToken(s);
+            for (int a = 0; same && a < expected.getSymbolCount(); a++)
+                same = expected.next(s, a) == actual.next(s, a);
+        }
+        if (!same)
+            throw new AssertionError("The minimal DFA is wrong: " + Arrays.toString(new int[]{expected.getStateCount(), actual.getStateCount()}));
+    }
+}
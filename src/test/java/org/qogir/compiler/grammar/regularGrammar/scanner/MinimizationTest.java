@@ -0,0 +1,81 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.CompressedDFA;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.grammar.regularGrammar.StateMinimization;
+import org.qogir.simulation.scanner.Scan;
+import org.qogir.simulation.scanner.ScanWithDFA;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Check the minimization of DFAs with tokens: {@link StateMinimization} and {@link DFATable#minimize()} keep the
+ * accepting states of different regexes apart and give the same number of states, and the minimal DFA scans the
+ * same tokens, errors and ambiguities as the DFA of the subset construction, which {@link ScanWithDFA} scanned before.
+ */
+public class MinimizationTest {
+
+    public static void main(String[] args) {
+        //the grammar, the states of the subset construction and of the minimal DFA
+        Object[][] cases = {
+                {new String[]{"x := (a|b)*abb"}, 5, 4},
+                //one accepting state per regex, merging them would give 2 states
+                {new String[]{"x := a", "y := b"}, 3, 3},
+                {new String[]{"x := a", "y := ab", "z := b"}, 4, 4},
+                //"ab" and "ac" are ambiguous, "acc" is r's
+                {new String[]{"p := ab", "q := a(b|c)", "r := ac(c)*"}, -1, -1},
+                {new String[]{"word := (a|b|c)(a|b|c|d)*", "blank := d(d)*", "kw := ab|bc"}, -1, -1},
+                {new String[]{"x := (a|b)*a(a|b)(a|b)", "y := ba*"}, -1, -1}};
+        Random random = new Random(41);
+        for (Object[] c : cases) {
+            String[] g = (String[]) c[0];
+            RegularGrammar rg = new RegularGrammar(g);
+            Scanner scanner = new Scanner(rg);
+            RDFA rdfa = scanner.constructDFA();
+            DFATable table = DFATable.fromRDFA(rdfa);
+            DFATable minimal = table.minimize();
+            DFATable minimized = DFATable.fromRDFA(new StateMinimization().minimize(rdfa));
+            if (minimized.getStateCount() != minimal.getStateCount() || !minimized.minimize().equals(minimal))
+                throw new AssertionError(String.join(", ", g) + ": StateMinimization gives " + minimized.getStateCount()
+                        + " states, DFATable.minimize() " + minimal.getStateCount());
+            if (minimal.getStateCount() > table.getStateCount())
+                throw new AssertionError(String.join(", ", g) + ": the minimal DFA is larger.");
+            if ((Integer) c[1] >= 0 && (table.getStateCount() != (Integer) c[1] || minimal.getStateCount() != (Integer) c[2]))
+                throw new AssertionError(String.join(", ", g) + ": " + table.getStateCount() + " -> "
+                        + minimal.getStateCount() + " states instead of " + c[1] + " -> " + c[2]);
+
+            CompressedDFA[] dfas = {new CompressedDFA(table), new CompressedDFA(minimal), new CompressedDFA(minimized)};
+            char[] symbols = table.getAlphabet();
+            int[] messages = new int[3];
+            for (int n = 0; n < 500; n++) {
+                StringBuilder input = new StringBuilder();
+                for (int j = 1 + random.nextInt(10); j > 0; j--)
+                    input.append(symbols[random.nextInt(symbols.length)]);
+                String expected = scan(new ScanWithDFA(rg, dfas[0], input.toString()));
+                String[] actual = {scan(new ScanWithDFA(rg, dfas[1], input.toString())),
+                        scan(new ScanWithDFA(rg, dfas[2], input.toString())),
+                        scan(new ScanWithDFA(rg, input.toString()))};
+                for (String a : actual)
+                    if (!a.equals(expected))
+                        throw new AssertionError(String.join(", ", g) + " on \"" + input + "\": " + a + " instead of " + expected);
+                messages[expected.charAt(0) - '0']++;
+            }
+            System.out.printf("%s: %d -> %d states, %d scanned, %d not matched, %d ambiguous%n", String.join(", ", g),
+                    table.getStateCount(), minimal.getStateCount(), messages[0], messages[1], messages[2]);
+        }
+        System.out.println("minimal DFAs: ok");
+    }
+
+    /**
+     * @return the message, the error offset and the tokens of a scan
+     */
+    private static String scan(Scan scan) {
+        ArrayDeque tokens = new ArrayDeque();
+        int message = scan.scan(tokens);
+        return message + " " + scan.getErrorOffset() + " " + tokens;
+    }
+}
@@ -0,0 +1,70 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.ReducedNFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.grammar.regularGrammar.TNFA;
+import org.qogir.compiler.util.graph.LabelEdge;
+import org.qogir.simulation.scanner.ScanWithNFA;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Check the NFA reduction of {@link Scanner#setNFAReduction}: the reduced NFA is ε-free and smaller,
+ * its DFA is the DFA of the Thompson NFA, and both NFAs scan the same tokens.
+ */
+public class NFAReductionTest {
+
+    public static void main(String[] args) {
+        String[][] grammars = {
+                {"regex0 := a|b", "regex1 := c(a|b)*"},
+                {"r := d(f|ea*(g|h))b"},
+                {"kif := if", "kint := int", "kinterface := interface", "id := (a|b|c|d|e|f|i|n|t|r)(a|b|c|d|e|f|i|n|t|r)*"},
+                {"x := (a|b)*abb", "y := ba*"},
+                {"e := a|ε", "f := b"}};
+        Random random = new Random(29);
+        for (String[] g : grammars) {
+            RegularGrammar rg = new RegularGrammar(g);
+            Scanner scanner = new Scanner(rg);
+            TNFA nfa = scanner.constructNFA();
+            ReducedNFA reduced = scanner.reduceNFA(nfa);
+            int nfaStates = nfa.getTransitTable().vertexSet().size();
+            int reducedStates = reduced.getTransitTable().vertexSet().size();
+            if (reducedStates >= nfaStates)
+                throw new AssertionError(String.join(", ", g) + ": " + nfaStates + " -> " + reducedStates + " states");
+            for (LabelEdge edge : reduced.getTransitTable().edgeSet())
+                if (edge.getLabel() == 'ε')
+                    throw new AssertionError(String.join(", ", g) + ": the reduced NFA has an ε-transition.");
+
+            Scanner plain = new Scanner(rg);
+            Scanner reducing = new Scanner(rg);
+            reducing.setNFAReduction(true);
+            DFATable expected = DFATable.fromRDFA(plain.constructDFA()).minimize();
+            DFATable actual = DFATable.fromRDFA(reducing.constructDFA()).minimize();
+            if (!expected.equals(actual))
+                throw new AssertionError(String.join(", ", g) + ": the DFAs differ.");
+
+            char[] symbols = nfa.getAlphabet().toString().replaceAll("[^a-z]", "").toCharArray();
+            for (int n = 0; n < 200; n++) {
+                StringBuilder input = new StringBuilder();
+                for (int j = 1 + random.nextInt(10); j > 0; j--)
+                    input.append(symbols[random.nextInt(symbols.length)]);
+                String[] results = new String[2];
+                for (int m = 0; m < 2; m++) {
+                    Scanner s = new Scanner(rg);
+                    s.setNFAReduction(m == 1);
+                    ArrayDeque tokens = new ArrayDeque();
+                    int message = new ScanWithNFA(s, input.toString()).scan(tokens);
+                    results[m] = message + " " + tokens;
+                }
+                if (!results[0].equals(results[1]))
+                    throw new AssertionError("\"" + input + "\": " + results[0] + " / " + results[1]);
+            }
+            System.out.println(String.join(", ", g) + ": NFA " + nfaStates + " -> " + reducedStates
+                    + " states, minimal DFA " + expected.getStateCount() + " states");
+        }
+        System.out.println("NFA reduction: ok");
+    }
+}
@@ -0,0 +1,69 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.OffHeapSubsetConstruction;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Compare {@link OffHeapSubsetConstruction} with the subset construction, and build a DFA with 2^17 states
+ * under a budget small enough to spill.
+ */
+public class OffHeapSubsetConstructionTest {
+
+    public static void main(String[] args) throws Exception {
+        String[][] grammars = {
+                {"a := (a|b)*abb", "b := d(f|ea*(g|h))b", "c := ab(c|d)"},
+                {"x := ab", "y := ab", "z := a(b)*"},
+                {"word := (a|b|c|d|e|f|g|h)(a|b|c|d|e|f|g|h|i|j)*", "blank := x(x)*", "op := y|z|yz"}};
+        for (String[] g : grammars) {
+            for (boolean reduction : new boolean[]{false, true}) {
+                Scanner s1 = new Scanner(new RegularGrammar(g));
+                s1.setNFAReduction(reduction);
+                DFATable expected = DFATable.fromRDFA(s1.constructDFA()).minimize();
+                Scanner s2 = new Scanner(new RegularGrammar(g));
+                s2.setNFAReduction(reduction);
+                DFATable actual;
+                try (OffHeapSubsetConstruction construction = new OffHeapSubsetConstruction()) {
+                    actual = s2.constructDFATable(construction).minimize();
+                }
+                if (!expected.equals(actual))
+                    throw new AssertionError("The DFAs of " + Arrays.toString(g) + " differ.");
+            }
+        }
+        System.out.println("same DFAs: ok");
+
+        //(a|b)*a(a|b){16} has 2^17 DFA states
+        StringBuilder regex = new StringBuilder("(a|b)*a");
+        for (int i = 0; i < 16; i++)
+            regex.append("(a|b)");
+        Scanner scanner = new Scanner(new RegularGrammar(new String[]{"t := " + regex}));
+        try (OffHeapSubsetConstruction construction = new OffHeapSubsetConstruction(4L << 20, null)) {
+            long start = System.nanoTime();
+            DFATable dfa = scanner.constructDFATable(construction);
+            System.out.printf("%d states in %.0f ms, peak %d bytes off-heap, %d bytes spilled%n", dfa.getStateCount(),
+                    (System.nanoTime() - start) / 1e6, construction.getBudget().getPeakResidentBytes(),
+                    construction.getBudget().getSpilledBytes());
+
+            Pattern pattern = Pattern.compile(regex.toString());
+            Random random = new Random(42);
+            for (int n = 0; n < 10000; n++) {
+                StringBuilder input = new StringBuilder();
+                int length = random.nextInt(40);
+                for (int i = 0; i < length; i++)
+                    input.append(random.nextBoolean() ? 'a' : 'b');
+                int state = 0;
+                for (int i = 0; i < length && state != DFATable.NONE; i++)
+                    state = dfa.next(state, dfa.symbolOf(input.charAt(i)));
+                boolean accepted = state != DFATable.NONE && dfa.isAccepting(state);
+                if (accepted != pattern.matcher(input).matches())
+                    throw new AssertionError("The DFA is wrong on " + input);
+            }
+        }
+        System.out.println("large DFA: ok");
+    }
+}
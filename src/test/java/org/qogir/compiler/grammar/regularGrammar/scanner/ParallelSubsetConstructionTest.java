@@ -0,0 +1,48 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.ParallelSubsetConstruction;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.grammar.regularGrammar.TNFA;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.Arrays;
+
+/**
+ * Check that {@link ParallelSubsetConstruction} gives the table of the subset construction for any number of threads,
+ * and time it on a DFA with 3 * 2^16 states.
+ */
+public class ParallelSubsetConstructionTest {
+
+    public static void main(String[] args) throws Exception {
+        String[][] grammars = {
+                {"a := (a|b)*abb", "b := d(f|ea*(g|h))b", "c := ab(c|d)"},
+                {"x := ab", "y := ab", "z := a(b)*"},
+                {"word := (a|b|c|d|e|f|g|h)(a|b|c|d|e|f|g|h|i|j)*", "blank := x(x)*", "op := y|z|yz"}};
+        for (String[] g : grammars) {
+            DFATable expected = DFATable.fromRDFA(new Scanner(new RegularGrammar(g)).constructDFA());
+            for (int threads : new int[]{1, 3, 8}) {
+                DFATable actual = new Scanner(new RegularGrammar(g)).constructDFATable(new ParallelSubsetConstruction(threads));
+                if (!expected.equals(actual))
+                    throw new AssertionError("The DFAs of " + Arrays.toString(g) + " differ with " + threads + " threads.");
+            }
+        }
+        System.out.println("same DFAs: ok");
+
+        StringBuilder regex = new StringBuilder("(a|b|c)*a");
+        for (int i = 0; i < 16; i++)
+            regex.append("(a|b|c)");
+        TNFA nfa = new Scanner(new RegularGrammar(new String[]{"t := " + regex})).constructNFA();
+        DFATable first = null;
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= Math.max(cores, 1); threads <<= 1) {
+            long start = System.nanoTime();
+            DFATable dfa = new ParallelSubsetConstruction(threads).construct(nfa);
+            System.out.printf("%2d threads: %d states in %.0f ms%n", threads, dfa.getStateCount(), (System.nanoTime() - start) / 1e6);
+            if (first == null)
+                first = dfa;
+            else if (!first.equals(dfa))
+                throw new AssertionError("The DFA differs with " + threads + " threads.");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.ParseRegex;
+import org.qogir.compiler.grammar.regularGrammar.Regex;
+import org.qogir.compiler.grammar.regularGrammar.RegexOptimization;
+import org.qogir.compiler.grammar.regularGrammar.RegexTree;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.Scanner;
+
+/**
+ * Check {@link RegexOptimization}: each rewrite gives the tree of the simpler regex, and a grammar NFA built with
+ * the optimization has fewer states and the same minimal DFA as the one built without.
+ */
+public class RegexOptimizationTest {
+
+    public static void main(String[] args) {
+        String[][] rewrites = {
+                {"(a*)*", "a*"}, {"aεb", "ab"}, {"a|a", "a"}, {"(ε|a)*", "a*"}, {"ab|ac", "a(b|c)"},
+                {"(a*|b)*", "(a|b)*"}, {"c(a|b)*|c(b|a)*", "c(a|b)*"}, {"(ε)*b", "b"}, {"(a+)*", "a*"},
+                {"(a+)+", "a+"}, {"(a*)?", "a*"}, {"(a|b)|(b|a)", "a|b"}};
+        for (String[] r : rewrites) {
+            RegexOptimization optimization = new RegexOptimization();
+            int simplified = optimization.getId(optimization.simplify(tree(r[0])).getRoot());
+            int expected = optimization.getId(optimization.simplify(tree(r[1])).getRoot());
+            if (simplified != expected)
+                throw new AssertionError(r[0] + " is not simplified to " + r[1]);
+        }
+        System.out.println(rewrites.length + " rewrites: ok");
+
+        String[] keywords = {"kif := if", "kint := int", "kinterface := interface",
+                "id := (a|b|c|d|e|f|i|n|t|r)(a|b|c|d|e|f|i|n|t|r)*", "ws := ab|ac"};
+        int[] states = new int[2];
+        for (int opt = 0; opt < 2; opt++)
+            states[opt] = scanner(keywords, opt == 1).constructNFA().getTransitTable().vertexSet().size();
+        System.out.println("keywords and identifiers: NFA " + states[0] + " -> " + states[1] + " states");
+        if (states[0] != 98 || states[1] != 68)
+            throw new AssertionError("The NFA has " + states[0] + " -> " + states[1] + " states instead of 98 -> 68.");
+
+        String[][] grammars = {keywords,
+                {"regex0 := c(a|b)*", "regex1 := c(b|a)*d", "regex2 := (a*)*b"},
+                {"x := ab|ac|ad", "y := a(b|c)e", "z := (ε|a)*"},
+                {"p := (a+)+b?", "q := a{2,3}|a{2,3}b", "r := ba"}};
+        for (String[] g : grammars) {
+            DFATable[] minimal = new DFATable[2];
+            int[] nfaStates = new int[2];
+            for (int opt = 0; opt < 2; opt++) {
+                nfaStates[opt] = scanner(g, opt == 1).constructNFA().getTransitTable().vertexSet().size();
+                minimal[opt] = DFATable.fromRDFA(scanner(g, opt == 1).constructDFA()).minimize();
+            }
+            if (nfaStates[1] > nfaStates[0])
+                throw new AssertionError(String.join(", ", g) + ": the optimized NFA is larger.");
+            if (!minimal[0].equals(minimal[1]))
+                throw new AssertionError(String.join(", ", g) + ": the minimal DFAs differ.");
+            System.out.println(String.join(", ", g) + ": NFA " + nfaStates[0] + " -> " + nfaStates[1]
+                    + " states, minimal DFA " + minimal[0].getStateCount() + " states");
+        }
+        System.out.println("same minimal DFAs: ok");
+    }
+
+    private static Scanner scanner(String[] grammar, boolean optimization) {
+        Scanner scanner = new Scanner(new RegularGrammar(grammar));
+        scanner.setRegexOptimization(optimization);
+        return scanner;
+    }
+
+    private static RegexTree tree(String regex) {
+        return new ParseRegex(new Regex("r", regex, 0)).parse();
+    }
+}
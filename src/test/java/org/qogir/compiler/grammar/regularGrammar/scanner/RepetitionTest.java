@@ -0,0 +1,129 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.ArenaRegexParser;
+import org.qogir.compiler.grammar.regularGrammar.BlowUpAnalysis;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.ParseRegex;
+import org.qogir.compiler.grammar.regularGrammar.PikeVM;
+import org.qogir.compiler.grammar.regularGrammar.Regex;
+import org.qogir.compiler.grammar.regularGrammar.RegexTree;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.util.InvalidRegexException;
+import org.qogir.simulation.scanner.CompiledScanner;
+import org.qogir.simulation.scanner.ScanWithCaptures;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+
+/**
+ * Check the operators +, ? and {m,n}: each gives the DFA of the regex written out with * and |,
+ * by the Thompson construction, the arena and the regex optimization, and a repetition of a set of symbols
+ * takes a chain of states instead of a copy of the set per repetition, which the Pike VM runs too.
+ */
+public class RepetitionTest {
+
+    public static void main(String[] args) {
+        String[][] equivalent = {
+                {"a+", "aa*"},
+                {"(ab)+c", "ab(ab)*c"},
+                {"a?b", "(a|ε)b"},
+                {"(a|b)?(c)+", "(a|b|ε)cc*"},
+                {"a{3}", "aaa"},
+                {"a{2,4}", "aa(a|ε)(a|ε)"},
+                {"a{2,}", "aaa*"},
+                {"(a|b|c){1,5}d", "(a|b|c)(a|b|c|ε)(a|b|c|ε)(a|b|c|ε)(a|b|c|ε)d"},
+                {"(ab|c){0,2}", "(ab|c|ε)(ab|c|ε)"},
+                {"(a|b){2,}c", "(a|b)(a|b)(a|b)*c"},
+                {"((a)+)*b", "a*b"},
+                {"(a*){1,3}", "a*"},
+                {"(a|b){0}ab", "ab"}};
+        for (String[] pair : equivalent) {
+            for (int mode = 0; mode < 3; mode++) {
+                DFATable expected = table("t := " + pair[1], mode);
+                DFATable actual = table("t := " + pair[0], mode);
+                if (!expected.equals(actual))
+                    throw new AssertionError(pair[0] + " is not " + pair[1] + " in mode " + mode + ".");
+            }
+        }
+        System.out.println("same DFAs: ok");
+
+        //the legacy parser builds the same trees
+        for (String regex : new String[]{"a+", "(ab)?c", "a{2,5}b", "(a|b){3,}", "c(a){2}"}) {
+            String arena = tree(regex);
+            String legacy = new ParseRegex(new Regex("t", regex, 0)).parse().export();
+            if (!arena.equals(legacy))
+                throw new AssertionError(regex + ": " + arena + " / " + legacy);
+        }
+
+        for (String illegal : new String[]{"a{3,2}", "a{2", "a{,2}", "a{99999}", "a*+", "+a", "(a|{2})"}) {
+            try {
+                new ArenaRegexParser().parse(illegal);
+                throw new AssertionError(illegal + " is legal.");
+            } catch (InvalidRegexException e) {
+                System.out.println(illegal + ": " + e.getMessage());
+            }
+        }
+
+        //a chain of 66 states against 64 copies of (a|b|c), in the arena a state reading the class and a split
+        //per repetition, whatever the size of the class
+        for (int mode = 0; mode < 2; mode++) {
+            int compact = nfaStates("t := (a|b|c){1,64}", mode);
+            int expanded = nfaStates("t := (a|b|c)" + "(a|b|c|ε)".repeat(63), mode);
+            int wide = nfaStates("t := (a|b|c|d|e|f|g|h){1,64}", mode);
+            System.out.println("(a|b|c){1,64}: " + compact + " NFA states, written out: " + expanded);
+            if (compact > (mode == 0 ? 70 : 130) || wide != compact)
+                throw new AssertionError("(a|b|c){1,64} is unrolled: " + compact + " states, " + wide + " for 8 symbols.");
+        }
+
+        //the Pike VM runs the chains of the arena
+        RegularGrammar chains = new RegularGrammar(new String[]{"t := (a|b|c){2,5}d", "u := a{1,}c", "v := b{0,2}(c|d){3}"});
+        CompiledScanner compiled = new CompiledScanner(chains);
+        PikeVM vm = new PikeVM(chains);
+        Random random = new Random(47);
+        for (int n = 0; n < 500; n++) {
+            StringBuilder input = new StringBuilder();
+            for (int j = random.nextInt(16); j > 0; j--)
+                input.append("abcd".charAt(random.nextInt(4)));
+            ArrayDeque expected = new ArrayDeque();
+            ArrayDeque actual = new ArrayDeque();
+            int expectedMessage = compiled.scan(input, expected);
+            int actualMessage = new ScanWithCaptures(chains, vm, input.toString()).scan(actual);
+            if (expectedMessage != actualMessage || !expected.toString().equals(actual.toString()))
+                throw new AssertionError("\"" + input + "\": " + expectedMessage + " " + expected + " / "
+                        + actualMessage + " " + actual);
+        }
+
+        BlowUpAnalysis analysis = BlowUpAnalysis.analyze(new RegularGrammar(new String[]{"t := (a|b)*a(a|b){16}"}));
+        System.out.println(analysis);
+        if (analysis.getRules().get(0).getExponent() != 17)
+            throw new AssertionError("(a|b)*a(a|b){16} blows up.");
+        System.out.println("ok");
+    }
+
+    /**
+     * @param mode 0 - Thompson construction, 1 - arena, 2 - regex optimization
+     */
+    private static DFATable table(String regex, int mode) {
+        Scanner scanner = scanner(regex, mode);
+        return DFATable.fromRDFA(scanner.constructDFA()).minimize();
+    }
+
+    private static int nfaStates(String regex, int mode) {
+        return scanner(regex, mode).constructNFA().getTransitTable().vertexSet().size();
+    }
+
+    private static Scanner scanner(String regex, int mode) {
+        Scanner scanner = new Scanner(new RegularGrammar(new String[]{regex}));
+        scanner.setArenaConstruction(mode == 1);
+        scanner.setRegexOptimization(mode == 2);
+        return scanner;
+    }
+
+    private static String tree(String regex) {
+        ArenaRegexParser parser = new ArenaRegexParser();
+        RegexTree tree = parser.parse(regex).toRegexTree(parser.getRoot());
+        return tree.export();
+    }
+}
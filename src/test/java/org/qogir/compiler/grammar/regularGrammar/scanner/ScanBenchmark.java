@@ -0,0 +1,100 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.CompressedDFA;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.GeneratedScanFactory;
+import org.qogir.simulation.scanner.Scan;
+import org.qogir.simulation.scanner.ScanWithDFA;
+import org.qogir.simulation.scanner.Scanner;
+import org.qogir.simulation.scanner.ScannerCodeGenerator;
+import org.qogir.simulation.scanner.Token;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Compare the table-driven scanner {@link ScanWithDFA} with the scanner generated by {@link ScannerCodeGenerator}.
+ * Run with {@code --add-modules jdk.incubator.vector} to compare the scalar and the vectorized skipping of long runs.
+ */
+public class ScanBenchmark {
+
+    private static final int WARMUP_ROUNDS = 100;
+
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        String[] regexes = new String[]{"word := (a|b|c|d|e|f|g|h)(a|b|c|d|e|f|g|h|i|j)*", "blank := x(x)*", "op := y|z|yz"};
+        RegularGrammar rg = new RegularGrammar(regexes);
+        String input = randomInput(new Random(42), 1 << 20, 12);
+
+        Scanner scanner = new Scanner(rg);
+        RDFA dfa = scanner.constructDFA();
+        CompressedDFA table = new CompressedDFA(DFATable.fromRDFA(dfa).minimize());
+        System.out.println(table);
+
+        Path cache = Files.createTempDirectory("scanner-cache");
+        long start = System.nanoTime();
+        GeneratedScanFactory factory = new ScannerCodeGenerator(cache).compile(dfa);
+        System.out.printf("generate and compile: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        start = System.nanoTime();
+        new ScannerCodeGenerator(cache).compile(dfa);
+        System.out.printf("load from cache:      %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+        ArrayDeque<Token> expected = new ArrayDeque<>();
+        ArrayDeque<Token> actual = new ArrayDeque<>();
+        int r1 = new ScanWithDFA(rg, table, input).scan(expected);
+        int r2 = factory.newScan(rg, input).scan(actual);
+        if (r1 != r2 || !expected.toString().equals(actual.toString()))
+            throw new AssertionError("The generated scanner disagrees with the table-driven scanner.");
+        System.out.println(r1 + ", " + expected.size() + " tokens");
+
+        run("table-driven", input, () -> new ScanWithDFA(rg, table, input));
+        run("generated", input, () -> factory.newScan(rg, input));
+
+        //long identifiers and blanks, where the accelerable states skip runs of self-loop chars
+        String longInput = randomInput(new Random(7), 1 << 20, 400);
+        ScannerCodeGenerator scalarGenerator = new ScannerCodeGenerator();
+        scalarGenerator.setVectorization(false);
+        GeneratedScanFactory scalar = scalarGenerator.compile(dfa);
+        System.out.println("long tokens:");
+        run("table-driven", longInput, () -> new ScanWithDFA(rg, table, longInput));
+        run("scalar", longInput, () -> scalar.newScan(rg, longInput));
+        ScannerCodeGenerator vectorGenerator = new ScannerCodeGenerator();
+        if (vectorGenerator.isVectorization()) {
+            GeneratedScanFactory vector = vectorGenerator.compile(dfa);
+            run("vector", longInput, () -> vector.newScan(rg, longInput));
+        } else {
+            System.out.println("vector         skipped, jdk.incubator.vector is not available");
+        }
+    }
+
+    private static void run(String name, String input, java.util.function.Supplier<Scan> scans) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            scans.get().scan(new ArrayDeque<Token>());
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++)
+            scans.get().scan(new ArrayDeque<Token>());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-14s %8.1f MB/s%n", name, (double) input.length() * ROUNDS / seconds / (1 << 20));
+    }
+
+    private static String randomInput(Random random, int length, int maxWordLength) {
+        StringBuilder input = new StringBuilder(length);
+        while (input.length() < length) {
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    input.append((char) ('a' + random.nextInt(8)));
+                    for (int i = random.nextInt(maxWordLength); i > 0; i--)
+                        input.append((char) ('a' + random.nextInt(10)));
+                }
+                case 1 -> input.append("x".repeat(1 + random.nextInt(maxWordLength / 4 + 1)));
+                default -> input.append(random.nextBoolean() ? "y" : "z");
+            }
+        }
+        return input.toString();
+    }
+}
@@ -0,0 +1,222 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.CompressedDFA;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.LazyDFA;
+import org.qogir.compiler.grammar.regularGrammar.ParallelSubsetConstruction;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.CompiledScanner;
+import org.qogir.simulation.scanner.EngineSelector;
+import org.qogir.simulation.scanner.GeneratedScanFactory;
+import org.qogir.simulation.scanner.Scan;
+import org.qogir.simulation.scanner.ScanMessage;
+import org.qogir.simulation.scanner.ScanMetrics;
+import org.qogir.simulation.scanner.ScanWithBitParallelNFA;
+import org.qogir.simulation.scanner.ScanWithCaptures;
+import org.qogir.simulation.scanner.ScanWithDFA;
+import org.qogir.simulation.scanner.ScanWithLazyDFA;
+import org.qogir.simulation.scanner.ScanWithNFA;
+import org.qogir.simulation.scanner.Scanner;
+import org.qogir.simulation.scanner.ScannerCodeGenerator;
+import org.qogir.simulation.scanner.StreamScanner;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Check the counts of {@link ScanMetrics} for each engine, across threads and through JMX,
+ * and compare the scan time with the metrics on and off.
+ */
+public class ScanMetricsTest {
+
+    public static void main(String[] args) throws Exception {
+        // "abba": x reads "abb" before it gets stuck, so "bb" is read again
+        RegularGrammar rg = new RegularGrammar(new String[]{"x := a", "y := abbc", "z := b"});
+        String input = "abba";
+        Scanner scanner = new Scanner(rg);
+        LazyDFA lazy = scanner.constructLazyDFA(EngineSelector.DEFAULT_CACHED_STATES);
+        ScanMetrics metrics = new ScanMetrics();
+        ScanMetrics.setActive(metrics);
+
+        GeneratedScanFactory generated = new ScannerCodeGenerator().compile(scanner.constructDFA());
+        Scan[] backtracking = {new ScanWithDFA(rg, input), new ScanWithLazyDFA(rg, lazy, input),
+                new ScanWithBitParallelNFA(rg, input), new ScanWithNFA(rg, input),
+                new ScanWithDFA(new CompiledScanner(rg), input), new ScanWithCaptures(rg, input), generated.newScan(rg, input)};
+        for (Scan scan : backtracking) {
+            metrics.reset();
+            if (scan.scan(new ArrayDeque()) != ScanMessage.SUCCESS_MATCH)
+                throw new AssertionError(scan.getClass().getSimpleName() + " failed on " + input);
+            check(metrics, scan, 1, 4, 4, Map.of("x", 2L, "z", 2L));
+            if (metrics.getBacktrackCount() != 1 || metrics.getBacktrackedCharCount() != 2)
+                throw new AssertionError(scan.getClass().getSimpleName() + ": " + metrics);
+        }
+
+        //the clock starts when the scan does, not when it is created
+        metrics.reset();
+        Scan idle = new ScanWithDFA(rg, input);
+        Thread.sleep(200);
+        idle.scan(new ArrayDeque());
+        if (metrics.getCharsPerSecond() < 4 / 0.2)
+            throw new AssertionError("The scan time includes the time before the scan: " + metrics);
+
+        //a scan read to its end by next() is counted once however often next() is called
+        metrics.reset();
+        ScanWithCaptures captures = new ScanWithCaptures(rg, input);
+        while (captures.next())
+            captures.toToken();
+        for (int i = 0; i < 3; i++)
+            captures.next();
+        if (metrics.getScanCount() != 1)
+            throw new AssertionError("The scan is counted " + metrics.getScanCount() + " times.");
+
+        // the lazy DFA has built its states in the scan above, so a second scan only hits the cache
+        metrics.reset();
+        new ScanWithLazyDFA(rg, lazy, input).scan(new ArrayDeque());
+        if (metrics.getCacheLookupCount() == 0 || metrics.getCacheHitRate() != 1.0)
+            throw new AssertionError("The cache of the lazy DFA: " + metrics);
+        metrics.reset();
+        new ScanWithLazyDFA(rg, scanner.constructLazyDFA(EngineSelector.DEFAULT_CACHED_STATES), input).scan(new ArrayDeque());
+        if (metrics.getCacheMissCount() == 0 || metrics.getCacheHitRate() >= 1.0)
+            throw new AssertionError("A new lazy DFA misses: " + metrics);
+
+        metrics.reset();
+        Scan failed = new ScanWithDFA(rg, "abac");
+        if (failed.scan(new ArrayDeque()) != ScanMessage.NOT_MATCH)
+            throw new AssertionError("abac is not a sentence.");
+        if (metrics.getFailedScanCount() != 1 || metrics.getCharCount() != 3 || metrics.getTokenCount() != 3)
+            throw new AssertionError("The failed scan: " + metrics);
+        System.out.println("engines: ok");
+
+        //each engine backs up the same chars as the DFA: the generated code inline and with a method per state,
+        //the compiled scanner alone, in batches and in chunks
+        StringBuilder letters = new StringBuilder();
+        for (char c = 'e'; c <= 'z'; c++)
+            letters.append(c).append('|');
+        for (char c = 'A'; c <= 'Z'; c++)
+            letters.append(c).append(c == 'Z' ? "" : "|");
+        //9 states of 48 transitions each, above the transitions the generator codes in the scan loop
+        String letter = "(" + letters + ")";
+        RegularGrammar large = new RegularGrammar(new String[]{"x := a", "y := abbc", "z := b", "w := c" + letter.repeat(9) + "d"});
+        //the inputs hold only symbols of the grammar, the NFA scan stops at an illegal char before the pending token
+        String[][] pieces = {{"a", "b", "abb", "abbc", "ab", "c"},
+                {"a", "b", "abb", "abbc", "ab", "cefgHIJKLMd", "cefgHIJKLMNd", "cefg", "d"}};
+        RegularGrammar[] grammars = {rg, large};
+        Random random = new Random(50);
+        for (int k = 0; k < grammars.length; k++) {
+            RegularGrammar g = grammars[k];
+            Scanner s = new Scanner(g);
+            DFATable table = s.constructDFATable(new ParallelSubsetConstruction()).minimize();
+            CompressedDFA dfa = new CompressedDFA(table);
+            GeneratedScanFactory factory = new ScannerCodeGenerator().compile(table);
+            CompiledScanner c = new CompiledScanner(g, table);
+            LazyDFA l = s.constructLazyDFA(EngineSelector.DEFAULT_CACHED_STATES);
+            for (int n = 0; n < 100; n++) {
+                StringBuilder text = new StringBuilder();
+                for (int j = 1 + random.nextInt(8); j > 0; j--)
+                    text.append(pieces[k][random.nextInt(pieces[k].length)]);
+                String in = text.toString();
+                metrics.reset();
+                new ScanWithDFA(g, dfa, in).scan(new ArrayDeque());
+                String expected = counts(metrics);
+                Scan[] scans = {new ScanWithLazyDFA(g, l, in), new ScanWithBitParallelNFA(g, in), new ScanWithNFA(g, in),
+                        new ScanWithDFA(c, in), new ScanWithCaptures(g, in), factory.newScan(g, in)};
+                for (Scan scan : scans) {
+                    metrics.reset();
+                    scan.scan(new ArrayDeque());
+                    if (!counts(metrics).equals(expected))
+                        throw new AssertionError(scan.getClass().getSimpleName() + " on " + in + ": " + counts(metrics)
+                                + " instead of " + expected);
+                }
+                metrics.reset();
+                c.scanBatch(List.of(in));
+                if (!counts(metrics).equals(expected))
+                    throw new AssertionError("The batch of " + in + ": " + counts(metrics) + " instead of " + expected);
+                metrics.reset();
+                StreamScanner stream = new StreamScanner(c);
+                ArrayDeque tokens = new ArrayDeque();
+                for (int i = 0; i < in.length(); i += 3)
+                    stream.feed(in.substring(i, Math.min(in.length(), i + 3)), tokens);
+                stream.finish(tokens);
+                stream.finish(tokens);
+                if (!counts(metrics).equals(expected))
+                    throw new AssertionError("The stream of " + in + ": " + counts(metrics) + " instead of " + expected);
+            }
+        }
+        System.out.println("backtracks of all engines: ok");
+
+        metrics.reset();
+        CompiledScanner compiled = new CompiledScanner(rg);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            text.append(i % 3 == 0 ? "abbc" : "abba");
+        String big = text.toString();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++)
+            pool.execute(() -> {
+                for (int n = 0; n < 50; n++)
+                    new ScanWithDFA(compiled, big).scan(new ArrayDeque());
+            });
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        if (metrics.getScanCount() != 200 || metrics.getCharCount() != 200L * big.length())
+            throw new AssertionError("Threads: " + metrics);
+
+        ObjectName name = metrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (!Long.valueOf(200).equals(server.getAttribute(name, "ScanCount"))
+                || ((Double) server.getAttribute(name, "TokensPerSecond")) <= 0)
+            throw new AssertionError("JMX: " + server.getAttribute(name, "ScanCount"));
+        server.invoke(name, "reset", null, null);
+        if (metrics.getScanCount() != 0)
+            throw new AssertionError("JMX reset");
+        metrics.unregister();
+        System.out.println("threads and JMX: ok");
+
+        ScanMetrics.setActive(null);
+        metrics.reset();
+        new ScanWithDFA(compiled, big).scan(new ArrayDeque());
+        if (metrics.getScanCount() != 0)
+            throw new AssertionError("The metrics are off.");
+
+        for (int round = 0; round < 3; round++) {
+            ScanMetrics.setActive(null);
+            long off = time(rg, lazy, big);
+            ScanMetrics.setActive(metrics);
+            long on = time(rg, lazy, big);
+            System.out.printf("lazy DFA: metrics off %.1f ms, on %.1f ms%n", off / 1e6, on / 1e6);
+        }
+        ScanMetrics.setActive(null);
+        System.out.println(metrics);
+    }
+
+    private static long time(RegularGrammar rg, LazyDFA lazy, String text) {
+        long start = System.nanoTime();
+        for (int n = 0; n < 200; n++)
+            new ScanWithLazyDFA(rg, lazy, text).scan(new ArrayDeque());
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return the counts of a scan which do not depend on time
+     */
+    private static String counts(ScanMetrics metrics) {
+        return metrics.getScanCount() + " scans, " + metrics.getFailedScanCount() + " failed, "
+                + metrics.getAmbiguousScanCount() + " ambiguous, " + metrics.getCharCount() + " chars, "
+                + metrics.getTokenCounts() + ", " + metrics.getBacktrackCount() + " backtracks ("
+                + metrics.getBacktrackedCharCount() + " chars)";
+    }
+
+    private static void check(ScanMetrics metrics, Scan scan, long scans, long chars, long tokens, Map<String, Long> counts) {
+        if (metrics.getScanCount() != scans || metrics.getCharCount() != chars || metrics.getTokenCount() != tokens
+                || !metrics.getTokenCounts().equals(counts) || metrics.getMeanTimeToFirstTokenMillis() <= 0)
+            throw new AssertionError(scan.getClass().getSimpleName() + ": " + metrics);
+    }
+}
@@ -1,6 +1,7 @@
 package org.qogir.compiler.grammar.regularGrammar.scanner;
 
 import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.ScanWithDFA;
 import org.qogir.simulation.scanner.ScanWithNFA;
 import org.qogir.simulation.scanner.Token;
 
@@ -27,5 +28,16 @@ public class ScanWithNFATest {
 
         System.out.println(str);
 
+        //a longer token fails at the end of the input, the scan backs up to the last token and scans the rest again
+        RegularGrammar backup = new RegularGrammar(new String[]{"x := a", "y := abbc", "z := b"});
+        for (String in : new String[]{"abb", "ab", "abbcab", "abbcabb"}) {
+            ArrayDeque<Token> expected = new ArrayDeque<>();
+            ArrayDeque<Token> actual = new ArrayDeque<>();
+            int expectedResult = new ScanWithDFA(backup, in).scan(expected);
+            int actualResult = new ScanWithNFA(backup, in).scan(actual);
+            if (actualResult != expectedResult || !actual.toString().equals(expected.toString()))
+                throw new AssertionError("\"" + in + "\": " + actualResult + " " + actual + " / " + expectedResult + " " + expected);
+        }
+        System.out.println("backing up at the end of the input: ok");
     }
 }
@@ -0,0 +1,85 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.CompiledScanner;
+import org.qogir.simulation.scanner.ScannerProfile;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Lay out a scanner of 40 keywords by a profile where a few keywords make most of the input,
+ * check that the laid out scanner scans the same tokens, and compare the share of the visits in the first rows
+ * and the scan time before and after.
+ */
+public class ScannerProfileTest {
+
+    public static void main(String[] args) {
+        String[] definitions = new String[41];
+        String[] keywords = new String[40];
+        for (int i = 0; i < keywords.length; i++) {
+            keywords[i] = keyword(i);
+            definitions[i] = "k" + i + " := " + keywords[i];
+        }
+        definitions[40] = "sep := z(z)*";
+        CompiledScanner compiled = new CompiledScanner(new RegularGrammar(definitions));
+
+        Random random = new Random(7);
+        ArrayList<String> corpus = new ArrayList<>();
+        for (int r = 0; r < 20_000; r++) {
+            StringBuilder record = new StringBuilder();
+            for (int w = 0; w < 8; w++) {
+                //most words are among the last 4 keywords, which the breadth-first numbering places last
+                int k = random.nextInt(10) < 9 ? 36 + random.nextInt(4) : random.nextInt(40);
+                record.append(keywords[k]).append('z');
+            }
+            corpus.add(record.toString());
+        }
+
+        ScannerProfile profile = new ScannerProfile(compiled);
+        for (int r = 0; r < corpus.size(); r += 10)
+            profile.record(corpus.get(r));
+        CompiledScanner laidOut = profile.relayout();
+
+        for (String record : corpus) {
+            ArrayDeque expected = new ArrayDeque();
+            ArrayDeque actual = new ArrayDeque();
+            if (compiled.scan(record, expected) != laidOut.scan(record, actual) || !expected.toString().equals(actual.toString()))
+                throw new AssertionError("The laid out scanner differs on " + record);
+        }
+        System.out.println("same tokens: ok");
+
+        int[] order = profile.layout();
+        long total = 0;
+        long before = 0;
+        long after = 0;
+        for (int s = 0; s < compiled.getStateCount(); s++) {
+            total += profile.getVisits(s);
+            if (s < 16)
+                before += profile.getVisits(s);
+            if (s < 16)
+                after += profile.getVisits(order[s]);
+        }
+        System.out.printf("visits in the first 16 of %d states: %.0f%% before, %.0f%% after%n",
+                compiled.getStateCount(), 100.0 * before / total, 100.0 * after / total);
+
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("breadth-first %6.0f ms, laid out %6.0f ms%n", time(compiled, corpus), time(laidOut, corpus));
+        }
+    }
+
+    private static double time(CompiledScanner scanner, ArrayList<String> corpus) {
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++)
+            scanner.matchBatch(corpus);
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    private static String keyword(int i) {
+        StringBuilder word = new StringBuilder();
+        for (int p = 0, n = i; p < 5; p++, n /= 4)
+            word.append((char) ('a' + (p * 3 + n % 4) % 14));
+        return word.toString();
+    }
+}
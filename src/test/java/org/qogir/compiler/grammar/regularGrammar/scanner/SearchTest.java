@@ -0,0 +1,98 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.RDFA;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.Match;
+import org.qogir.simulation.scanner.Search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Check the leftmost-longest matches of {@link Search} against java.util.regex: the match starts at the first
+ * position where a regex matches, and ends at the longest match of any regex from there.
+ * The grammars are searched with the literal prefilter, when all regexes have a prefix literal, and without.
+ */
+public class SearchTest {
+
+    public static void main(String[] args) {
+        Object[][] cases = {
+                {new String[]{"kif := if", "kint := int(e(r|g)+)?", "num := d+"}, true, "ifntegrdxy\n"},
+                {new String[]{"kab := ab(c|d)*", "kba := ba{2,3}"}, true, "abcdxy\n"},
+                {new String[]{"w := (a|b)+c", "v := b*d"}, false, "abcdxy\n"},
+                {new String[]{"x := a?b{1,2}c", "y := (c|d)+"}, false, "abcdxy\n"}};
+        Random random = new Random(33);
+        for (Object[] c : cases) {
+            String[] g = (String[]) c[0];
+            boolean prefiltered = (Boolean) c[1];
+            String chars = (String) c[2];
+            RegularGrammar rg = new RegularGrammar(g);
+            Search search = new Search(rg);
+            if (search.isPrefiltered() != prefiltered)
+                throw new AssertionError(String.join(", ", g) + ": prefiltered " + search.isPrefiltered()
+                        + " " + search.getPrefixLiterals());
+            Pattern[] patterns = new Pattern[g.length];
+            for (int i = 0; i < g.length; i++)
+                patterns[i] = Pattern.compile(rg.getPatterns().get(i).getRegex());
+
+            int matches = 0;
+            for (int n = 0; n < 300; n++) {
+                StringBuilder text = new StringBuilder();
+                for (int j = random.nextInt(40); j > 0; j--)
+                    text.append(chars.charAt(random.nextInt(chars.length())));
+                List<String> expected = expected(text.toString(), patterns);
+                List<String> actual = new ArrayList<>();
+                for (Match m : search.findAll(text))
+                    actual.add(m.getStart() + "-" + m.getEnd() + ":" + m.getToken());
+                if (!expected.equals(actual))
+                    throw new AssertionError(String.join(", ", g) + " in \"" + text + "\": " + actual
+                            + " instead of " + expected);
+                int from = random.nextInt(text.length() + 1);
+                Match m = search.find(text, from);
+                List<String> rest = expected(text.substring(from), patterns);
+                String first = rest.isEmpty() ? null : shift(rest.get(0), from);
+                if (m == null ? first != null : !(m.getStart() + "-" + m.getEnd() + ":" + m.getToken()).equals(first))
+                    throw new AssertionError(String.join(", ", g) + " in \"" + text + "\" from " + from + ": " + m
+                            + " instead of " + first);
+                matches += actual.size();
+            }
+            System.out.println(String.join(", ", g) + ": " + matches + " matches, literals " + search.getPrefixLiterals());
+        }
+        System.out.println("leftmost-longest search: ok");
+    }
+
+    /**
+     * The non-overlapping leftmost-longest matches by java.util.regex, as "start-end:token"
+     */
+    private static List<String> expected(String text, Pattern[] patterns) {
+        ArrayList<String> matches = new ArrayList<>();
+        int from = 0;
+        while (from < text.length()) {
+            String found = null;
+            for (int start = from; start < text.length() && found == null; start++) {
+                for (int end = text.length(); end > start && found == null; end--) {
+                    int token = -1;
+                    for (int i = 0; i < patterns.length; i++) {
+                        if (patterns[i].matcher(text).region(start, end).matches())
+                            token = token == -1 ? i : RDFA.AMBIGUOUS_TOKEN;
+                    }
+                    if (token != -1) {
+                        found = start + "-" + end + ":" + token;
+                        from = end;
+                    }
+                }
+            }
+            if (found == null)
+                break;
+            matches.add(found);
+        }
+        return matches;
+    }
+
+    private static String shift(String match, int offset) {
+        String[] parts = match.split("[-:]");
+        return (Integer.parseInt(parts[0]) + offset) + "-" + (Integer.parseInt(parts[1]) + offset) + ":" + parts[2];
+    }
+}
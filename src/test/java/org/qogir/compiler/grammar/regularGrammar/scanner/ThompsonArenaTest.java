@@ -0,0 +1,61 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.ArenaRegexParser;
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RegexArena;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.compiler.grammar.regularGrammar.ThompsonArena;
+import org.qogir.compiler.grammar.regularGrammar.ThompsonConstruction;
+import org.qogir.simulation.scanner.Scanner;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Check that the NFAs of {@link ThompsonArena} give the DFAs of {@link ThompsonConstruction} on random regexes,
+ * and time both on regexes of growing length.
+ */
+public class ThompsonArenaTest {
+
+    public static void main(String[] args) {
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            //in parentheses, since a regex cannot begin with ε
+            String[] grammar = {"a := (" + regex(random, 3) + ")", "b := (" + regex(random, 3) + ")"};
+            Scanner thompson = new Scanner(new RegularGrammar(grammar));
+            Scanner arena = new Scanner(new RegularGrammar(grammar));
+            arena.setArenaConstruction(true);
+            DFATable expected = DFATable.fromRDFA(thompson.constructDFA()).minimize();
+            DFATable actual = DFATable.fromRDFA(arena.constructDFA()).minimize();
+            if (!expected.equals(actual))
+                throw new AssertionError("The DFAs of " + Arrays.toString(grammar) + " differ.");
+        }
+        System.out.println("same DFAs: ok");
+
+        for (int length = 1_000; length <= 8_000; length <<= 1) {
+            StringBuilder regex = new StringBuilder();
+            while (regex.length() < length)
+                regex.append("(ab|c)*d");
+            ArenaRegexParser parser = new ArenaRegexParser();
+            RegexArena regexArena = parser.parse(regex);
+            long start = System.nanoTime();
+            ThompsonArena arena = new ThompsonArena();
+            arena.build(regexArena, parser.getRoot());
+            double arenaTime = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            new ThompsonConstruction().translate(regexArena.toRegexTree(parser.getRoot()).getRoot());
+            double thompsonTime = (System.nanoTime() - start) / 1e6;
+            System.out.printf("%5d chars: arena %6.2f ms, %d states; Thompson %8.2f ms%n", regex.length(), arenaTime, arena.size(), thompsonTime);
+        }
+    }
+
+    private static String regex(Random random, int depth) {
+        int choice = depth == 0 ? 0 : random.nextInt(5);
+        return switch (choice) {
+            case 0 -> random.nextInt(8) == 0 ? "ε" : String.valueOf("abc".charAt(random.nextInt(3)));
+            case 1, 2 -> regex(random, depth - 1) + regex(random, depth - 1);
+            case 3 -> "(" + regex(random, depth - 1) + "|" + regex(random, depth - 1) + ")";
+            default -> "(" + regex(random, depth - 1) + ")*";
+        };
+    }
+}
@@ -0,0 +1,189 @@
+package org.qogir.compiler.grammar.regularGrammar.scanner;
+
+import org.qogir.compiler.grammar.regularGrammar.DFATable;
+import org.qogir.compiler.grammar.regularGrammar.RegularGrammar;
+import org.qogir.simulation.scanner.CompiledScanner;
+import org.qogir.simulation.scanner.StreamScanner;
+import org.qogir.simulation.scanner.Token;
+import org.qogir.simulation.scanner.TokenizerServer;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Feed a {@link StreamScanner} in random chunks, and tokenize over many loopback connections to a {@link TokenizerServer}.
+ */
+public class TokenizerServerTest {
+
+    private static final int CONNECTIONS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        String[] regexes = new String[]{"word := (a|b|c|d|e|f|g|h)(a|b|c|d|e|f|g|h|i|j)*", "blank := x(x)*", "op := y|z|yz"};
+        CompiledScanner compiled = new CompiledScanner(new RegularGrammar(regexes));
+        Random random = new Random(42);
+
+        //the chunks do not change the tokens
+        StreamScanner stream = new StreamScanner(compiled);
+        for (int n = 0; n < 10000; n++) {
+            String input = randomInput(random, random.nextInt(60));
+            String expected = expected(compiled, input);
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            ArrayDeque<Token> tokens = new ArrayDeque<>();
+            stream.reset();
+            for (int i = 0; i < bytes.length; ) {
+                int chunk = Math.min(bytes.length - i, 1 + random.nextInt(8));
+                stream.feed(ByteBuffer.wrap(bytes, i, chunk), tokens);
+                i += chunk;
+            }
+            int result = stream.finish(tokens);
+            String actual = lines(tokens) + "#" + result + "\n";
+            if (!actual.equals(expected))
+                throw new AssertionError("The stream scanner disagrees on " + input + ":\n" + actual + "\n" + expected);
+            checkPositions(compiled, input, tokens, random);
+        }
+
+        //tokens with newlines, in the table of "word := (a|b)+" and "sep := \n", which a regex can not spell;
+        //the inputs are longer than the buffer of the stream, so the pending chars are moved
+        RegularGrammar lines = new RegularGrammar(new String[]{"word := (a|b)+", "sep := c"});
+        DFATable table = new DFATable(new char[]{'\n', 'a', 'b'}, 3,
+                new int[]{2, 1, 1, DFATable.NONE, 1, 1, DFATable.NONE, DFATable.NONE, DFATable.NONE},
+                new int[]{DFATable.NOT_ACCEPTING, 0, 1});
+        CompiledScanner multiline = new CompiledScanner(lines, table);
+        for (int n = 0; n < 2000; n++) {
+            StringBuilder input = new StringBuilder();
+            for (int j = random.nextInt(1000); j > 0; j--)
+                input.append("\nab".charAt(random.nextInt(3)));
+            checkPositions(multiline, input.toString(), null, random);
+        }
+        System.out.println("stream scanner: ok");
+
+        //many connections at once
+        try (TokenizerServer server = new TokenizerServer(compiled, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4)) {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+            SocketChannel[] clients = new SocketChannel[CONNECTIONS];
+            String[] inputs = new String[CONNECTIONS];
+            long start = System.nanoTime();
+            for (int i = 0; i < CONNECTIONS; i++) {
+                clients[i] = SocketChannel.open(address);
+                inputs[i] = randomInput(random, 1 + random.nextInt(300));
+                byte[] bytes = inputs[i].getBytes(StandardCharsets.UTF_8);
+                int half = bytes.length / 2;
+                clients[i].write(ByteBuffer.wrap(bytes, 0, half));
+                clients[i].write(ByteBuffer.wrap(bytes, half, bytes.length - half));
+            }
+            int failures = 0;
+            for (int i = 0; i < CONNECTIONS; i++) {
+                clients[i].shutdownOutput();
+                String actual = readAll(clients[i]);
+                clients[i].close();
+                String expected = expected(compiled, inputs[i]);
+                if (!actual.equals(expected))
+                    failures++;
+            }
+            System.out.printf("%d connections in %.1f ms, %d failures%n", CONNECTIONS, (System.nanoTime() - start) / 1e6, failures);
+            if (failures > 0)
+                throw new AssertionError(failures + " connections got wrong tokens.");
+
+            //after an error the client keeps writing, the server discards the text and sends the status line once
+            String bad = "abxé";
+            try (SocketChannel client = SocketChannel.open(address)) {
+                Exception[] failure = new Exception[1];
+                Thread writer = new Thread(() -> {
+                    try {
+                        client.write(ByteBuffer.wrap(bad.getBytes(StandardCharsets.UTF_8)));
+                        byte[] rest = new byte[1 << 20];
+                        Arrays.fill(rest, (byte) 'a');
+                        for (int i = 0; i < 4; i++)
+                            client.write(ByteBuffer.wrap(rest));
+                        client.shutdownOutput();
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                });
+                writer.start();
+                String actual = readAll(client);
+                writer.join();
+                if (failure[0] != null)
+                    throw new AssertionError("Writing after an error failed: " + failure[0]);
+                if (!actual.equals(expected(compiled, bad)))
+                    throw new AssertionError("After an error the server sent:\n" + actual);
+            }
+            System.out.println("writing after an error: ok");
+        }
+    }
+
+    /**
+     * @return the response of the server for an input: the token lines of a scan and the status line
+     */
+    private static String expected(CompiledScanner compiled, String input) {
+        ArrayDeque<Token> tokens = new ArrayDeque<>();
+        int result = compiled.scan(input, tokens);
+        return lines(tokens) + "#" + result + "\n";
+    }
+
+    /**
+     * Check the offsets, lines and columns of the tokens of a stream fed in random chunks against a scan of the whole input.
+     * @param tokens the tokens of the stream, null to feed the input in chunks here
+     */
+    private static void checkPositions(CompiledScanner compiled, String input, ArrayDeque<Token> tokens, Random random) {
+        if (tokens == null) {
+            StreamScanner stream = new StreamScanner(compiled);
+            tokens = new ArrayDeque<>();
+            for (int i = 0; i < input.length(); ) {
+                int chunk = Math.min(input.length() - i, 1 + random.nextInt(8));
+                stream.feed(input.substring(i, i + chunk), tokens);
+                i += chunk;
+            }
+            stream.finish(tokens);
+        }
+        ArrayDeque<Token> expected = new ArrayDeque<>();
+        compiled.scan(input, expected);
+        if (!positions(tokens).equals(positions(expected)))
+            throw new AssertionError("The stream scanner places the tokens of " + input.replace("\n", "\\n") + " at "
+                    + positions(tokens) + " instead of " + positions(expected));
+    }
+
+    private static String positions(ArrayDeque<Token> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (Token t : tokens)
+            sb.append(t).append(' ').append(t.getStart()).append('-').append(t.getEnd())
+                    .append('@').append(t.getLine()).append(':').append(t.getColumn()).append('\n');
+        return sb.toString();
+    }
+
+    private static String lines(ArrayDeque<Token> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (Token t : tokens)
+            sb.append(t).append('\n');
+        return sb.toString();
+    }
+
+    private static String readAll(SocketChannel channel) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        while (channel.read(buffer) >= 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+        out.write(buffer.array(), 0, buffer.position());
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a random text, mostly symbols of the grammar with a rare char which is not
+     */
+    private static String randomInput(Random random, int length) {
+        String symbols = "abcdefghijxyz";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            sb.append(random.nextInt(500) == 0 ? 'é' : symbols.charAt(random.nextInt(symbols.length())));
+        return sb.toString();
+    }
+}